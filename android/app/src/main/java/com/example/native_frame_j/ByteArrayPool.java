@@ -0,0 +1,81 @@
+package com.example.native_frame;
+
+/**
+ * Size-keyed pool of byte arrays for per-frame buffers. Frame sizes only change when the
+ * capture resolution does, so buckets are kept in small parallel arrays and searched linearly.
+ */
+public class ByteArrayPool {
+
+    private static final int MAX_SIZES = 4;
+
+    private final int maxPerSize;
+    private final int[] sizes = new int[MAX_SIZES];
+    private final byte[][][] buckets = new byte[MAX_SIZES][][];
+    private final int[] counts = new int[MAX_SIZES];
+    private int bucketCount = 0;
+    private long allocations = 0;
+
+    public ByteArrayPool(int maxPerSize) {
+        this.maxPerSize = maxPerSize;
+    }
+
+    /** Returns a pooled array of exactly {@code size} bytes, allocating only when the bucket is empty. */
+    public byte[] acquire(int size) {
+        synchronized (this) {
+            int bucket = indexOf(size);
+            if (bucket >= 0 && counts[bucket] > 0) {
+                byte[][] stack = buckets[bucket];
+                byte[] buffer = stack[--counts[bucket]];
+                stack[counts[bucket]] = null;
+                return buffer;
+            }
+            allocations++;
+        }
+        return new byte[size];
+    }
+
+    /** Returns an array to its bucket; arrays beyond the bucket capacity are left to the GC. */
+    public synchronized void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int bucket = indexOf(buffer.length);
+        if (bucket < 0) {
+            bucket = addBucket(buffer.length);
+        }
+        if (counts[bucket] < maxPerSize) {
+            buckets[bucket][counts[bucket]++] = buffer;
+        }
+    }
+
+    /** Number of arrays allocated because no pooled one was available. */
+    public synchronized long allocations() {
+        return allocations;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = null;
+            counts[i] = 0;
+        }
+        bucketCount = 0;
+    }
+
+    private int indexOf(int size) {
+        for (int i = 0; i < bucketCount; i++) {
+            if (sizes[i] == size) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int addBucket(int size) {
+        int bucket = bucketCount < MAX_SIZES ? bucketCount++ : MAX_SIZES - 1;
+        // With every slot taken the last bucket is recycled; its arrays are of a stale size.
+        sizes[bucket] = size;
+        buckets[bucket] = new byte[maxPerSize][];
+        counts[bucket] = 0;
+        return bucket;
+    }
+}
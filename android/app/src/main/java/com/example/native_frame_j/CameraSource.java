@@ -0,0 +1,22 @@
+package com.example.native_frame;
+
+import java.io.IOException;
+
+/**
+ * Produces camera frames for a {@link FrameProcessor}. The live implementation is
+ * {@link ImageReaderSource}; {@link SyntheticCameraSource} and {@link ReplayCameraSource} stand
+ * in for it on a plain JVM, so the sampling, encode and save stages can be load tested off-device.
+ */
+public interface CameraSource {
+
+    interface FrameListener {
+        /** Called on the source's frame thread, one frame at a time; {@code frame} is reused after it returns. */
+        void onFrame(SourceFrame frame);
+    }
+
+    /** Starts delivering frames to {@code listener}. */
+    void start(FrameListener listener) throws IOException;
+
+    /** Stops delivering frames. */
+    void stop();
+}
@@ -0,0 +1,195 @@
+package com.example.native_frame;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Size;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Shortens the way from the Flutter {@code startCamera} call to the first preview frame. The
+ * camera id, sensor orientation, timestamp source, capture size and its minimum frame duration
+ * are cached in SharedPreferences per device build, so later starts skip the characteristics
+ * queries. {@link #prewarm} runs when the call arrives, before {@link CameraActivity} exists:
+ * it starts the camera thread and resolves the configuration on it.
+ */
+public final class CameraStartup {
+
+    static final String PREFERENCES = "camera_startup";
+    static final int CAPTURE_WIDTH = 1280;
+    static final int CAPTURE_HEIGHT = 720;
+
+    private static final Object CONFIG_LOCK = new Object();
+
+    private static HandlerThread prewarmedThread;
+    private static long requestedAtNanos;
+    private static Config config;
+
+    private CameraStartup() {
+    }
+
+    /** Camera settings that do not change for a given device build. */
+    public static class Config {
+        public final String cameraId;
+        public final int sensorOrientation;
+        public final boolean timestampIsRealtime;
+        public final Size captureSize;
+        public final long minFrameDurationNanos;
+        /** True if this came from the cache rather than from querying the camera. */
+        public final boolean cached;
+
+        Config(String cameraId, int sensorOrientation, boolean timestampIsRealtime, Size captureSize,
+               long minFrameDurationNanos, boolean cached) {
+            this.cameraId = cameraId;
+            this.sensorOrientation = sensorOrientation;
+            this.timestampIsRealtime = timestampIsRealtime;
+            this.captureSize = captureSize;
+            this.minFrameDurationNanos = minFrameDurationNanos;
+            this.cached = cached;
+        }
+    }
+
+    /**
+     * Starts the camera thread and resolves the configuration on it. Also marks the start of
+     * the startup that {@link PipelineMetrics} times.
+     */
+    public static synchronized void prewarm(Context context) {
+        requestedAtNanos = System.nanoTime();
+        if (prewarmedThread != null) {
+            return;
+        }
+        prewarmedThread = new HandlerThread("CameraBG");
+        prewarmedThread.start();
+        Context appContext = context.getApplicationContext();
+        new Handler(prewarmedThread.getLooper()).post(() -> {
+            try {
+                config(appContext);
+            } catch (CameraAccessException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /** The prewarmed camera thread, or a new one if there is none; the caller owns and quits it. */
+    public static synchronized HandlerThread takeBackgroundThread() {
+        HandlerThread thread = prewarmedThread;
+        prewarmedThread = null;
+        if (thread == null) {
+            thread = new HandlerThread("CameraBG");
+            thread.start();
+        }
+        return thread;
+    }
+
+    /** When the startup began: the {@link #prewarm} call if there was one, otherwise now. */
+    public static synchronized long takeRequestedAt() {
+        long requestedAt = requestedAtNanos != 0 ? requestedAtNanos : System.nanoTime();
+        requestedAtNanos = 0;
+        return requestedAt;
+    }
+
+    /**
+     * The camera configuration, from memory, the SharedPreferences cache or, the first time on a
+     * device build, the camera service. A prewarm still in progress is waited for, not repeated.
+     */
+    public static Config config(Context context) throws CameraAccessException {
+        synchronized (CONFIG_LOCK) {
+            if (config != null) {
+                return config;
+            }
+            SharedPreferences preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+            config = load(preferences);
+            if (config == null) {
+                CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+                config = query(manager);
+                save(preferences, config);
+            }
+            return config;
+        }
+    }
+
+    /** Forgets the cached configuration, e.g. after the cached camera id failed to open. */
+    public static void invalidate(Context context) {
+        synchronized (CONFIG_LOCK) {
+            config = null;
+            context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE).edit().clear().apply();
+        }
+    }
+
+    private static Config load(SharedPreferences preferences) {
+        if (!Build.FINGERPRINT.equals(preferences.getString("fingerprint", null))) {
+            return null;
+        }
+        return new Config(
+                preferences.getString("cameraId", null),
+                preferences.getInt("sensorOrientation", 0),
+                preferences.getBoolean("timestampIsRealtime", false),
+                new Size(preferences.getInt("captureWidth", CAPTURE_WIDTH),
+                        preferences.getInt("captureHeight", CAPTURE_HEIGHT)),
+                preferences.getLong("minFrameDurationNanos", 0),
+                true);
+    }
+
+    private static void save(SharedPreferences preferences, Config config) {
+        preferences.edit()
+                .putString("fingerprint", Build.FINGERPRINT)
+                .putString("cameraId", config.cameraId)
+                .putInt("sensorOrientation", config.sensorOrientation)
+                .putBoolean("timestampIsRealtime", config.timestampIsRealtime)
+                .putInt("captureWidth", config.captureSize.getWidth())
+                .putInt("captureHeight", config.captureSize.getHeight())
+                .putLong("minFrameDurationNanos", config.minFrameDurationNanos)
+                .apply();
+    }
+
+    private static Config query(CameraManager manager) throws CameraAccessException {
+        String cameraId = manager.getCameraIdList()[0];
+        CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        Size captureSize = chooseOptimalSize(map.getOutputSizes(ImageFormat.YUV_420_888), CAPTURE_WIDTH, CAPTURE_HEIGHT);
+        return new Config(
+                cameraId,
+                sensorOrientation != null ? sensorOrientation : 0,
+                timestampSource != null && timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME,
+                captureSize,
+                map.getOutputMinFrameDuration(ImageFormat.YUV_420_888, captureSize),
+                false);
+    }
+
+    static Size chooseOptimalSize(Size[] choices, int width, int height) {
+        List<Size> bigEnough = new ArrayList<>();
+        for (Size option : choices) {
+            if (option.getHeight() == option.getWidth() * height / width &&
+                    option.getWidth() >= width && option.getHeight() >= height) {
+                bigEnough.add(option);
+            }
+        }
+        if (!bigEnough.isEmpty()) {
+            return Collections.min(bigEnough, new CompareSizesByArea());
+        } else {
+            return choices.length > 0 ? choices[choices.length - 1] : new Size(1280, 720);
+        }
+    }
+
+    static class CompareSizesByArea implements Comparator<Size> {
+        @Override
+        public int compare(Size lhs, Size rhs) {
+            return Long.signum((long) lhs.getWidth() * lhs.getHeight() -
+                    (long) rhs.getWidth() * rhs.getHeight());
+        }
+    }
+}
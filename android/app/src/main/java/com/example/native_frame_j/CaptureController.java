@@ -0,0 +1,250 @@
+package com.example.native_frame;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Size;
+
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import io.flutter.view.TextureRegistry;
+
+/**
+ * Runs a {@link CapturePipeline} inside the Flutter activity: the preview goes into a
+ * SurfaceTexture registered with Flutter's {@link TextureRegistry} and is shown by a
+ * {@code Texture} widget, so no activity switch is needed. After {@code stopPreview} the camera
+ * stays open for {@link #KEEP_WARM_MS}, so moving between screens does not reopen it; a
+ * recording keeps it open until it stops. Calls from the pipeline reach Dart as
+ * {@code onPreviewStarted}, {@code onCaptureMessage} and {@code onCaptureError}.
+ */
+public class CaptureController implements CapturePipeline.Listener {
+
+    static final long KEEP_WARM_MS = 10_000;
+
+    private final Activity activity;
+    private final TextureRegistry textureRegistry;
+    private final MethodChannel channel;
+    private final CapturePipeline pipeline;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable closeIdleCamera = this::closeIfIdle;
+
+    private TextureRegistry.SurfaceTextureEntry textureEntry;
+    /** Whether a Flutter screen is showing the preview. */
+    private boolean previewRequested = false;
+
+    public CaptureController(Activity activity, TextureRegistry textureRegistry, MethodChannel channel) {
+        this.activity = activity;
+        this.textureRegistry = textureRegistry;
+        this.channel = channel;
+        this.pipeline = new CapturePipeline(activity, this);
+    }
+
+    /** Handles the capture calls of the method channel; false if {@code call} is not one of them. */
+    public boolean onMethodCall(MethodCall call, MethodChannel.Result result) {
+        switch (call.method) {
+            case "startPreview":
+                startPreview(result);
+                return true;
+            case "stopPreview":
+                previewRequested = false;
+                scheduleCloseIfIdle();
+                result.success(null);
+                return true;
+            case "startRecording":
+                if (!pipeline.isOpen()) {
+                    result.error("not_open", "The preview is not running", null);
+                } else if (pipeline.isRecording()) {
+                    result.error("recording", "A recording is already in progress", null);
+                } else {
+                    File directory = pipeline.startRecording();
+                    result.success(directory.getAbsolutePath());
+                }
+                return true;
+            case "stopRecording":
+                if (pipeline.isRecording()) {
+                    pipeline.stopRecording();
+                }
+                scheduleCloseIfIdle();
+                result.success(null);
+                return true;
+            case "configure":
+                configure(call, result);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Applies the options present in {@code call}: the save rate ({@code targetSaveFps} and
+     * {@code minSaveFps} together), {@code selectSharpest}, {@code skipDuplicateFrames}, {@code duplicateThreshold},
+     * {@code parallelJpegEncoder}, {@code saveFramesUpright},
+     * {@code maxSavedLongEdge}, and the storage options {@code packFramesIntoSegments},
+     * {@code deferEncode} and {@code recordRawCapture}, which take effect with the next recording.
+     */
+    private void configure(MethodCall call, MethodChannel.Result result) {
+        Number targetFps = call.argument("targetSaveFps");
+        Number minFps = call.argument("minSaveFps");
+        if ((targetFps == null) != (minFps == null)) {
+            result.error("bad_args", "targetSaveFps and minSaveFps go together", null);
+            return;
+        }
+        try {
+            if (targetFps != null) {
+                pipeline.setSaveRate(targetFps.doubleValue(), minFps.doubleValue());
+            }
+            Number threshold = call.argument("duplicateThreshold");
+            if (threshold != null) {
+                pipeline.setDuplicateThreshold(threshold.doubleValue());
+            }
+            Number longEdge = call.argument("maxSavedLongEdge");
+            if (longEdge != null) {
+                pipeline.setMaxSavedLongEdge(longEdge.intValue());
+            }
+        } catch (IllegalArgumentException e) {
+            result.error("bad_args", e.getMessage(), null);
+            return;
+        }
+        Boolean sharpest = call.argument("selectSharpest");
+        if (sharpest != null) {
+            pipeline.setSelectSharpest(sharpest);
+        }
+        Boolean skipDuplicates = call.argument("skipDuplicateFrames");
+        if (skipDuplicates != null) {
+            pipeline.setSkipDuplicateFrames(skipDuplicates);
+        }
+        Boolean parallel = call.argument("parallelJpegEncoder");
+        if (parallel != null) {
+            pipeline.setParallelJpegEncoder(parallel);
+        }
+        Boolean upright = call.argument("saveFramesUpright");
+        if (upright != null) {
+            pipeline.setSaveFramesUpright(upright);
+        }
+        Boolean pack = call.argument("packFramesIntoSegments");
+        if (pack != null) {
+            pipeline.setPackFramesIntoSegments(pack);
+        }
+        Boolean defer = call.argument("deferEncode");
+        if (defer != null) {
+            pipeline.setDeferEncode(defer);
+        }
+        Boolean raw = call.argument("recordRawCapture");
+        if (raw != null) {
+            pipeline.setRecordRawCapture(raw);
+        }
+        result.success(null);
+    }
+
+    /**
+     * Opens the camera unless it is still warm and replies with {@code textureId}, the camera
+     * buffer {@code width} and {@code height} in sensor orientation, and {@code sensorOrientation}.
+     */
+    private void startPreview(MethodChannel.Result result) {
+        if (!hasPermissions()) {
+            result.error("permission", "Camera and location permissions are required", null);
+            return;
+        }
+        mainHandler.removeCallbacks(closeIdleCamera);
+        previewRequested = true;
+        open();
+        Size captureSize = pipeline.getCaptureSize();
+        if (captureSize == null) {
+            result.error("camera", "Unable to open the camera", null);
+            return;
+        }
+        Map<String, Object> reply = new HashMap<>();
+        reply.put("textureId", textureEntry.id());
+        reply.put("width", captureSize.getWidth());
+        reply.put("height", captureSize.getHeight());
+        reply.put("sensorOrientation", pipeline.getSensorOrientation());
+        result.success(reply);
+    }
+
+    private void open() {
+        if (textureEntry == null) {
+            textureEntry = textureRegistry.createSurfaceTexture();
+        }
+        if (!pipeline.isOpen()) {
+            pipeline.open();
+            pipeline.setPreviewTexture(textureEntry.surfaceTexture());
+        }
+    }
+
+    private void scheduleCloseIfIdle() {
+        mainHandler.removeCallbacks(closeIdleCamera);
+        if (!previewRequested && !pipeline.isRecording()) {
+            mainHandler.postDelayed(closeIdleCamera, KEEP_WARM_MS);
+        }
+    }
+
+    private void closeIfIdle() {
+        if (previewRequested || pipeline.isRecording()) {
+            return;
+        }
+        pipeline.close();
+        if (textureEntry != null) {
+            textureEntry.release();
+            textureEntry = null;
+        }
+    }
+
+    private boolean hasPermissions() {
+        return ContextCompat.checkSelfPermission(activity, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED &&
+                ContextCompat.checkSelfPermission(activity, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /** The camera is released while the app is in the background, recording or not. */
+    public void onPause() {
+        mainHandler.removeCallbacks(closeIdleCamera);
+        pipeline.close();
+    }
+
+    /** Reopens the camera if a screen is showing the preview or a recording was in progress. */
+    public void onResume() {
+        if ((previewRequested || pipeline.isRecording()) && hasPermissions()) {
+            open();
+        } else if (textureEntry != null) {
+            textureEntry.release();
+            textureEntry = null;
+        }
+    }
+
+    public void onDestroy() {
+        mainHandler.removeCallbacks(closeIdleCamera);
+        pipeline.release();
+        if (textureEntry != null) {
+            textureEntry.release();
+            textureEntry = null;
+        }
+    }
+
+    @Override
+    public void onPreviewStarted(int width, int height) {
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("width", width);
+        arguments.put("height", height);
+        mainHandler.post(() -> channel.invokeMethod("onPreviewStarted", arguments));
+    }
+
+    @Override
+    public void onMessage(String message) {
+        mainHandler.post(() -> channel.invokeMethod("onCaptureMessage", message));
+    }
+
+    @Override
+    public void onCameraError(int error) {
+        mainHandler.post(() -> {
+            pipeline.close();
+            channel.invokeMethod("onCaptureError", error);
+        });
+    }
+}
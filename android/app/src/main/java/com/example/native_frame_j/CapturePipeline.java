@@ -0,0 +1,579 @@
+package com.example.native_frame;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.*;
+import android.location.Location;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Size;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.CancellationTokenSource;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The camera, preview and save pipeline without any UI: opens the camera, streams the preview
+ * into whatever {@link SurfaceTexture} the host supplies, and feeds the camera's frames through
+ * an {@link ImageReaderSource} to a {@link FrameProcessor} that samples, encodes and stores them
+ * while recording. Hosted by {@link CameraActivity} (a TextureView) and by
+ * {@link CaptureController} (a Flutter texture). The host checks permissions before
+ * {@link #open()} and forwards its pause and destroy to {@link #close()} and {@link #release()}.
+ */
+public class CapturePipeline {
+
+    /** Callbacks to the host. They may arrive on any thread. */
+    public interface Listener {
+        /** The preview is running; {@code width} x {@code height} is the camera buffer size in sensor orientation. */
+        void onPreviewStarted(int width, int height);
+
+        /** Something to tell the user, e.g. that the preview could not start. */
+        void onMessage(String message);
+
+        /** The camera reported an error and was closed. */
+        void onCameraError(int error);
+    }
+
+    private static final long LOCATION_UPDATE_INTERVAL_MS = 1000;
+    private static final long ENCODER_SHUTDOWN_TIMEOUT_MS = 500;
+    private static final long ARCHIVE_SEGMENT_BYTES = 256L * 1024 * 1024;
+    private static final int ARCHIVE_BATCH_BYTES = 2 * 1024 * 1024;
+    private static final int WRITER_BATCH_FRAMES = 16;
+    private static final long WRITER_LINGER_MS = 250;
+    private static final long WRITER_MAX_QUEUED_BYTES = 16L * 1024 * 1024;
+
+    private static boolean recoveryStarted = false;
+
+    private final Context context;
+    private final Listener listener;
+    private final JpegEncoder platformEncoder = new YuvImageJpegEncoder();
+    private final FrameProcessor processor = new FrameProcessor(platformEncoder);
+    /** Created on first use; kept until {@link #release()} since queued frames may still hold it. */
+    private ParallelJpegEncoder parallelEncoder;
+    /** Rotate frames upright before encode instead of saving them in sensor orientation with an EXIF tag. */
+    private boolean saveFramesUpright = false;
+    /** Scale saved frames down so their long edge is at most this many pixels; 0 keeps the capture size. */
+    private int maxSavedLongEdge = 0;
+    private boolean skipDuplicateFrames = false;
+    private double duplicateThreshold = FrameProcessor.DEFAULT_DUPLICATE_THRESHOLD;
+
+    private volatile RawCaptureWriter rawCapture = null;
+    /** Pack frames into segment files with a binary index instead of one JPEG file per frame. */
+    private volatile boolean packFramesIntoSegments = false;
+    /**
+     * Store sampled frames losslessly compressed while recording and encode them to JPEG later,
+     * when {@link DeferredTranscodeJob} runs on a charging or idle device.
+     */
+    private volatile boolean deferEncode = false;
+    /** Also keep every camera frame of a recording in {@code capture.raw}, for {@link ReplayCameraSource}. */
+    private volatile boolean recordRawCapture = false;
+
+    private ImageReader imageReader;
+    private ImageReaderSource frameSource;
+    private String cameraId;
+    private CameraDevice cameraDevice;
+    private CameraCaptureSession captureSession;
+    private SurfaceTexture previewTexture;
+    private boolean previewStarted = false;
+    private boolean opened = false;
+
+    private final Semaphore cameraLock = new Semaphore(1);
+    private HandlerThread backgroundThread;
+    private Handler backgroundHandler;
+
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult result) {
+            for (Location location : result.getLocations()) {
+                addLocationFix(location);
+            }
+        }
+    };
+
+    private int sensorOrientation = 0;
+
+    public CapturePipeline(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this.context);
+        startRecovery(this.context);
+    }
+
+    /**
+     * Once per process: cleans up sessions a crash or kill left with unpublished frames, then
+     * loads the frame index so the first recording does not wait for it, and schedules the
+     * transcoding of deferred frames a previous run left behind.
+     */
+    private synchronized static void startRecovery(Context context) {
+        if (recoveryStarted) {
+            return;
+        }
+        recoveryStarted = true;
+        long recoveryCutoff = System.currentTimeMillis();
+        new Thread(() -> {
+            GroupCommitWriter.recoverAll(ImageUtils.getSessionsRoot(), recoveryCutoff);
+            openFrameIndex();
+            DeferredTranscodeJob.scheduleIfPending(context);
+        }, "SessionRecovery").start();
+    }
+
+    /**
+     * Starts the camera thread and encoders, warms up location and opens the camera. The preview
+     * session starts once {@link #setPreviewTexture} has supplied a surface. Requires the camera
+     * and fine location permissions.
+     */
+    public void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        metrics.onStartupRequested(CameraStartup.takeRequestedAt());
+        startBackgroundThread();
+        processor.open();
+
+        // Location warmup, opening the camera and waiting for the preview surface all overlap;
+        // the preview session starts as soon as both the camera and the surface are ready.
+        startLocationUpdates();
+        openCamera();
+        startPreviewIfReady();
+    }
+
+    /** Stops the camera and encoders; a recording in progress resumes with the next {@link #open()}. */
+    public void close() {
+        if (!opened) {
+            return;
+        }
+        opened = false;
+        stopLocationUpdates();
+        closeCamera();
+        processor.close(ENCODER_SHUTDOWN_TIMEOUT_MS);
+        stopBackgroundThread();
+    }
+
+    /** Call when the host goes away for good; a recording in progress is finished first. */
+    public void release() {
+        if (isRecording()) {
+            // Otherwise the session's sink, and its writer thread, would never be closed.
+            stopRecording();
+        }
+        close();
+        closeRawCapture();
+        processor.release();
+        synchronized (this) {
+            if (parallelEncoder != null) {
+                parallelEncoder.shutdown();
+                parallelEncoder = null;
+            }
+        }
+    }
+
+    public boolean isOpen() {
+        return opened;
+    }
+
+    /** The surface the preview is drawn into; cleared by {@link #close()}. */
+    public void setPreviewTexture(SurfaceTexture texture) {
+        synchronized (this) {
+            previewTexture = texture;
+        }
+        startPreviewIfReady();
+    }
+
+    /** Size of the camera buffers, in sensor orientation; null until the camera configuration is known. */
+    public Size getCaptureSize() {
+        ImageReader reader = imageReader;
+        return reader != null ? new Size(reader.getWidth(), reader.getHeight()) : null;
+    }
+
+    public int getSensorOrientation() {
+        return sensorOrientation;
+    }
+
+    public boolean isRecording() {
+        return processor.isRecording();
+    }
+
+    /** Changes the rate frames are saved at while recording; see {@link FrameSampler#setTargetFps}. */
+    public void setSaveRate(double targetFps, double minFps) {
+        processor.setSaveRate(targetFps, minFps);
+    }
+
+    /**
+     * Encode with {@link ParallelJpegEncoder}, which splits each frame over the encode workers'
+     * cores, instead of the platform's {@link YuvImageJpegEncoder}. Applies from the next queued frame.
+     */
+    public synchronized void setParallelJpegEncoder(boolean parallel) {
+        if (parallel && parallelEncoder == null) {
+            parallelEncoder = new ParallelJpegEncoder(FrameEncodeScheduler.defaultWorkerCount());
+        }
+        processor.setEncoder(parallel ? parallelEncoder : platformEncoder);
+    }
+
+    /** Whether each window's sharpest frame is saved and tagged; see {@link FrameProcessor#setSelectSharpest}. */
+    public void setSelectSharpest(boolean select) {
+        processor.setSelectSharpest(select);
+    }
+
+    /** Whether sampled frames that look like the last saved one are skipped; see {@link FrameProcessor#setDuplicateFilter}. */
+    public synchronized void setSkipDuplicateFrames(boolean skip) {
+        processor.setDuplicateFilter(skip, duplicateThreshold);
+        skipDuplicateFrames = skip;
+    }
+
+    /** Mean absolute luma difference under which a frame counts as a duplicate; see {@link DuplicateFrameFilter}. */
+    public synchronized void setDuplicateThreshold(double threshold) {
+        processor.setDuplicateFilter(skipDuplicateFrames, threshold);
+        duplicateThreshold = threshold;
+    }
+
+    /** Whether frames are rotated upright before encode; see {@link FrameProcessor#setOutputTransform}. */
+    public synchronized void setSaveFramesUpright(boolean upright) {
+        processor.setOutputTransform(upright, maxSavedLongEdge);
+        saveFramesUpright = upright;
+    }
+
+    /**
+     * Long edge saved frames are scaled down to, 0 to keep the capture size; see
+     * {@link FrameProcessor#setOutputTransform}.
+     */
+    public synchronized void setMaxSavedLongEdge(int maxLongEdge) {
+        processor.setOutputTransform(saveFramesUpright, maxLongEdge);
+        maxSavedLongEdge = maxLongEdge;
+    }
+
+    /**
+     * Whether the next recording packs its frames into a {@link SegmentArchiveWriter} archive;
+     * {@link SegmentArchiveExporter} turns one back into JPEG files.
+     */
+    public void setPackFramesIntoSegments(boolean pack) {
+        packFramesIntoSegments = pack;
+    }
+
+    /** Whether the next recording stores frames for a later JPEG encode instead of encoding them now. */
+    public void setDeferEncode(boolean defer) {
+        deferEncode = defer;
+    }
+
+    /** Whether the next recording also keeps every camera frame in {@code capture.raw}. */
+    public void setRecordRawCapture(boolean record) {
+        recordRawCapture = record;
+    }
+
+    /** Starts a new session and returns its directory. Frames taken before the first fix get their GPS backfilled. */
+    @SuppressLint("MissingPermission")
+    public File startRecording() {
+        RecordingSession session = startRecordingSession();
+        CancellationTokenSource cancellationTokenSource = new CancellationTokenSource();
+        fusedLocationClient.getCurrentLocation(LocationRequest.PRIORITY_HIGH_ACCURACY, cancellationTokenSource.getToken())
+                .addOnSuccessListener(this::addLocationFix)
+                .addOnFailureListener(e -> listener.onMessage("Location unavailable, waiting for a fix"));
+        return session.getDirectory();
+    }
+
+    public void stopRecording() {
+        RecordingSession finished = processor.stopRecording();
+        stopLocationUpdates();
+        if (finished == null) {
+            return;
+        }
+        Runnable finish = () -> {
+            processor.finishRecording(finished);
+            closeRawCapture();
+            if (finished.getDeferredFrames() != null) {
+                DeferredTranscodeJob.schedule(context);
+            }
+        };
+        Handler handler = backgroundHandler;
+        if (handler != null) {
+            handler.post(finish);
+        } else {
+            // Closed, so no frame is in flight.
+            finish.run();
+        }
+    }
+
+    private RecordingSession startRecordingSession() {
+        File directory = ImageUtils.createSessionDirectory();
+        RecordingSession session = null;
+        if (deferEncode) {
+            try {
+                session = new RecordingSession(directory, null, new DeferredFrameWriter(directory), openFrameIndex());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (session == null) {
+            session = new RecordingSession(directory, createFrameSink(directory), openFrameIndex());
+        }
+        if (recordRawCapture) {
+            try {
+                rawCapture = new RawCaptureWriter(new File(directory, RawCaptureWriter.FILE_NAME));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        processor.startRecording(session);
+        startLocationUpdates();
+        return session;
+    }
+
+    private void closeRawCapture() {
+        RawCaptureWriter raw = rawCapture;
+        rawCapture = null;
+        if (raw != null) {
+            try {
+                raw.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static FrameIndex openFrameIndex() {
+        try {
+            return FrameIndex.shared(ImageUtils.getSessionsRoot());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private FrameSink createFrameSink(File directory) {
+        if (packFramesIntoSegments) {
+            try {
+                return new SegmentArchiveWriter(directory, ARCHIVE_SEGMENT_BYTES, ARCHIVE_BATCH_BYTES);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            return new GroupCommitWriter(directory, WRITER_BATCH_FRAMES, WRITER_LINGER_MS, WRITER_MAX_QUEUED_BYTES,
+                    CapturePipeline::syncDirectory);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new DirectoryFrameSink(directory);
+    }
+
+    /** Directory fsync through the raw descriptor API, which java.io cannot do. */
+    private static void syncDirectory(File directory) throws IOException {
+        try {
+            FileDescriptor fd = Os.open(directory.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            throw e.rethrowAsIOException();
+        }
+    }
+
+    @SuppressLint("MissingPermission")
+    private void startLocationUpdates() {
+        LocationRequest request = new LocationRequest.Builder(
+                LocationRequest.PRIORITY_HIGH_ACCURACY, LOCATION_UPDATE_INTERVAL_MS)
+                .setMinUpdateIntervalMillis(LOCATION_UPDATE_INTERVAL_MS / 2)
+                .build();
+        fusedLocationClient.requestLocationUpdates(request, locationCallback, Looper.getMainLooper());
+    }
+
+    private void stopLocationUpdates() {
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+    }
+
+    private void addLocationFix(Location location) {
+        if (location == null) {
+            return;
+        }
+        processor.onLocationFix(location.getElapsedRealtimeNanos(), location.getLatitude(),
+                location.getLongitude(), location.getAccuracy());
+    }
+
+    private void startBackgroundThread() {
+        backgroundThread = CameraStartup.takeBackgroundThread();
+        backgroundHandler = new Handler(backgroundThread.getLooper());
+    }
+
+    private void stopBackgroundThread() {
+        backgroundThread.quitSafely();
+        try {
+            backgroundThread.join();
+            backgroundThread = null;
+            backgroundHandler = null;
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Opens the camera device; the preview session is created once the preview surface is ready too. */
+    @SuppressLint("MissingPermission")
+    private void openCamera() {
+        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        try {
+            CameraStartup.Config config = CameraStartup.config(context);
+            metrics.onStartupConfig(config.cached);
+            cameraId = config.cameraId;
+            sensorOrientation = config.sensorOrientation;
+            Size captureSize = config.captureSize;
+            // Until capture results report the actual duration, assume the stream runs at full rate.
+            processor.setFrameDurationNanos(config.minFrameDurationNanos);
+
+            imageReader = ImageReader.newInstance(captureSize.getWidth(), captureSize.getHeight(),
+                    ImageFormat.YUV_420_888, 5);
+            frameSource = new ImageReaderSource(context, imageReader, backgroundHandler,
+                    sensorOrientation, config.timestampIsRealtime);
+            frameSource.start(frame -> {
+                processor.onFrame(frame);
+                RawCaptureWriter raw = rawCapture;
+                if (raw != null) {
+                    raw.onFrame(frame);
+                }
+            });
+
+            manager.openCamera(cameraId, stateCallback, backgroundHandler);
+
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            // The cached camera id no longer exists; query the camera again on the next start.
+            CameraStartup.invalidate(context);
+            e.printStackTrace();
+        }
+    }
+
+    /** Creates the preview session once both the camera device and the preview surface are ready. */
+    private synchronized void startPreviewIfReady() {
+        if (previewStarted || cameraDevice == null || previewTexture == null) {
+            return;
+        }
+        previewStarted = true;
+        createPreviewSession(previewTexture);
+    }
+
+    private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice device) {
+            cameraLock.release();
+            cameraDevice = device;
+            metrics.onStartupMilestone(PipelineMetrics.Milestone.CAMERA_OPENED);
+            startPreviewIfReady();
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice device) {
+            cameraLock.release();
+            device.close();
+            cameraDevice = null;
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice device, int error) {
+            cameraLock.release();
+            device.close();
+            cameraDevice = null;
+            listener.onCameraError(error);
+        }
+    };
+
+    private final CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            metrics.onStartupMilestone(PipelineMetrics.Milestone.FIRST_PREVIEW_FRAME);
+            Long frameDuration = result.get(CaptureResult.SENSOR_FRAME_DURATION);
+            if (frameDuration != null) {
+                processor.setFrameDurationNanos(frameDuration);
+            }
+        }
+    };
+
+    private void createPreviewSession(SurfaceTexture texture) {
+        try {
+            texture.setDefaultBufferSize(imageReader.getWidth(), imageReader.getHeight());
+            Surface surface = new Surface(texture);
+
+            CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            builder.addTarget(surface);
+            builder.addTarget(imageReader.getSurface());
+
+            cameraDevice.createCaptureSession(
+                    java.util.Arrays.asList(surface, imageReader.getSurface()),
+                    new CameraCaptureSession.StateCallback() {
+                        @Override
+                        public void onConfigured(@NonNull CameraCaptureSession session) {
+                            if (cameraDevice == null) return;
+                            captureSession = session;
+                            try {
+                                builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+                                session.setRepeatingRequest(builder.build(), captureCallback, backgroundHandler);
+                                metrics.onStartupMilestone(PipelineMetrics.Milestone.SESSION_CONFIGURED);
+                                listener.onPreviewStarted(imageReader.getWidth(), imageReader.getHeight());
+                            } catch (CameraAccessException e) {
+                                e.printStackTrace();
+                            }
+                        }
+
+                        @Override
+                        public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                            listener.onMessage("Unable to start preview");
+                        }
+                    },
+                    backgroundHandler
+            );
+
+        } catch (CameraAccessException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeCamera() {
+        try {
+            cameraLock.acquire();
+            if (captureSession != null) {
+                captureSession.close();
+                captureSession = null;
+            }
+            if (cameraDevice != null) {
+                cameraDevice.close();
+                cameraDevice = null;
+            }
+            if (frameSource != null) {
+                frameSource.stop();
+                frameSource = null;
+            }
+            if (imageReader != null) {
+                imageReader.close();
+            }
+            synchronized (this) {
+                previewStarted = false;
+                previewTexture = null;
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while trying to lock camera closing.", e);
+        } finally {
+            cameraLock.release();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.native_frame;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Stores a session's sampled frames as losslessly compressed NV21 instead of JPEG, so recording
+ * is bound by sequential write speed rather than encode speed; {@link DeferredTranscoder} turns
+ * them into JPEGs later. The file starts with a 16-byte header (magic {@code NFDF}, version);
+ * every frame follows as a 64-byte record header and its payload:
+ * <pre>
+ * 0  int  record magic DFRM   28 int    payload length
+ * 4  int  frame index         32 long   timestamp (epoch ms)
+ * 8  int  width               40 double latitude
+ * 12 int  height              48 double longitude
+ * 16 int  rotation degrees    56 int    CRC-32 of the payload
+ * 20 int  sharpness           60 int    flags, bit 0: GPS pending
+ * 24 int  codec: 0 raw NV21, 1 {@link Nv21LosslessCodec}
+ * </pre>
+ * All values are little-endian. Encode workers compress in parallel and append under a lock,
+ * each frame in one unbuffered gathering write, so a crash leaves at most one partial record
+ * at the end, which the reader ignores.
+ */
+public class DeferredFrameWriter implements Closeable {
+
+    static final String FILE_NAME = "frames.nv21z";
+    static final int MAGIC = 0x4644464E;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int FRAME_MAGIC = 0x4D524644;
+    static final int FRAME_HEADER_SIZE = 64;
+    static final int CODEC_RAW = 0;
+    static final int CODEC_LOSSLESS = 1;
+    static final int FLAG_GPS_PENDING = 1;
+
+    /** Session directories with a writer open in this process; the transcoder leaves them alone. */
+    private static final Set<String> OPEN_DIRECTORIES = new HashSet<>();
+
+    private static final ThreadLocal<byte[]> COMPRESS_BUFFER = new ThreadLocal<>();
+
+    private final File directory;
+    private final FileOutputStream output;
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer[] parts = new ByteBuffer[2];
+    private final CRC32 crc = new CRC32();
+    private long frameCount = 0;
+    private long rawBytes = 0;
+    private long storedBytes = 0;
+
+    public DeferredFrameWriter(File directory) throws IOException {
+        this.directory = directory;
+        output = new FileOutputStream(new File(directory, FILE_NAME));
+        channel = output.getChannel();
+        ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        fileHeader.putInt(MAGIC).putInt(VERSION);
+        fileHeader.clear();
+        writeFully(new ByteBuffer[]{fileHeader});
+        synchronized (OPEN_DIRECTORIES) {
+            OPEN_DIRECTORIES.add(directory.getAbsolutePath());
+        }
+    }
+
+    /** Whether a recording in this process is still writing deferred frames into {@code directory}. */
+    static boolean isOpen(File directory) {
+        synchronized (OPEN_DIRECTORIES) {
+            return OPEN_DIRECTORIES.contains(directory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Compresses an NV21 frame on the calling thread and appends it. Timed as the encode and
+     * write stages of {@link PipelineMetrics}.
+     */
+    public void append(byte[] nv21, int width, int height, int frameIndex, long timestamp,
+                       double latitude, double longitude, int rotationDegrees, int sharpness,
+                       boolean gpsPending) throws IOException {
+        PipelineMetrics metrics = PipelineMetrics.get();
+        long start = System.nanoTime();
+        byte[] compressed = COMPRESS_BUFFER.get();
+        int capacity = Nv21LosslessCodec.outputCapacity(width, height);
+        if (compressed == null || compressed.length < capacity) {
+            compressed = new byte[capacity];
+            COMPRESS_BUFFER.set(compressed);
+        }
+        int rawSize = YuvPlaneExtractor.nv21Size(width, height);
+        int length = Nv21LosslessCodec.compress(nv21, width, height, compressed);
+        int codec = CODEC_LOSSLESS;
+        byte[] payload = compressed;
+        if (length < 0) {
+            codec = CODEC_RAW;
+            payload = nv21;
+            length = rawSize;
+        }
+        metrics.recordSince(PipelineMetrics.Stage.ENCODE, start);
+
+        start = System.nanoTime();
+        synchronized (this) {
+            crc.reset();
+            crc.update(payload, 0, length);
+            header.clear();
+            header.putInt(FRAME_MAGIC)
+                    .putInt(frameIndex)
+                    .putInt(width)
+                    .putInt(height)
+                    .putInt(rotationDegrees)
+                    .putInt(sharpness)
+                    .putInt(codec)
+                    .putInt(length)
+                    .putLong(timestamp)
+                    .putDouble(latitude)
+                    .putDouble(longitude)
+                    .putInt((int) crc.getValue())
+                    .putInt(gpsPending ? FLAG_GPS_PENDING : 0);
+            header.flip();
+            parts[0] = header;
+            parts[1] = ByteBuffer.wrap(payload, 0, length);
+            writeFully(parts);
+            frameCount++;
+            rawBytes += rawSize;
+            storedBytes += FRAME_HEADER_SIZE + length;
+        }
+        metrics.recordSince(PipelineMetrics.Stage.WRITE, start);
+    }
+
+    public synchronized long frameCount() {
+        return frameCount;
+    }
+
+    /** Uncompressed NV21 bytes of the frames appended so far. */
+    public synchronized long rawBytes() {
+        return rawBytes;
+    }
+
+    /** Bytes the appended frames take in the file, record headers included. */
+    public synchronized long storedBytes() {
+        return storedBytes;
+    }
+
+    /** Syncs the file so the frames survive until they are transcoded, and closes it. */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.force(false);
+        } finally {
+            output.close();
+            synchronized (OPEN_DIRECTORIES) {
+                OPEN_DIRECTORIES.remove(directory.getAbsolutePath());
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.native_frame;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Process;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs {@link DeferredTranscoder} over every session with deferred frames while the device is
+ * charging or idle. JobScheduler can only require both at once, so one job is scheduled for
+ * each; whichever starts first does the work. When the system stops the job the transcoder is
+ * cancelled at a frame boundary and the job rescheduled; it resumes from its checkpoint.
+ */
+public class DeferredTranscodeJob extends JobService {
+
+    private static final int CHARGING_JOB_ID = 0x4E460101;
+    private static final int IDLE_JOB_ID = 0x4E460102;
+
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+    private static volatile String progressSession = null;
+    private static volatile int progressDone = 0;
+    private static volatile int progressTotal = 0;
+
+    private volatile DeferredTranscoder transcoder;
+
+    /** Schedules the transcoding of deferred frames for the next time the device charges or idles. */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        ComponentName service = new ComponentName(context, DeferredTranscodeJob.class);
+        scheduler.schedule(new JobInfo.Builder(CHARGING_JOB_ID, service).setRequiresCharging(true).build());
+        scheduler.schedule(new JobInfo.Builder(IDLE_JOB_ID, service).setRequiresDeviceIdle(true).build());
+    }
+
+    /** Schedules the job if any session still has deferred frames. Call off the main thread. */
+    static void scheduleIfPending(Context context) {
+        File[] directories = ImageUtils.getSessionsRoot().listFiles();
+        if (directories == null) {
+            return;
+        }
+        for (File directory : directories) {
+            if (DeferredTranscoder.hasDeferredFrames(directory)) {
+                schedule(context);
+                return;
+            }
+        }
+    }
+
+    /** {@code running}, and the {@code session} being transcoded with {@code framesDone} of {@code framesTotal}. */
+    public static Map<String, Object> progress() {
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("running", running.get());
+        progress.put("session", progressSession);
+        progress.put("framesDone", progressDone);
+        progress.put("framesTotal", progressTotal);
+        return progress;
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        if (!running.compareAndSet(false, true)) {
+            // The job for the other condition is already at work.
+            return false;
+        }
+        DeferredTranscoder current = new DeferredTranscoder(new YuvImageJpegEncoder(), (directory, done, total) -> {
+            progressSession = directory.getName();
+            progressDone = done;
+            progressTotal = total;
+        });
+        transcoder = current;
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            boolean complete = current.transcodeAll(ImageUtils.getSessionsRoot());
+            progressSession = null;
+            running.set(false);
+            if (!current.isCancelled()) {
+                // A session that failed is retried the next time the conditions are met.
+                jobFinished(params, !complete);
+            }
+        }, "DeferredTranscode").start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        DeferredTranscoder current = transcoder;
+        if (current != null) {
+            current.cancel();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.native_frame;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Turns the frames a deferred-encode recording stored with {@link DeferredFrameWriter} into
+ * JPEGs with EXIF, through the same {@link FrameSaver} path as live encoding. Frames take their
+ * position from the session manifest, so GPS backfilled after capture ends up in the JPEG.
+ * Progress is checkpointed in {@code frames.nv21z.progress} after every frame, so a run that is
+ * cancelled or killed resumes at the next frame; a frame written again after a crash simply
+ * replaces its earlier copy. Once a session is complete its deferred file is deleted.
+ */
+public class DeferredTranscoder {
+
+    static final String PROGRESS_FILE = DeferredFrameWriter.FILE_NAME + ".progress";
+    private static final int PROGRESS_SIZE = 12;
+
+    public interface Listener {
+        /** {@code framesDone} of the session's {@code framesTotal} deferred frames are now JPEGs. */
+        void onProgress(File sessionDirectory, int framesDone, int framesTotal);
+    }
+
+    private final JpegEncoder encoder;
+    private final Listener listener;
+    private volatile boolean cancelled = false;
+
+    /** @param listener progress callback, run on the transcoding thread; may be null */
+    public DeferredTranscoder(JpegEncoder encoder, Listener listener) {
+        this.encoder = encoder;
+        this.listener = listener;
+    }
+
+    /** Stops the current run after the frame in progress; its checkpoint is kept. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Whether {@code sessionDirectory} holds deferred frames that have not been transcoded yet. */
+    public static boolean hasDeferredFrames(File sessionDirectory) {
+        return new File(sessionDirectory, DeferredFrameWriter.FILE_NAME).exists();
+    }
+
+    /** Number of deferred frames in {@code sessionDirectory} still waiting for their JPEG. */
+    public static int remainingFrames(File sessionDirectory) throws IOException {
+        File file = new File(sessionDirectory, DeferredFrameWriter.FILE_NAME);
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            checkFileHeader(in, file);
+            return countRecords(in, readCheckpoint(sessionDirectory)[0]);
+        }
+    }
+
+    /**
+     * Transcodes every session under {@code sessionsRoot} with deferred frames, oldest first,
+     * into {@code frame_NNN.jpg} files. Sessions still being recorded are skipped. Returns true
+     * if nothing is left to do, false if cancelled or a session failed.
+     */
+    public boolean transcodeAll(File sessionsRoot) {
+        File[] directories = sessionsRoot.listFiles();
+        if (directories == null) {
+            return true;
+        }
+        Arrays.sort(directories);
+        boolean complete = true;
+        for (File directory : directories) {
+            if (cancelled) {
+                return false;
+            }
+            if (!directory.isDirectory() || !hasDeferredFrames(directory) || DeferredFrameWriter.isOpen(directory)) {
+                continue;
+            }
+            try {
+                complete &= transcode(directory, new DirectoryFrameSink(directory));
+            } catch (IOException e) {
+                e.printStackTrace();
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Transcodes one session's deferred frames into {@code sink}, resuming from its checkpoint,
+     * and closes the sink. Returns true once every frame is done and the deferred file deleted.
+     */
+    public boolean transcode(File sessionDirectory, FrameSink sink) throws IOException {
+        File file = new File(sessionDirectory, DeferredFrameWriter.FILE_NAME);
+        Map<Integer, Integer> manifestRows = new HashMap<>();
+        SessionManifest.Records manifest = readManifest(sessionDirectory);
+        if (manifest != null) {
+            for (int i = 0; i < manifest.count; i++) {
+                manifestRows.put(manifest.frameIndices[i], i);
+            }
+        }
+
+        boolean complete = false;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             RandomAccessFile progress = new RandomAccessFile(new File(sessionDirectory, PROGRESS_FILE), "rw")) {
+            checkFileHeader(in, file);
+            long[] checkpoint = readCheckpoint(sessionDirectory);
+            long offset = checkpoint[0];
+            int done = (int) checkpoint[1];
+            int total = done + countRecords(in, offset);
+
+            ByteBuffer header = ByteBuffer.allocate(DeferredFrameWriter.FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer checkpointBuffer = ByteBuffer.allocate(PROGRESS_SIZE);
+            CRC32 crc = new CRC32();
+            byte[] payload = new byte[0];
+            byte[] nv21 = new byte[0];
+            while (!cancelled) {
+                in.seek(offset);
+                if (!readFully(in, header.array(), header.capacity())
+                        || header.getInt(0) != DeferredFrameWriter.FRAME_MAGIC) {
+                    complete = true;
+                    break;
+                }
+                int length = header.getInt(28);
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                if (!readFully(in, payload, length)) {
+                    // A frame cut off by a crash during recording.
+                    complete = true;
+                    break;
+                }
+                offset += DeferredFrameWriter.FRAME_HEADER_SIZE + length;
+
+                crc.reset();
+                crc.update(payload, 0, length);
+                int frameIndex = header.getInt(4);
+                if ((int) crc.getValue() != header.getInt(56)) {
+                    System.err.println("Skipping corrupt deferred frame " + frameIndex + " in " + sessionDirectory);
+                } else {
+                    int width = header.getInt(8);
+                    int height = header.getInt(12);
+                    int size = YuvPlaneExtractor.nv21Size(width, height);
+                    if (nv21.length < size) {
+                        nv21 = new byte[size];
+                    }
+                    if (header.getInt(24) == DeferredFrameWriter.CODEC_LOSSLESS) {
+                        Nv21LosslessCodec.decompress(payload, 0, length, width, height, nv21);
+                    } else {
+                        System.arraycopy(payload, 0, nv21, 0, size);
+                    }
+                    double latitude = header.getDouble(40);
+                    double longitude = header.getDouble(48);
+                    Integer row = manifestRows.get(frameIndex);
+                    if (row != null) {
+                        latitude = manifest.latitudes[row];
+                        longitude = manifest.longitudes[row];
+                    }
+                    FrameSaver.save(encoder, nv21, width, height, sink, frameIndex, latitude, longitude,
+                            header.getLong(32), header.getInt(16), header.getInt(20), FrameSaver.JPEG_QUALITY);
+                }
+                done++;
+                writeCheckpoint(progress, checkpointBuffer, offset, done);
+                if (listener != null) {
+                    listener.onProgress(sessionDirectory, done, total);
+                }
+            }
+        } finally {
+            sink.close();
+        }
+        if (complete) {
+            new File(sessionDirectory, PROGRESS_FILE).delete();
+            file.delete();
+        }
+        return complete;
+    }
+
+    private static SessionManifest.Records readManifest(File sessionDirectory) {
+        try {
+            return SessionManifest.readRecords(sessionDirectory);
+        } catch (IOException e) {
+            // Fall back to the positions stored with the frames.
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void checkFileHeader(RandomAccessFile in, File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(DeferredFrameWriter.FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        in.seek(0);
+        if (!readFully(in, header.array(), header.capacity())
+                || header.getInt(0) != DeferredFrameWriter.MAGIC
+                || header.getInt(4) != DeferredFrameWriter.VERSION) {
+            throw new IOException("Not a deferred frame file: " + file);
+        }
+    }
+
+    /** Counts the complete records from {@code offset} on by hopping from header to header. */
+    private static int countRecords(RandomAccessFile in, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(DeferredFrameWriter.FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long fileLength = in.length();
+        int count = 0;
+        while (offset + DeferredFrameWriter.FRAME_HEADER_SIZE <= fileLength) {
+            in.seek(offset);
+            in.readFully(header.array());
+            if (header.getInt(0) != DeferredFrameWriter.FRAME_MAGIC) {
+                break;
+            }
+            offset += DeferredFrameWriter.FRAME_HEADER_SIZE + header.getInt(28);
+            if (offset > fileLength) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /** Reads {@code length} bytes; false if the file ends first. */
+    private static boolean readFully(RandomAccessFile in, byte[] buffer, int length) throws IOException {
+        try {
+            in.readFully(buffer, 0, length);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /** The file offset of the next frame and the number of frames done, from the checkpoint if any. */
+    private static long[] readCheckpoint(File sessionDirectory) throws IOException {
+        File file = new File(sessionDirectory, PROGRESS_FILE);
+        if (file.length() < PROGRESS_SIZE) {
+            return new long[]{DeferredFrameWriter.FILE_HEADER_SIZE, 0};
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return new long[]{in.readLong(), in.readInt()};
+        }
+    }
+
+    /** One 12-byte write, so the checkpoint is never half updated. */
+    private static void writeCheckpoint(RandomAccessFile progress, ByteBuffer checkpoint, long offset, int done)
+            throws IOException {
+        checkpoint.clear();
+        checkpoint.putLong(offset).putInt(done);
+        progress.seek(0);
+        progress.write(checkpoint.array(), 0, PROGRESS_SIZE);
+    }
+}
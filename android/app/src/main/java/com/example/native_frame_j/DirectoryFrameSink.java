@@ -0,0 +1,78 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/** Writes each frame as its own {@code frame_NNN.jpg} in the session directory. */
+public class DirectoryFrameSink implements FrameSink {
+
+    private final File directory;
+
+    public DirectoryFrameSink(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void writeFrame(int frameIndex, long timestamp, double latitude, double longitude,
+                           int rotationDegrees, int sharpness, ByteBuffer[] jpeg) throws IOException {
+        writeFully(new File(directory, frameFileName(frameIndex)), jpeg);
+    }
+
+    @Override
+    public void updateLocation(RecordingSession.PendingGpsFrame frame, double latitude, double longitude)
+            throws IOException {
+        replaceExif(new File(directory, frameFileName(frame.frameIndex)), ExifSegment.build(
+                frame.timestamp, frame.rotationDegrees, latitude, longitude, frame.sharpness));
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /** Rewrites a saved JPEG with a new APP1 segment, via a temporary file so the frame is never half written. */
+    public static void replaceExif(File file, byte[] app1) throws IOException {
+        byte[] jpeg = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < jpeg.length) {
+                int n = in.read(jpeg, read, jpeg.length - read);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += n;
+            }
+        }
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        writeFully(temp, ExifSegment.splice(jpeg, jpeg.length, app1));
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    static String frameFileName(int index) {
+        return String.format(Locale.US, "frame_%03d.jpg", index);
+    }
+
+    static void writeFully(File file, ByteBuffer[] buffers) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            FileChannel channel = out.getChannel();
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.native_frame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Skips frames that look the same as the last saved one. Each frame is reduced to a tiny
+ * grid of mean luma values read straight from the Y plane, and frames whose mean absolute
+ * difference to the reference stays under the threshold are reported as near-duplicates.
+ */
+public class DuplicateFrameFilter {
+
+    private static final int GRID = 16;
+    private static final int SAMPLES_PER_CELL_AXIS = 4;
+
+    private volatile double threshold;
+    private int[] reference = new int[GRID * GRID];
+    private int[] scratch = new int[GRID * GRID];
+    private boolean hasReference = false;
+
+    /** @param threshold mean absolute luma difference (0-255) below which a frame counts as a duplicate */
+    public DuplicateFrameFilter(double threshold) {
+        setThreshold(threshold);
+    }
+
+    /** Changes the threshold for the frames asked about from now on; see the constructor. */
+    public void setThreshold(double threshold) {
+        if (!(threshold >= 0)) {
+            throw new IllegalArgumentException("threshold must not be negative: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns true if the frame should be skipped. Frames that pass become the new reference,
+     * so the caller should only ask about frames it is about to save.
+     */
+    public boolean isNearDuplicate(ByteBuffer yPlane, int rowStride, int width, int height) {
+        computeSignature(yPlane, rowStride, width, height, scratch);
+        if (hasReference && meanAbsoluteDifference(reference, scratch) < threshold) {
+            return true;
+        }
+        int[] previous = reference;
+        reference = scratch;
+        scratch = previous;
+        hasReference = true;
+        return false;
+    }
+
+    public void reset() {
+        hasReference = false;
+    }
+
+    static void computeSignature(ByteBuffer yPlane, int rowStride, int width, int height, int[] out) {
+        int origin = yPlane.position();
+        int cellWidth = width / GRID;
+        int cellHeight = height / GRID;
+        int stepX = Math.max(1, cellWidth / SAMPLES_PER_CELL_AXIS);
+        int stepY = Math.max(1, cellHeight / SAMPLES_PER_CELL_AXIS);
+        for (int cellY = 0; cellY < GRID; cellY++) {
+            for (int cellX = 0; cellX < GRID; cellX++) {
+                int sum = 0;
+                int count = 0;
+                int top = cellY * cellHeight + stepY / 2;
+                int left = cellX * cellWidth + stepX / 2;
+                for (int sy = 0; sy < SAMPLES_PER_CELL_AXIS; sy++) {
+                    int row = origin + (top + sy * stepY) * rowStride;
+                    for (int sx = 0; sx < SAMPLES_PER_CELL_AXIS; sx++) {
+                        sum += yPlane.get(row + left + sx * stepX) & 0xFF;
+                        count++;
+                    }
+                }
+                out[cellY * GRID + cellX] = sum / count;
+            }
+        }
+    }
+
+    private static double meanAbsoluteDifference(int[] a, int[] b) {
+        int total = 0;
+        for (int i = 0; i < a.length; i++) {
+            total += Math.abs(a[i] - b[i]);
+        }
+        return (double) total / a.length;
+    }
+}
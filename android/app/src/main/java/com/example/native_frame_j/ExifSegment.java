@@ -0,0 +1,260 @@
+package com.example.native_frame;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Builds APP1/EXIF segments in memory and splices them into encoded JPEG streams,
+ * so a frame can be written to disk once with its metadata already in place.
+ */
+public class ExifSegment {
+
+    static final int TYPE_BYTE = 1;
+    static final int TYPE_ASCII = 2;
+    static final int TYPE_SHORT = 3;
+    static final int TYPE_LONG = 4;
+    static final int TYPE_RATIONAL = 5;
+    static final int TYPE_UNDEFINED = 7;
+
+    static final int TAG_IMAGE_DESCRIPTION = 0x010E;
+    static final int TAG_ORIENTATION = 0x0112;
+    static final int TAG_DATETIME = 0x0132;
+    static final int TAG_EXIF_IFD_POINTER = 0x8769;
+    static final int TAG_GPS_IFD_POINTER = 0x8825;
+    static final int TAG_EXIF_VERSION = 0x9000;
+    static final int TAG_DATETIME_ORIGINAL = 0x9003;
+    static final int TAG_DATETIME_DIGITIZED = 0x9004;
+    static final int TAG_GPS_VERSION_ID = 0x0000;
+    static final int TAG_GPS_LATITUDE_REF = 0x0001;
+    static final int TAG_GPS_LATITUDE = 0x0002;
+    static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+    static final int TAG_GPS_LONGITUDE = 0x0004;
+    static final int TAG_GPS_TIMESTAMP = 0x0007;
+    static final int TAG_GPS_PROCESSING_METHOD = 0x001B;
+    static final int TAG_GPS_DATESTAMP = 0x001D;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+
+    /** "sharpness=" followed by up to seven digits, NUL padded so the field has a fixed size. */
+    static final String SHARPNESS_PREFIX = "sharpness=";
+    static final int SHARPNESS_DIGITS = 7;
+    static final int SHARPNESS_MAX = 9999999;
+    /** Sharpness of a frame that was not scored; its segment has no ImageDescription. */
+    public static final int NO_SHARPNESS = -1;
+
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+    private static final byte[] GPS_PROCESSING_METHOD = {'A', 'S', 'C', 'I', 'I', 0, 0, 0, 'G', 'P', 'S'};
+
+    /**
+     * Builds a complete APP1 segment (marker included) carrying datetime, orientation, the
+     * frame's sharpness score unless it is negative (see {@link #NO_SHARPNESS}) and, when a fix
+     * is available, GPS tags.
+     */
+    public static byte[] build(long timestamp, int rotationDegrees, double latitude, double longitude,
+                               int sharpness) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        byte[] dateTime = ascii(sdf.format(new Date(timestamp)));
+
+        Ifd ifd0 = new Ifd();
+        if (sharpness >= 0) {
+            byte[] description = new byte[SHARPNESS_PREFIX.length() + SHARPNESS_DIGITS + 1];
+            byte[] text = ascii(SHARPNESS_PREFIX + Math.min(sharpness, SHARPNESS_MAX));
+            System.arraycopy(text, 0, description, 0, text.length);
+            ifd0.add(TAG_IMAGE_DESCRIPTION, TYPE_ASCII, description.length, description);
+        }
+        ifd0.add(TAG_ORIENTATION, TYPE_SHORT, 1, shortValue(exifOrientation(rotationDegrees)));
+        ifd0.add(TAG_DATETIME, TYPE_ASCII, dateTime.length, dateTime);
+
+        Ifd exifIfd = new Ifd();
+        exifIfd.add(TAG_EXIF_VERSION, TYPE_UNDEFINED, 4, new byte[]{'0', '2', '3', '0'});
+        exifIfd.add(TAG_DATETIME_ORIGINAL, TYPE_ASCII, dateTime.length, dateTime);
+        exifIfd.add(TAG_DATETIME_DIGITIZED, TYPE_ASCII, dateTime.length, dateTime);
+
+        Ifd gpsIfd = null;
+        if (latitude != 0.0 || longitude != 0.0) {
+            SimpleDateFormat gpsDateFormat = new SimpleDateFormat("yyyy:MM:dd", Locale.US);
+            gpsDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            byte[] gpsDate = ascii(gpsDateFormat.format(new Date(timestamp)));
+            long secondsOfDay = (timestamp / 1000L) % 86400L;
+
+            gpsIfd = new Ifd();
+            gpsIfd.add(TAG_GPS_VERSION_ID, TYPE_BYTE, 4, new byte[]{2, 2, 0, 0});
+            gpsIfd.add(TAG_GPS_LATITUDE_REF, TYPE_ASCII, 2, ascii(latitude < 0 ? "S" : "N"));
+            gpsIfd.add(TAG_GPS_LATITUDE, TYPE_RATIONAL, 3, dmsValue(latitude));
+            gpsIfd.add(TAG_GPS_LONGITUDE_REF, TYPE_ASCII, 2, ascii(longitude < 0 ? "W" : "E"));
+            gpsIfd.add(TAG_GPS_LONGITUDE, TYPE_RATIONAL, 3, dmsValue(longitude));
+            gpsIfd.add(TAG_GPS_TIMESTAMP, TYPE_RATIONAL, 3, rationals(
+                    secondsOfDay / 3600, 1, (secondsOfDay / 60) % 60, 1, secondsOfDay % 60, 1));
+            gpsIfd.add(TAG_GPS_PROCESSING_METHOD, TYPE_UNDEFINED, GPS_PROCESSING_METHOD.length, GPS_PROCESSING_METHOD);
+            gpsIfd.add(TAG_GPS_DATESTAMP, TYPE_ASCII, gpsDate.length, gpsDate);
+        }
+
+        // IFD0 gets its pointer entries before layout so that its size is known up front.
+        ifd0.add(TAG_EXIF_IFD_POINTER, TYPE_LONG, 1, new byte[4]);
+        if (gpsIfd != null) {
+            ifd0.add(TAG_GPS_IFD_POINTER, TYPE_LONG, 1, new byte[4]);
+        }
+
+        int ifd0Offset = 8;
+        int exifIfdOffset = ifd0Offset + ifd0.size();
+        int gpsIfdOffset = exifIfdOffset + exifIfd.size();
+        ifd0.set(TAG_EXIF_IFD_POINTER, intValue(exifIfdOffset));
+        if (gpsIfd != null) {
+            ifd0.set(TAG_GPS_IFD_POINTER, intValue(gpsIfdOffset));
+        }
+        int tiffLength = gpsIfdOffset + (gpsIfd != null ? gpsIfd.size() : 0);
+
+        int segmentLength = 2 + EXIF_HEADER.length + tiffLength;
+        ByteBuffer out = ByteBuffer.allocate(2 + segmentLength);
+        out.put((byte) 0xFF).put((byte) MARKER_APP1).putShort((short) segmentLength);
+        out.put(EXIF_HEADER);
+        out.put((byte) 'M').put((byte) 'M').putShort((short) 0x002A).putInt(ifd0Offset);
+        ifd0.write(out, ifd0Offset);
+        exifIfd.write(out, exifIfdOffset);
+        if (gpsIfd != null) {
+            gpsIfd.write(out, gpsIfdOffset);
+        }
+        return out.array();
+    }
+
+    /**
+     * Returns {@code jpeg[0, length)} as gather-write buffers with {@code app1} inserted directly
+     * after SOI. Any APP0/APP1 segments the encoder emitted up front are dropped so the EXIF
+     * segment is the first one readers see.
+     */
+    public static ByteBuffer[] splice(byte[] jpeg, int length, byte[] app1) {
+        if (length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != MARKER_SOI) {
+            throw new IllegalArgumentException("Not a JPEG stream");
+        }
+        int pos = 2;
+        while (pos + 4 <= length && (jpeg[pos] & 0xFF) == 0xFF) {
+            int marker = jpeg[pos + 1] & 0xFF;
+            if (marker != MARKER_APP0 && marker != MARKER_APP1) {
+                break;
+            }
+            int segmentLength = ((jpeg[pos + 2] & 0xFF) << 8) | (jpeg[pos + 3] & 0xFF);
+            if (segmentLength < 2 || pos + 2 + segmentLength > length) {
+                throw new IllegalArgumentException("Malformed APP" + (marker - MARKER_APP0)
+                        + " segment at offset " + pos + ": length " + segmentLength);
+            }
+            pos += 2 + segmentLength;
+        }
+        return new ByteBuffer[]{
+                ByteBuffer.wrap(jpeg, 0, 2),
+                ByteBuffer.wrap(app1),
+                ByteBuffer.wrap(jpeg, pos, length - pos)
+        };
+    }
+
+    static int exifOrientation(int rotationDegrees) {
+        switch (rotationDegrees) {
+            case 90:
+                return 6;
+            case 180:
+                return 3;
+            case 270:
+                return 8;
+            default:
+                return 1;
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        byte[] bytes = new byte[value.length() + 1];
+        for (int i = 0; i < value.length(); i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+
+    private static byte[] shortValue(int value) {
+        return new byte[]{(byte) (value >> 8), (byte) value};
+    }
+
+    private static byte[] intValue(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private static byte[] rationals(long... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (long value : values) {
+            buffer.putInt((int) value);
+        }
+        return buffer.array();
+    }
+
+    /** Degrees/minutes/seconds as three rationals, matching ExifInterface.setLatLong. */
+    private static byte[] dmsValue(double coordinate) {
+        double value = Math.abs(coordinate);
+        long degrees = (long) value;
+        value = (value - degrees) * 60;
+        long minutes = (long) value;
+        value = (value - minutes) * 60;
+        long seconds = Math.round(value * 10000);
+        return rationals(degrees, 1, minutes, 1, seconds, 10000);
+    }
+
+    /** Minimal big-endian TIFF IFD writer; values larger than four bytes go after the entry table. */
+    private static class Ifd {
+        private final List<int[]> entries = new ArrayList<>();
+        private final List<byte[]> values = new ArrayList<>();
+
+        void add(int tag, int type, int count, byte[] value) {
+            entries.add(new int[]{tag, type, count});
+            values.add(value);
+        }
+
+        void set(int tag, byte[] value) {
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i)[0] == tag) {
+                    values.set(i, value);
+                    return;
+                }
+            }
+        }
+
+        int size() {
+            int size = 2 + entries.size() * 12 + 4;
+            for (byte[] value : values) {
+                if (value.length > 4) {
+                    size += (value.length + 1) & ~1;
+                }
+            }
+            return size;
+        }
+
+        void write(ByteBuffer out, int ifdOffset) {
+            int dataOffset = ifdOffset + 2 + entries.size() * 12 + 4;
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            out.putShort((short) entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                int[] entry = entries.get(i);
+                byte[] value = values.get(i);
+                out.putShort((short) entry[0]).putShort((short) entry[1]).putInt(entry[2]);
+                if (value.length <= 4) {
+                    out.put(value);
+                    for (int pad = value.length; pad < 4; pad++) {
+                        out.put((byte) 0);
+                    }
+                } else {
+                    out.putInt(dataOffset + data.size());
+                    data.write(value, 0, value.length);
+                    if ((value.length & 1) != 0) {
+                        data.write(0);
+                    }
+                }
+            }
+            out.putInt(0);
+            out.put(data.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.native_frame;
+
+/**
+ * Precompiled APP1/EXIF segments whose layouts are fixed once; per frame only the datetime,
+ * orientation, sharpness and GPS value bytes are rewritten in place, without formatting or
+ * allocation. Instances are not thread-safe: each encode worker keeps its own.
+ */
+public class ExifTemplate {
+
+    private static final int TIFF_START = 10;
+
+    /** By {@link #layoutIndex}: every combination of GPS tags and sharpness description. */
+    private final Layout[] layouts = new Layout[4];
+
+    public ExifTemplate() {
+        // Placeholder values only need the right shapes; every variable field is patched per frame.
+        for (int i = 0; i < layouts.length; i++) {
+            boolean hasGps = (i & 1) != 0;
+            boolean hasSharpness = (i & 2) != 0;
+            layouts[i] = new Layout(ExifSegment.build(0L, 0, hasGps ? 1.0 : 0.0, hasGps ? 1.0 : 0.0,
+                    hasSharpness ? 0 : ExifSegment.NO_SHARPNESS));
+        }
+    }
+
+    private static int layoutIndex(boolean hasGps, boolean hasSharpness) {
+        return (hasGps ? 1 : 0) | (hasSharpness ? 2 : 0);
+    }
+
+    /**
+     * Patches the template for one frame and returns the full APP1 segment. The returned array
+     * is reused by the next call.
+     */
+    public byte[] patch(long timestamp, int rotationDegrees, double latitude, double longitude, int sharpness) {
+        boolean hasGps = latitude != 0.0 || longitude != 0.0;
+        Layout layout = layouts[layoutIndex(hasGps, sharpness >= 0)];
+        byte[] segment = layout.segment;
+
+        long seconds = timestamp / 1000L;
+        int days = (int) (seconds / 86400L);
+        int secondOfDay = (int) (seconds % 86400L);
+        int hour = secondOfDay / 3600;
+        int minute = (secondOfDay / 60) % 60;
+        int second = secondOfDay % 60;
+
+        // Civil-from-days (proleptic Gregorian), see Howard Hinnant's date algorithms.
+        int z = days + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        // "yyyy:MM:dd HH:mm:ss" - the colons and space are already in the template.
+        for (int offset : layout.dateTimeOffsets) {
+            writeDigits(segment, offset, year, 4);
+            writeDigits(segment, offset + 5, month, 2);
+            writeDigits(segment, offset + 8, day, 2);
+            writeDigits(segment, offset + 11, hour, 2);
+            writeDigits(segment, offset + 14, minute, 2);
+            writeDigits(segment, offset + 17, second, 2);
+        }
+        writeShort(segment, layout.orientationOffset, ExifSegment.exifOrientation(rotationDegrees));
+        if (layout.descriptionOffset >= 0) {
+            writeSharpness(segment, layout.descriptionOffset + ExifSegment.SHARPNESS_PREFIX.length(), sharpness);
+        }
+
+        if (hasGps) {
+            segment[layout.latitudeRefOffset] = (byte) (latitude < 0 ? 'S' : 'N');
+            writeDms(segment, layout.latitudeOffset, latitude);
+            segment[layout.longitudeRefOffset] = (byte) (longitude < 0 ? 'W' : 'E');
+            writeDms(segment, layout.longitudeOffset, longitude);
+            writeRational(segment, layout.gpsTimeOffset, hour, 1);
+            writeRational(segment, layout.gpsTimeOffset + 8, minute, 1);
+            writeRational(segment, layout.gpsTimeOffset + 16, second, 1);
+            writeDigits(segment, layout.gpsDateOffset, year, 4);
+            writeDigits(segment, layout.gpsDateOffset + 5, month, 2);
+            writeDigits(segment, layout.gpsDateOffset + 8, day, 2);
+        }
+        return segment;
+    }
+
+    /** One prebuilt segment and where its variable fields sit; absent fields are at -1. */
+    private static final class Layout {
+        final byte[] segment;
+        final int[] dateTimeOffsets;
+        final int orientationOffset;
+        final int descriptionOffset;
+        final int latitudeRefOffset;
+        final int latitudeOffset;
+        final int longitudeRefOffset;
+        final int longitudeOffset;
+        final int gpsTimeOffset;
+        final int gpsDateOffset;
+
+        Layout(byte[] segment) {
+            this.segment = segment;
+            int ifd0 = TIFF_START + readInt(segment, TIFF_START + 4);
+            int exifIfd = TIFF_START + readInt(segment, valueOffset(segment, ifd0, ExifSegment.TAG_EXIF_IFD_POINTER));
+            dateTimeOffsets = new int[]{
+                    valueOffset(segment, ifd0, ExifSegment.TAG_DATETIME),
+                    valueOffset(segment, exifIfd, ExifSegment.TAG_DATETIME_ORIGINAL),
+                    valueOffset(segment, exifIfd, ExifSegment.TAG_DATETIME_DIGITIZED)
+            };
+            orientationOffset = valueOffset(segment, ifd0, ExifSegment.TAG_ORIENTATION);
+            descriptionOffset = findValueOffset(segment, ifd0, ExifSegment.TAG_IMAGE_DESCRIPTION);
+
+            int gpsPointer = findValueOffset(segment, ifd0, ExifSegment.TAG_GPS_IFD_POINTER);
+            if (gpsPointer < 0) {
+                latitudeRefOffset = latitudeOffset = longitudeRefOffset = longitudeOffset = -1;
+                gpsTimeOffset = gpsDateOffset = -1;
+                return;
+            }
+            int gpsIfd = TIFF_START + readInt(segment, gpsPointer);
+            latitudeRefOffset = valueOffset(segment, gpsIfd, ExifSegment.TAG_GPS_LATITUDE_REF);
+            latitudeOffset = valueOffset(segment, gpsIfd, ExifSegment.TAG_GPS_LATITUDE);
+            longitudeRefOffset = valueOffset(segment, gpsIfd, ExifSegment.TAG_GPS_LONGITUDE_REF);
+            longitudeOffset = valueOffset(segment, gpsIfd, ExifSegment.TAG_GPS_LONGITUDE);
+            gpsTimeOffset = valueOffset(segment, gpsIfd, ExifSegment.TAG_GPS_TIMESTAMP);
+            gpsDateOffset = valueOffset(segment, gpsIfd, ExifSegment.TAG_GPS_DATESTAMP);
+        }
+    }
+
+    /** Offset within {@code segment} of the value (inline or pointed-to) of {@code tag} in the IFD at {@code ifd}. */
+    private static int valueOffset(byte[] segment, int ifd, int tag) {
+        int offset = findValueOffset(segment, ifd, tag);
+        if (offset < 0) {
+            throw new IllegalStateException("Tag 0x" + Integer.toHexString(tag) + " missing from EXIF template");
+        }
+        return offset;
+    }
+
+    /** Like {@link #valueOffset}, but -1 if the IFD has no {@code tag}. */
+    private static int findValueOffset(byte[] segment, int ifd, int tag) {
+        int count = readShort(segment, ifd);
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (readShort(segment, entry) != tag) {
+                continue;
+            }
+            int type = readShort(segment, entry + 2);
+            int size = typeSize(type) * readInt(segment, entry + 4);
+            return size <= 4 ? entry + 8 : TIFF_START + readInt(segment, entry + 8);
+        }
+        return -1;
+    }
+
+    private static int typeSize(int type) {
+        switch (type) {
+            case ExifSegment.TYPE_SHORT:
+                return 2;
+            case ExifSegment.TYPE_LONG:
+                return 4;
+            case ExifSegment.TYPE_RATIONAL:
+                return 8;
+            default:
+                return 1;
+        }
+    }
+
+    private static void writeDms(byte[] segment, int offset, double coordinate) {
+        double value = Math.abs(coordinate);
+        int degrees = (int) value;
+        value = (value - degrees) * 60;
+        int minutes = (int) value;
+        value = (value - minutes) * 60;
+        writeRational(segment, offset, degrees, 1);
+        writeRational(segment, offset + 8, minutes, 1);
+        writeRational(segment, offset + 16, (int) Math.round(value * 10000), 10000);
+    }
+
+    private static void writeSharpness(byte[] segment, int offset, int sharpness) {
+        int value = Math.min(Math.max(sharpness, 0), ExifSegment.SHARPNESS_MAX);
+        int digits = 1;
+        for (int remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        writeDigits(segment, offset, value, digits);
+        for (int i = digits; i < ExifSegment.SHARPNESS_DIGITS; i++) {
+            segment[offset + i] = 0;
+        }
+    }
+
+    private static void writeRational(byte[] segment, int offset, int numerator, int denominator) {
+        writeInt(segment, offset, numerator);
+        writeInt(segment, offset + 4, denominator);
+    }
+
+    private static void writeDigits(byte[] segment, int offset, int value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            segment[offset + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static void writeShort(byte[] segment, int offset, int value) {
+        segment[offset] = (byte) (value >> 8);
+        segment[offset + 1] = (byte) value;
+    }
+
+    private static void writeInt(byte[] segment, int offset, int value) {
+        segment[offset] = (byte) (value >> 24);
+        segment[offset + 1] = (byte) (value >> 16);
+        segment[offset + 2] = (byte) (value >> 8);
+        segment[offset + 3] = (byte) value;
+    }
+
+    private static int readShort(byte[] segment, int offset) {
+        return ((segment[offset] & 0xFF) << 8) | (segment[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] segment, int offset) {
+        return ((segment[offset] & 0xFF) << 24) | ((segment[offset + 1] & 0xFF) << 16)
+                | ((segment[offset + 2] & 0xFF) << 8) | (segment[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.native_frame;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed-size worker pool with a bounded queue for frame encode/save work. When the queue
+ * is full the configured {@link OverloadPolicy} decides which frame loses, so a slow disk
+ * shows up as dropped frames instead of unbounded threads and memory.
+ */
+public class FrameEncodeScheduler {
+
+    public enum OverloadPolicy {
+        /** Evict the oldest queued frame to make room for the new one. */
+        DROP_OLDEST,
+        /** Reject the frame being submitted. */
+        DROP_NEWEST,
+        /** Wait up to the configured timeout for space, then reject. */
+        BLOCK_WITH_TIMEOUT,
+        /** Encode cheaper once the queue is half full; evict the oldest when it is full. */
+        DEGRADE_QUALITY
+    }
+
+    /** A unit of encode work. Dropped tasks are never run but must release what they hold. */
+    public interface Task extends Runnable {
+        void onDropped();
+
+        /** Asks the task to trade quality for speed; only called under {@link OverloadPolicy#DEGRADE_QUALITY}. */
+        void degrade();
+    }
+
+    private final Task[] queue;
+    private int head = 0;
+    /** Written under the lock; volatile so {@link #queueDepth()} can read it without taking it. */
+    private volatile int size = 0;
+    private boolean shutdown = false;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private final OverloadPolicy policy;
+    private final long blockTimeoutNanos;
+    private final Thread[] workers;
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong degraded = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    public FrameEncodeScheduler(int workerCount, int queueCapacity, OverloadPolicy policy, long blockTimeoutMs) {
+        if (workerCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("workerCount and queueCapacity must be positive");
+        }
+        this.queue = new Task[queueCapacity];
+        this.policy = policy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::workLoop, "FrameEncoder-" + i);
+            workers[i].start();
+        }
+    }
+
+    /** Leaves a core for the camera callback and UI threads on small devices. */
+    public static int defaultWorkerCount() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(4, cores - 1));
+    }
+
+    /**
+     * Queues a task, applying the overload policy when the queue is full.
+     *
+     * @return false if {@code task} itself was rejected; it has already been notified via onDropped
+     */
+    public boolean submit(Task task) {
+        Task evicted = null;
+        boolean accepted = false;
+        lock.lock();
+        try {
+            if (shutdown) {
+                rejected.incrementAndGet();
+            } else {
+                if (size == queue.length) {
+                    switch (policy) {
+                        case DROP_NEWEST:
+                            break;
+                        case BLOCK_WITH_TIMEOUT:
+                            long remaining = blockTimeoutNanos;
+                            while (size == queue.length && remaining > 0 && !shutdown) {
+                                remaining = notFull.awaitNanos(remaining);
+                            }
+                            break;
+                        case DROP_OLDEST:
+                        case DEGRADE_QUALITY:
+                            evicted = poll();
+                            rejected.incrementAndGet();
+                            break;
+                    }
+                }
+                if (size < queue.length && !shutdown) {
+                    if (policy == OverloadPolicy.DEGRADE_QUALITY && size >= queue.length / 2) {
+                        task.degrade();
+                        degraded.incrementAndGet();
+                    }
+                    queue[(head + size) % queue.length] = task;
+                    size++;
+                    submitted.incrementAndGet();
+                    notEmpty.signal();
+                    accepted = true;
+                } else {
+                    rejected.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        if (evicted != null) {
+            evicted.onDropped();
+        }
+        if (!accepted) {
+            task.onDropped();
+        }
+        return accepted;
+    }
+
+    private Task poll() {
+        Task task = queue[head];
+        queue[head] = null;
+        head = (head + 1) % queue.length;
+        size--;
+        notFull.signal();
+        return task;
+    }
+
+    private void workLoop() {
+        while (true) {
+            Task task;
+            lock.lock();
+            try {
+                while (size == 0 && !shutdown) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (size == 0) {
+                    return;
+                }
+                task = poll();
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                // An Error from one frame must not shrink the pool for the rest of the session.
+                t.printStackTrace();
+            } finally {
+                busyNanos.addAndGet(System.nanoTime() - start);
+                completed.incrementAndGet();
+            }
+        }
+    }
+
+    /** Stops accepting work; queued tasks still run. */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Stops accepting work and drops everything still queued. */
+    public void shutdownNow() {
+        Task[] pending;
+        lock.lock();
+        try {
+            shutdown = true;
+            pending = new Task[size];
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = poll();
+            }
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Task task : pending) {
+            rejected.incrementAndGet();
+            task.onDropped();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                return !isAlive();
+            }
+            worker.join(remainingMs);
+        }
+        return !isAlive();
+    }
+
+    private boolean isAlive() {
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Read on every camera frame by the sampler, so it does not take the lock. */
+    public int queueDepth() {
+        return size;
+    }
+
+    public int queueCapacity() {
+        return queue.length;
+    }
+
+    public int workerCount() {
+        return workers.length;
+    }
+
+    public long submittedCount() {
+        return submitted.get();
+    }
+
+    public long completedCount() {
+        return completed.get();
+    }
+
+    /** Frames that were never encoded: rejected on submit, evicted from the queue, or dropped on shutdown. */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    public long degradedCount() {
+        return degraded.get();
+    }
+
+    /** Fraction of total worker time spent running tasks since the scheduler started. */
+    public double workerUtilisation() {
+        long elapsed = System.nanoTime() - startNanos;
+        if (elapsed <= 0) {
+            return 0.0;
+        }
+        return Math.min(1.0, (double) busyNanos.get() / ((double) elapsed * workers.length));
+    }
+}
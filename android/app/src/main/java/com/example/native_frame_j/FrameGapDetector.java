@@ -0,0 +1,67 @@
+package com.example.native_frame;
+
+/**
+ * Counts camera frames the pipeline never saw. {@code acquireLatestImage()} silently discards
+ * frames that queued up while the previous callback was busy, but the sensor timestamps of the
+ * frames that do arrive show the gaps: a gap of n frame durations means n - 1 frames were lost.
+ */
+public class FrameGapDetector {
+
+    /** Histogram buckets by frames lost in one gap: 1, 2-3, 4-7, 8-15, 16-31 and 32 or more. */
+    public static final int BUCKETS = 6;
+
+    private volatile long frameDurationNanos;
+    private long lastTimestampNanos = -1;
+
+    /** @param frameDurationNanos expected frame duration, or 0 if not known yet */
+    public FrameGapDetector(long frameDurationNanos) {
+        this.frameDurationNanos = frameDurationNanos;
+    }
+
+    /** Updates the expected frame duration, e.g. from each capture result. Non-positive values are ignored. */
+    public void setFrameDurationNanos(long frameDurationNanos) {
+        if (frameDurationNanos > 0) {
+            this.frameDurationNanos = frameDurationNanos;
+        }
+    }
+
+    public long frameDurationNanos() {
+        return frameDurationNanos;
+    }
+
+    /** Forgets the previous frame, so the next one starts a new run. */
+    public void reset() {
+        lastTimestampNanos = -1;
+    }
+
+    /**
+     * Registers the next delivered frame.
+     *
+     * @return number of frames lost between the previous delivered frame and this one
+     */
+    public int onFrame(long timestampNanos) {
+        long previous = lastTimestampNanos;
+        lastTimestampNanos = timestampNanos;
+        long duration = frameDurationNanos;
+        if (previous < 0 || duration <= 0 || timestampNanos <= previous) {
+            return 0;
+        }
+        // Round to the nearest whole number of frames so normal jitter is not counted as a drop.
+        long missed = (timestampNanos - previous + duration / 2) / duration - 1;
+        return (int) Math.min(Math.max(missed, 0), Integer.MAX_VALUE);
+    }
+
+    /** Histogram bucket for a gap of {@code missed} (at least 1) lost frames. */
+    public static int bucketOf(int missed) {
+        return Math.min(31 - Integer.numberOfLeadingZeros(missed), BUCKETS - 1);
+    }
+
+    public static String bucketLabel(int bucket) {
+        int low = 1 << bucket;
+        if (bucket == BUCKETS - 1) {
+            return low + "+";
+        }
+        int high = (low << 1) - 1;
+        return low == high ? Integer.toString(low) : low + "-" + high;
+    }
+}
@@ -0,0 +1,618 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of every frame across all sessions, for "frames in this box" and "frames between
+ * these times" lookups without touching the sessions themselves. Frames live in parallel
+ * primitive arrays; a time-sorted permutation answers time ranges by binary search and a grid
+ * of {@value #CELL_DEGREES}-degree cells narrows box queries to the cells they overlap.
+ *
+ * <p>The index is kept in {@value #LOG_FILE} under the sessions root as an append-only log
+ * (a {@value #HEADER_SIZE}-byte header, then session, frame and location records), written as
+ * frames are saved and replayed on load. Sessions that have a {@link SessionManifest} but are
+ * missing from the log are added from it; sessions whose folder is gone are dropped and the log
+ * rewritten. Box queries do not wrap across the antimeridian.
+ */
+public class FrameIndex {
+
+    static final String LOG_FILE = ".frame_index";
+    static final int MAGIC = 0x4E464749; // "NFGI"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final double CELL_DEGREES = 0.01;
+
+    private static final byte RECORD_SESSION = 'S';
+    private static final byte RECORD_FRAME = 'F';
+    private static final byte RECORD_LOCATION = 'L';
+    private static final int FRAME_RECORD_SIZE = 33;
+    private static final int LOCATION_RECORD_SIZE = 25;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static FrameIndex shared;
+
+    private final File logFile;
+    private final ByteBuffer record = ByteBuffer.allocate(FRAME_RECORD_SIZE);
+    private FileChannel log;
+
+    private final List<String> sessionNames = new ArrayList<>();
+    private final Map<String, Integer> sessionIds = new HashMap<>();
+
+    private int count = 0;
+    private int[] sessions = new int[1024];
+    private int[] frameIndices = new int[1024];
+    private long[] timestamps = new long[1024];
+    private double[] latitudes = new double[1024];
+    private double[] longitudes = new double[1024];
+
+    /** Frame ids ordered by timestamp, and each frame's position in that order. */
+    private int[] byTime = new int[1024];
+    private int[] timeRanks = new int[1024];
+
+    /** Open-addressed map from cell key to cell number; {@link #cellSlots} holds cell number + 1, 0 = empty. */
+    private long[] cellKeys = new long[256];
+    private int[] cellSlots = new int[256];
+    private int cellCount = 0;
+    private int[] cellLatitudes = new int[128];
+    private int[] cellLongitudes = new int[128];
+    private int[][] cellFrames = new int[128][];
+    private int[] cellSizes = new int[128];
+
+    /** Scratch bit set over time ranks, one bit per frame selected by a box query. */
+    private long[] selected = new long[16];
+
+    /** Opens, or builds, the index of the sessions under {@code sessionsRoot}. */
+    public FrameIndex(File sessionsRoot) throws IOException {
+        logFile = new File(sessionsRoot, LOG_FILE);
+        int validEnd = replay();
+        log = new RandomAccessFile(logFile, "rw").getChannel();
+        if (validEnd < HEADER_SIZE) {
+            rewriteLog();
+        } else {
+            // Drop any torn tail so new records follow the last complete one.
+            log.truncate(validEnd);
+            log.position(validEnd);
+        }
+        reconcile(sessionsRoot);
+    }
+
+    /** The process-wide index of {@code sessionsRoot}, loaded on first use. */
+    public static synchronized FrameIndex shared(File sessionsRoot) throws IOException {
+        if (shared == null) {
+            shared = new FrameIndex(sessionsRoot);
+        }
+        return shared;
+    }
+
+    public synchronized int frameCount() {
+        return count;
+    }
+
+    /** Adds a saved frame of the session in folder {@code session}; frames at (0, 0) have no position yet. */
+    public synchronized void add(String session, int frameIndex, long timestamp, double latitude, double longitude)
+            throws IOException {
+        int sessionId = sessionId(session, true);
+        insert(sessionId, frameIndex, timestamp, latitude, longitude);
+        record.clear();
+        record.put(RECORD_FRAME).putInt(sessionId).putInt(frameIndex).putLong(timestamp)
+                .putDouble(latitude).putDouble(longitude);
+        record.flip();
+        writeFully(log, record);
+    }
+
+    /** Records the backfilled position of a frame added without one. */
+    public synchronized void updateLocation(String session, int frameIndex, double latitude, double longitude)
+            throws IOException {
+        Integer sessionId = sessionIds.get(session);
+        if (sessionId == null || !move(sessionId, frameIndex, latitude, longitude)) {
+            throw new IOException("Frame " + frameIndex + " of " + session + " is not indexed");
+        }
+        record.clear();
+        record.put(RECORD_LOCATION).putInt(sessionId).putInt(frameIndex).putDouble(latitude).putDouble(longitude);
+        record.flip();
+        writeFully(log, record);
+    }
+
+    /** Frames taken between {@code fromTimestamp} and {@code toTimestamp} inclusive, oldest first. */
+    public synchronized Page queryTime(long fromTimestamp, long toTimestamp, int offset, int limit) {
+        offset = Math.max(0, offset);
+        int from = lowerBound(fromTimestamp);
+        int to = upperBound(toTimestamp);
+        Page page = new Page(Math.max(0, to - from), offset, limit);
+        for (int i = from + Math.min(offset, page.total); i < to && page.size < limit; i++) {
+            page.add(this, byTime[i]);
+        }
+        return page;
+    }
+
+    /**
+     * Frames inside the box and between {@code fromTimestamp} and {@code toTimestamp} inclusive,
+     * oldest first. Pass {@link Long#MIN_VALUE} and {@link Long#MAX_VALUE} for no time limit.
+     */
+    public synchronized Page queryBox(double minLatitude, double maxLatitude, double minLongitude,
+                                      double maxLongitude, long fromTimestamp, long toTimestamp,
+                                      int offset, int limit) {
+        offset = Math.max(0, offset);
+        if (selected.length * 64 < count) {
+            selected = new long[(count + 63) / 64];
+        }
+        int minCellLatitude = cell(minLatitude);
+        int maxCellLatitude = cell(maxLatitude);
+        int minCellLongitude = cell(minLongitude);
+        int maxCellLongitude = cell(maxLongitude);
+        long boxCells = maxCellLatitude < minCellLatitude || maxCellLongitude < minCellLongitude ? 0
+                : (long) (maxCellLatitude - minCellLatitude + 1) * (maxCellLongitude - minCellLongitude + 1);
+        if (boxCells > cellCount) {
+            // A large box: walking the occupied cells is cheaper than probing every cell it covers.
+            for (int c = 0; c < cellCount; c++) {
+                if (cellLatitudes[c] >= minCellLatitude && cellLatitudes[c] <= maxCellLatitude
+                        && cellLongitudes[c] >= minCellLongitude && cellLongitudes[c] <= maxCellLongitude) {
+                    select(c, minLatitude, maxLatitude, minLongitude, maxLongitude);
+                }
+            }
+        } else if (boxCells > 0) {
+            for (int la = minCellLatitude; la <= maxCellLatitude; la++) {
+                for (int lo = minCellLongitude; lo <= maxCellLongitude; lo++) {
+                    int c = findCell(cellKey(la, lo));
+                    if (c >= 0) {
+                        select(c, minLatitude, maxLatitude, minLongitude, maxLongitude);
+                    }
+                }
+            }
+        }
+
+        // Bits are indexed by time rank, so the time range is a run of words and set bits come
+        // out oldest first.
+        int from = lowerBound(fromTimestamp);
+        int to = upperBound(toTimestamp);
+        int lastWord = (to - 1) >> 6;
+        int total = 0;
+        for (int w = from >>> 6; w <= lastWord; w++) {
+            total += Long.bitCount(rangeBits(w, from, to));
+        }
+        Page page = new Page(total, offset, limit);
+        int skip = offset;
+        for (int w = from >>> 6; w <= lastWord && page.size < limit; w++) {
+            long bits = rangeBits(w, from, to);
+            int matches = Long.bitCount(bits);
+            if (skip >= matches) {
+                skip -= matches;
+                continue;
+            }
+            for (; bits != 0 && page.size < limit; bits &= bits - 1) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    page.add(this, byTime[(w << 6) + Long.numberOfTrailingZeros(bits)]);
+                }
+            }
+        }
+        Arrays.fill(selected, 0, (count + 63) / 64, 0L);
+        return page;
+    }
+
+    /** The selected bits of word {@code w} whose ranks are in [{@code from}, {@code to}). */
+    private long rangeBits(int w, int from, int to) {
+        long bits = selected[w];
+        if (w == from >>> 6) {
+            bits &= -1L << from;
+        }
+        if (w == (to - 1) >> 6) {
+            bits &= -1L >>> (63 - ((to - 1) & 63));
+        }
+        return bits;
+    }
+
+    private void select(int c, double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        int[] frames = cellFrames[c];
+        for (int i = cellSizes[c] - 1; i >= 0; i--) {
+            int id = frames[i];
+            if (latitudes[id] >= minLatitude && latitudes[id] <= maxLatitude
+                    && longitudes[id] >= minLongitude && longitudes[id] <= maxLongitude) {
+                int rank = timeRanks[id];
+                selected[rank >>> 6] |= 1L << rank;
+            }
+        }
+    }
+
+    private int sessionId(String session, boolean logged) throws IOException {
+        Integer id = sessionIds.get(session);
+        if (id != null) {
+            return id;
+        }
+        int created = sessionNames.size();
+        sessionNames.add(session);
+        sessionIds.put(session, created);
+        if (logged) {
+            writeFully(log, sessionRecord(session));
+        }
+        return created;
+    }
+
+    private void insert(int sessionId, int frameIndex, long timestamp, double latitude, double longitude) {
+        if (count == sessions.length) {
+            int capacity = count * 2;
+            sessions = Arrays.copyOf(sessions, capacity);
+            frameIndices = Arrays.copyOf(frameIndices, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            byTime = Arrays.copyOf(byTime, capacity);
+            timeRanks = Arrays.copyOf(timeRanks, capacity);
+        }
+        int id = count++;
+        sessions[id] = sessionId;
+        frameIndices[id] = frameIndex;
+        timestamps[id] = timestamp;
+        latitudes[id] = latitude;
+        longitudes[id] = longitude;
+
+        // Frames mostly arrive in time order, so this is nearly always an append.
+        int at = upperBound(timestamp, id);
+        System.arraycopy(byTime, at, byTime, at + 1, id - at);
+        byTime[at] = id;
+        for (int i = at; i <= id; i++) {
+            timeRanks[byTime[i]] = i;
+        }
+
+        if (latitude != 0.0 || longitude != 0.0) {
+            addToCell(id);
+        }
+    }
+
+    /** Moves a frame to a new position; false if the frame is not indexed. */
+    private boolean move(int sessionId, int frameIndex, double latitude, double longitude) {
+        for (int id = count - 1; id >= 0; id--) {
+            if (sessions[id] != sessionId || frameIndices[id] != frameIndex) {
+                continue;
+            }
+            if (latitudes[id] != 0.0 || longitudes[id] != 0.0) {
+                removeFromCell(id);
+            }
+            latitudes[id] = latitude;
+            longitudes[id] = longitude;
+            if (latitude != 0.0 || longitude != 0.0) {
+                addToCell(id);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void addToCell(int id) {
+        int la = cell(latitudes[id]);
+        int lo = cell(longitudes[id]);
+        long key = cellKey(la, lo);
+        int c = findCell(key);
+        if (c < 0) {
+            c = createCell(key, la, lo);
+        }
+        if (cellSizes[c] == cellFrames[c].length) {
+            cellFrames[c] = Arrays.copyOf(cellFrames[c], cellSizes[c] * 2);
+        }
+        cellFrames[c][cellSizes[c]++] = id;
+    }
+
+    private void removeFromCell(int id) {
+        int c = findCell(cellKey(cell(latitudes[id]), cell(longitudes[id])));
+        int[] frames = cellFrames[c];
+        for (int i = 0; i < cellSizes[c]; i++) {
+            if (frames[i] == id) {
+                System.arraycopy(frames, i + 1, frames, i, cellSizes[c] - i - 1);
+                cellSizes[c]--;
+                return;
+            }
+        }
+    }
+
+    private int findCell(long key) {
+        int mask = cellKeys.length - 1;
+        for (int slot = hash(key) & mask; cellSlots[slot] != 0; slot = (slot + 1) & mask) {
+            if (cellKeys[slot] == key) {
+                return cellSlots[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int createCell(long key, int la, int lo) {
+        if ((cellCount + 1) * 2 > cellKeys.length) {
+            long[] oldKeys = cellKeys;
+            int[] oldSlots = cellSlots;
+            cellKeys = new long[oldKeys.length * 2];
+            cellSlots = new int[oldSlots.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldSlots[i] != 0) {
+                    putSlot(oldKeys[i], oldSlots[i]);
+                }
+            }
+        }
+        if (cellCount == cellFrames.length) {
+            int capacity = cellCount * 2;
+            cellLatitudes = Arrays.copyOf(cellLatitudes, capacity);
+            cellLongitudes = Arrays.copyOf(cellLongitudes, capacity);
+            cellFrames = Arrays.copyOf(cellFrames, capacity);
+            cellSizes = Arrays.copyOf(cellSizes, capacity);
+        }
+        int c = cellCount++;
+        cellLatitudes[c] = la;
+        cellLongitudes[c] = lo;
+        cellFrames[c] = new int[16];
+        cellSizes[c] = 0;
+        putSlot(key, c + 1);
+        return c;
+    }
+
+    private void putSlot(long key, int value) {
+        int mask = cellKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (cellSlots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        cellKeys[slot] = key;
+        cellSlots[slot] = value;
+    }
+
+    private static int cell(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long cellKey(int la, int lo) {
+        return ((long) la << 32) | (lo & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    /** First position in {@link #byTime} whose timestamp is >= {@code timestamp}. */
+    private int lowerBound(long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[byTime[mid]] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** First position in {@link #byTime} whose timestamp is > {@code timestamp}. */
+    private int upperBound(long timestamp) {
+        return upperBound(timestamp, count);
+    }
+
+    private int upperBound(long timestamp, int size) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[byTime[mid]] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Loads the log into memory and returns the length of its complete records, or 0 if it is unusable. */
+    private int replay() throws IOException {
+        if (!logFile.exists()) {
+            return 0;
+        }
+        ByteBuffer bytes;
+        try (RandomAccessFile in = new RandomAccessFile(logFile, "r")) {
+            bytes = ByteBuffer.allocate((int) in.length());
+            in.readFully(bytes.array());
+        }
+        if (bytes.limit() < HEADER_SIZE || bytes.getInt(0) != MAGIC || bytes.getShort(4) != VERSION) {
+            return 0;
+        }
+        bytes.position(HEADER_SIZE);
+        int validEnd = HEADER_SIZE;
+        while (bytes.hasRemaining()) {
+            byte type = bytes.get();
+            if (type == RECORD_SESSION) {
+                if (bytes.remaining() < 2 || bytes.remaining() < 2 + bytes.getShort(bytes.position())) {
+                    break;
+                }
+                byte[] name = new byte[bytes.getShort()];
+                bytes.get(name);
+                sessionId(new String(name, UTF_8), false);
+            } else if (type == RECORD_FRAME && bytes.remaining() >= FRAME_RECORD_SIZE - 1
+                    && bytes.getInt(bytes.position()) < sessionNames.size()) {
+                insert(bytes.getInt(), bytes.getInt(), bytes.getLong(), bytes.getDouble(), bytes.getDouble());
+            } else if (type == RECORD_LOCATION && bytes.remaining() >= LOCATION_RECORD_SIZE - 1) {
+                move(bytes.getInt(), bytes.getInt(), bytes.getDouble(), bytes.getDouble());
+            } else {
+                break; // torn final record
+            }
+            validEnd = bytes.position();
+        }
+        return validEnd;
+    }
+
+    /** Adds sessions the log has not seen and drops those whose folder was deleted. */
+    private void reconcile(File sessionsRoot) throws IOException {
+        File[] directories = sessionsRoot.listFiles();
+        Set<String> present = new HashSet<>();
+        if (directories != null) {
+            for (File directory : directories) {
+                if (directory.isDirectory() && directory.getName().startsWith(RecordingSession.DIRECTORY_PREFIX)) {
+                    present.add(directory.getName());
+                }
+            }
+        }
+        if (!present.containsAll(sessionNames)) {
+            removeMissingSessions(present);
+            rewriteLog();
+        }
+        for (String name : present) {
+            if (sessionIds.containsKey(name)) {
+                continue;
+            }
+            SessionManifest.Records records;
+            try {
+                records = SessionManifest.readRecords(new File(sessionsRoot, name));
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            if (records == null) {
+                continue; // recorded before manifests existed
+            }
+            for (int i = 0; i < records.count; i++) {
+                add(name, records.frameIndices[i], records.timestamps[i], records.latitudes[i],
+                        records.longitudes[i]);
+            }
+        }
+    }
+
+    private void removeMissingSessions(Set<String> present) {
+        List<String> names = new ArrayList<>(sessionNames);
+        int oldCount = count;
+        int[] oldSessions = sessions;
+        int[] oldFrameIndices = frameIndices;
+        long[] oldTimestamps = timestamps;
+        double[] oldLatitudes = latitudes;
+        double[] oldLongitudes = longitudes;
+
+        sessionNames.clear();
+        sessionIds.clear();
+        count = 0;
+        sessions = new int[oldSessions.length];
+        frameIndices = new int[oldSessions.length];
+        timestamps = new long[oldSessions.length];
+        latitudes = new double[oldSessions.length];
+        longitudes = new double[oldSessions.length];
+        byTime = new int[oldSessions.length];
+        timeRanks = new int[oldSessions.length];
+        Arrays.fill(cellSlots, 0);
+        cellCount = 0;
+
+        int[] remap = new int[names.size()];
+        for (int s = 0; s < names.size(); s++) {
+            remap[s] = -1;
+            if (present.contains(names.get(s))) {
+                remap[s] = sessionNames.size();
+                sessionNames.add(names.get(s));
+                sessionIds.put(names.get(s), remap[s]);
+            }
+        }
+        for (int id = 0; id < oldCount; id++) {
+            int sessionId = remap[oldSessions[id]];
+            if (sessionId >= 0) {
+                insert(sessionId, oldFrameIndices[id], oldTimestamps[id], oldLatitudes[id], oldLongitudes[id]);
+            }
+        }
+    }
+
+    /** Replaces the log with one holding exactly what is in memory. */
+    private void rewriteLog() throws IOException {
+        File temp = new File(logFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            FileChannel channel = out.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(0);
+            header.flip();
+            writeFully(channel, header);
+            for (String name : sessionNames) {
+                writeFully(channel, sessionRecord(name));
+            }
+            ByteBuffer frames = ByteBuffer.allocate(FRAME_RECORD_SIZE * 1024);
+            for (int id = 0; id < count; id++) {
+                if (frames.remaining() < FRAME_RECORD_SIZE) {
+                    frames.flip();
+                    writeFully(channel, frames);
+                    frames.clear();
+                }
+                frames.put(RECORD_FRAME).putInt(sessions[id]).putInt(frameIndices[id]).putLong(timestamps[id])
+                        .putDouble(latitudes[id]).putDouble(longitudes[id]);
+            }
+            frames.flip();
+            writeFully(channel, frames);
+        }
+        log.close();
+        if (!temp.renameTo(logFile)) {
+            throw new IOException("Could not replace " + logFile);
+        }
+        log = new RandomAccessFile(logFile, "rw").getChannel();
+        log.position(log.size());
+    }
+
+    private static ByteBuffer sessionRecord(String session) {
+        byte[] name = session.getBytes(UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(3 + name.length);
+        buffer.put(RECORD_SESSION).putShort((short) name.length).put(name);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /** One page of query results in parallel arrays, plus the total number of matches. */
+    public static class Page {
+        public final int total;
+        public final int offset;
+        public final String[] sessions;
+        public final int[] frameIndices;
+        public final long[] timestamps;
+        public final double[] latitudes;
+        public final double[] longitudes;
+        int size = 0;
+
+        Page(int total, int offset, int limit) {
+            this.total = total;
+            this.offset = offset;
+            int capacity = Math.max(0, Math.min(limit, total - offset));
+            sessions = new String[capacity];
+            frameIndices = new int[capacity];
+            timestamps = new long[capacity];
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+        }
+
+        void add(FrameIndex index, int id) {
+            sessions[size] = index.sessionNames.get(index.sessions[id]);
+            frameIndices[size] = index.frameIndices[id];
+            timestamps[size] = index.timestamps[id];
+            latitudes[size] = index.latitudes[id];
+            longitudes[size] = index.longitudes[id];
+            size++;
+        }
+
+        /** The page as platform-channel values; the arrays arrive in Dart as typed lists. */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("total", total);
+            map.put("offset", offset);
+            map.put("sessions", Arrays.asList(sessions));
+            map.put("frameIndices", frameIndices);
+            map.put("timestamps", timestamps);
+            map.put("latitudes", latitudes);
+            map.put("longitudes", longitudes);
+            return map;
+        }
+    }
+}
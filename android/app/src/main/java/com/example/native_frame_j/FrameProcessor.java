@@ -0,0 +1,535 @@
+package com.example.native_frame;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sampling, encode and save stages of the capture pipeline, fed by any {@link CameraSource}.
+ * Frames arrive on the source's frame thread; sampled ones are copied into the ring and saved
+ * by the encode workers into the current {@link RecordingSession}, as JPEGs or, if the session
+ * defers encoding, losslessly compressed into its {@link DeferredFrameWriter}. Has no Android
+ * dependencies, so the same code runs on the phone and in JVM harnesses.
+ */
+public class FrameProcessor implements CameraSource.FrameListener {
+
+    private static final int ENCODE_QUEUE_CAPACITY = 6;
+    private static final long ENCODE_BLOCK_TIMEOUT_MS = 20;
+    private static final double TARGET_SAVE_FPS = 5.0;
+    private static final double MIN_SAVE_FPS = 1.0;
+    /** Mean absolute luma difference (0-255) below which a frame counts as a duplicate of the last saved one. */
+    public static final double DEFAULT_DUPLICATE_THRESHOLD = 2.0;
+    private static final int LOCATION_TRACK_CAPACITY = 512;
+    private static final long LOCATION_MAX_EXTRAPOLATION_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final boolean BACKFILL_EXIF_GPS = true;
+    /** Java priority 4 is Android's THREAD_PRIORITY_BACKGROUND. */
+    private static final int ENCODE_THREAD_PRIORITY = 4;
+
+    private volatile JpegEncoder encoder;
+    private final int workerCount;
+    private final Nv21Transform transform;
+    private volatile boolean rotateUpright = false;
+    private volatile int maxLongEdge = 0;
+    /** Off by default: a camera held still or a static scene would otherwise save almost nothing. */
+    private volatile boolean skipDuplicateFrames = false;
+    private volatile boolean selectSharpest = true;
+
+    private volatile boolean isRecording = false;
+    private volatile RecordingSession session = null;
+    private int frameCounter = 0;
+
+    private volatile FrameEncodeScheduler imageSavingScheduler;
+    private final FrameSampler frameSampler = new FrameSampler(TARGET_SAVE_FPS, MIN_SAVE_FPS);
+    private final DuplicateFrameFilter duplicateFilter = new DuplicateFrameFilter(DEFAULT_DUPLICATE_THRESHOLD);
+    private final SharpnessSelector sharpnessSelector;
+    /** Frame thread only: the session the selector's current window belongs to, if any. */
+    private RecordingSession windowSession = null;
+    /** Frame thread only: the current window's first candidate found no free ring slot. */
+    private boolean windowMissed = false;
+    private final FrameRingBuffer frameRing;
+    private final ByteArrayPool frameBufferPool;
+    private final SaverPool saverPool;
+    private final FrameGapDetector frameGapDetector = new FrameGapDetector(0);
+
+    private final LocationTrack locationTrack = new LocationTrack(
+            LOCATION_TRACK_CAPACITY, LOCATION_MAX_EXTRAPOLATION_NANOS);
+    private final double[] resolvedLocation = new double[3];
+    private final ExecutorService gpsBackfillExecutor = Executors.newSingleThreadExecutor();
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+
+    public FrameProcessor(JpegEncoder encoder) {
+        this(encoder, FrameEncodeScheduler.defaultWorkerCount());
+    }
+
+    public FrameProcessor(JpegEncoder encoder, int workerCount) {
+        this.encoder = encoder;
+        this.workerCount = workerCount;
+        this.transform = new Nv21Transform(workerCount);
+        // Queued and encoding frames, the one being written, and the two the sharpness selector holds.
+        frameRing = new FrameRingBuffer(ENCODE_QUEUE_CAPACITY + workerCount + 3);
+        sharpnessSelector = new SharpnessSelector(frameRing);
+        // A worker holds up to two frames of one size while transforming.
+        frameBufferPool = new ByteArrayPool(workerCount * 2);
+        saverPool = new SaverPool(frameRing.capacity(), frameRing, frameBufferPool, transform);
+    }
+
+    /** Starts the encode workers; call before the source starts delivering frames. */
+    public void open() {
+        imageSavingScheduler = new FrameEncodeScheduler(
+                workerCount,
+                ENCODE_QUEUE_CAPACITY,
+                FrameEncodeScheduler.OverloadPolicy.DEGRADE_QUALITY,
+                ENCODE_BLOCK_TIMEOUT_MS
+        );
+    }
+
+    /**
+     * Stops the encode workers, giving queued frames up to {@code timeoutMs} to finish, and
+     * flushes the session's sink. A recording in progress resumes with the next {@link #open}.
+     */
+    public void close(long timeoutMs) {
+        if (imageSavingScheduler == null) {
+            return;
+        }
+        imageSavingScheduler.shutdown();
+        try {
+            if (!imageSavingScheduler.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                imageSavingScheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            imageSavingScheduler.shutdownNow();
+        }
+        imageSavingScheduler = null;
+        RecordingSession current = session;
+        if (current != null) {
+            current.flushSink();
+        }
+    }
+
+    /** Call when the processor is no longer needed. */
+    public void release() {
+        gpsBackfillExecutor.shutdown();
+        transform.shutdown();
+    }
+
+    public boolean isRecording() {
+        return isRecording;
+    }
+
+    /** Changes the rate frames are saved at while recording; see {@link FrameSampler#setTargetFps}. */
+    public void setSaveRate(double targetFps, double minFps) {
+        frameSampler.setTargetFps(targetFps, minFps);
+    }
+
+    /**
+     * Optional steps before encode: rotate frames so they are stored upright, with an EXIF
+     * orientation of normal, and scale them down so their long edge is at most
+     * {@code maxLongEdge} pixels (0 keeps the capture size). Sessions that defer encoding store
+     * frames as captured. Applies from the next queued frame.
+     */
+    public void setOutputTransform(boolean rotateUpright, int maxLongEdge) {
+        if (maxLongEdge < 0) {
+            throw new IllegalArgumentException("maxLongEdge must not be negative: " + maxLongEdge);
+        }
+        this.rotateUpright = rotateUpright;
+        this.maxLongEdge = maxLongEdge;
+    }
+
+    /**
+     * Skips sampled frames that look the same as the last saved one, i.e. whose mean absolute
+     * luma difference to it is under {@code threshold}; see {@link DuplicateFrameFilter}.
+     */
+    public void setDuplicateFilter(boolean enabled, double threshold) {
+        duplicateFilter.setThreshold(threshold);
+        skipDuplicateFrames = enabled;
+    }
+
+    /**
+     * Saves the sharpest frame of each sampling window instead of the frame that falls due, and
+     * tags saved frames with their sharpness score; untagged otherwise. On by default.
+     */
+    public void setSelectSharpest(boolean enabled) {
+        selectSharpest = enabled;
+    }
+
+    /** Encoder for frames queued from now on; frames already queued keep the one they were queued with. */
+    public void setEncoder(JpegEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    /** Expected time between source frames, used to count frames the source dropped; 0 disables that. */
+    public void setFrameDurationNanos(long frameDurationNanos) {
+        frameGapDetector.setFrameDurationNanos(frameDurationNanos);
+    }
+
+    /** The encode scheduler while open, else null; harnesses read its queue and worker counters. */
+    public FrameEncodeScheduler scheduler() {
+        return imageSavingScheduler;
+    }
+
+    /** Saves sampled frames into {@code session} from the next frame on. */
+    public void startRecording(RecordingSession session) {
+        frameCounter = 0;
+        frameSampler.reset();
+        duplicateFilter.reset();
+        // Fixes from the location warmup are kept; ones too old to place a frame are ignored.
+        frameGapDetector.reset();
+        metrics.reset();
+        this.session = session;
+        isRecording = true;
+    }
+
+    /**
+     * Stops sampling and returns the session that was recording, or null. Pass it to
+     * {@link #finishRecording} on the frame thread once the source has no frame in flight.
+     */
+    public RecordingSession stopRecording() {
+        isRecording = false;
+        return session;
+    }
+
+    /** Saves the last sharpness window of {@code finished} and writes its summary. Runs on the frame thread. */
+    public void finishRecording(RecordingSession finished) {
+        closeWindow(finished);
+        finished.writeSummary();
+    }
+
+    /** Adds a location fix stamped on the elapsed realtime clock and backfills frames it can now place. */
+    public void onLocationFix(long elapsedRealtimeNanos, double latitude, double longitude, float accuracy) {
+        locationTrack.add(elapsedRealtimeNanos, latitude, longitude, accuracy);
+        RecordingSession current = session;
+        if (current != null && current.hasPendingGpsFrames()) {
+            // Deferred frames have no JPEG yet; they take the backfilled position from the manifest.
+            gpsBackfillExecutor.execute(new GpsBackfill(current, locationTrack,
+                    BACKFILL_EXIF_GPS && current.getDeferredFrames() == null));
+        }
+    }
+
+    @Override
+    public void onFrame(SourceFrame frame) {
+        metrics.onFrameDelivered();
+        int missed = frameGapDetector.onFrame(frame.timestampNanos);
+        metrics.onSensorFramesDropped(missed);
+
+        RecordingSession current = session;
+        FrameEncodeScheduler scheduler = imageSavingScheduler;
+        if (isRecording && current != null && scheduler != null) {
+            current.onSensorFrame(missed);
+            boolean due = frameSampler.shouldSample(frame.timestampNanos,
+                    scheduler.queueDepth(), scheduler.queueCapacity());
+            if (selectSharpest) {
+                if (windowSession != current) {
+                    // Slots still held for a session that was never finished; its frame is lost.
+                    sharpnessSelector.clear();
+                    windowSession = current;
+                }
+                // A due frame closes the previous window and opens the next one.
+                if (due) {
+                    submitSharpest(current);
+                }
+                offerCandidate(frame);
+            } else {
+                if (windowSession != null) {
+                    // Selection was just switched off; the open window still saves its frame.
+                    closeWindow(current);
+                }
+                if (due) {
+                    recordFrame(frame, current);
+                }
+            }
+        }
+        // Count dropped frames too, so frame indices follow the sensor's frame sequence.
+        frameCounter += missed + 1;
+    }
+
+    /** Copies a sampled frame into the ring and queues it for encoding. */
+    private void recordFrame(SourceFrame frame, RecordingSession session) {
+        session.onFrameSampled();
+        metrics.onFrameSampled();
+        if (skipDuplicateFrames && duplicateFilter.isNearDuplicate(frame.yPlane, frame.yRowStride,
+                frame.width, frame.height)) {
+            session.onDuplicateSkipped();
+            return;
+        }
+
+        FrameSlot slot = frameRing.tryClaim();
+        if (slot == null) {
+            metrics.onFrameDropped();
+            return;
+        }
+        long copyStart = System.nanoTime();
+        frame.copyTo(slot);
+        metrics.recordSince(PipelineMetrics.Stage.PLANE_COPY, copyStart);
+        fillMetadata(slot, frame);
+        slot.sharpness = ExifSegment.NO_SHARPNESS;
+        submit(slot, session);
+    }
+
+    /** Scores a frame of the current window and copies it into a ring slot if it is the sharpest so far. */
+    private void offerCandidate(SourceFrame frame) {
+        ByteBuffer luma = frame.yPlane;
+        int score = SharpnessSelector.score(luma, frame.yRowStride, frame.width, frame.height);
+        FrameSlot candidate = sharpnessSelector.slotForCandidate(score);
+        if (candidate == null) {
+            if (!sharpnessSelector.hasBest()) {
+                windowMissed = true;
+            }
+            return;
+        }
+        long copyStart = System.nanoTime();
+        frame.copyTo(candidate);
+        metrics.recordSince(PipelineMetrics.Stage.PLANE_COPY, copyStart);
+        fillMetadata(candidate, frame);
+        candidate.sharpness = score;
+        sharpnessSelector.acceptCandidate(score);
+    }
+
+    /** Queues the sharpest frame of the window that just ended, if any, publishing its slot as is. */
+    private void submitSharpest(RecordingSession session) {
+        boolean missed = windowMissed;
+        windowMissed = false;
+        if (!sharpnessSelector.hasBest()) {
+            if (missed) {
+                // Every slot was busy for the whole window.
+                session.onFrameSampled();
+                metrics.onFrameSampled();
+                metrics.onFrameDropped();
+            }
+            return;
+        }
+        FrameSlot best = sharpnessSelector.takeBest();
+        session.onFrameSampled();
+        metrics.onFrameSampled();
+        if (skipDuplicateFrames && duplicateFilter.isNearDuplicate(best.lumaPlane(), best.yRowStride,
+                best.width, best.height)) {
+            frameRing.cancel(best);
+            session.onDuplicateSkipped();
+            return;
+        }
+        submit(best, session);
+    }
+
+    /** Saves the open window's frame if it belongs to {@code session} and returns its slots to the ring. */
+    private void closeWindow(RecordingSession session) {
+        if (windowSession == session) {
+            submitSharpest(session);
+        }
+        sharpnessSelector.clear();
+        windowSession = null;
+        windowMissed = false;
+    }
+
+    private void fillMetadata(FrameSlot slot, SourceFrame frame) {
+        slot.frameIndex = frameCounter + 1;
+        slot.timestamp = System.currentTimeMillis();
+        slot.sensorTimestampNanos = frame.timestampNanos;
+        slot.rotationDegrees = frame.rotationDegrees;
+        slot.locationTimeNanos = frame.locationTimeNanos;
+        int resolution = locationTrack.resolve(slot.locationTimeNanos, resolvedLocation);
+        if (resolution != LocationTrack.UNRESOLVED) {
+            slot.latitude = resolvedLocation[0];
+            slot.longitude = resolvedLocation[1];
+        } else {
+            slot.latitude = 0.0;
+            slot.longitude = 0.0;
+        }
+        // A frame past the newest fix is saved with that fix's position; once the next fix
+        // arrives the manifest and index get the interpolated one, the JPEG is left as written.
+        slot.gpsPending = resolution != LocationTrack.RESOLVED;
+    }
+
+    private void submit(FrameSlot slot, RecordingSession session) {
+        long sequence = frameRing.publish(slot);
+        session.onFrameQueued();
+        ImageSaver saver = saverPool.acquire();
+        saver.reset(slot, sequence, session, encoder, rotateUpright, maxLongEdge);
+        FrameEncodeScheduler scheduler = imageSavingScheduler;
+        if (scheduler != null) {
+            scheduler.submit(saver);
+        } else {
+            // Closed while the frame was being copied.
+            saver.onDropped();
+        }
+    }
+
+    /**
+     * Free list of save tasks, so queuing a frame does not allocate. At most one task per ring
+     * slot is ever live: queued, running or being submitted.
+     */
+    private static class SaverPool {
+        private final ImageSaver[] free;
+        private final FrameRingBuffer ring;
+        private final ByteArrayPool bufferPool;
+        private final Nv21Transform transform;
+        private int count = 0;
+
+        SaverPool(int capacity, FrameRingBuffer ring, ByteArrayPool bufferPool, Nv21Transform transform) {
+            this.free = new ImageSaver[capacity];
+            this.ring = ring;
+            this.bufferPool = bufferPool;
+            this.transform = transform;
+        }
+
+        synchronized ImageSaver acquire() {
+            if (count > 0) {
+                ImageSaver saver = free[--count];
+                free[count] = null;
+                return saver;
+            }
+            return new ImageSaver(this, ring, bufferPool, transform);
+        }
+
+        synchronized void release(ImageSaver saver) {
+            if (count < free.length) {
+                free[count++] = saver;
+            }
+        }
+    }
+
+    private static class ImageSaver implements FrameEncodeScheduler.Task {
+        private final SaverPool pool;
+        private final FrameRingBuffer ring;
+        private final ByteArrayPool bufferPool;
+        private final Nv21Transform transform;
+        private FrameSlot slot;
+        private long sequence;
+        private RecordingSession session;
+        private JpegEncoder encoder;
+        private boolean rotateUpright;
+        private int maxLongEdge;
+        private long queuedAtNanos;
+        private int quality;
+
+        ImageSaver(SaverPool pool, FrameRingBuffer ring, ByteArrayPool bufferPool, Nv21Transform transform) {
+            this.pool = pool;
+            this.ring = ring;
+            this.bufferPool = bufferPool;
+            this.transform = transform;
+        }
+
+        void reset(FrameSlot slot, long sequence, RecordingSession session, JpegEncoder encoder,
+                   boolean rotateUpright, int maxLongEdge) {
+            this.slot = slot;
+            this.sequence = sequence;
+            this.session = session;
+            this.encoder = encoder;
+            this.rotateUpright = rotateUpright;
+            this.maxLongEdge = maxLongEdge;
+            this.queuedAtNanos = System.nanoTime();
+            this.quality = FrameSaver.JPEG_QUALITY;
+        }
+
+        /** Hands this task back to the pool; it must not be touched afterwards. */
+        private void recycle() {
+            slot = null;
+            session = null;
+            encoder = null;
+            pool.release(this);
+        }
+
+        @Override
+        public void run() {
+            Thread.currentThread().setPriority(ENCODE_THREAD_PRIORITY);
+            try {
+                save();
+            } finally {
+                session.onFrameDone();
+                recycle();
+            }
+        }
+
+        private void save() {
+            PipelineMetrics metrics = PipelineMetrics.get();
+            metrics.recordSince(PipelineMetrics.Stage.QUEUE_WAIT, queuedAtNanos);
+            if (!ring.claim(slot, sequence)) {
+                return;
+            }
+
+            byte[] yuvBytes;
+            int width = slot.width;
+            int height = slot.height;
+            int frameIndex = slot.frameIndex;
+            double latitude = slot.latitude;
+            double longitude = slot.longitude;
+            long timestamp = slot.timestamp;
+            int rotationDegrees = slot.rotationDegrees;
+            int sharpness = slot.sharpness;
+            boolean gpsPending = slot.gpsPending;
+            long locationTimeNanos = slot.locationTimeNanos;
+            long copyStart = System.nanoTime();
+            try {
+                yuvBytes = bufferPool.acquire(slot.nv21Size());
+                slot.toNv21(yuvBytes);
+                metrics.recordSince(PipelineMetrics.Stage.PLANE_COPY, copyStart);
+            } finally {
+                ring.release(slot);
+            }
+
+            byte[] scaled = null;
+            byte[] rotated = null;
+            try {
+                DeferredFrameWriter deferred = session.getDeferredFrames();
+                if (deferred != null) {
+                    deferred.append(yuvBytes, width, height, frameIndex, timestamp, latitude, longitude,
+                            rotationDegrees, sharpness, gpsPending);
+                } else {
+                    byte[] frame = yuvBytes;
+                    long transformStart = System.nanoTime();
+                    int longEdge = Math.max(width, height);
+                    if (maxLongEdge > 0 && longEdge > maxLongEdge) {
+                        int scaledWidth = Math.max(2, (int) ((long) width * maxLongEdge / longEdge) & ~1);
+                        int scaledHeight = Math.max(2, (int) ((long) height * maxLongEdge / longEdge) & ~1);
+                        scaled = bufferPool.acquire(YuvPlaneExtractor.nv21Size(scaledWidth, scaledHeight));
+                        transform.downscale(frame, width, height, scaled, scaledWidth, scaledHeight);
+                        frame = scaled;
+                        width = scaledWidth;
+                        height = scaledHeight;
+                    }
+                    if (rotateUpright && rotationDegrees != 0) {
+                        rotated = bufferPool.acquire(YuvPlaneExtractor.nv21Size(width, height));
+                        transform.rotate(frame, width, height, rotationDegrees, rotated);
+                        frame = rotated;
+                        if (rotationDegrees != 180) {
+                            int swap = width;
+                            width = height;
+                            height = swap;
+                        }
+                        rotationDegrees = 0;
+                    }
+                    if (frame != yuvBytes) {
+                        metrics.recordSince(PipelineMetrics.Stage.TRANSFORM, transformStart);
+                    }
+                    FrameSaver.save(encoder, frame, width, height, session.getSink(), frameIndex,
+                            latitude, longitude, timestamp, rotationDegrees, sharpness, quality);
+                }
+                session.onFrameSaved(frameIndex, timestamp, latitude, longitude, rotationDegrees, sharpness);
+                if (gpsPending) {
+                    session.addPendingGpsFrame(new RecordingSession.PendingGpsFrame(frameIndex,
+                            locationTimeNanos, timestamp, rotationDegrees, sharpness,
+                            latitude != 0.0 || longitude != 0.0));
+                }
+            } catch (Exception e) {
+                metrics.onFrameFailed();
+                e.printStackTrace();
+            } finally {
+                bufferPool.release(yuvBytes);
+                bufferPool.release(scaled);
+                bufferPool.release(rotated);
+            }
+        }
+
+        @Override
+        public void onDropped() {
+            PipelineMetrics.get().onFrameDropped();
+            ring.discard(slot, sequence);
+            session.onFrameDone();
+            recycle();
+        }
+
+        @Override
+        public void degrade() {
+            quality = FrameSaver.DEGRADED_JPEG_QUALITY;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.native_frame;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed ring of off-heap {@link FrameSlot}s handed from the single ImageReader thread to the
+ * encode workers. The producer claims whichever slot is free next in ring order, so one slow
+ * frame does not block the slots behind it, and numbers slots in publish order; consumers take
+ * ownership of a published slot with a single CAS, so neither side ever takes a lock.
+ */
+public class FrameRingBuffer {
+
+    private static final int FREE = 0;
+    private static final int WRITING = 1;
+    private static final int PUBLISHED = 2;
+    private static final int CLAIMED = 3;
+
+    private final FrameSlot[] slots;
+    private final AtomicIntegerArray states;
+    private final AtomicLong overruns = new AtomicLong();
+    private volatile long nextSequence = 0;
+    /** Producer only: where the search for a free slot starts. */
+    private int cursor = 0;
+
+    public FrameRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        slots = new FrameSlot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new FrameSlot(i);
+        }
+        states = new AtomicIntegerArray(capacity);
+    }
+
+    /**
+     * Producer only. Returns a free slot for writing, or null if consumers hold every slot,
+     * in which case the frame should be dropped.
+     */
+    public FrameSlot tryClaim() {
+        for (int i = 0; i < slots.length; i++) {
+            int index = cursor;
+            cursor = index + 1 == slots.length ? 0 : index + 1;
+            if (states.compareAndSet(index, FREE, WRITING)) {
+                return slots[index];
+            }
+        }
+        overruns.incrementAndGet();
+        return null;
+    }
+
+    /** Producer only. Abandons a slot obtained from {@link #tryClaim()} without publishing it. */
+    public void cancel(FrameSlot slot) {
+        states.set(slot.index, FREE);
+    }
+
+    /** Producer only. Makes the slot visible to consumers and returns its sequence number. */
+    public long publish(FrameSlot slot) {
+        long sequence = nextSequence;
+        slot.sequence = sequence;
+        states.set(slot.index, PUBLISHED);
+        nextSequence = sequence + 1;
+        return sequence;
+    }
+
+    /** Takes exclusive ownership of a published slot; false if it was discarded or reused. */
+    public boolean claim(FrameSlot slot, long sequence) {
+        return slot.sequence == sequence && states.compareAndSet(slot.index, PUBLISHED, CLAIMED);
+    }
+
+    /** Returns a claimed slot to the producer. */
+    public void release(FrameSlot slot) {
+        states.set(slot.index, FREE);
+    }
+
+    /** Drops a published slot that will never be consumed. */
+    public void discard(FrameSlot slot, long sequence) {
+        if (claim(slot, sequence)) {
+            release(slot);
+        }
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /** Frames the producer had to drop because every slot was in use. */
+    public long overrunCount() {
+        return overruns.get();
+    }
+
+    public long publishedCount() {
+        return nextSequence;
+    }
+}
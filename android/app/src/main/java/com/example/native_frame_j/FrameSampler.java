@@ -0,0 +1,72 @@
+package com.example.native_frame;
+
+/**
+ * Decides which delivered frames to save, based on sensor timestamps rather than frame
+ * counts, so the saved rate does not depend on the delivered FPS or on dropped frames.
+ * The effective rate backs off while the encode queue is filling and recovers as it drains.
+ */
+public class FrameSampler {
+
+    private static final double BACKOFF_FACTOR = 1.25;
+
+    private long baseIntervalNanos;
+    private long maxIntervalNanos;
+    private long intervalNanos;
+    private long nextDueNanos = -1;
+
+    public FrameSampler(double targetFps, double minFps) {
+        setTargetFps(targetFps, minFps);
+    }
+
+    public synchronized void setTargetFps(double targetFps, double minFps) {
+        if (targetFps <= 0 || minFps <= 0 || minFps > targetFps) {
+            throw new IllegalArgumentException("Invalid sampling rates: " + targetFps + ", " + minFps);
+        }
+        baseIntervalNanos = (long) (1_000_000_000L / targetFps);
+        maxIntervalNanos = (long) (1_000_000_000L / minFps);
+        intervalNanos = baseIntervalNanos;
+    }
+
+    /** Starts a new sampling sequence; the next frame offered is always taken. */
+    public synchronized void reset() {
+        nextDueNanos = -1;
+        intervalNanos = baseIntervalNanos;
+    }
+
+    /**
+     * @param timestampNanos sensor timestamp of the frame ({@code Image.getTimestamp()})
+     * @param backlog        frames currently waiting to be encoded
+     * @param capacity       maximum number of frames the encode queue holds
+     */
+    public synchronized boolean shouldSample(long timestampNanos, int backlog, int capacity) {
+        if (nextDueNanos >= 0 && timestampNanos < nextDueNanos) {
+            return false;
+        }
+
+        if (backlog >= capacity) {
+            // Never hand the encoder more than it can queue; retry on the next delivered frame.
+            intervalNanos = Math.min(maxIntervalNanos, (long) (intervalNanos * BACKOFF_FACTOR));
+            return false;
+        } else if (backlog * 4 >= capacity * 3) {
+            intervalNanos = Math.min(maxIntervalNanos, (long) (intervalNanos * BACKOFF_FACTOR));
+        } else if (backlog * 4 <= capacity) {
+            intervalNanos = Math.max(baseIntervalNanos, (long) (intervalNanos / BACKOFF_FACTOR));
+        }
+
+        // Keep samples on a fixed grid; only restart it after a gap longer than one interval.
+        if (nextDueNanos < 0 || timestampNanos - nextDueNanos >= intervalNanos) {
+            nextDueNanos = timestampNanos + intervalNanos;
+        } else {
+            nextDueNanos += intervalNanos;
+        }
+        return true;
+    }
+
+    public synchronized double currentFps() {
+        return 1_000_000_000.0 / intervalNanos;
+    }
+
+    public synchronized double targetFps() {
+        return 1_000_000_000.0 / baseIntervalNanos;
+    }
+}
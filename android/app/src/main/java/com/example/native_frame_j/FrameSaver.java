@@ -0,0 +1,69 @@
+package com.example.native_frame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The encode and store step of the save path: compresses an NV21 frame once with a
+ * {@link JpegEncoder} and hands it to a {@link FrameSink} with its EXIF segment already spliced
+ * in, so the frame is stored by a single sequential write. Encode and EXIF buffers are kept per
+ * thread.
+ */
+public final class FrameSaver {
+
+    static final int JPEG_QUALITY = 95;
+    static final int DEGRADED_JPEG_QUALITY = 75;
+
+    private static final ThreadLocal<ExifTemplate> EXIF_TEMPLATE = new ThreadLocal<ExifTemplate>() {
+        @Override
+        protected ExifTemplate initialValue() {
+            return new ExifTemplate();
+        }
+    };
+
+    private static final ThreadLocal<JpegBuffer> JPEG_BUFFER = new ThreadLocal<JpegBuffer>() {
+        @Override
+        protected JpegBuffer initialValue() {
+            return new JpegBuffer();
+        }
+    };
+
+    private FrameSaver() {
+    }
+
+    public static void save(JpegEncoder encoder, byte[] nv21, int width, int height, FrameSink sink, int index,
+                            double latitude, double longitude, long timestamp,
+                            int rotationDegrees, int sharpness, int quality) throws IOException {
+        PipelineMetrics metrics = PipelineMetrics.get();
+        JpegBuffer jpeg = JPEG_BUFFER.get();
+        jpeg.reset();
+        long start = System.nanoTime();
+        try {
+            encoder.encode(nv21, width, height, quality, jpeg);
+        } catch (IOException e) {
+            throw new IOException("JPEG encode failed for frame " + index, e);
+        }
+        metrics.recordSince(PipelineMetrics.Stage.ENCODE, start);
+
+        start = System.nanoTime();
+        byte[] app1 = EXIF_TEMPLATE.get().patch(timestamp, rotationDegrees, latitude, longitude, sharpness);
+        ByteBuffer[] parts = ExifSegment.splice(jpeg.buffer(), jpeg.size(), app1);
+        metrics.recordSince(PipelineMetrics.Stage.EXIF, start);
+
+        start = System.nanoTime();
+        sink.writeFrame(index, timestamp, latitude, longitude, rotationDegrees, sharpness, parts);
+        metrics.recordSince(PipelineMetrics.Stage.WRITE, start);
+    }
+
+    /** Reusable encode target that exposes its backing array instead of copying it out. */
+    private static class JpegBuffer extends ByteArrayOutputStream {
+        JpegBuffer() {
+            super(512 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
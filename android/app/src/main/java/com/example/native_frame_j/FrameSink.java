@@ -0,0 +1,26 @@
+package com.example.native_frame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination for a recording session's encoded frames. Encode workers call it concurrently,
+ * so implementations must be thread-safe.
+ */
+public interface FrameSink extends Closeable {
+
+    /**
+     * Stores one encoded frame. {@code jpeg} holds the complete JPEG stream as gather buffers,
+     * as returned by {@link ExifSegment#splice}.
+     */
+    void writeFrame(int frameIndex, long timestamp, double latitude, double longitude,
+                    int rotationDegrees, int sharpness, ByteBuffer[] jpeg) throws IOException;
+
+    /** Gives a frame that was stored without any position its location after the fact. */
+    void updateLocation(RecordingSession.PendingGpsFrame frame, double latitude, double longitude)
+            throws IOException;
+
+    /** Hands anything still buffered to the file system. */
+    void flush() throws IOException;
+}
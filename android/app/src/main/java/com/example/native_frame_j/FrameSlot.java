@@ -0,0 +1,108 @@
+package com.example.native_frame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One preallocated frame slot of a {@link FrameRingBuffer}: the raw YUV_420_888 planes in a
+ * direct buffer plus the metadata the save path needs. Plane views are created once per
+ * buffer so reading a slot back does not allocate.
+ */
+public class FrameSlot {
+
+    final int index;
+    volatile long sequence = -1;
+
+    private ByteBuffer data;
+    private ByteBuffer yView;
+    private ByteBuffer uView;
+    private ByteBuffer vView;
+
+    private int yLength;
+    private int uLength;
+    private int vLength;
+
+    public int width;
+    public int height;
+    public int yRowStride;
+    public int uvRowStride;
+    public int uvPixelStride;
+    public boolean interleavedVu;
+
+    public int frameIndex;
+    public long timestamp;
+    public long sensorTimestampNanos;
+    /** Frame time on the location clock (elapsed realtime), used to place the frame on the track. */
+    public long locationTimeNanos;
+    public int rotationDegrees;
+    public double latitude;
+    public double longitude;
+    public int sharpness;
+    /** True when no fix could place the frame yet; its GPS tags are backfilled later. */
+    public boolean gpsPending;
+
+    FrameSlot(int index) {
+        this.index = index;
+    }
+
+    /** Copies the three planes back to back into this slot's direct buffer, growing it if needed. */
+    public void copyPlanes(ByteBuffer yPlane, int yRowStride,
+                           ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                           boolean interleavedVu, int width, int height) {
+        yLength = yPlane.remaining();
+        uLength = uPlane.remaining();
+        vLength = vPlane.remaining();
+        ensureCapacity(yLength + uLength + vLength);
+
+        data.clear();
+        putPreservingPosition(yPlane);
+        putPreservingPosition(uPlane);
+        putPreservingPosition(vPlane);
+
+        this.width = width;
+        this.height = height;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.interleavedVu = interleavedVu;
+    }
+
+    /** The stored Y plane, positioned at its first byte. */
+    public ByteBuffer lumaPlane() {
+        view(yView, 0, yLength);
+        return yView;
+    }
+
+    /** Converts the stored planes to NV21; see {@link YuvPlaneExtractor#toNv21}. */
+    public void toNv21(byte[] out) {
+        view(yView, 0, yLength);
+        view(uView, yLength, uLength);
+        view(vView, yLength + uLength, vLength);
+        YuvPlaneExtractor.toNv21(yView, yRowStride, uView, vView, uvRowStride, uvPixelStride, interleavedVu,
+                width, height, out);
+    }
+
+    public int nv21Size() {
+        return YuvPlaneExtractor.nv21Size(width, height);
+    }
+
+    private void putPreservingPosition(ByteBuffer plane) {
+        int position = plane.position();
+        data.put(plane);
+        plane.position(position);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (data != null && data.capacity() >= capacity) {
+            return;
+        }
+        data = ByteBuffer.allocateDirect(capacity);
+        yView = data.duplicate();
+        uView = data.duplicate();
+        vView = data.duplicate();
+    }
+
+    private static void view(ByteBuffer view, int offset, int length) {
+        view.limit(offset + length);
+        view.position(offset);
+    }
+}
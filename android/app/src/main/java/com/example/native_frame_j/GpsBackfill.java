@@ -0,0 +1,54 @@
+package com.example.native_frame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Places frames that were saved before a location fix could place them for good. Frames saved
+ * without a position get their EXIF rewritten; frames past the newest fix were saved with its
+ * position, so only their manifest and index entries take the interpolated one and the JPEG
+ * is not written again. Runs whenever a new fix lands while the session still has pending
+ * frames; frames the track cannot place yet stay pending for the next run.
+ */
+public class GpsBackfill implements Runnable {
+
+    private final RecordingSession session;
+    private final LocationTrack track;
+    private final boolean rewriteExif;
+
+    public GpsBackfill(RecordingSession session, LocationTrack track, boolean rewriteExif) {
+        this.session = session;
+        this.track = track;
+        this.rewriteExif = rewriteExif;
+    }
+
+    @Override
+    public void run() {
+        List<RecordingSession.PendingGpsFrame> unresolved = new ArrayList<>();
+        double[] location = new double[3];
+        for (RecordingSession.PendingGpsFrame frame : session.takePendingGpsFrames()) {
+            if (track.resolve(frame.locationTimeNanos, location) != LocationTrack.RESOLVED) {
+                unresolved.add(frame);
+                continue;
+            }
+            if (rewriteExif && !frame.held) {
+                try {
+                    session.getSink().updateLocation(frame, location[0], location[1]);
+                } catch (Exception e) {
+                    // Keep it pending so the next fix retries the rewrite.
+                    e.printStackTrace();
+                    unresolved.add(frame);
+                    continue;
+                }
+            }
+            session.onGpsBackfilled(frame, location[0], location[1]);
+        }
+        if (!unresolved.isEmpty()) {
+            session.restorePendingGpsFrames(unresolved);
+        }
+        if (session.isFinished()) {
+            // The fix arrived after recording stopped; refresh the summary's GPS counts.
+            session.writeSummary();
+        }
+    }
+}
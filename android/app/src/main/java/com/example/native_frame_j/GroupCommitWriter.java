@@ -0,0 +1,452 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single writer stage for the one-file-per-frame layout. Encode workers hand finished frames
+ * over and move on; one writer thread stores them in batches. Every frame of a batch is
+ * written under a temporary name, the batch is synced in one pass, and only then are the
+ * frames renamed to {@code frame_NNN.jpg}, so a published frame is always complete. The
+ * directory is synced after the renames so published names survive a power cut too.
+ *
+ * <p>A small journal ({@value #JOURNAL_FILE}) logs the frames of each batch before and after
+ * publication and the clean end of the session. {@link #recover(File)} uses it to clean up a
+ * session that was interrupted mid-batch and to count the frames it lost.
+ */
+public class GroupCommitWriter implements FrameSink {
+
+    static final String JOURNAL_FILE = "commit.journal";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private static final byte RECORD_BEGIN = 'B';
+    private static final byte RECORD_COMMIT = 'C';
+    private static final byte RECORD_CLOSE = 'E';
+    /** How often a caller waiting on the writer checks that it is still running. */
+    private static final long WRITER_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Syncs a directory so the renames in it are durable. Java cannot open a directory for
+     * fsync on every Android version, so the platform supplies this.
+     */
+    public interface DirectorySync {
+        void sync(File directory) throws IOException;
+    }
+
+    private final File directory;
+    private final int maxBatchFrames;
+    private final long lingerNanos;
+    private final long maxQueuedBytes;
+    private final DirectorySync directorySync;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+    private final List<PendingFrame> queue = new ArrayList<>();
+    private final List<byte[]> freeBuffers = new ArrayList<>();
+    /** Bytes queued or reserved by writers that are still copying their frame in. */
+    private long queuedBytes = 0;
+    private int reserving = 0;
+    private boolean writing = false;
+    private int flushWaiters = 0;
+    private boolean closed = false;
+
+    private final FileOutputStream journal;
+    private final Thread writer;
+
+    /**
+     * @param maxBatchFrames frames committed together at most
+     * @param lingerMs       how long the writer waits for a batch to fill once a frame is queued
+     * @param maxQueuedBytes frame bytes queued before {@link #writeFrame} blocks the caller
+     * @param directorySync  syncs {@code directory} after each batch is renamed
+     */
+    public GroupCommitWriter(File directory, int maxBatchFrames, long lingerMs, long maxQueuedBytes,
+                             DirectorySync directorySync) throws IOException {
+        this.directory = directory;
+        this.maxBatchFrames = maxBatchFrames;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.directorySync = directorySync;
+        journal = new FileOutputStream(new File(directory, JOURNAL_FILE), true);
+        writer = new Thread(this::writeLoop, "FrameWriter");
+        writer.start();
+    }
+
+    @Override
+    public void writeFrame(int frameIndex, long timestamp, double latitude, double longitude,
+                           int rotationDegrees, int sharpness, ByteBuffer[] jpeg) throws IOException {
+        int length = 0;
+        for (ByteBuffer part : jpeg) {
+            length += part.remaining();
+        }
+
+        byte[] data;
+        lock.lock();
+        try {
+            while (!closed && queuedBytes > 0 && queuedBytes + length > maxQueuedBytes) {
+                awaitWriter(notFull);
+            }
+            if (closed) {
+                throw new IOException("Writer for " + directory + " is closed");
+            }
+            queuedBytes += length;
+            reserving++;
+            data = takeBuffer(length);
+        } finally {
+            lock.unlock();
+        }
+
+        // The encoder reuses its JPEG buffer, so the frame is copied before the caller returns.
+        int offset = 0;
+        for (ByteBuffer part : jpeg) {
+            int remaining = part.remaining();
+            part.duplicate().get(data, offset, remaining);
+            offset += remaining;
+        }
+
+        lock.lock();
+        try {
+            reserving--;
+            queue.add(new PendingFrame(frameIndex, data, length));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Waits until the frame is published, then rewrites its EXIF in place. */
+    @Override
+    public void updateLocation(RecordingSession.PendingGpsFrame frame, double latitude, double longitude)
+            throws IOException {
+        flush();
+        DirectoryFrameSink.replaceExif(new File(directory, DirectoryFrameSink.frameFileName(frame.frameIndex)),
+                ExifSegment.build(frame.timestamp, frame.rotationDegrees, latitude, longitude, frame.sharpness));
+    }
+
+    /**
+     * Blocks until every frame handed over so far is published.
+     *
+     * @throws IOException if the writer thread has died, so those frames never will be
+     */
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            flushWaiters++;
+            notEmpty.signal();
+            try {
+                while (!queue.isEmpty() || reserving > 0 || writing) {
+                    awaitWriter(idle);
+                }
+            } finally {
+                flushWaiters--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Waits on {@code condition} with the lock held, failing instead of hanging if the writer has died. */
+    private void awaitWriter(Condition condition) throws IOException {
+        if (!writer.isAlive()) {
+            throw new IOException("Writer for " + directory + " has stopped");
+        }
+        try {
+            condition.awaitNanos(WRITER_CHECK_NANOS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the writer of " + directory, e);
+        }
+    }
+
+    /** Publishes everything still queued, stops the writer and marks the session as cleanly ended. */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing " + directory, e);
+        }
+        try {
+            appendJournal(RECORD_CLOSE, null, 0);
+            journal.getFD().sync();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<PendingFrame> batch;
+            lock.lock();
+            try {
+                while (queue.isEmpty() && (!closed || reserving > 0)) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                // Give the batch a chance to fill unless someone is waiting for it.
+                long remaining = lingerNanos;
+                while (remaining > 0 && queue.size() < maxBatchFrames && !closed && flushWaiters == 0) {
+                    try {
+                        remaining = notEmpty.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                int count = Math.min(queue.size(), maxBatchFrames);
+                batch = new ArrayList<>(queue.subList(0, count));
+                queue.subList(0, count).clear();
+                writing = true;
+            } finally {
+                lock.unlock();
+            }
+
+            commit(batch);
+
+            lock.lock();
+            try {
+                for (PendingFrame frame : batch) {
+                    queuedBytes -= frame.length;
+                    freeBuffers.add(frame.data);
+                }
+                writing = false;
+                notFull.signalAll();
+                idle.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void commit(List<PendingFrame> batch) {
+        PipelineMetrics metrics = PipelineMetrics.get();
+        int[] frameIndices = new int[batch.size()];
+        for (int i = 0; i < frameIndices.length; i++) {
+            frameIndices[i] = batch.get(i).frameIndex;
+        }
+        FileOutputStream[] outs = new FileOutputStream[batch.size()];
+        try {
+            appendJournal(RECORD_BEGIN, frameIndices, frameIndices.length);
+            for (int i = 0; i < outs.length; i++) {
+                PendingFrame frame = batch.get(i);
+                try {
+                    outs[i] = new FileOutputStream(tempFile(frame.frameIndex));
+                    outs[i].write(frame.data, 0, frame.length);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    closeQuietly(outs[i]);
+                    outs[i] = null;
+                    tempFile(frame.frameIndex).delete();
+                    metrics.onFrameFailed();
+                }
+            }
+
+            long syncStart = System.nanoTime();
+            for (FileOutputStream out : outs) {
+                if (out != null) {
+                    out.getFD().sync();
+                }
+            }
+            journal.getFD().sync();
+            metrics.recordSince(PipelineMetrics.Stage.FSYNC, syncStart);
+
+            for (int i = 0; i < outs.length; i++) {
+                if (outs[i] == null) {
+                    continue;
+                }
+                outs[i].close();
+                outs[i] = null;
+                int frameIndex = frameIndices[i];
+                File temp = tempFile(frameIndex);
+                if (!temp.renameTo(new File(directory, DirectoryFrameSink.frameFileName(frameIndex)))) {
+                    temp.delete();
+                    metrics.onFrameFailed();
+                }
+            }
+            directorySync.sync(directory);
+            appendJournal(RECORD_COMMIT, frameIndices, frameIndices.length);
+        } catch (IOException e) {
+            e.printStackTrace();
+            for (int i = 0; i < outs.length; i++) {
+                if (outs[i] != null) {
+                    closeQuietly(outs[i]);
+                    tempFile(frameIndices[i]).delete();
+                    metrics.onFrameFailed();
+                }
+            }
+        }
+    }
+
+    private File tempFile(int frameIndex) {
+        return new File(directory, DirectoryFrameSink.frameFileName(frameIndex) + TEMP_SUFFIX);
+    }
+
+    /** Reuses a buffer that fits, or allocates one rounded up to 64 KiB so it fits later frames too. */
+    private byte[] takeBuffer(int length) {
+        for (int i = freeBuffers.size() - 1; i >= 0; i--) {
+            if (freeBuffers.get(i).length >= length) {
+                return freeBuffers.remove(i);
+            }
+        }
+        if (!freeBuffers.isEmpty()) {
+            freeBuffers.remove(0);
+        }
+        return new byte[(length + 0xFFFF) & ~0xFFFF];
+    }
+
+    /** Journal record: type byte, frame count, then that many frame indices, all big-endian. */
+    private void appendJournal(byte type, int[] frameIndices, int count) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(5 + 4 * count);
+        record.put(type).putInt(count);
+        for (int i = 0; i < count; i++) {
+            record.putInt(frameIndices[i]);
+        }
+        journal.write(record.array(), 0, record.position());
+    }
+
+    private static void closeQuietly(FileOutputStream out) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Finishes a session whose writer did not close cleanly: deletes unpublished temporary files,
+     * records the interruption in the session summary and closes the journal.
+     *
+     * @return frames that were handed to the writer but never published, or 0 for a clean session
+     */
+    public static int recover(File sessionDirectory) throws IOException {
+        File journalFile = new File(sessionDirectory, JOURNAL_FILE);
+        if (!journalFile.exists()) {
+            return 0;
+        }
+        byte[] bytes = new byte[(int) journalFile.length()];
+        try (FileInputStream in = new FileInputStream(journalFile)) {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+        }
+
+        // There is a single writer, so only the last batch can be unfinished.
+        ByteBuffer records = ByteBuffer.wrap(bytes);
+        byte lastType = 0;
+        int lastBegin = -1;
+        int validEnd = 0;
+        while (records.remaining() >= 5) {
+            int start = records.position();
+            byte type = records.get();
+            int count = records.getInt();
+            if (count < 0 || records.remaining() < 4 * count) {
+                break; // torn final record
+            }
+            if (type == RECORD_BEGIN) {
+                lastBegin = start;
+            }
+            lastType = type;
+            records.position(records.position() + 4 * count);
+            validEnd = records.position();
+        }
+        if (lastType == RECORD_CLOSE) {
+            return 0;
+        }
+
+        int lost = 0;
+        if (lastType == RECORD_BEGIN) {
+            int count = records.getInt(lastBegin + 1);
+            for (int i = 0; i < count; i++) {
+                int frameIndex = records.getInt(lastBegin + 5 + 4 * i);
+                if (!new File(sessionDirectory, DirectoryFrameSink.frameFileName(frameIndex)).exists()) {
+                    lost++;
+                }
+            }
+        }
+        File[] temps = sessionDirectory.listFiles();
+        if (temps != null) {
+            for (File file : temps) {
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    file.delete();
+                }
+            }
+        }
+
+        RecordingSession.writeRecoveryNote(sessionDirectory, lost);
+        // Drop any torn tail so the close record is the one a later recovery reads last.
+        try (RandomAccessFile out = new RandomAccessFile(journalFile, "rw")) {
+            out.setLength(validEnd);
+            out.seek(validEnd);
+            out.write(new byte[]{RECORD_CLOSE, 0, 0, 0, 0});
+            out.getFD().sync();
+        }
+        return lost;
+    }
+
+    /**
+     * Runs {@link #recover(File)} on every {@code Session_*} directory under {@code root} whose
+     * journal was last written before {@code cutoffMillis}, so a session that starts recording
+     * meanwhile is left alone.
+     */
+    public static void recoverAll(File root, long cutoffMillis) {
+        File[] sessions = root.listFiles();
+        if (sessions == null) {
+            return;
+        }
+        for (File session : sessions) {
+            if (!session.isDirectory() || !session.getName().startsWith(RecordingSession.DIRECTORY_PREFIX)
+                    || new File(session, JOURNAL_FILE).lastModified() >= cutoffMillis) {
+                continue;
+            }
+            try {
+                recover(session);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static class PendingFrame {
+        final int frameIndex;
+        final byte[] data;
+        final int length;
+
+        PendingFrame(int frameIndex, byte[] data, int length) {
+            this.frameIndex = frameIndex;
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
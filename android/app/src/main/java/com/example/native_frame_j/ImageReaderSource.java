@@ -0,0 +1,85 @@
+package com.example.native_frame;
+
+import android.content.Context;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Surface;
+import android.view.WindowManager;
+
+/**
+ * {@link CameraSource} over the live camera's {@link ImageReader}: frames are delivered on the
+ * camera thread and closed as soon as the listener returns. Stamps each frame with the JPEG
+ * orientation for the current display rotation.
+ */
+public class ImageReaderSource implements CameraSource {
+
+    private final ImageReader reader;
+    private final Handler handler;
+    private final WindowManager windowManager;
+    private final int sensorOrientation;
+    private final boolean timestampIsRealtime;
+    private final SourceFrame frame = new SourceFrame();
+    private final PipelineMetrics metrics = PipelineMetrics.get();
+
+    /** @param timestampIsRealtime whether sensor timestamps are on the elapsed realtime clock */
+    public ImageReaderSource(Context context, ImageReader reader, Handler handler,
+                             int sensorOrientation, boolean timestampIsRealtime) {
+        this.reader = reader;
+        this.handler = handler;
+        this.windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        this.sensorOrientation = sensorOrientation;
+        this.timestampIsRealtime = timestampIsRealtime;
+    }
+
+    @Override
+    public void start(FrameListener listener) {
+        reader.setOnImageAvailableListener(r -> {
+            long acquireStart = System.nanoTime();
+            Image image = r.acquireLatestImage();
+            if (image == null) return;
+            metrics.recordSince(PipelineMetrics.Stage.ACQUIRE, acquireStart);
+            try {
+                Image.Plane[] planes = image.getPlanes();
+                frame.setPlanes(
+                        planes[0].getBuffer(), planes[0].getRowStride(),
+                        planes[1].getBuffer(), planes[2].getBuffer(),
+                        planes[1].getRowStride(), planes[1].getPixelStride(),
+                        image.getWidth(), image.getHeight());
+                frame.timestampNanos = image.getTimestamp();
+                // Location fixes are stamped with elapsed realtime; use the sensor clock only when it is the same one.
+                frame.locationTimeNanos = timestampIsRealtime ? image.getTimestamp() : SystemClock.elapsedRealtimeNanos();
+                frame.rotationDegrees = currentJpegOrientation();
+                listener.onFrame(frame);
+            } finally {
+                frame.setPlanes(null, 0, null, null, 0, 0, 0, 0);
+                image.close();
+            }
+        }, handler);
+    }
+
+    @Override
+    public void stop() {
+        reader.setOnImageAvailableListener(null, null);
+    }
+
+    private int currentJpegOrientation() {
+        int displayRotation = windowManager.getDefaultDisplay().getRotation();
+        int displayRotationDegrees;
+        switch (displayRotation) {
+            case Surface.ROTATION_90:
+                displayRotationDegrees = 90;
+                break;
+            case Surface.ROTATION_180:
+                displayRotationDegrees = 180;
+                break;
+            case Surface.ROTATION_270:
+                displayRotationDegrees = 270;
+                break;
+            default:
+                displayRotationDegrees = 0;
+        }
+        return (sensorOrientation - displayRotationDegrees + 360) % 360;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.native_frame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * NV21 to baseline JPEG compression, so the save path does not depend on Android's
+ * {@code YuvImage}: the app uses {@link YuvImageJpegEncoder}, JVM harnesses plug in their own.
+ */
+public interface JpegEncoder {
+
+    /** Compresses a packed NV21 frame and appends the JPEG to {@code out}; must be thread-safe. */
+    void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException;
+}
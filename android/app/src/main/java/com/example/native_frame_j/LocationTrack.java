@@ -0,0 +1,133 @@
+package com.example.native_frame;
+
+/**
+ * Time-ordered ring of location fixes kept in parallel primitive arrays. Frames resolve their
+ * position by binary search on the fix timestamps and linear interpolation between the two
+ * surrounding fixes. All timestamps are on the same clock as the frame timestamps passed to
+ * {@link #resolve}, normally elapsed-realtime nanoseconds.
+ */
+public class LocationTrack {
+
+    /** No fix is close enough in time to place the frame. */
+    public static final int UNRESOLVED = 0;
+    /** The frame is after the newest fix and took its position; a later fix can still refine it. */
+    public static final int HELD = 1;
+    /** The position is final: interpolated between two fixes, or held from the first fix. */
+    public static final int RESOLVED = 2;
+
+    private final long[] times;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] accuracies;
+    private final long maxExtrapolationNanos;
+
+    /** Index of the oldest fix in the ring. */
+    private int start = 0;
+    private int size = 0;
+
+    /**
+     * @param capacity              number of fixes retained; older ones are overwritten
+     * @param maxExtrapolationNanos how far before the first or after the last fix a frame may
+     *                              still take that fix's position
+     */
+    public LocationTrack(int capacity, long maxExtrapolationNanos) {
+        times = new long[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        accuracies = new float[capacity];
+        this.maxExtrapolationNanos = maxExtrapolationNanos;
+    }
+
+    /** Appends a fix. Fixes older than the newest one already stored are ignored. */
+    public synchronized void add(long timeNanos, double latitude, double longitude, float accuracy) {
+        if (size > 0 && timeNanos <= times[physical(size - 1)]) {
+            return;
+        }
+        int slot;
+        if (size < times.length) {
+            slot = physical(size);
+            size++;
+        } else {
+            slot = start;
+            start = (start + 1) % times.length;
+        }
+        times[slot] = timeNanos;
+        latitudes[slot] = latitude;
+        longitudes[slot] = longitude;
+        accuracies[slot] = accuracy;
+    }
+
+    public synchronized void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Resolves the position at {@code timeNanos} into {@code out} as {latitude, longitude, accuracy}.
+     * Fixes only ever arrive in time order, so a frame at or before the newest fix is placed for
+     * good; one after it holds the newest position until the next fix brackets it.
+     *
+     * @return {@link #RESOLVED}, {@link #HELD}, or {@link #UNRESOLVED} leaving {@code out} untouched
+     */
+    public synchronized int resolve(long timeNanos, double[] out) {
+        if (size == 0) {
+            return UNRESOLVED;
+        }
+        int first = physical(0);
+        int last = physical(size - 1);
+        if (timeNanos <= times[first]) {
+            if (timeNanos < times[first] - maxExtrapolationNanos) {
+                return UNRESOLVED;
+            }
+            copy(first, out);
+            return RESOLVED;
+        }
+        if (timeNanos >= times[last]) {
+            if (timeNanos > times[last] + maxExtrapolationNanos) {
+                return UNRESOLVED;
+            }
+            copy(last, out);
+            return timeNanos == times[last] ? RESOLVED : HELD;
+        }
+
+        // Largest logical index whose time is <= timeNanos; exists because of the checks above.
+        int low = 0;
+        int high = size - 1;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (times[physical(mid)] <= timeNanos) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        int before = physical(low);
+        int after = physical(high);
+        double t = (double) (timeNanos - times[before]) / (times[after] - times[before]);
+        out[0] = latitudes[before] + (latitudes[after] - latitudes[before]) * t;
+        double deltaLongitude = longitudes[after] - longitudes[before];
+        if (deltaLongitude > 180) {
+            deltaLongitude -= 360;
+        } else if (deltaLongitude < -180) {
+            deltaLongitude += 360;
+        }
+        double longitude = longitudes[before] + deltaLongitude * t;
+        out[1] = longitude > 180 ? longitude - 360 : longitude < -180 ? longitude + 360 : longitude;
+        out[2] = Math.max(accuracies[before], accuracies[after]);
+        return RESOLVED;
+    }
+
+    private void copy(int slot, double[] out) {
+        out[0] = latitudes[slot];
+        out[1] = longitudes[slot];
+        out[2] = accuracies[slot];
+    }
+
+    private int physical(int logical) {
+        return (start + logical) % times.length;
+    }
+}
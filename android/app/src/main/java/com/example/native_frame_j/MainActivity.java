@@ -5,27 +5,187 @@ import android.os.Bundle;
 
 import androidx.annotation.NonNull;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import io.flutter.embedding.android.FlutterActivity;
 import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 
 public class MainActivity extends FlutterActivity {
 
     private static final String CHANNEL = "com.example.native_frame/camera";
+    private static final int DEFAULT_PAGE_SIZE = 200;
+
+    private final ExecutorService queryExecutor = Executors.newSingleThreadExecutor();
+    private CaptureController captureController;
 
     @Override
     public void configureFlutterEngine(@NonNull FlutterEngine flutterEngine) {
         super.configureFlutterEngine(flutterEngine);
 
-        new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), CHANNEL)
-                .setMethodCallHandler((call, result) -> {
-                    if ("startCamera".equals(call.method)) {
-                        Intent intent = new Intent(this, CameraActivity.class);
-                        startActivity(intent);
-                        result.success("CameraActivity started");
-                    } else {
-                        result.notImplemented();
+        MethodChannel channel = new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), CHANNEL);
+        captureController = new CaptureController(this, flutterEngine.getRenderer(), channel);
+        channel.setMethodCallHandler((call, result) -> {
+            if ("startCamera".equals(call.method)) {
+                // Start the camera thread and configuration while the activity launches.
+                CameraStartup.prewarm(this);
+                Intent intent = new Intent(this, CameraActivity.class);
+                startActivity(intent);
+                result.success("CameraActivity started");
+            } else if ("getPipelineMetrics".equals(call.method)) {
+                result.success(PipelineMetrics.get().snapshot());
+            } else if ("getDeferredEncodeProgress".equals(call.method)) {
+                result.success(DeferredTranscodeJob.progress());
+            } else if ("listSessions".equals(call.method)) {
+                // Reads a manifest header per session; keep that file I/O off the UI thread.
+                queryExecutor.execute(() -> {
+                    List<Map<String, Object>> sessions = listSessions();
+                    runOnUiThread(() -> result.success(sessions));
+                });
+            } else if ("queryFrames".equals(call.method)) {
+                queryExecutor.execute(() -> {
+                    try {
+                        Map<String, Object> page = queryFrames(call);
+                        runOnUiThread(() -> result.success(page));
+                    } catch (IllegalArgumentException e) {
+                        runOnUiThread(() -> result.error("bad_args", e.getMessage(), null));
+                    } catch (IOException | RuntimeException e) {
+                        e.printStackTrace();
+                        runOnUiThread(() -> result.error("query_failed", String.valueOf(e.getMessage()), null));
                     }
                 });
+            } else if ("exportSession".equals(call.method)) {
+                String path = call.argument("path");
+                if (path == null) {
+                    result.error("bad_args", "path is required", null);
+                    return;
+                }
+                // Writes a JPEG per archived frame next to the archive.
+                queryExecutor.execute(() -> {
+                    try {
+                        File session = new File(path);
+                        int exported = SegmentArchiveExporter.exportAll(session, session);
+                        runOnUiThread(() -> result.success(exported));
+                    } catch (IOException | RuntimeException e) {
+                        e.printStackTrace();
+                        runOnUiThread(() -> result.error("export_failed", String.valueOf(e.getMessage()), null));
+                    }
+                });
+            } else if (!captureController.onMethodCall(call, result)) {
+                result.notImplemented();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (captureController != null) {
+            captureController.onResume();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        if (captureController != null) {
+            captureController.onPause();
+        }
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (captureController != null) {
+            captureController.onDestroy();
+        }
+        queryExecutor.shutdown();
+        super.onDestroy();
+    }
+
+    /**
+     * Runs a frame index query. With {@code minLatitude}, {@code maxLatitude}, {@code minLongitude}
+     * and {@code maxLongitude} it is a box query, otherwise a time-range query; {@code fromTimestamp},
+     * {@code toTimestamp}, {@code offset} and {@code limit} are optional.
+     *
+     * @throws IllegalArgumentException if a box query is missing one of its bounds
+     */
+    private Map<String, Object> queryFrames(MethodCall call) throws IOException {
+        FrameIndex index = FrameIndex.shared(ImageUtils.getSessionsRoot());
+        long from = argument(call, "fromTimestamp", Long.MIN_VALUE);
+        long to = argument(call, "toTimestamp", Long.MAX_VALUE);
+        int offset = (int) argument(call, "offset", 0);
+        int limit = (int) argument(call, "limit", DEFAULT_PAGE_SIZE);
+        FrameIndex.Page page;
+        if (call.hasArgument("minLatitude")) {
+            page = index.queryBox(coordinate(call, "minLatitude"), coordinate(call, "maxLatitude"),
+                    coordinate(call, "minLongitude"), coordinate(call, "maxLongitude"),
+                    from, to, offset, limit);
+        } else {
+            page = index.queryTime(from, to, offset, limit);
+        }
+        return page.toMap();
+    }
+
+    /** Dart ints arrive as Integer or Long depending on their size. */
+    private static long argument(MethodCall call, String key, long fallback) {
+        Number value = call.argument(key);
+        return value != null ? value.longValue() : fallback;
+    }
+
+    /** Box bounds are required; a whole-degree bound may arrive as an int rather than a double. */
+    private static double coordinate(MethodCall call, String key) {
+        Number value = call.argument(key);
+        if (value == null) {
+            throw new IllegalArgumentException(key + " is required for a box query");
+        }
+        return value.doubleValue();
+    }
+
+    /**
+     * One entry per session folder, newest first, built from the manifest headers only; sessions
+     * recorded in deferred-encode mode also report their {@code framesAwaitingEncode}.
+     */
+    private List<Map<String, Object>> listSessions() {
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        File[] directories = ImageUtils.getSessionsRoot().listFiles();
+        if (directories == null) {
+            return sessions;
+        }
+        Arrays.sort(directories);
+        for (int i = directories.length - 1; i >= 0; i--) {
+            File directory = directories[i];
+            if (!directory.isDirectory() || !directory.getName().startsWith(RecordingSession.DIRECTORY_PREFIX)) {
+                continue;
+            }
+            Map<String, Object> entry;
+            try {
+                SessionManifest.Summary summary = SessionManifest.readSummary(directory);
+                // Sessions recorded before manifests existed are listed without totals.
+                entry = summary != null ? summary.toMap() : new HashMap<>();
+            } catch (IOException e) {
+                e.printStackTrace();
+                entry = new HashMap<>();
+            }
+            if (DeferredTranscoder.hasDeferredFrames(directory)) {
+                try {
+                    entry.put("framesAwaitingEncode", DeferredTranscoder.remainingFrames(directory));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            entry.put("name", directory.getName());
+            entry.put("path", directory.getAbsolutePath());
+            sessions.add(entry);
+        }
+        return sessions;
     }
 }
@@ -0,0 +1,274 @@
+package com.example.native_frame;
+
+import java.io.IOException;
+
+/**
+ * Fast lossless compression of NV21 frames for {@link DeferredFrameWriter}. Each sample is
+ * predicted from its left, upper and upper-left neighbours of the same channel (the LOCO-I
+ * median edge predictor) and the residual is written as a Rice code whose parameter follows a
+ * running average of recent residuals, kept separately for Y, V and U. Camera noise leaves few
+ * repeated byte sequences for an LZ-style matcher to find but keeps residuals small, so this is
+ * where the savings are, at a fraction of the cost of a JPEG encode. Stateless and thread-safe.
+ */
+public final class Nv21LosslessCodec {
+
+    /** Quotients from here on are escaped and the residual stored in 8 bits. */
+    private static final int ESCAPE_QUOTIENT = 24;
+    /** Residual averages are kept as 16 times the mean, decaying by 1/16 per sample. */
+    private static final int AVERAGE_SHIFT = 4;
+    private static final int INITIAL_AVERAGE = 4 << AVERAGE_SHIFT;
+
+    private Nv21LosslessCodec() {
+    }
+
+    /**
+     * Size {@code out} must have for {@link #compress}: the raw frame size plus room for one
+     * worst-case row, so the encoder can give up before writing past it.
+     */
+    public static int outputCapacity(int width, int height) {
+        return YuvPlaneExtractor.nv21Size(width, height) + 4 * width + 16;
+    }
+
+    /**
+     * Compresses an NV21 frame into {@code out}, which needs {@link #outputCapacity} bytes.
+     * Returns the compressed length, or -1 if the frame would not get smaller, in which case
+     * it is better stored as is.
+     */
+    public static int compress(byte[] nv21, int width, int height, byte[] out) {
+        if (out.length < outputCapacity(width, height)) {
+            throw new IllegalArgumentException("Output buffer too small: " + out.length);
+        }
+        Encoder encoder = new Encoder(out, YuvPlaneExtractor.nv21Size(width, height));
+        if (!encoder.plane(nv21, 0, width, height, 1)
+                || !encoder.plane(nv21, width * height, 2 * (width / 2), height / 2, 2)) {
+            return -1;
+        }
+        return encoder.finish();
+    }
+
+    /** Restores a frame written by {@link #compress} into {@code nv21}. */
+    public static void decompress(byte[] in, int offset, int length, int width, int height, byte[] nv21)
+            throws IOException {
+        if (nv21.length < YuvPlaneExtractor.nv21Size(width, height)) {
+            throw new IllegalArgumentException("Output buffer too small: " + nv21.length);
+        }
+        Decoder decoder = new Decoder(in, offset, length);
+        decoder.plane(nv21, 0, width, height, 1);
+        decoder.plane(nv21, width * height, 2 * (width / 2), height / 2, 2);
+    }
+
+    /**
+     * Prediction for the sample at {@code at}: the left neighbour on the first row, the upper one
+     * in the first column, otherwise the LOCO-I median edge detector.
+     */
+    private static int predict(byte[] samples, int at, int column, int rowBytes, boolean firstRow, int step) {
+        if (firstRow) {
+            return column >= step ? samples[at - step] & 0xFF : 128;
+        }
+        if (column < step) {
+            return samples[at - rowBytes] & 0xFF;
+        }
+        return medianEdge(samples[at - step] & 0xFF, samples[at - rowBytes] & 0xFF,
+                samples[at - rowBytes - step] & 0xFF);
+    }
+
+    /** The median of left, above and the planar estimate, written as a clamp so it compiles without branches. */
+    private static int medianEdge(int left, int above, int upperLeft) {
+        return Math.max(Math.min(left, above), Math.min(Math.max(left, above), left + above - upperLeft));
+    }
+
+    /** Rice parameter for a running average kept as 16 times the mean residual: about log2 of the mean. */
+    private static int riceParameter(int average) {
+        return Math.max(0, 31 - AVERAGE_SHIFT - Integer.numberOfLeadingZeros(average));
+    }
+
+    private static final class Encoder {
+        private final byte[] out;
+        private final int limit;
+        private int position = 0;
+        private long bits = 0;
+        private int bitCount = 0;
+
+        Encoder(byte[] out, int limit) {
+            this.out = out;
+            this.limit = limit;
+        }
+
+        /** Codes one plane; {@code step} is the distance between horizontal neighbours of a channel. */
+        boolean plane(byte[] samples, int offset, int rowBytes, int rows, int step) {
+            int[] averages = {INITIAL_AVERAGE, INITIAL_AVERAGE};
+            for (int row = 0; row < rows; row++) {
+                // Checked once per row; a row adds at most 4 bytes per sample.
+                if (position > limit) {
+                    return false;
+                }
+                int rowStart = offset + row * rowBytes;
+                int column = 0;
+                if (row == 0) {
+                    for (; column < rowBytes; column++) {
+                        code(samples[rowStart + column] - predict(samples, rowStart + column, column, rowBytes, true, step),
+                                averages, column & (step - 1));
+                    }
+                    continue;
+                }
+                for (; column < Math.min(step, rowBytes); column++) {
+                    code(samples[rowStart + column] - (samples[rowStart + column - rowBytes] & 0xFF),
+                            averages, column);
+                }
+                if (step == 1) {
+                    int average = averages[0];
+                    for (int at = rowStart + 1, end = rowStart + rowBytes; at < end; at++) {
+                        average = codeSample(samples, at, rowBytes, 1, average);
+                    }
+                    averages[0] = average;
+                } else {
+                    int averageV = averages[0];
+                    int averageU = averages[1];
+                    for (int at = rowStart + 2, end = rowStart + rowBytes - 1; at < end; at += 2) {
+                        averageV = codeSample(samples, at, rowBytes, 2, averageV);
+                        averageU = codeSample(samples, at + 1, rowBytes, 2, averageU);
+                    }
+                    averages[0] = averageV;
+                    averages[1] = averageU;
+                }
+            }
+            return position <= limit;
+        }
+
+        private int codeSample(byte[] samples, int at, int rowBytes, int step, int average) {
+            int prediction = medianEdge(samples[at - step] & 0xFF, samples[at - rowBytes] & 0xFF,
+                    samples[at - rowBytes - step] & 0xFF);
+            return put((byte) ((samples[at] & 0xFF) - prediction), average);
+        }
+
+        private void code(int difference, int[] averages, int channel) {
+            averages[channel] = put((byte) difference, averages[channel]);
+        }
+
+        /** Writes one residual and returns the channel's updated average. */
+        private int put(int residual, int average) {
+            int folded = (residual << 1) ^ (residual >> 31);
+            int k = riceParameter(average);
+            int quotient = folded >>> k;
+            if (quotient < ESCAPE_QUOTIENT) {
+                // quotient zeros, a one, then the k low bits.
+                write((1L << k) | (folded & ((1 << k) - 1)), quotient + 1 + k);
+            } else {
+                write(folded, ESCAPE_QUOTIENT + 8);
+            }
+            return average - (average >> AVERAGE_SHIFT) + folded;
+        }
+
+        private void write(long value, int count) {
+            bits = (bits << count) | value;
+            bitCount += count;
+            if (bitCount >= 32) {
+                bitCount -= 32;
+                int word = (int) (bits >>> bitCount);
+                out[position] = (byte) (word >>> 24);
+                out[position + 1] = (byte) (word >>> 16);
+                out[position + 2] = (byte) (word >>> 8);
+                out[position + 3] = (byte) word;
+                position += 4;
+            }
+        }
+
+        int finish() {
+            while (bitCount > 0) {
+                int shift = bitCount - 8;
+                out[position++] = (byte) (shift >= 0 ? bits >>> shift : bits << -shift);
+                bitCount = Math.max(0, shift);
+            }
+            return position <= limit ? position : -1;
+        }
+    }
+
+    private static final class Decoder {
+        private final byte[] in;
+        private final int end;
+        private int position;
+        private long bits = 0;
+        private int bitCount = 0;
+        /** Zero bits appended past the end of the input; a valid stream never consumes them. */
+        private int padding = 0;
+
+        Decoder(byte[] in, int offset, int length) {
+            this.in = in;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        void plane(byte[] samples, int offset, int rowBytes, int rows, int step) throws IOException {
+            int[] averages = {INITIAL_AVERAGE, INITIAL_AVERAGE};
+            for (int row = 0; row < rows; row++) {
+                int rowStart = offset + row * rowBytes;
+                int column = 0;
+                if (row == 0) {
+                    for (; column < rowBytes; column++) {
+                        int at = rowStart + column;
+                        samples[at] = (byte) (predict(samples, at, column, rowBytes, true, step)
+                                + take(averages, column & (step - 1)));
+                    }
+                    continue;
+                }
+                for (; column < Math.min(step, rowBytes); column++) {
+                    int at = rowStart + column;
+                    samples[at] = (byte) ((samples[at - rowBytes] & 0xFF) + take(averages, column));
+                }
+                for (int at = rowStart + step, end = rowStart + rowBytes; at < end; at++) {
+                    int channel = (at - rowStart) & (step - 1);
+                    samples[at] = (byte) (medianEdge(samples[at - step] & 0xFF, samples[at - rowBytes] & 0xFF,
+                            samples[at - rowBytes - step] & 0xFF) + take(averages, channel));
+                }
+                if (padding > bitCount) {
+                    throw new IOException("Compressed frame is truncated");
+                }
+            }
+            if (padding > bitCount) {
+                throw new IOException("Compressed frame is truncated");
+            }
+        }
+
+        /** Reads one residual and updates the channel's average. */
+        private int take(int[] averages, int channel) {
+            int average = averages[channel];
+            int k = riceParameter(average);
+            if (bitCount < 32) {
+                fill();
+            }
+            int window = (int) (bits >>> (bitCount - 32));
+            int quotient = Integer.numberOfLeadingZeros(window);
+            int folded;
+            if (quotient >= ESCAPE_QUOTIENT) {
+                folded = window & 0xFF;
+                bitCount -= ESCAPE_QUOTIENT + 8;
+            } else {
+                bitCount -= quotient + 1;
+                folded = (quotient << k) | (int) ((bits >>> (bitCount - k)) & ((1 << k) - 1));
+                bitCount -= k;
+            }
+            averages[channel] = average - (average >> AVERAGE_SHIFT) + folded;
+            return (folded >>> 1) ^ -(folded & 1);
+        }
+
+        /** Tops the bit buffer up to at least 32 bits. */
+        private void fill() {
+            if (position + 4 <= end) {
+                bits = (bits << 32) | ((in[position] & 0xFFL) << 24) | ((in[position + 1] & 0xFF) << 16)
+                        | ((in[position + 2] & 0xFF) << 8) | (in[position + 3] & 0xFF);
+                position += 4;
+                bitCount += 32;
+                return;
+            }
+            while (bitCount < 32) {
+                if (position < end) {
+                    bits = (bits << 8) | (in[position++] & 0xFF);
+                } else {
+                    bits <<= 8;
+                    padding += 8;
+                }
+                bitCount += 8;
+            }
+        }
+    }
+}
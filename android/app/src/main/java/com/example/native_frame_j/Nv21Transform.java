@@ -0,0 +1,437 @@
+package com.example.native_frame;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Rotation and downscaling of packed NV21 frames, for saving frames upright and at smaller
+ * sizes than the capture. Rotation copies 32x32 tiles so that both the rows read and the rows
+ * written stay in cache; downscaling halves with a 2x2 box filter as often as it can and
+ * finishes with a fixed-point bilinear filter. Large frames are split into bands of rows
+ * transformed on a fork-join pool. Band tasks and filter tables are kept per calling thread, so
+ * nothing is allocated per frame. Output is bit-exact with the per-pixel versions in the
+ * benchmarks' {@code Nv21Reference}.
+ */
+public class Nv21Transform {
+
+    private static final int TILE = 32;
+    /** Smaller frames are not worth handing to other threads. */
+    private static final int PARALLEL_MIN_PIXELS = 1280 * 720;
+
+    private static final int ROTATE = 0;
+    private static final int BOX = 1;
+    private static final int BILINEAR = 2;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<>();
+
+    /** @param parallelism bands a large frame is split into; 1 transforms on the calling thread */
+    public Nv21Transform(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Rotates clockwise by {@code degrees} (0, 90, 180 or 270) into {@code out}, which must not
+     * be {@code in}. For 90 and 270 the output is {@code height x width}.
+     */
+    public void rotate(byte[] in, int width, int height, int degrees, byte[] out) {
+        checkSize(width, height);
+        if (degrees == 0) {
+            System.arraycopy(in, 0, out, 0, YuvPlaneExtractor.nv21Size(width, height));
+            return;
+        }
+        if (degrees != 90 && degrees != 180 && degrees != 270) {
+            throw new IllegalArgumentException("Unsupported rotation: " + degrees);
+        }
+        run(ROTATE, in, width, height, out, degrees == 180 ? width : height, degrees == 180 ? height : width,
+                degrees, height, height / 2, TILE, scratch());
+    }
+
+    /**
+     * Scales down to {@code outWidth x outHeight} (even, and no larger than the input), halving
+     * with {@link #downscale2x} while that does not undershoot and bilinear from there.
+     */
+    public void downscale(byte[] in, int width, int height, byte[] out, int outWidth, int outHeight) {
+        checkSize(width, height);
+        checkSize(outWidth, outHeight);
+        if (outWidth > width || outHeight > height) {
+            throw new IllegalArgumentException("Cannot upscale " + width + "x" + height
+                    + " to " + outWidth + "x" + outHeight);
+        }
+        Scratch frame = scratch();
+        byte[] current = in;
+        while (width / 2 >= outWidth && height / 2 >= outHeight && width % 4 == 0 && height % 4 == 0) {
+            int halfWidth = width / 2;
+            int halfHeight = height / 2;
+            byte[] target = halfWidth == outWidth && halfHeight == outHeight
+                    ? out : frame.buffer(current, YuvPlaneExtractor.nv21Size(halfWidth, halfHeight));
+            run(BOX, current, width, height, target, halfWidth, halfHeight, 0, halfHeight, halfHeight / 2, 2, frame);
+            if (target == out) {
+                return;
+            }
+            current = target;
+            width = halfWidth;
+            height = halfHeight;
+        }
+        if (width == outWidth && height == outHeight) {
+            System.arraycopy(current, 0, out, 0, YuvPlaneExtractor.nv21Size(width, height));
+            return;
+        }
+        scaleBilinear(current, width, height, out, outWidth, outHeight, frame);
+    }
+
+    /** Halves both dimensions by averaging each 2x2 block, with rounding, on every plane. */
+    public void downscale2x(byte[] in, int width, int height, byte[] out) {
+        checkSize(width, height);
+        int outWidth = width / 2;
+        int outHeight = height / 2;
+        run(BOX, in, width, height, out, outWidth, outHeight, 0, outHeight, outHeight / 2, 2, scratch());
+    }
+
+    /**
+     * Resamples to {@code outWidth x outHeight} with a bilinear filter on pixel centres, weights
+     * in 1/256ths. Meant for factors below 2; {@link #downscale} gets there with box steps first.
+     */
+    public void scaleBilinear(byte[] in, int width, int height, byte[] out, int outWidth, int outHeight) {
+        checkSize(width, height);
+        checkSize(outWidth, outHeight);
+        scaleBilinear(in, width, height, out, outWidth, outHeight, scratch());
+    }
+
+    /** Stops the pool's threads; the transform must not be used afterwards. */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private void scaleBilinear(byte[] in, int width, int height, byte[] out, int outWidth, int outHeight,
+                               Scratch frame) {
+        frame.lumaX = samplePositions(width, outWidth, frame.lumaX);
+        frame.chromaX = samplePositions(width / 2, outWidth / 2, frame.chromaX);
+        run(BILINEAR, in, width, height, out, outWidth, outHeight, 0, outHeight, outHeight / 2, 2, frame);
+    }
+
+    private static void checkSize(int width, int height) {
+        if (width < 2 || height < 2 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("NV21 needs an even size: " + width + "x" + height);
+        }
+    }
+
+    private Scratch scratch() {
+        Scratch frame = scratch.get();
+        if (frame == null) {
+            frame = new Scratch(parallelism);
+            scratch.set(frame);
+        }
+        return frame;
+    }
+
+    /**
+     * Runs one operation over {@code rows} luma and {@code chromaRows} chroma rows, split into
+     * bands of a multiple of {@code align} rows when the frame is large enough.
+     */
+    private void run(int operation, byte[] in, int width, int height, byte[] out, int outWidth, int outHeight,
+                     int degrees, int rows, int chromaRows, int align, Scratch frame) {
+        int bandCount = pool != null && width * height >= PARALLEL_MIN_PIXELS ? parallelism : 1;
+        int rowsPerBand = (rows + bandCount - 1) / bandCount;
+        rowsPerBand = Math.max(align, (rowsPerBand + align - 1) / align * align);
+        bandCount = (rows + rowsPerBand - 1) / rowsPerBand;
+        for (int i = 0; i < bandCount; i++) {
+            Band band = frame.bands[i];
+            band.operation = operation;
+            band.in = in;
+            band.width = width;
+            band.height = height;
+            band.out = out;
+            band.outWidth = outWidth;
+            band.outHeight = outHeight;
+            band.degrees = degrees;
+            band.first = i * rowsPerBand;
+            band.last = Math.min(rows, band.first + rowsPerBand);
+            band.chromaFirst = band.first / 2;
+            band.chromaLast = band.last == rows ? chromaRows : band.last / 2;
+            band.frame = frame;
+        }
+        if (bandCount == 1) {
+            frame.bands[0].transform();
+        } else {
+            frame.root.bandCount = bandCount;
+            frame.root.reinitialize();
+            pool.invoke(frame.root);
+        }
+        for (int i = 0; i < bandCount; i++) {
+            frame.bands[i].in = null;
+            frame.bands[i].out = null;
+        }
+    }
+
+    /**
+     * Source position of each output sample as {@code index << 8 | weight}: the first of the two
+     * neighbours and the second one's weight out of 256. The second neighbour is clamped by the
+     * caller at the last sample.
+     */
+    static int[] samplePositions(int inSize, int outSize, int[] positions) {
+        if (positions == null || positions.length < outSize) {
+            positions = new int[outSize];
+        }
+        for (int i = 0; i < outSize; i++) {
+            positions[i] = samplePosition(i, inSize, outSize);
+        }
+        return positions;
+    }
+
+    /** Centre of output sample {@code i} mapped onto the input, in 1/256ths, clamped at 0. */
+    static int samplePosition(int i, int inSize, int outSize) {
+        long step = ((long) inSize << 16) / outSize;
+        long position = i * step + (step >> 1) - 0x8000;
+        return position < 0 ? 0 : (int) (position >> 8);
+    }
+
+    private static void rotateRows(byte[] in, int width, int height, int degrees, byte[] out, int first, int last,
+                                   int chromaFirst, int chromaLast) {
+        int outWidth = degrees == 180 ? width : height;
+        int frameSize = width * height;
+        if (degrees == 180) {
+            for (int y = first; y < last; y++) {
+                int from = y * width;
+                int to = (height - 1 - y) * width + width - 1;
+                for (int x = 0; x < width; x++) {
+                    out[to - x] = in[from + x];
+                }
+            }
+            for (int y = chromaFirst; y < chromaLast; y++) {
+                int from = frameSize + y * width;
+                int to = frameSize + (height / 2 - 1 - y) * width + width - 2;
+                for (int x = 0; x < width; x += 2) {
+                    out[to - x] = in[from + x];
+                    out[to - x + 1] = in[from + x + 1];
+                }
+            }
+            return;
+        }
+
+        // 90: (x, y) goes to row x, column height-1-y. 270: row width-1-x, column y.
+        boolean clockwise = degrees == 90;
+        for (int tileY = first; tileY < last; tileY += TILE) {
+            int tileYEnd = Math.min(tileY + TILE, last);
+            for (int tileX = 0; tileX < width; tileX += TILE) {
+                int tileXEnd = Math.min(tileX + TILE, width);
+                for (int x = tileX; x < tileXEnd; x++) {
+                    int from = tileY * width + x;
+                    if (clockwise) {
+                        int to = x * outWidth + height - 1 - tileY;
+                        for (int y = tileY; y < tileYEnd; y++, from += width, to--) {
+                            out[to] = in[from];
+                        }
+                    } else {
+                        int to = (width - 1 - x) * outWidth + tileY;
+                        for (int y = tileY; y < tileYEnd; y++, from += width, to++) {
+                            out[to] = in[from];
+                        }
+                    }
+                }
+            }
+        }
+
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int outRowBytes = outWidth / 2 * 2;
+        for (int tileY = chromaFirst; tileY < chromaLast; tileY += TILE) {
+            int tileYEnd = Math.min(tileY + TILE, chromaLast);
+            for (int tileX = 0; tileX < chromaWidth; tileX += TILE) {
+                int tileXEnd = Math.min(tileX + TILE, chromaWidth);
+                for (int x = tileX; x < tileXEnd; x++) {
+                    int from = frameSize + tileY * width + x * 2;
+                    if (clockwise) {
+                        int to = frameSize + x * outRowBytes + (chromaHeight - 1 - tileY) * 2;
+                        for (int y = tileY; y < tileYEnd; y++, from += width, to -= 2) {
+                            out[to] = in[from];
+                            out[to + 1] = in[from + 1];
+                        }
+                    } else {
+                        int to = frameSize + (chromaWidth - 1 - x) * outRowBytes + tileY * 2;
+                        for (int y = tileY; y < tileYEnd; y++, from += width, to += 2) {
+                            out[to] = in[from];
+                            out[to + 1] = in[from + 1];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void boxRows(byte[] in, int width, int height, byte[] out, int outWidth, int outHeight,
+                                int first, int last, int chromaFirst, int chromaLast) {
+        for (int y = first; y < last; y++) {
+            int top = y * 2 * width;
+            int to = y * outWidth;
+            for (int x = 0; x < outWidth; x++, top += 2) {
+                int bottom = top + width;
+                out[to + x] = (byte) (((in[top] & 0xFF) + (in[top + 1] & 0xFF)
+                        + (in[bottom] & 0xFF) + (in[bottom + 1] & 0xFF) + 2) >> 2);
+            }
+        }
+
+        int chromaWidth = outWidth / 2;
+        int inOffset = width * height;
+        int outOffset = outWidth * outHeight;
+        for (int y = chromaFirst; y < chromaLast; y++) {
+            int top = inOffset + y * 2 * width;
+            int to = outOffset + y * outWidth;
+            for (int x = 0; x < chromaWidth; x++, top += 4, to += 2) {
+                int bottom = top + width;
+                out[to] = (byte) (((in[top] & 0xFF) + (in[top + 2] & 0xFF)
+                        + (in[bottom] & 0xFF) + (in[bottom + 2] & 0xFF) + 2) >> 2);
+                out[to + 1] = (byte) (((in[top + 1] & 0xFF) + (in[top + 3] & 0xFF)
+                        + (in[bottom + 1] & 0xFF) + (in[bottom + 3] & 0xFF) + 2) >> 2);
+            }
+        }
+    }
+
+    private static void bilinearRows(byte[] in, int width, int height, byte[] out, int outWidth, int outHeight,
+                                     int[] lumaX, int[] chromaX, int first, int last, int chromaFirst, int chromaLast) {
+        for (int y = first; y < last; y++) {
+            int position = samplePosition(y, height, outHeight);
+            int top = Math.min(position >> 8, height - 1) * width;
+            int bottom = Math.min((position >> 8) + 1, height - 1) * width;
+            int weightY = position & 0xFF;
+            int to = y * outWidth;
+            for (int x = 0; x < outWidth; x++) {
+                int column = lumaX[x] >> 8;
+                int next = Math.min(column + 1, width - 1);
+                int weightX = lumaX[x] & 0xFF;
+                out[to + x] = (byte) blend(in[top + column] & 0xFF, in[top + next] & 0xFF,
+                        in[bottom + column] & 0xFF, in[bottom + next] & 0xFF, weightX, weightY);
+            }
+        }
+
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int outChromaWidth = outWidth / 2;
+        int outChromaHeight = outHeight / 2;
+        int inOffset = width * height;
+        int outOffset = outWidth * outHeight;
+        for (int y = chromaFirst; y < chromaLast; y++) {
+            int position = samplePosition(y, chromaHeight, outChromaHeight);
+            int top = inOffset + Math.min(position >> 8, chromaHeight - 1) * width;
+            int bottom = inOffset + Math.min((position >> 8) + 1, chromaHeight - 1) * width;
+            int weightY = position & 0xFF;
+            int to = outOffset + y * outWidth;
+            for (int x = 0; x < outChromaWidth; x++, to += 2) {
+                int column = (chromaX[x] >> 8) * 2;
+                int next = Math.min((chromaX[x] >> 8) + 1, chromaWidth - 1) * 2;
+                int weightX = chromaX[x] & 0xFF;
+                out[to] = (byte) blend(in[top + column] & 0xFF, in[top + next] & 0xFF,
+                        in[bottom + column] & 0xFF, in[bottom + next] & 0xFF, weightX, weightY);
+                out[to + 1] = (byte) blend(in[top + column + 1] & 0xFF, in[top + next + 1] & 0xFF,
+                        in[bottom + column + 1] & 0xFF, in[bottom + next + 1] & 0xFF, weightX, weightY);
+            }
+        }
+    }
+
+    /** Bilinear blend of four samples with weights in 1/256ths, rounded. */
+    static int blend(int topLeft, int topRight, int bottomLeft, int bottomRight, int weightX, int weightY) {
+        int top = topLeft * (256 - weightX) + topRight * weightX;
+        int bottom = bottomLeft * (256 - weightX) + bottomRight * weightX;
+        return (top * (256 - weightY) + bottom * weightY + 0x8000) >> 16;
+    }
+
+    /** Per calling thread: band tasks, bilinear tables and intermediate frames for multi-step downscales. */
+    private static final class Scratch {
+        final Band[] bands;
+        final Root root;
+        int[] lumaX;
+        int[] chromaX;
+        private byte[] first;
+        private byte[] second;
+
+        Scratch(int parallelism) {
+            bands = new Band[parallelism];
+            for (int i = 0; i < parallelism; i++) {
+                bands[i] = new Band();
+            }
+            root = new Root(bands);
+        }
+
+        /** An intermediate frame of {@code size} bytes that is not {@code current}. */
+        byte[] buffer(byte[] current, int size) {
+            if (current != first) {
+                if (first == null || first.length < size) {
+                    first = new byte[size];
+                }
+                return first;
+            }
+            if (second == null || second.length < size) {
+                second = new byte[size];
+            }
+            return second;
+        }
+    }
+
+    @SuppressWarnings("serial") // Fork/join tasks here are never serialized.
+    private static final class Root extends RecursiveAction {
+        private final Band[] bands;
+        int bandCount;
+
+        Root(Band[] bands) {
+            this.bands = bands;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = 0; i < bandCount; i++) {
+                bands[i].reinitialize();
+            }
+            for (int i = 1; i < bandCount; i++) {
+                bands[i].fork();
+            }
+            bands[0].transform();
+            for (int i = bandCount - 1; i >= 1; i--) {
+                bands[i].join();
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Band extends RecursiveAction {
+        int operation;
+        byte[] in;
+        int width;
+        int height;
+        byte[] out;
+        int outWidth;
+        int outHeight;
+        int degrees;
+        int first;
+        int last;
+        int chromaFirst;
+        int chromaLast;
+        Scratch frame;
+
+        @Override
+        protected void compute() {
+            transform();
+        }
+
+        void transform() {
+            switch (operation) {
+                case ROTATE:
+                    rotateRows(in, width, height, degrees, out, first, last, chromaFirst, chromaLast);
+                    break;
+                case BOX:
+                    boxRows(in, width, height, out, outWidth, outHeight, first, last, chromaFirst, chromaLast);
+                    break;
+                default:
+                    bilinearRows(in, width, height, out, outWidth, outHeight, frame.lumaX, frame.chromaX,
+                            first, last, chromaFirst, chromaLast);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.native_frame;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base of the off-device {@link CameraSource}s: delivers frames from its own thread, paced by
+ * their timestamps so the stream runs at the rate it was generated or recorded at. Like a real
+ * camera it does not wait for a slow listener: a frame that is already a full frame interval
+ * late is skipped, which leaves a gap in the timestamps for {@link FrameGapDetector} to count.
+ * A source runs once; start a new one to replay again.
+ */
+public abstract class PacedCameraSource implements CameraSource {
+
+    private final String threadName;
+    private double speed = 1.0;
+    private volatile boolean running = false;
+    private Thread thread;
+    private volatile long framesDelivered = 0;
+    private volatile long framesSkipped = 0;
+    private volatile IOException failure;
+
+    protected PacedCameraSource(String threadName) {
+        this.threadName = threadName;
+    }
+
+    /** 1 plays at the recorded rate, 2 twice as fast, 0 as fast as the listener takes frames. Set before {@link #start}. */
+    public void setSpeed(double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed must not be negative: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    /** Fills {@code frame} with the next frame; false at the end of the stream. Runs on the frame thread. */
+    protected abstract boolean nextFrame(SourceFrame frame) throws IOException;
+
+    /** Releases what the source holds once its frame thread ends. */
+    protected void onStopped() {
+    }
+
+    @Override
+    public synchronized void start(FrameListener listener) {
+        if (thread != null) {
+            throw new IllegalStateException("Source already started");
+        }
+        running = true;
+        thread = new Thread(() -> run(listener), threadName);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread current;
+        synchronized (this) {
+            current = thread;
+        }
+        if (current == null || current == Thread.currentThread()) {
+            return;
+        }
+        LockSupport.unpark(current);
+        try {
+            current.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Waits up to {@code timeoutMs} for the stream to end by itself; true if it has. */
+    public boolean awaitEnd(long timeoutMs) throws InterruptedException {
+        Thread current;
+        synchronized (this) {
+            current = thread;
+        }
+        if (current == null) {
+            return false;
+        }
+        current.join(timeoutMs);
+        return !current.isAlive();
+    }
+
+    public long framesDelivered() {
+        return framesDelivered;
+    }
+
+    /** Frames skipped because the listener fell more than a frame interval behind. */
+    public long framesSkipped() {
+        return framesSkipped;
+    }
+
+    /** The error that ended the stream early, or null. */
+    public IOException failure() {
+        return failure;
+    }
+
+    private void run(FrameListener listener) {
+        SourceFrame frame = new SourceFrame();
+        long firstTimestamp = 0;
+        long previousTimestamp = 0;
+        long startNanos = 0;
+        boolean first = true;
+        try {
+            while (running && nextFrame(frame)) {
+                if (first) {
+                    first = false;
+                    firstTimestamp = frame.timestampNanos;
+                    startNanos = System.nanoTime();
+                } else if (speed > 0) {
+                    long dueNanos = startNanos + (long) ((frame.timestampNanos - firstTimestamp) / speed);
+                    long intervalNanos = (long) ((frame.timestampNanos - previousTimestamp) / speed);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos < -intervalNanos) {
+                        previousTimestamp = frame.timestampNanos;
+                        framesSkipped++;
+                        continue;
+                    }
+                    while (running && waitNanos > 0) {
+                        LockSupport.parkNanos(waitNanos);
+                        waitNanos = dueNanos - System.nanoTime();
+                    }
+                }
+                if (!running) {
+                    break;
+                }
+                previousTimestamp = frame.timestampNanos;
+                listener.onFrame(frame);
+                framesDelivered++;
+            }
+        } catch (IOException e) {
+            failure = e;
+            e.printStackTrace();
+        } finally {
+            running = false;
+            onStopped();
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package com.example.native_frame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pure-Java baseline JPEG encoder that reads NV21 directly: Y and the interleaved VU plane are
+ * already JFIF's YCbCr 4:2:0, so there is no colour conversion, only DCT, quantization and
+ * Huffman coding with the standard tables. The image is cut into slices of whole MCU rows
+ * separated by restart markers; each slice starts with fresh DC predictors, so the slices of
+ * one frame are encoded in parallel on a fork-join pool and simply concatenated. Quantization
+ * tables are built once per quality level, and the slice encoders with their output and block
+ * buffers are kept per calling thread, so steady-state encoding does not allocate.
+ */
+public class ParallelJpegEncoder implements JpegEncoder {
+
+    /** More slices than threads, so uneven slices still keep every thread busy. */
+    private static final int SLICES_PER_THREAD = 2;
+    private static final int MAX_RESTART_INTERVAL = 0xFFFF;
+
+    /** Zigzag position to natural (row-major) position within an 8x8 block. */
+    private static final int[] NATURAL_ORDER = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63,
+    };
+
+    /** ITU T.81 Annex K quantization tables, natural order, for quality 50. */
+    private static final int[] LUMA_QUANTIZATION = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99,
+    };
+    private static final int[] CHROMA_QUANTIZATION = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+    };
+
+    /** AAN DCT output scale per row and column, folded into the quantization divisors. */
+    private static final double[] AAN_SCALE = {
+            1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379,
+    };
+
+    private static final HuffmanTable DC_LUMA = new HuffmanTable(0x00,
+            new int[]{0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0},
+            new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11});
+    private static final HuffmanTable DC_CHROMA = new HuffmanTable(0x01,
+            new int[]{0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0},
+            new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11});
+    private static final HuffmanTable AC_LUMA = new HuffmanTable(0x10,
+            new int[]{0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d},
+            new int[]{
+                    0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+                    0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+                    0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+                    0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+                    0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+                    0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+                    0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+                    0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+                    0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+                    0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+                    0xf9, 0xfa,
+            });
+    private static final HuffmanTable AC_CHROMA = new HuffmanTable(0x11,
+            new int[]{0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77},
+            new int[]{
+                    0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+                    0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+                    0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+                    0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+                    0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+                    0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+                    0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+                    0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+                    0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+                    0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+                    0xf9, 0xfa,
+            });
+
+    private static final Quantization[] QUANTIZATION_BY_QUALITY = new Quantization[101];
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<FrameScratch> scratch = new ThreadLocal<>();
+
+    /** @param parallelism slices of one frame encoded at once; 1 encodes on the calling thread */
+    public ParallelJpegEncoder(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    @Override
+    public void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+        encode(nv21, width, width * height, width, width, height, quality, out);
+    }
+
+    /**
+     * Encodes NV21 laid out with row strides: the Y plane starts at 0 with {@code yRowStride}
+     * bytes per row, the interleaved VU plane at {@code chromaOffset} with {@code uvRowStride}.
+     */
+    public void encode(byte[] nv21, int yRowStride, int chromaOffset, int uvRowStride, int width, int height,
+                       int quality, OutputStream out) throws IOException {
+        if (width < 1 || height < 1 || width > 0xFFFF || height > 0xFFFF) {
+            throw new IllegalArgumentException("Unsupported size " + width + "x" + height);
+        }
+        FrameScratch frame = scratch.get();
+        int mcuColumns = (width + 15) / 16;
+        int mcuRows = (height + 15) / 16;
+        if (frame == null || frame.mcuColumns != mcuColumns || frame.mcuRows != mcuRows) {
+            frame = new FrameScratch(mcuColumns, mcuRows, parallelism);
+            scratch.set(frame);
+        }
+        Quantization quantization = quantization(quality);
+        for (SliceEncoder slice : frame.slices) {
+            slice.prepare(nv21, yRowStride, chromaOffset, uvRowStride, width, height, quantization);
+        }
+        if (frame.slices.length == 1) {
+            frame.slices[0].encodeSlice();
+        } else {
+            frame.task.reinitialize();
+            pool.invoke(frame.task);
+        }
+
+        out.write(frame.header(width, height, quantization));
+        for (int i = 0; i < frame.slices.length; i++) {
+            if (i > 0) {
+                out.write(0xFF);
+                out.write(0xD0 + ((i - 1) & 7));
+            }
+            out.write(frame.slices[i].output, 0, frame.slices[i].length);
+        }
+        out.write(0xFF);
+        out.write(0xD9);
+    }
+
+    /** Stops the pool's threads; the encoder must not be used afterwards. */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static Quantization quantization(int quality) {
+        quality = Math.max(1, Math.min(100, quality));
+        Quantization tables = QUANTIZATION_BY_QUALITY[quality];
+        if (tables == null) {
+            // Racing threads build equal tables; either copy may win.
+            tables = new Quantization(quality);
+            QUANTIZATION_BY_QUALITY[quality] = tables;
+        }
+        return tables;
+    }
+
+    /** Quantization tables scaled for one quality level, the IJG way. */
+    private static final class Quantization {
+        final int quality;
+        /** Zigzag order, as written to DQT. */
+        final byte[] lumaZigzag = new byte[64];
+        final byte[] chromaZigzag = new byte[64];
+        /** Natural order reciprocals that also undo the AAN scaling. */
+        final float[] lumaDivisors = new float[64];
+        final float[] chromaDivisors = new float[64];
+
+        Quantization(int quality) {
+            this.quality = quality;
+            int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+            build(LUMA_QUANTIZATION, scale, lumaZigzag, lumaDivisors);
+            build(CHROMA_QUANTIZATION, scale, chromaZigzag, chromaDivisors);
+        }
+
+        private static void build(int[] base, int scale, byte[] zigzag, float[] divisors) {
+            int[] scaled = new int[64];
+            for (int i = 0; i < 64; i++) {
+                scaled[i] = Math.max(1, Math.min(255, (base[i] * scale + 50) / 100));
+            }
+            for (int i = 0; i < 64; i++) {
+                zigzag[i] = (byte) scaled[NATURAL_ORDER[i]];
+                divisors[i] = (float) (1.0 / (scaled[i] * AAN_SCALE[i >> 3] * AAN_SCALE[i & 7] * 8.0));
+            }
+        }
+    }
+
+    /** A standard Huffman table: its DHT payload and the code and length of every symbol. */
+    private static final class HuffmanTable {
+        final int classAndId;
+        final int[] counts;
+        final int[] symbols;
+        final int[] codes = new int[256];
+        final int[] lengths = new int[256];
+
+        HuffmanTable(int classAndId, int[] counts, int[] symbols) {
+            this.classAndId = classAndId;
+            this.counts = counts;
+            this.symbols = symbols;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < counts[length - 1]; i++) {
+                    codes[symbols[k]] = code++;
+                    lengths[symbols[k]] = length;
+                    k++;
+                }
+                code <<= 1;
+            }
+        }
+    }
+
+    /** Everything one calling thread reuses from frame to frame of the same size. */
+    private static final class FrameScratch {
+        final int mcuColumns;
+        final int mcuRows;
+        final SliceEncoder[] slices;
+        final RecursiveAction task;
+        private byte[] header;
+        private int headerWidth;
+        private int headerHeight;
+        private Quantization headerQuantization;
+
+        FrameScratch(int mcuColumns, int mcuRows, int parallelism) {
+            this.mcuColumns = mcuColumns;
+            this.mcuRows = mcuRows;
+            int sliceCount = parallelism > 1 ? Math.min(mcuRows, parallelism * SLICES_PER_THREAD) : 1;
+            int rowsPerSlice = (mcuRows + sliceCount - 1) / sliceCount;
+            if (sliceCount > 1) {
+                rowsPerSlice = Math.max(1, Math.min(rowsPerSlice, MAX_RESTART_INTERVAL / mcuColumns));
+            }
+            sliceCount = (mcuRows + rowsPerSlice - 1) / rowsPerSlice;
+            slices = new SliceEncoder[sliceCount];
+            for (int i = 0; i < sliceCount; i++) {
+                slices[i] = new SliceEncoder(i * rowsPerSlice, Math.min(mcuRows, (i + 1) * rowsPerSlice), mcuColumns);
+            }
+            task = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(slices);
+                }
+            };
+        }
+
+        /** SOI through SOS, rebuilt only when the size or quality changes. */
+        byte[] header(int width, int height, Quantization quantization) {
+            if (header != null && headerWidth == width && headerHeight == height && headerQuantization == quantization) {
+                return header;
+            }
+            HeaderWriter out = new HeaderWriter();
+            out.marker(0xD8);
+            out.marker(0xE0);
+            out.u16(16);
+            out.bytes(new byte[]{'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+
+            out.marker(0xDB);
+            out.u16(2 + 2 * 65);
+            out.u8(0);
+            out.bytes(quantization.lumaZigzag);
+            out.u8(1);
+            out.bytes(quantization.chromaZigzag);
+
+            out.marker(0xC0);
+            out.u16(17);
+            out.u8(8);
+            out.u16(height);
+            out.u16(width);
+            out.u8(3);
+            out.bytes(new byte[]{1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1});
+
+            HuffmanTable[] tables = {DC_LUMA, AC_LUMA, DC_CHROMA, AC_CHROMA};
+            int length = 2;
+            for (HuffmanTable table : tables) {
+                length += 17 + table.symbols.length;
+            }
+            out.marker(0xC4);
+            out.u16(length);
+            for (HuffmanTable table : tables) {
+                out.u8(table.classAndId);
+                for (int count : table.counts) {
+                    out.u8(count);
+                }
+                for (int symbol : table.symbols) {
+                    out.u8(symbol);
+                }
+            }
+
+            if (slices.length > 1) {
+                out.marker(0xDD);
+                out.u16(4);
+                out.u16((slices[0].lastMcuRow - slices[0].firstMcuRow) * mcuColumns);
+            }
+
+            out.marker(0xDA);
+            out.u16(12);
+            out.u8(3);
+            out.bytes(new byte[]{1, 0x00, 2, 0x11, 3, 0x11, 0, 63, 0});
+
+            header = out.toByteArray();
+            headerWidth = width;
+            headerHeight = height;
+            headerQuantization = quantization;
+            return header;
+        }
+    }
+
+    private static final class HeaderWriter extends java.io.ByteArrayOutputStream {
+        void marker(int marker) {
+            write(0xFF);
+            write(marker);
+        }
+
+        void u8(int value) {
+            write(value);
+        }
+
+        void u16(int value) {
+            write(value >>> 8);
+            write(value);
+        }
+
+        void bytes(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Entropy-coded data for the MCU rows {@code [firstMcuRow, lastMcuRow)}, starting with zero
+     * DC predictors as after a restart marker and padded with one bits to a byte boundary.
+     */
+    @SuppressWarnings("serial") // Fork/join tasks here are never serialized.
+    private static final class SliceEncoder extends RecursiveAction {
+        /** Worst case for one block, byte stuffing included. */
+        private static final int BLOCK_BYTES = 512;
+
+        final int firstMcuRow;
+        final int lastMcuRow;
+        private final int mcuColumns;
+        private final float[] block = new float[64];
+        private final int[] coefficients = new int[64];
+        byte[] output;
+        int length;
+
+        private byte[] samples;
+        private int yRowStride;
+        private int chromaOffset;
+        private int uvRowStride;
+        private int width;
+        private int height;
+        private Quantization quantization;
+        private long bits;
+        private int bitCount;
+
+        SliceEncoder(int firstMcuRow, int lastMcuRow, int mcuColumns) {
+            this.firstMcuRow = firstMcuRow;
+            this.lastMcuRow = lastMcuRow;
+            this.mcuColumns = mcuColumns;
+            output = new byte[Math.max(4096, (lastMcuRow - firstMcuRow) * mcuColumns * 6 * 64)];
+        }
+
+        void prepare(byte[] samples, int yRowStride, int chromaOffset, int uvRowStride, int width, int height,
+                     Quantization quantization) {
+            this.samples = samples;
+            this.yRowStride = yRowStride;
+            this.chromaOffset = chromaOffset;
+            this.uvRowStride = uvRowStride;
+            this.width = width;
+            this.height = height;
+            this.quantization = quantization;
+            reinitialize();
+        }
+
+        @Override
+        protected void compute() {
+            encodeSlice();
+        }
+
+        void encodeSlice() {
+            length = 0;
+            bits = 0;
+            bitCount = 0;
+            int dcY = 0;
+            int dcCb = 0;
+            int dcCr = 0;
+            for (int mcuRow = firstMcuRow; mcuRow < lastMcuRow; mcuRow++) {
+                for (int mcuColumn = 0; mcuColumn < mcuColumns; mcuColumn++) {
+                    int x = mcuColumn * 16;
+                    int y = mcuRow * 16;
+                    dcY = encodeLumaBlock(x, y, dcY);
+                    dcY = encodeLumaBlock(x + 8, y, dcY);
+                    dcY = encodeLumaBlock(x, y + 8, dcY);
+                    dcY = encodeLumaBlock(x + 8, y + 8, dcY);
+                    // NV21 interleaves V before U; Cb is U.
+                    dcCb = encodeChromaBlock(x / 2, y / 2, 1, dcCb);
+                    dcCr = encodeChromaBlock(x / 2, y / 2, 0, dcCr);
+                }
+            }
+            if (bitCount > 0) {
+                writeBits((1 << (8 - bitCount)) - 1, 8 - bitCount);
+            }
+        }
+
+        private int encodeLumaBlock(int x, int y, int previousDc) {
+            if (x + 8 <= width && y + 8 <= height) {
+                for (int row = 0; row < 8; row++) {
+                    int at = (y + row) * yRowStride + x;
+                    int to = row * 8;
+                    for (int column = 0; column < 8; column++) {
+                        block[to + column] = (samples[at + column] & 0xFF) - 128;
+                    }
+                }
+            } else {
+                // Edge block: repeat the last row and column.
+                for (int row = 0; row < 8; row++) {
+                    int at = Math.min(y + row, height - 1) * yRowStride;
+                    for (int column = 0; column < 8; column++) {
+                        block[row * 8 + column] = (samples[at + Math.min(x + column, width - 1)] & 0xFF) - 128;
+                    }
+                }
+            }
+            return encodeBlock(quantization.lumaDivisors, previousDc, DC_LUMA, AC_LUMA);
+        }
+
+        private int encodeChromaBlock(int x, int y, int channel, int previousDc) {
+            int chromaWidth = Math.max(1, width / 2);
+            int chromaHeight = Math.max(1, height / 2);
+            for (int row = 0; row < 8; row++) {
+                int at = chromaOffset + Math.min(y + row, chromaHeight - 1) * uvRowStride + channel;
+                for (int column = 0; column < 8; column++) {
+                    block[row * 8 + column] = (samples[at + 2 * Math.min(x + column, chromaWidth - 1)] & 0xFF) - 128;
+                }
+            }
+            return encodeBlock(quantization.chromaDivisors, previousDc, DC_CHROMA, AC_CHROMA);
+        }
+
+        /** Transforms, quantizes and codes {@link #block}; returns its DC value for the next block's prediction. */
+        private int encodeBlock(float[] divisors, int previousDc, HuffmanTable dcTable, HuffmanTable acTable) {
+            forwardDct(block);
+            for (int i = 0; i < 64; i++) {
+                // Round half away from zero without a branch, as libjpeg does.
+                coefficients[i] = (int) (block[i] * divisors[i] + 16384.5f) - 16384;
+            }
+            if (length + BLOCK_BYTES > output.length) {
+                byte[] grown = new byte[output.length * 2];
+                System.arraycopy(output, 0, grown, 0, length);
+                output = grown;
+            }
+
+            int dc = coefficients[0];
+            writeValue(dc - previousDc, dcTable, 0);
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int coefficient = coefficients[NATURAL_ORDER[k]];
+                if (coefficient == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    writeBits(acTable.codes[0xF0], acTable.lengths[0xF0]);
+                    run -= 16;
+                }
+                writeValue(coefficient, acTable, run << 4);
+                run = 0;
+            }
+            if (run > 0) {
+                writeBits(acTable.codes[0x00], acTable.lengths[0x00]);
+            }
+            return dc;
+        }
+
+        /** Writes the symbol {@code runBits | size} followed by the value's {@code size} extra bits. */
+        private void writeValue(int value, HuffmanTable table, int runBits) {
+            int magnitude = value < 0 ? -value : value;
+            int size = 32 - Integer.numberOfLeadingZeros(magnitude);
+            int symbol = runBits | size;
+            int extra = (value < 0 ? value - 1 : value) & ((1 << size) - 1);
+            writeBits((table.codes[symbol] << size) | extra, table.lengths[symbol] + size);
+        }
+
+        private void writeBits(int value, int count) {
+            bits = (bits << count) | value;
+            bitCount += count;
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                int b = (int) (bits >>> bitCount) & 0xFF;
+                output[length++] = (byte) b;
+                if (b == 0xFF) {
+                    output[length++] = 0;
+                }
+            }
+        }
+    }
+
+    /** Float AAN forward DCT in place, as in libjpeg's jfdctflt.c; outputs are scaled by {@link #AAN_SCALE} and 8. */
+    static void forwardDct(float[] data) {
+        for (int offset = 0; offset < 64; offset += 8) {
+            dct8(data, offset, 1);
+        }
+        for (int column = 0; column < 8; column++) {
+            dct8(data, column, 8);
+        }
+    }
+
+    private static void dct8(float[] d, int o, int s) {
+        float tmp0 = d[o] + d[o + 7 * s];
+        float tmp7 = d[o] - d[o + 7 * s];
+        float tmp1 = d[o + s] + d[o + 6 * s];
+        float tmp6 = d[o + s] - d[o + 6 * s];
+        float tmp2 = d[o + 2 * s] + d[o + 5 * s];
+        float tmp5 = d[o + 2 * s] - d[o + 5 * s];
+        float tmp3 = d[o + 3 * s] + d[o + 4 * s];
+        float tmp4 = d[o + 3 * s] - d[o + 4 * s];
+
+        float tmp10 = tmp0 + tmp3;
+        float tmp13 = tmp0 - tmp3;
+        float tmp11 = tmp1 + tmp2;
+        float tmp12 = tmp1 - tmp2;
+        d[o] = tmp10 + tmp11;
+        d[o + 4 * s] = tmp10 - tmp11;
+        float z1 = (tmp12 + tmp13) * 0.707106781f;
+        d[o + 2 * s] = tmp13 + z1;
+        d[o + 6 * s] = tmp13 - z1;
+
+        tmp10 = tmp4 + tmp5;
+        tmp11 = tmp5 + tmp6;
+        tmp12 = tmp6 + tmp7;
+        float z5 = (tmp10 - tmp12) * 0.382683433f;
+        float z2 = 0.541196100f * tmp10 + z5;
+        float z4 = 1.306562965f * tmp12 + z5;
+        float z3 = tmp11 * 0.707106781f;
+        float z11 = tmp7 + z3;
+        float z13 = tmp7 - z3;
+        d[o + 5 * s] = z13 + z2;
+        d[o + 3 * s] = z13 - z2;
+        d[o + s] = z11 + z4;
+        d[o + 7 * s] = z11 - z4;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.native_frame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide latency histograms for each stage of the capture pipeline plus frame counters.
+ * Everything is preallocated and lock-free, so stages record from the camera and encoder
+ * threads without contention; {@link #snapshot()} turns the current state into a map that can
+ * be sent over the Flutter method channel.
+ */
+public final class PipelineMetrics {
+
+    public enum Stage {
+        /** {@code ImageReader.acquireLatestImage()}. */
+        ACQUIRE("acquire"),
+        /** Copying planes out of the Image into the ring, and out of the ring into NV21. */
+        PLANE_COPY("planeCopy"),
+        /** From handing a frame to the encode scheduler until a worker picks it up. */
+        QUEUE_WAIT("queueWait"),
+        /** Rotating frames upright and scaling them down before encode, when enabled. */
+        TRANSFORM("transform"),
+        /** NV21 to JPEG compression, or lossless compression in deferred-encode mode. */
+        ENCODE("encode"),
+        /** Patching the EXIF template and splicing it into the JPEG. */
+        EXIF("exif"),
+        /** Handing the frame to the session's {@link FrameSink}; for {@link GroupCommitWriter}, the copy into its queue. */
+        WRITE("write"),
+        /** One sync pass over a batch of frames committed by {@link GroupCommitWriter}. */
+        FSYNC("fsync");
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    /** Points of a camera startup, timed from {@link #onStartupRequested}. */
+    public enum Milestone {
+        /** The CameraDevice is open. */
+        CAMERA_OPENED("cameraOpened"),
+        /** The capture session is configured and its repeating request set. */
+        SESSION_CONFIGURED("sessionConfigured"),
+        /** The first capture result of the preview session arrived. */
+        FIRST_PREVIEW_FRAME("firstPreviewFrame");
+
+        final String key;
+
+        Milestone(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final PipelineMetrics INSTANCE = new PipelineMetrics();
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    private final AtomicLong framesDelivered = new AtomicLong();
+    private final AtomicLong sensorFramesDropped = new AtomicLong();
+    private final AtomicLong framesSampled = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesFailed = new AtomicLong();
+    private volatile long startupRequestedAt = 0;
+    private volatile boolean startupConfigCached = false;
+    private final AtomicLongArray milestones = new AtomicLongArray(Milestone.values().length);
+
+    private PipelineMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    public static PipelineMetrics get() {
+        return INSTANCE;
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    /** Records the time since {@code startNanos} (a {@link System#nanoTime()} reading). */
+    public void recordSince(Stage stage, long startNanos) {
+        stages[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /** A frame arrived from the camera. */
+    public void onFrameDelivered() {
+        framesDelivered.incrementAndGet();
+    }
+
+    /** Frames the camera produced that never reached the pipeline; see {@link FrameGapDetector}. */
+    public void onSensorFramesDropped(int count) {
+        sensorFramesDropped.addAndGet(count);
+    }
+
+    /** A frame was picked by the sampler for saving. */
+    public void onFrameSampled() {
+        framesSampled.incrementAndGet();
+    }
+
+    /** A sampled frame was discarded because the ring or the encode queue was full. */
+    public void onFrameDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    /** A frame failed to encode or write. */
+    public void onFrameFailed() {
+        framesFailed.incrementAndGet();
+    }
+
+    /**
+     * A camera startup began at {@code startNanos} (a {@link System#nanoTime()} reading); clears
+     * the previous startup's milestones.
+     */
+    public void onStartupRequested(long startNanos) {
+        for (int i = 0; i < milestones.length(); i++) {
+            milestones.set(i, 0);
+        }
+        startupConfigCached = false;
+        startupRequestedAt = startNanos;
+    }
+
+    /** Whether this startup's camera configuration came from the cache instead of a camera query. */
+    public void onStartupConfig(boolean cached) {
+        startupConfigCached = cached;
+    }
+
+    /** Records the time from the startup request to {@code milestone}; only its first occurrence counts. */
+    public void onStartupMilestone(Milestone milestone) {
+        long requestedAt = startupRequestedAt;
+        if (requestedAt != 0 && milestones.get(milestone.ordinal()) == 0) {
+            milestones.compareAndSet(milestone.ordinal(), 0, Math.max(1, System.nanoTime() - requestedAt));
+        }
+    }
+
+    /** Clears the recording counters and histograms; the startup timings are kept. */
+    public void reset() {
+        for (LatencyHistogram histogram : stages) {
+            histogram.reset();
+        }
+        framesDelivered.set(0);
+        sensorFramesDropped.set(0);
+        framesSampled.set(0);
+        framesDropped.set(0);
+        framesFailed.set(0);
+    }
+
+    /**
+     * Counters and per-stage latency summaries. Stage entries hold {@code count} and
+     * {@code mean}, {@code p50}, {@code p90}, {@code p99}, {@code max} in microseconds. The
+     * {@code startup} entry holds {@code configCached} and the milliseconds to each
+     * {@link Milestone} of the latest camera startup, -1 until it is reached.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("framesDelivered", framesDelivered.get());
+        snapshot.put("sensorFramesDropped", sensorFramesDropped.get());
+        snapshot.put("framesSampled", framesSampled.get());
+        snapshot.put("framesDropped", framesDropped.get());
+        snapshot.put("framesFailed", framesFailed.get());
+
+        Map<String, Object> stageSnapshots = new HashMap<>();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram.Snapshot histogram = stages[stage.ordinal()].snapshot();
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("count", histogram.count());
+            entry.put("mean", micros(histogram.meanNanos()));
+            entry.put("p50", micros(histogram.percentileNanos(0.50)));
+            entry.put("p90", micros(histogram.percentileNanos(0.90)));
+            entry.put("p99", micros(histogram.percentileNanos(0.99)));
+            entry.put("max", micros(histogram.maxNanos()));
+            stageSnapshots.put(stage.key, entry);
+        }
+        snapshot.put("stages", stageSnapshots);
+
+        Map<String, Object> startup = new HashMap<>();
+        startup.put("configCached", startupConfigCached);
+        for (Milestone milestone : Milestone.values()) {
+            long nanos = milestones.get(milestone.ordinal());
+            startup.put(milestone.key, nanos != 0 ? TimeUnit.NANOSECONDS.toMillis(nanos) : -1L);
+        }
+        snapshot.put("startup", startup);
+        return snapshot;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
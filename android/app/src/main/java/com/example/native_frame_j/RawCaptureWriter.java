@@ -0,0 +1,110 @@
+package com.example.native_frame;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records camera frames into a raw capture file that {@link ReplayCameraSource} plays back.
+ * The file starts with a 16-byte header (magic {@code NFRC}, version); every frame follows as a
+ * 64-byte record header and the Y, U and V planes exactly as the camera delivered them, strides
+ * and row padding included:
+ * <pre>
+ * 0  int  record magic FRME   28 int  Y plane length
+ * 4  int  width               32 int  U plane length
+ * 8  int  height              36 int  V plane length
+ * 12 int  Y row stride        40 long sensor timestamp (ns)
+ * 16 int  UV row stride       48 long location clock time (ns)
+ * 20 int  UV pixel stride     56 reserved
+ * 24 int  rotation degrees
+ * </pre>
+ * All values are little-endian. Frames are written unbuffered in one gathering write, so a
+ * crash leaves at most one partial record at the end, which the reader ignores.
+ */
+public class RawCaptureWriter implements CameraSource.FrameListener, Closeable {
+
+    static final String FILE_NAME = "capture.raw";
+    static final int MAGIC = 0x4352464E;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int FRAME_MAGIC = 0x454D5246;
+    static final int FRAME_HEADER_SIZE = 64;
+
+    private final FileOutputStream output;
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer[] parts = new ByteBuffer[4];
+    private long frameCount = 0;
+    private boolean failed = false;
+
+    public RawCaptureWriter(File file) throws IOException {
+        output = new FileOutputStream(file);
+        channel = output.getChannel();
+        ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        fileHeader.putInt(MAGIC).putInt(VERSION);
+        fileHeader.clear();
+        writeFully(new ByteBuffer[]{fileHeader});
+    }
+
+    /** Appends one frame; the plane buffers' positions are left unchanged. */
+    public synchronized void write(SourceFrame frame) throws IOException {
+        ByteBuffer y = frame.yPlane.duplicate();
+        ByteBuffer u = frame.uPlane.duplicate();
+        ByteBuffer v = frame.vPlane.duplicate();
+        header.clear();
+        header.putInt(FRAME_MAGIC)
+                .putInt(frame.width)
+                .putInt(frame.height)
+                .putInt(frame.yRowStride)
+                .putInt(frame.uvRowStride)
+                .putInt(frame.uvPixelStride)
+                .putInt(frame.rotationDegrees)
+                .putInt(y.remaining())
+                .putInt(u.remaining())
+                .putInt(v.remaining())
+                .putLong(frame.timestampNanos)
+                .putLong(frame.locationTimeNanos)
+                .putLong(0);
+        header.flip();
+        parts[0] = header;
+        parts[1] = y;
+        parts[2] = u;
+        parts[3] = v;
+        writeFully(parts);
+        frameCount++;
+    }
+
+    /** Records the frame; after a write error the rest of the stream is not recorded. */
+    @Override
+    public void onFrame(SourceFrame frame) {
+        if (failed) {
+            return;
+        }
+        try {
+            write(frame);
+        } catch (IOException e) {
+            failed = true;
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized long frameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+
+    private void writeFully(ByteBuffer[] buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * State of one recording session: its directory, the sink its frames are stored in (or, in
+ * deferred-encode mode, the {@link DeferredFrameWriter} they are stored in until transcoded),
+ * the {@link SessionManifest} of frames stored so far, and the counters that end up in the
+ * session's {@code session.properties} summary when recording stops.
+ */
+public class RecordingSession {
+
+    static final String SUMMARY_FILE = "session.properties";
+    static final String DIRECTORY_PREFIX = "Session_";
+
+    private final File directory;
+    private final FrameSink sink;
+    private final DeferredFrameWriter deferredFrames;
+    private final SessionManifest manifest;
+    private final FrameIndex frameIndex;
+    private final AtomicInteger framesInFlight = new AtomicInteger();
+    private boolean sinkClosed = false;
+    private final long startedAt;
+    private final AtomicLong sampledFrames = new AtomicLong();
+    private final AtomicLong duplicateFrames = new AtomicLong();
+    private final AtomicLong gpsBackfilledFrames = new AtomicLong();
+    private final AtomicLong sensorFramesDelivered = new AtomicLong();
+    private final AtomicLong sensorFramesDropped = new AtomicLong();
+    private final AtomicLongArray sensorFrameGaps = new AtomicLongArray(FrameGapDetector.BUCKETS);
+    private final List<PendingGpsFrame> pendingGpsFrames = new ArrayList<>();
+    private volatile boolean finished = false;
+
+    /** @param frameIndex cross-session index that saved frames are added to, or null */
+    public RecordingSession(File directory, FrameSink sink, FrameIndex frameIndex) {
+        this(directory, sink, null, frameIndex);
+    }
+
+    /**
+     * @param sink           where encoded frames go; null when {@code deferredFrames} is set
+     * @param deferredFrames where frames go unencoded in deferred-encode mode, or null
+     */
+    public RecordingSession(File directory, FrameSink sink, DeferredFrameWriter deferredFrames, FrameIndex frameIndex) {
+        this.directory = directory;
+        this.sink = sink;
+        this.deferredFrames = deferredFrames;
+        this.frameIndex = frameIndex;
+        this.startedAt = System.currentTimeMillis();
+        SessionManifest created = null;
+        try {
+            created = new SessionManifest(directory);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.manifest = created;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public FrameSink getSink() {
+        return sink;
+    }
+
+    /** The deferred-encode store frames are appended to instead of being encoded, or null. */
+    public DeferredFrameWriter getDeferredFrames() {
+        return deferredFrames;
+    }
+
+    /** A frame was handed to the encoder; the sink stays open until it is done. */
+    public void onFrameQueued() {
+        framesInFlight.incrementAndGet();
+    }
+
+    /** A queued frame was stored, failed or dropped. */
+    public void onFrameDone() {
+        if (framesInFlight.decrementAndGet() == 0 && finished) {
+            closeSink();
+        }
+    }
+
+    /** Flushes frames the sink is still buffering, e.g. when the app is paused mid-session. */
+    public void flushSink() {
+        if (sink == null) {
+            return;
+        }
+        try {
+            sink.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void closeSink() {
+        if (sinkClosed) {
+            return;
+        }
+        sinkClosed = true;
+        try {
+            if (sink != null) {
+                sink.close();
+            }
+            if (deferredFrames != null) {
+                deferredFrames.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (manifest != null) {
+            try {
+                manifest.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /** A frame reached the sink; adds it to the session manifest and the frame index. */
+    public void onFrameSaved(int index, long timestamp, double latitude, double longitude,
+                             int rotationDegrees, int sharpness) {
+        try {
+            if (manifest != null) {
+                manifest.append(index, timestamp, latitude, longitude, rotationDegrees, sharpness);
+            }
+            if (frameIndex != null) {
+                frameIndex.add(directory.getName(), index, timestamp, latitude, longitude);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void onFrameSampled() {
+        sampledFrames.incrementAndGet();
+    }
+
+    /**
+     * Records a frame delivered by the camera, preceded by {@code missed} frames that were dropped
+     * before the pipeline could see them.
+     */
+    public void onSensorFrame(int missed) {
+        sensorFramesDelivered.incrementAndGet();
+        if (missed > 0) {
+            sensorFramesDropped.addAndGet(missed);
+            sensorFrameGaps.incrementAndGet(FrameGapDetector.bucketOf(missed));
+        }
+    }
+
+    public void onDuplicateSkipped() {
+        duplicateFrames.incrementAndGet();
+    }
+
+    public long duplicateFrameCount() {
+        return duplicateFrames.get();
+    }
+
+    /** Records a frame that was saved before a location fix could place it for good. */
+    public synchronized void addPendingGpsFrame(PendingGpsFrame frame) {
+        pendingGpsFrames.add(frame);
+    }
+
+    public synchronized boolean hasPendingGpsFrames() {
+        return !pendingGpsFrames.isEmpty();
+    }
+
+    /** Removes and returns every pending frame; ones that still cannot be placed are handed back. */
+    public synchronized List<PendingGpsFrame> takePendingGpsFrames() {
+        List<PendingGpsFrame> taken = new ArrayList<>(pendingGpsFrames);
+        pendingGpsFrames.clear();
+        return taken;
+    }
+
+    public synchronized void restorePendingGpsFrames(List<PendingGpsFrame> frames) {
+        pendingGpsFrames.addAll(0, frames);
+    }
+
+    public void onGpsBackfilled(PendingGpsFrame frame, double latitude, double longitude) {
+        gpsBackfilledFrames.incrementAndGet();
+        try {
+            if (manifest != null) {
+                manifest.updateLocation(frame.frameIndex, latitude, longitude);
+            }
+            if (frameIndex != null) {
+                frameIndex.updateLocation(directory.getName(), frame.frameIndex, latitude, longitude);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized int pendingGpsFrameCount() {
+        return pendingGpsFrames.size();
+    }
+
+    private void fillSummary(Properties summary) {
+        summary.setProperty("startedAt", Long.toString(startedAt));
+        summary.setProperty("stoppedAt", Long.toString(System.currentTimeMillis()));
+        summary.setProperty("sampledFrames", Long.toString(sampledFrames.get()));
+        summary.setProperty("duplicateFramesSkipped", Long.toString(duplicateFrames.get()));
+        summary.setProperty("gpsBackfilledFrames", Long.toString(gpsBackfilledFrames.get()));
+        summary.setProperty("gpsPendingFrames", Integer.toString(pendingGpsFrameCount()));
+        summary.setProperty("sensorFramesDelivered", Long.toString(sensorFramesDelivered.get()));
+        summary.setProperty("sensorFramesDropped", Long.toString(sensorFramesDropped.get()));
+        for (int i = 0; i < FrameGapDetector.BUCKETS; i++) {
+            summary.setProperty("sensorFrameGaps." + FrameGapDetector.bucketLabel(i),
+                    Long.toString(sensorFrameGaps.get(i)));
+        }
+        if (deferredFrames != null) {
+            summary.setProperty("deferredFrames", Long.toString(deferredFrames.frameCount()));
+            summary.setProperty("deferredRawBytes", Long.toString(deferredFrames.rawBytes()));
+            summary.setProperty("deferredStoredBytes", Long.toString(deferredFrames.storedBytes()));
+        }
+    }
+
+    /**
+     * True once the summary has been written, i.e. recording has stopped. The sink is closed as
+     * soon as the frames still being encoded at that point are done.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void writeSummary() {
+        finished = true;
+        Properties summary = new Properties();
+        fillSummary(summary);
+        try (FileOutputStream out = new FileOutputStream(new File(directory, SUMMARY_FILE))) {
+            summary.store(out, "Recording session summary");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (framesInFlight.get() == 0) {
+            closeSink();
+        }
+    }
+
+    /** Marks an interrupted session's summary, keeping whatever the summary already holds. */
+    static void writeRecoveryNote(File directory, int framesLost) throws IOException {
+        File file = new File(directory, SUMMARY_FILE);
+        Properties summary = new Properties();
+        if (file.exists()) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                summary.load(in);
+            }
+        }
+        summary.setProperty("interrupted", "true");
+        summary.setProperty("framesLost", Integer.toString(framesLost));
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            summary.store(out, "Recording session summary");
+        }
+    }
+
+    /** What is needed to rebuild a pending frame's EXIF once its position is known. */
+    public static class PendingGpsFrame {
+        final int frameIndex;
+        final long locationTimeNanos;
+        final long timestamp;
+        final int rotationDegrees;
+        final int sharpness;
+        /** Saved with the newest fix's position; only the manifest and index take the refined one. */
+        final boolean held;
+
+        public PendingGpsFrame(int frameIndex, long locationTimeNanos, long timestamp, int rotationDegrees,
+                               int sharpness, boolean held) {
+            this.frameIndex = frameIndex;
+            this.locationTimeNanos = locationTimeNanos;
+            this.timestamp = timestamp;
+            this.rotationDegrees = rotationDegrees;
+            this.sharpness = sharpness;
+            this.held = held;
+        }
+    }
+}
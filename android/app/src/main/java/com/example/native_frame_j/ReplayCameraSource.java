@@ -0,0 +1,128 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays back a raw capture file written by {@link RawCaptureWriter}, at the recorded frame
+ * rate by default. Frames come out with their recorded strides and timestamps; when looping,
+ * timestamps keep increasing across passes so the sampler and gap detector see one stream.
+ */
+public class ReplayCameraSource extends PacedCameraSource {
+
+    private final FileInputStream input;
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(RawCaptureWriter.FRAME_HEADER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer y;
+    private ByteBuffer u;
+    private ByteBuffer v;
+
+    private boolean loop = false;
+    private long framesInPass = 0;
+    private long firstTimestamp = 0;
+    private long lastTimestamp = 0;
+    private long lastIntervalNanos = 0;
+    private long timestampOffset = 0;
+
+    public ReplayCameraSource(File file) throws IOException {
+        super("ReplayCamera");
+        input = new FileInputStream(file);
+        channel = input.getChannel();
+        ByteBuffer fileHeader = ByteBuffer.allocate(RawCaptureWriter.FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(fileHeader) || fileHeader.getInt(0) != RawCaptureWriter.MAGIC) {
+            input.close();
+            throw new IOException("Not a raw capture file: " + file);
+        }
+        if (fileHeader.getInt(4) != RawCaptureWriter.VERSION) {
+            input.close();
+            throw new IOException("Unsupported raw capture version " + fileHeader.getInt(4) + ": " + file);
+        }
+    }
+
+    /** Starts over from the first frame at the end of the file. Set before {@link #start}. */
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    @Override
+    protected boolean nextFrame(SourceFrame frame) throws IOException {
+        long recordStart = channel.position();
+        header.clear();
+        if (!readFully(header)) {
+            return endOfFile(frame);
+        }
+        if (header.getInt(0) != RawCaptureWriter.FRAME_MAGIC) {
+            throw new IOException("Corrupt raw capture record at offset " + recordStart);
+        }
+        y = prepare(y, header.getInt(28));
+        u = prepare(u, header.getInt(32));
+        v = prepare(v, header.getInt(36));
+        if (!readFully(y) || !readFully(u) || !readFully(v)) {
+            // A record cut short by a crash counts as the end of the file.
+            return endOfFile(frame);
+        }
+        y.flip();
+        u.flip();
+        v.flip();
+
+        long timestamp = header.getLong(40);
+        if (framesInPass == 0) {
+            firstTimestamp = timestamp;
+        } else {
+            lastIntervalNanos = timestamp - lastTimestamp;
+        }
+        lastTimestamp = timestamp;
+        framesInPass++;
+
+        frame.setPlanes(y, header.getInt(12), u, v, header.getInt(16), header.getInt(20),
+                header.getInt(4), header.getInt(8));
+        frame.rotationDegrees = header.getInt(24);
+        frame.timestampNanos = timestamp + timestampOffset;
+        frame.locationTimeNanos = header.getLong(48) + timestampOffset;
+        return true;
+    }
+
+    private boolean endOfFile(SourceFrame frame) throws IOException {
+        if (!loop || framesInPass == 0) {
+            return false;
+        }
+        // Continue the timeline one frame interval after the last frame of this pass.
+        timestampOffset += lastTimestamp - firstTimestamp + lastIntervalNanos;
+        framesInPass = 0;
+        channel.position(RawCaptureWriter.FILE_HEADER_SIZE);
+        return nextFrame(frame);
+    }
+
+    @Override
+    protected void onStopped() {
+        try {
+            input.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** {@code buffer}, or a larger one if it cannot hold {@code length} bytes, cleared to receive them. */
+    private static ByteBuffer prepare(ByteBuffer buffer, int length) {
+        if (buffer == null || buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(length);
+        }
+        buffer.clear();
+        buffer.limit(length);
+        return buffer;
+    }
+
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Explodes a {@link SegmentArchiveWriter} archive back into standalone {@code frame_NNN.jpg}
+ * files. Each frame's EXIF is rebuilt from its index record, so positions backfilled into the
+ * index after the frame was archived end up in the exported file.
+ */
+public final class SegmentArchiveExporter {
+
+    private SegmentArchiveExporter() {
+    }
+
+    /** Exports every archived frame of {@code sessionDirectory}; returns the number of frames written. */
+    public static int exportAll(File sessionDirectory, File outputDirectory) throws IOException {
+        return export(sessionDirectory, -1, outputDirectory);
+    }
+
+    /** Exports the frames stored in one segment file; returns the number of frames written. */
+    public static int exportSegment(File sessionDirectory, int segment, File outputDirectory) throws IOException {
+        return export(sessionDirectory, segment, outputDirectory);
+    }
+
+    private static int export(File sessionDirectory, int segment, File outputDirectory) throws IOException {
+        ByteBuffer index = readIndex(new File(sessionDirectory, SegmentArchiveWriter.INDEX_FILE));
+        if (!outputDirectory.exists() && !outputDirectory.mkdirs()) {
+            throw new IOException("Could not create " + outputDirectory);
+        }
+
+        int exported = 0;
+        int openSegment = -1;
+        FileInputStream segmentIn = null;
+        byte[] jpeg = new byte[0];
+        try {
+            for (int record = SegmentArchiveWriter.HEADER_SIZE;
+                 record + SegmentArchiveWriter.RECORD_SIZE <= index.limit();
+                 record += SegmentArchiveWriter.RECORD_SIZE) {
+                int recordSegment = index.getInt(record + SegmentArchiveWriter.RECORD_SEGMENT);
+                if (segment >= 0 && recordSegment != segment) {
+                    continue;
+                }
+                if (recordSegment != openSegment) {
+                    if (segmentIn != null) {
+                        segmentIn.close();
+                    }
+                    segmentIn = new FileInputStream(new File(sessionDirectory,
+                            SegmentArchiveWriter.segmentFileName(recordSegment)));
+                    openSegment = recordSegment;
+                }
+
+                int length = index.getInt(record + SegmentArchiveWriter.RECORD_LENGTH);
+                if (jpeg.length < length) {
+                    jpeg = new byte[length];
+                }
+                readFully(segmentIn.getChannel(), ByteBuffer.wrap(jpeg, 0, length),
+                        index.getLong(record + SegmentArchiveWriter.RECORD_OFFSET));
+
+                byte[] app1 = ExifSegment.build(
+                        index.getLong(record + SegmentArchiveWriter.RECORD_TIMESTAMP),
+                        index.getInt(record + SegmentArchiveWriter.RECORD_ROTATION),
+                        index.getDouble(record + SegmentArchiveWriter.RECORD_LATITUDE),
+                        index.getDouble(record + SegmentArchiveWriter.RECORD_LONGITUDE),
+                        index.getInt(record + SegmentArchiveWriter.RECORD_SHARPNESS));
+                int frameIndex = index.getInt(record + SegmentArchiveWriter.RECORD_FRAME_INDEX);
+                DirectoryFrameSink.writeFully(new File(outputDirectory, DirectoryFrameSink.frameFileName(frameIndex)),
+                        ExifSegment.splice(jpeg, length, app1));
+                exported++;
+            }
+        } finally {
+            if (segmentIn != null) {
+                segmentIn.close();
+            }
+        }
+        return exported;
+    }
+
+    /** Reads and validates the index; a partly written trailing record is ignored by the callers' bounds. */
+    static ByteBuffer readIndex(File indexFile) throws IOException {
+        try (FileInputStream in = new FileInputStream(indexFile)) {
+            FileChannel channel = in.getChannel();
+            ByteBuffer index = ByteBuffer.allocate((int) channel.size());
+            readFully(channel, index, 0);
+            index.flip();
+            SegmentArchiveWriter.checkHeader(index, indexFile);
+            return index;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Archive truncated at " + position);
+            }
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Packs a session's encoded frames into a few large segment files plus a binary index instead
+ * of one file per frame. Frames and their index records are staged in memory and reach the
+ * file system in batches, one channel write per batch.
+ *
+ * <p>Layout: {@code segment_NNN.dat} files hold complete JPEG streams back to back.
+ * {@code frames.idx} is a {@value #HEADER_SIZE}-byte header (magic, version, record size, reserved)
+ * followed by one big-endian {@value #RECORD_SIZE}-byte record per frame in the order the
+ * frames were written; see the {@code RECORD_*} offsets. Index records are only written after
+ * the frame bytes they point to.
+ */
+public class SegmentArchiveWriter implements FrameSink {
+
+    static final String INDEX_FILE = "frames.idx";
+    static final int INDEX_MAGIC = 0x4E464958; // "NFIX"
+    static final short INDEX_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 56;
+
+    static final int RECORD_FRAME_INDEX = 0;
+    static final int RECORD_SEGMENT = 4;
+    static final int RECORD_OFFSET = 8;
+    static final int RECORD_LENGTH = 16;
+    static final int RECORD_ROTATION = 20;
+    static final int RECORD_TIMESTAMP = 24;
+    static final int RECORD_LATITUDE = 32;
+    static final int RECORD_LONGITUDE = 40;
+    static final int RECORD_SHARPNESS = 48;
+
+    private static final int INDEX_BATCH_RECORDS = 128;
+
+    private final File directory;
+    private final long segmentBytes;
+    private final ByteBuffer dataBatch;
+    private final ByteBuffer indexBatch = ByteBuffer.allocate(RECORD_SIZE * INDEX_BATCH_RECORDS);
+    private final FileChannel indexChannel;
+
+    private FileChannel segmentChannel;
+    private int segment = -1;
+    /** Bytes of the current segment, including those still staged in {@link #dataBatch}. */
+    private long segmentSize;
+
+    /** Frame index of every record, by record number, so backfilled positions can find their record. */
+    private int[] recordFrames = new int[256];
+    private int records = 0;
+    private boolean closed = false;
+
+    /**
+     * @param segmentBytes size after which a new segment file is started
+     * @param batchBytes   frame bytes staged before they are written out
+     */
+    public SegmentArchiveWriter(File directory, long segmentBytes, int batchBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        dataBatch = ByteBuffer.allocateDirect(batchBytes);
+
+        indexChannel = new RandomAccessFile(new File(directory, INDEX_FILE), "rw").getChannel();
+        indexChannel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(INDEX_MAGIC).putShort(INDEX_VERSION).putShort((short) RECORD_SIZE).putLong(0);
+        header.flip();
+        writeFully(indexChannel, header);
+        openSegment(0);
+    }
+
+    /** Throws unless {@code index} starts with a frame index header this version can read. */
+    static void checkHeader(ByteBuffer index, File indexFile) throws IOException {
+        if (index.limit() < HEADER_SIZE
+                || index.getInt(0) != INDEX_MAGIC
+                || index.getShort(4) != INDEX_VERSION
+                || index.getShort(6) != RECORD_SIZE) {
+            throw new IOException("Not a frame index: " + indexFile);
+        }
+    }
+
+    static String segmentFileName(int segment) {
+        return String.format(Locale.US, "segment_%03d.dat", segment);
+    }
+
+    @Override
+    public synchronized void writeFrame(int frameIndex, long timestamp, double latitude, double longitude,
+                                        int rotationDegrees, int sharpness, ByteBuffer[] jpeg) throws IOException {
+        if (closed) {
+            throw new IOException("Archive in " + directory + " is closed");
+        }
+        int length = 0;
+        for (ByteBuffer part : jpeg) {
+            length += part.remaining();
+        }
+        if (segmentSize > 0 && segmentSize + length > segmentBytes) {
+            flush();
+            openSegment(segment + 1);
+        }
+        long offset = segmentSize;
+
+        if (length > dataBatch.remaining()) {
+            flush();
+        }
+        if (length > dataBatch.capacity()) {
+            // Too big to stage; goes straight to the segment, still ahead of its index record.
+            long remaining = length;
+            while (remaining > 0) {
+                remaining -= segmentChannel.write(jpeg);
+            }
+        } else {
+            for (ByteBuffer part : jpeg) {
+                int position = part.position();
+                dataBatch.put(part);
+                part.position(position);
+            }
+        }
+        segmentSize += length;
+
+        if (!indexBatch.hasRemaining()) {
+            flush();
+        }
+        indexBatch.putInt(frameIndex)
+                .putInt(segment)
+                .putLong(offset)
+                .putInt(length)
+                .putInt(rotationDegrees)
+                .putLong(timestamp)
+                .putDouble(latitude)
+                .putDouble(longitude)
+                .putInt(sharpness)
+                .putInt(0);
+
+        if (records == recordFrames.length) {
+            recordFrames = Arrays.copyOf(recordFrames, records * 2);
+        }
+        recordFrames[records++] = frameIndex;
+    }
+
+    /** Rewrites the position of the frame's index record in place; the archived JPEG itself is left as is. */
+    @Override
+    public synchronized void updateLocation(RecordingSession.PendingGpsFrame frame, double latitude, double longitude)
+            throws IOException {
+        int record = -1;
+        for (int i = 0; i < records; i++) {
+            if (recordFrames[i] == frame.frameIndex) {
+                record = i;
+                break;
+            }
+        }
+        if (record < 0) {
+            throw new IOException("Frame " + frame.frameIndex + " is not in the archive");
+        }
+        ByteBuffer position = ByteBuffer.allocate(16);
+        position.putDouble(latitude).putDouble(longitude);
+        position.flip();
+        long at = HEADER_SIZE + (long) record * RECORD_SIZE + RECORD_LATITUDE;
+        if (closed) {
+            try (RandomAccessFile index = new RandomAccessFile(new File(directory, INDEX_FILE), "rw")) {
+                writeFully(index.getChannel(), position, at);
+            }
+        } else {
+            flush();
+            writeFully(indexChannel, position, at);
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        dataBatch.flip();
+        writeFully(segmentChannel, dataBatch);
+        dataBatch.clear();
+        indexBatch.flip();
+        writeFully(indexChannel, indexBatch);
+        indexBatch.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            segmentChannel.close();
+            indexChannel.close();
+        }
+    }
+
+    private void openSegment(int next) throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.close();
+        }
+        segment = next;
+        segmentSize = 0;
+        segmentChannel = new FileOutputStream(new File(directory, segmentFileName(segment))).getChannel();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
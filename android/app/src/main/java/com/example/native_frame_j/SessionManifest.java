@@ -0,0 +1,317 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-session binary manifest of the frames stored so far, so a session can be listed or
+ * filtered without opening its JPEGs. The save pipeline appends one record per frame as it
+ * completes and keeps the header's totals current, so a session summary is one
+ * {@value #HEADER_SIZE}-byte read.
+ *
+ * <p>Layout of {@code session.manifest}: a big-endian header (magic, version, record size,
+ * frame count, located frame count, earliest and latest timestamp, then the bounding box as
+ * min/max latitude and min/max longitude) followed by one {@value #RECORD_SIZE}-byte record per
+ * frame in completion order; see the {@code RECORD_*} offsets. Frames without a position
+ * (0, 0) are not counted as located and do not widen the bounding box until they are
+ * backfilled; a frame that moves when backfilled is counted once and leaves the box it no
+ * longer supports.
+ */
+public class SessionManifest {
+
+    static final String MANIFEST_FILE = "session.manifest";
+    static final int MAGIC = 0x4E464D46; // "NFMF"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 40;
+
+    static final int HEADER_FRAME_COUNT = 8;
+    static final int HEADER_LOCATED_COUNT = 12;
+    static final int HEADER_FIRST_TIMESTAMP = 16;
+    static final int HEADER_LAST_TIMESTAMP = 24;
+    static final int HEADER_MIN_LATITUDE = 32;
+    static final int HEADER_MAX_LATITUDE = 40;
+    static final int HEADER_MIN_LONGITUDE = 48;
+    static final int HEADER_MAX_LONGITUDE = 56;
+
+    static final int RECORD_FRAME_INDEX = 0;
+    static final int RECORD_SHARPNESS = 4;
+    static final int RECORD_TIMESTAMP = 8;
+    static final int RECORD_LATITUDE = 16;
+    static final int RECORD_LONGITUDE = 24;
+    static final int RECORD_ROTATION = 32;
+
+    private final File file;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private FileChannel channel;
+
+    private int frameCount = 0;
+    private int locatedCount = 0;
+    private long firstTimestamp = Long.MAX_VALUE;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private double minLatitude = Double.POSITIVE_INFINITY;
+    private double maxLatitude = Double.NEGATIVE_INFINITY;
+    private double minLongitude = Double.POSITIVE_INFINITY;
+    private double maxLongitude = Double.NEGATIVE_INFINITY;
+
+    /** Frame index and position of every record, by record number, so backfills can find and move them. */
+    private int[] recordFrames = new int[256];
+    private double[] recordLatitudes = new double[256];
+    private double[] recordLongitudes = new double[256];
+
+    /** Starts an empty manifest in {@code directory}, replacing any previous one. */
+    public SessionManifest(File directory) throws IOException {
+        file = new File(directory, MANIFEST_FILE);
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        writeHeader();
+    }
+
+    /** Appends a completed frame and updates the header totals. */
+    public synchronized void append(int frameIndex, long timestamp, double latitude, double longitude,
+                                    int rotationDegrees, int sharpness) throws IOException {
+        record.clear();
+        record.putInt(frameIndex)
+                .putInt(sharpness)
+                .putLong(timestamp)
+                .putDouble(latitude)
+                .putDouble(longitude)
+                .putInt(rotationDegrees)
+                .putInt(0);
+        record.flip();
+        writeFully(openChannel(), record, HEADER_SIZE + (long) frameCount * RECORD_SIZE);
+
+        if (frameCount == recordFrames.length) {
+            recordFrames = Arrays.copyOf(recordFrames, frameCount * 2);
+            recordLatitudes = Arrays.copyOf(recordLatitudes, frameCount * 2);
+            recordLongitudes = Arrays.copyOf(recordLongitudes, frameCount * 2);
+        }
+        recordFrames[frameCount] = frameIndex;
+        recordLatitudes[frameCount] = latitude;
+        recordLongitudes[frameCount] = longitude;
+        frameCount++;
+        firstTimestamp = Math.min(firstTimestamp, timestamp);
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        if (isLocated(latitude, longitude)) {
+            locatedCount++;
+            include(latitude, longitude);
+        }
+        writeHeader();
+    }
+
+    /** Records the backfilled position of a frame appended without one, or with a held one. */
+    public synchronized void updateLocation(int frameIndex, double latitude, double longitude) throws IOException {
+        int at = -1;
+        for (int i = frameCount - 1; i >= 0; i--) {
+            if (recordFrames[i] == frameIndex) {
+                at = i;
+                break;
+            }
+        }
+        if (at < 0) {
+            throw new IOException("Frame " + frameIndex + " is not in the manifest");
+        }
+        record.clear();
+        record.putDouble(latitude).putDouble(longitude);
+        record.flip();
+        writeFully(openChannel(), record, HEADER_SIZE + (long) at * RECORD_SIZE + RECORD_LATITUDE);
+
+        double oldLatitude = recordLatitudes[at];
+        double oldLongitude = recordLongitudes[at];
+        recordLatitudes[at] = latitude;
+        recordLongitudes[at] = longitude;
+        if (!isLocated(oldLatitude, oldLongitude)) {
+            if (isLocated(latitude, longitude)) {
+                locatedCount++;
+                include(latitude, longitude);
+            }
+        } else if (!isLocated(latitude, longitude)) {
+            locatedCount--;
+            recomputeBox();
+        } else if (oldLatitude == minLatitude || oldLatitude == maxLatitude
+                || oldLongitude == minLongitude || oldLongitude == maxLongitude) {
+            // The old position may have been the only one holding an edge of the box.
+            recomputeBox();
+        } else {
+            include(latitude, longitude);
+        }
+        writeHeader();
+    }
+
+    /** Releases the file; a later backfill reopens it. */
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static boolean isLocated(double latitude, double longitude) {
+        return latitude != 0.0 || longitude != 0.0;
+    }
+
+    private void include(double latitude, double longitude) {
+        minLatitude = Math.min(minLatitude, latitude);
+        maxLatitude = Math.max(maxLatitude, latitude);
+        minLongitude = Math.min(minLongitude, longitude);
+        maxLongitude = Math.max(maxLongitude, longitude);
+    }
+
+    private void recomputeBox() {
+        minLatitude = Double.POSITIVE_INFINITY;
+        maxLatitude = Double.NEGATIVE_INFINITY;
+        minLongitude = Double.POSITIVE_INFINITY;
+        maxLongitude = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < frameCount; i++) {
+            if (isLocated(recordLatitudes[i], recordLongitudes[i])) {
+                include(recordLatitudes[i], recordLongitudes[i]);
+            }
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        header.clear();
+        header.putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort((short) RECORD_SIZE)
+                .putInt(frameCount)
+                .putInt(locatedCount)
+                .putLong(frameCount > 0 ? firstTimestamp : 0)
+                .putLong(frameCount > 0 ? lastTimestamp : 0)
+                .putDouble(locatedCount > 0 ? minLatitude : 0)
+                .putDouble(locatedCount > 0 ? maxLatitude : 0)
+                .putDouble(locatedCount > 0 ? minLongitude : 0)
+                .putDouble(locatedCount > 0 ? maxLongitude : 0);
+        header.flip();
+        writeFully(openChannel(), header, 0);
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null) {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+        return channel;
+    }
+
+    /** Reads just the header of {@code directory}'s manifest, or returns null if it has none. */
+    public static Summary readSummary(File directory) throws IOException {
+        File manifest = new File(directory, MANIFEST_FILE);
+        if (!manifest.exists()) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (RandomAccessFile in = new RandomAccessFile(manifest, "r")) {
+            in.readFully(header.array());
+        }
+        checkHeader(header, manifest);
+        return new Summary(header);
+    }
+
+    /** Reads every record of {@code directory}'s manifest, or returns null if it has none. */
+    public static Records readRecords(File directory) throws IOException {
+        File manifest = new File(directory, MANIFEST_FILE);
+        if (!manifest.exists()) {
+            return null;
+        }
+        ByteBuffer bytes;
+        try (RandomAccessFile in = new RandomAccessFile(manifest, "r")) {
+            bytes = ByteBuffer.allocate((int) in.length());
+            in.readFully(bytes.array());
+        }
+        checkHeader(bytes, manifest);
+        // Trust the header's count; a record written just before a crash is left out.
+        int count = Math.min(bytes.getInt(HEADER_FRAME_COUNT), (bytes.limit() - HEADER_SIZE) / RECORD_SIZE);
+        return new Records(bytes, count);
+    }
+
+    private static void checkHeader(ByteBuffer header, File manifest) throws IOException {
+        if (header.limit() < HEADER_SIZE
+                || header.getInt(0) != MAGIC
+                || header.getShort(4) != VERSION
+                || header.getShort(6) != RECORD_SIZE) {
+            throw new IOException("Not a session manifest: " + manifest);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /** Totals from a manifest header. Latitude and longitude bounds are only set if {@link #locatedCount} > 0. */
+    public static class Summary {
+        public final int frameCount;
+        public final int locatedCount;
+        public final long firstTimestamp;
+        public final long lastTimestamp;
+        public final double minLatitude;
+        public final double maxLatitude;
+        public final double minLongitude;
+        public final double maxLongitude;
+
+        Summary(ByteBuffer header) {
+            frameCount = header.getInt(HEADER_FRAME_COUNT);
+            locatedCount = header.getInt(HEADER_LOCATED_COUNT);
+            firstTimestamp = header.getLong(HEADER_FIRST_TIMESTAMP);
+            lastTimestamp = header.getLong(HEADER_LAST_TIMESTAMP);
+            minLatitude = header.getDouble(HEADER_MIN_LATITUDE);
+            maxLatitude = header.getDouble(HEADER_MAX_LATITUDE);
+            minLongitude = header.getDouble(HEADER_MIN_LONGITUDE);
+            maxLongitude = header.getDouble(HEADER_MAX_LONGITUDE);
+        }
+
+        /** The summary as platform-channel values; the bounding box only when some frame has a position. */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("frameCount", frameCount);
+            map.put("locatedCount", locatedCount);
+            map.put("firstTimestamp", firstTimestamp);
+            map.put("lastTimestamp", lastTimestamp);
+            if (locatedCount > 0) {
+                map.put("minLatitude", minLatitude);
+                map.put("maxLatitude", maxLatitude);
+                map.put("minLongitude", minLongitude);
+                map.put("maxLongitude", maxLongitude);
+            }
+            return map;
+        }
+    }
+
+    /** A manifest's records in parallel primitive arrays, in completion order. */
+    public static class Records {
+        public final int count;
+        public final int[] frameIndices;
+        public final long[] timestamps;
+        public final double[] latitudes;
+        public final double[] longitudes;
+        public final int[] rotations;
+        public final int[] sharpness;
+
+        Records(ByteBuffer bytes, int count) {
+            this.count = count;
+            frameIndices = new int[count];
+            timestamps = new long[count];
+            latitudes = new double[count];
+            longitudes = new double[count];
+            rotations = new int[count];
+            sharpness = new int[count];
+            for (int i = 0; i < count; i++) {
+                int at = HEADER_SIZE + i * RECORD_SIZE;
+                frameIndices[i] = bytes.getInt(at + RECORD_FRAME_INDEX);
+                sharpness[i] = bytes.getInt(at + RECORD_SHARPNESS);
+                timestamps[i] = bytes.getLong(at + RECORD_TIMESTAMP);
+                latitudes[i] = bytes.getDouble(at + RECORD_LATITUDE);
+                longitudes[i] = bytes.getDouble(at + RECORD_LONGITUDE);
+                rotations[i] = bytes.getInt(at + RECORD_ROTATION);
+            }
+        }
+    }
+}
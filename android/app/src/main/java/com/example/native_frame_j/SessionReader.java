@@ -0,0 +1,183 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Random access to a session stored by {@link SegmentArchiveWriter}. The index and the segment
+ * files are memory-mapped, so frame metadata and JPEG bytes are read in place: frames are
+ * addressed by their position in capture order, and {@link #jpeg(int)} returns a slice of the
+ * mapped segment rather than a copy. Records a crash left pointing past the end of their
+ * segment are not visible.
+ *
+ * <p>Segments are mapped on first use. Readers are not thread-safe; give each thread its own
+ * or synchronize externally.
+ */
+public class SessionReader implements Iterable<ByteBuffer> {
+
+    private final File directory;
+    private final ByteBuffer index;
+    private final MappedByteBuffer[] segments;
+    /** Index record offsets in capture order. */
+    private final int[] records;
+    /** Wall-clock timestamps in capture order, for {@link #positionAt(long)}. */
+    private final long[] timestamps;
+
+    private SessionReader(File directory, ByteBuffer index, MappedByteBuffer[] segments, int[] records) {
+        this.directory = directory;
+        this.index = index;
+        this.segments = segments;
+        this.records = records;
+        timestamps = new long[records.length];
+        for (int i = 0; i < records.length; i++) {
+            timestamps[i] = index.getLong(records[i] + SegmentArchiveWriter.RECORD_TIMESTAMP);
+        }
+    }
+
+    public static SessionReader open(File sessionDirectory) throws IOException {
+        File indexFile = new File(sessionDirectory, SegmentArchiveWriter.INDEX_FILE);
+        ByteBuffer index = map(indexFile);
+        SegmentArchiveWriter.checkHeader(index, indexFile);
+
+        int count = (index.limit() - SegmentArchiveWriter.HEADER_SIZE) / SegmentArchiveWriter.RECORD_SIZE;
+        long[] segmentLengths = new long[0];
+        // Sort key: frame index in the high half, record offset in the low half.
+        long[] keys = new long[count];
+        int valid = 0;
+        for (int i = 0; i < count; i++) {
+            int record = SegmentArchiveWriter.HEADER_SIZE + i * SegmentArchiveWriter.RECORD_SIZE;
+            int segment = index.getInt(record + SegmentArchiveWriter.RECORD_SEGMENT);
+            if (segment < 0) {
+                continue;
+            }
+            if (segment >= segmentLengths.length) {
+                int known = segmentLengths.length;
+                segmentLengths = Arrays.copyOf(segmentLengths, segment + 1);
+                for (int s = known; s <= segment; s++) {
+                    segmentLengths[s] = new File(sessionDirectory, SegmentArchiveWriter.segmentFileName(s)).length();
+                }
+            }
+            long end = index.getLong(record + SegmentArchiveWriter.RECORD_OFFSET)
+                    + index.getInt(record + SegmentArchiveWriter.RECORD_LENGTH);
+            if (end > segmentLengths[segment]) {
+                continue;
+            }
+            keys[valid++] = ((long) index.getInt(record + SegmentArchiveWriter.RECORD_FRAME_INDEX) << 32) | record;
+        }
+
+        // Encode workers finish out of order; frame indices follow the sensor, i.e. capture order.
+        Arrays.sort(keys, 0, valid);
+        int[] records = new int[valid];
+        for (int i = 0; i < valid; i++) {
+            records[i] = (int) keys[i];
+        }
+        return new SessionReader(sessionDirectory, index, new MappedByteBuffer[segmentLengths.length], records);
+    }
+
+    public int frameCount() {
+        return records.length;
+    }
+
+    public int frameIndex(int position) {
+        return index.getInt(records[position] + SegmentArchiveWriter.RECORD_FRAME_INDEX);
+    }
+
+    public long timestamp(int position) {
+        return timestamps[position];
+    }
+
+    public double latitude(int position) {
+        return index.getDouble(records[position] + SegmentArchiveWriter.RECORD_LATITUDE);
+    }
+
+    public double longitude(int position) {
+        return index.getDouble(records[position] + SegmentArchiveWriter.RECORD_LONGITUDE);
+    }
+
+    public int rotationDegrees(int position) {
+        return index.getInt(records[position] + SegmentArchiveWriter.RECORD_ROTATION);
+    }
+
+    public int sharpness(int position) {
+        return index.getInt(records[position] + SegmentArchiveWriter.RECORD_SHARPNESS);
+    }
+
+    /** The frame's complete JPEG stream as a read-only slice of the mapped segment. */
+    public ByteBuffer jpeg(int position) throws IOException {
+        int record = records[position];
+        int segment = index.getInt(record + SegmentArchiveWriter.RECORD_SEGMENT);
+        if (segments[segment] == null) {
+            segments[segment] = map(new File(directory, SegmentArchiveWriter.segmentFileName(segment)));
+        }
+        ByteBuffer view = segments[segment].duplicate();
+        int offset = (int) index.getLong(record + SegmentArchiveWriter.RECORD_OFFSET);
+        view.position(offset);
+        view.limit(offset + index.getInt(record + SegmentArchiveWriter.RECORD_LENGTH));
+        return view.slice();
+    }
+
+    /**
+     * Position of the last frame taken at or before {@code timestamp} (wall-clock millis), or of
+     * the first frame if all are later; -1 for an empty session.
+     */
+    public int positionAt(long timestamp) {
+        if (records.length == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = records.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /** JPEG slices in capture order; an unreadable segment surfaces as an {@link IllegalStateException}. */
+    @Override
+    public Iterator<ByteBuffer> iterator() {
+        return new Iterator<ByteBuffer>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < records.length;
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (next >= records.length) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return jpeg(next++);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
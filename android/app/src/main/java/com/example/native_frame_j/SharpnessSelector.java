@@ -0,0 +1,102 @@
+package com.example.native_frame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the sharpest frame seen in the current sampling window. Frames are scored by the
+ * variance of a 4-neighbour Laplacian over a subsampled Y plane; only a frame that beats the
+ * current best is copied, into a spare ring slot that is then swapped in. The best slot is
+ * published as is when the window ends, so the kept frame is never copied a second time.
+ * Producer thread only.
+ */
+public class SharpnessSelector {
+
+    private static final int STEP = 4;
+
+    private final FrameRingBuffer ring;
+    /** Claimed from the ring for writing while held here. */
+    private FrameSlot best;
+    private FrameSlot spare;
+    private int bestScore = -1;
+
+    public SharpnessSelector(FrameRingBuffer ring) {
+        this.ring = ring;
+    }
+
+    /** Laplacian variance of the Y plane sampled every {@value #STEP} pixels; higher is sharper. */
+    public static int score(ByteBuffer yPlane, int rowStride, int width, int height) {
+        int origin = yPlane.position();
+        long sum = 0;
+        long sumSquares = 0;
+        int count = 0;
+        for (int y = STEP; y < height - STEP; y += STEP) {
+            int row = origin + y * rowStride;
+            for (int x = STEP; x < width - STEP; x += STEP) {
+                int center = yPlane.get(row + x) & 0xFF;
+                int laplacian = (yPlane.get(row + x - STEP) & 0xFF)
+                        + (yPlane.get(row + x + STEP) & 0xFF)
+                        + (yPlane.get(row - STEP * rowStride + x) & 0xFF)
+                        + (yPlane.get(row + STEP * rowStride + x) & 0xFF)
+                        - 4 * center;
+                sum += laplacian;
+                sumSquares += (long) laplacian * laplacian;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double mean = (double) sum / count;
+        return (int) Math.round((double) sumSquares / count - mean * mean);
+    }
+
+    /**
+     * Returns the slot to copy the candidate into if {@code score} beats the current best,
+     * otherwise null; also null if the ring has no free slot to hold it. A returned slot must be
+     * followed by {@link #acceptCandidate(int)}.
+     */
+    public FrameSlot slotForCandidate(int score) {
+        if (best != null && score <= bestScore) {
+            return null;
+        }
+        if (spare == null) {
+            spare = ring.tryClaim();
+        }
+        return spare;
+    }
+
+    public void acceptCandidate(int score) {
+        FrameSlot previous = best;
+        best = spare;
+        spare = previous;
+        bestScore = score;
+    }
+
+    public boolean hasBest() {
+        return best != null;
+    }
+
+    /**
+     * Ends the current window and hands over its best slot, still claimed for writing: publish
+     * it or {@link FrameRingBuffer#cancel} it. The next candidate always wins.
+     */
+    public FrameSlot takeBest() {
+        FrameSlot taken = best;
+        best = null;
+        bestScore = -1;
+        return taken;
+    }
+
+    /** Ends the current window and gives the slots held for it back to the ring. */
+    public void clear() {
+        if (best != null) {
+            ring.cancel(best);
+            best = null;
+        }
+        if (spare != null) {
+            ring.cancel(spare);
+            spare = null;
+        }
+        bestScore = -1;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.native_frame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One YUV_420_888 frame as handed out by a {@link CameraSource}: the three plane buffers with
+ * their strides, plus the clocks and orientation the save path needs. Sources reuse one
+ * instance, so it is only valid during the {@link CameraSource.FrameListener#onFrame} call.
+ */
+public class SourceFrame {
+
+    public ByteBuffer yPlane;
+    public ByteBuffer uPlane;
+    public ByteBuffer vPlane;
+    public int yRowStride;
+    public int uvRowStride;
+    public int uvPixelStride;
+    public int width;
+    public int height;
+
+    /** Sensor timestamp; frame gaps and sampling are measured on this clock. */
+    public long timestampNanos;
+    /** Frame time on the location clock (elapsed realtime), used to place the frame on the track. */
+    public long locationTimeNanos;
+    /** Clockwise rotation that turns the frame upright, written to EXIF. */
+    public int rotationDegrees;
+    /**
+     * Whether V and U are views of one VUVU... buffer; detected when the plane format changes,
+     * and again on later frames while the layout is still unknown.
+     */
+    public boolean interleavedVu;
+
+    private int layoutWidth = -1;
+    private int layoutHeight;
+    private int layoutRowStride;
+    private int layoutPixelStride;
+    private int layout = YuvPlaneExtractor.LAYOUT_UNKNOWN;
+
+    public void setPlanes(ByteBuffer yPlane, int yRowStride, ByteBuffer uPlane, ByteBuffer vPlane,
+                          int uvRowStride, int uvPixelStride, int width, int height) {
+        this.yPlane = yPlane;
+        this.yRowStride = yRowStride;
+        this.uPlane = uPlane;
+        this.vPlane = vPlane;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        this.width = width;
+        this.height = height;
+        if (uPlane != null && (layout == YuvPlaneExtractor.LAYOUT_UNKNOWN || width != layoutWidth
+                || height != layoutHeight || uvRowStride != layoutRowStride || uvPixelStride != layoutPixelStride)) {
+            // A camera keeps its chroma layout for a given format, so once known it is not inspected again.
+            layout = YuvPlaneExtractor.detectChromaLayout(uPlane, vPlane, uvPixelStride);
+            interleavedVu = layout == YuvPlaneExtractor.LAYOUT_INTERLEAVED_VU;
+            layoutWidth = width;
+            layoutHeight = height;
+            layoutRowStride = uvRowStride;
+            layoutPixelStride = uvPixelStride;
+        }
+    }
+
+    /** Copies the planes into a ring slot; see {@link FrameSlot#copyPlanes}. */
+    public void copyTo(FrameSlot slot) {
+        slot.copyPlanes(yPlane, yRowStride, uPlane, vPlane, uvRowStride, uvPixelStride, interleavedVu,
+                width, height);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.native_frame;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Generates YUV_420_888 frames laid out the way camera HALs hand them out, for running the
+ * pipeline without a camera. {@code interleavedChroma} gives the common semi-planar layout where
+ * the U and V planes are views one byte apart over the same VU memory; otherwise the chroma
+ * planes are separate. A few distinct frames (gradients with moving bars and noise, so sharpness
+ * scoring and duplicate detection behave as on real footage) are generated up front and cycled.
+ */
+public class SyntheticCameraSource extends PacedCameraSource {
+
+    private static final int PATTERNS = 8;
+
+    private final int width;
+    private final int height;
+    private final int yRowStride;
+    private final int uvRowStride;
+    private final int uvPixelStride;
+    private final long frameIntervalNanos;
+    private final ByteBuffer[][] planes = new ByteBuffer[PATTERNS][];
+
+    private long frameLimit = 0;
+    private long startTimestampNanos = 0;
+    private int dropEvery = 0;
+    private int rotationDegrees = 0;
+
+    private long produced = 0;
+    private long sequence = 0;
+
+    /** @param rowPadding bytes added to the end of every plane row, as camera strides often have */
+    public SyntheticCameraSource(int width, int height, int rowPadding, boolean interleavedChroma, double fps) {
+        super("SyntheticCamera");
+        if (width <= 0 || height <= 0 || width % 2 != 0 || height % 2 != 0 || rowPadding < 0 || fps <= 0) {
+            throw new IllegalArgumentException("Invalid synthetic frame format: " + width + "x" + height
+                    + " +" + rowPadding + " @ " + fps + " fps");
+        }
+        this.width = width;
+        this.height = height;
+        this.yRowStride = width + rowPadding;
+        this.uvPixelStride = interleavedChroma ? 2 : 1;
+        this.uvRowStride = (interleavedChroma ? width : width / 2) + rowPadding;
+        this.frameIntervalNanos = (long) (1_000_000_000L / fps);
+        Random random = new Random(42);
+        for (int i = 0; i < PATTERNS; i++) {
+            planes[i] = generate(i, interleavedChroma, random);
+        }
+    }
+
+    /** Ends the stream after {@code frames} frames; 0, the default, never ends it. */
+    public void setFrameLimit(long frames) {
+        this.frameLimit = frames;
+    }
+
+    public void setStartTimestampNanos(long timestampNanos) {
+        this.startTimestampNanos = timestampNanos;
+    }
+
+    /** Leaves out every {@code n}th timestamp, as if the sensor had dropped that frame; 0 disables it. */
+    public void setDropEvery(int n) {
+        this.dropEvery = n;
+    }
+
+    public void setRotationDegrees(int rotationDegrees) {
+        this.rotationDegrees = rotationDegrees;
+    }
+
+    public long frameIntervalNanos() {
+        return frameIntervalNanos;
+    }
+
+    @Override
+    protected boolean nextFrame(SourceFrame frame) {
+        if (frameLimit > 0 && produced >= frameLimit) {
+            return false;
+        }
+        if (dropEvery > 0 && sequence % dropEvery == dropEvery - 1) {
+            sequence++;
+        }
+        ByteBuffer[] pattern = planes[(int) (produced % PATTERNS)];
+        for (ByteBuffer plane : pattern) {
+            plane.rewind();
+        }
+        frame.setPlanes(pattern[0], yRowStride, pattern[1], pattern[2], uvRowStride, uvPixelStride, width, height);
+        frame.timestampNanos = startTimestampNanos + sequence * frameIntervalNanos;
+        // There is no separate location clock; fixes fed to the processor use this one.
+        frame.locationTimeNanos = frame.timestampNanos;
+        frame.rotationDegrees = rotationDegrees;
+        produced++;
+        sequence++;
+        return true;
+    }
+
+    private ByteBuffer[] generate(int pattern, boolean interleavedChroma, Random random) {
+        ByteBuffer y = ByteBuffer.allocateDirect(yRowStride * (height - 1) + width);
+        int barOffset = pattern * width / PATTERNS;
+        for (int row = 0; row < height; row++) {
+            int rowStart = row * yRowStride;
+            for (int column = 0; column < width; column++) {
+                int value = (column + row) * 255 / (width + height);
+                if (((column + barOffset) / 32) % 4 == 0) {
+                    value = 255 - value;
+                }
+                value += random.nextInt(16) - 8;
+                y.put(rowStart + column, (byte) Math.max(0, Math.min(255, value)));
+            }
+        }
+
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        if (interleavedChroma) {
+            ByteBuffer vu = ByteBuffer.allocateDirect(uvRowStride * (chromaHeight - 1) + chromaWidth * 2);
+            fillChroma(vu, chromaWidth * 2, chromaHeight, random);
+            return new ByteBuffer[]{y, slice(vu, 1, vu.capacity() - 1), slice(vu, 0, vu.capacity() - 1)};
+        }
+        int chromaLength = uvRowStride * (chromaHeight - 1) + chromaWidth;
+        ByteBuffer u = ByteBuffer.allocateDirect(chromaLength);
+        ByteBuffer v = ByteBuffer.allocateDirect(chromaLength);
+        fillChroma(u, chromaWidth, chromaHeight, random);
+        fillChroma(v, chromaWidth, chromaHeight, random);
+        return new ByteBuffer[]{y, u, v};
+    }
+
+    private void fillChroma(ByteBuffer plane, int rowBytes, int rows, Random random) {
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < rowBytes; column++) {
+                plane.put(row * uvRowStride + column, (byte) (128 + random.nextInt(32) - 16));
+            }
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+}
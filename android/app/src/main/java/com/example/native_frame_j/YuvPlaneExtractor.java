@@ -0,0 +1,149 @@
+package com.example.native_frame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts YUV_420_888 planes into an NV21 byte array, honouring row and pixel strides.
+ * Works on plain ByteBuffers so the same code serves Image planes and copied frame slots.
+ */
+public final class YuvPlaneExtractor {
+
+    private YuvPlaneExtractor() {
+    }
+
+    public static int nv21Size(int width, int height) {
+        return width * height + 2 * (width / 2) * (height / 2);
+    }
+
+    /**
+     * Writes the frame into {@code out} as NV21, detecting the chroma layout first. On read-only
+     * planes that detection reads the whole chroma plane; per-frame paths pass the layout instead.
+     */
+    public static void toNv21(ByteBuffer yPlane, int yRowStride,
+                              ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                              int width, int height, byte[] out) {
+        toNv21(yPlane, yRowStride, uPlane, vPlane, uvRowStride, uvPixelStride,
+                isInterleavedVu(uPlane, vPlane, uvPixelStride), width, height, out);
+    }
+
+    /**
+     * Writes the frame into {@code out} as NV21 (full Y plane followed by interleaved VU).
+     * {@code interleavedVu} is the layout from {@link #isInterleavedVu}, detected once per plane
+     * format. Buffer positions are used as plane origins and are restored before returning.
+     */
+    public static void toNv21(ByteBuffer yPlane, int yRowStride,
+                              ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+                              boolean interleavedVu, int width, int height, byte[] out) {
+        if (out.length < nv21Size(width, height)) {
+            throw new IllegalArgumentException("Output buffer too small: " + out.length);
+        }
+        copyLuma(yPlane, yRowStride, width, height, out);
+
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int offset = width * height;
+        if (interleavedVu) {
+            copyInterleavedChroma(uPlane, vPlane, uvRowStride, chromaWidth, chromaHeight, out, offset);
+        } else {
+            copyPlanarChroma(uPlane, vPlane, uvRowStride, uvPixelStride, chromaWidth, chromaHeight, out, offset);
+        }
+    }
+
+    private static void copyLuma(ByteBuffer yPlane, int rowStride, int width, int height, byte[] out) {
+        int origin = yPlane.position();
+        if (rowStride == width) {
+            yPlane.get(out, 0, width * height);
+        } else {
+            for (int row = 0; row < height; row++) {
+                yPlane.position(origin + row * rowStride);
+                yPlane.get(out, row * width, width);
+            }
+        }
+        yPlane.position(origin);
+    }
+
+    /** Chroma layout from {@link #detectChromaLayout}: anything but one VUVU... buffer, copied per pixel. */
+    public static final int LAYOUT_PLANAR = 0;
+    /** Chroma layout: V and U are views of one VUVU... buffer; whole rows are bulk copied from V. */
+    public static final int LAYOUT_INTERLEAVED_VU = 1;
+    /** Chroma layout: read-only planes too uniform to tell; copy per pixel and look again on a later frame. */
+    public static final int LAYOUT_UNKNOWN = 2;
+
+    /**
+     * True when the V plane is the U plane shifted back by one byte, i.e. both views share a
+     * single VUVU... buffer and whole chroma rows can be bulk copied from V.
+     */
+    public static boolean isInterleavedVu(ByteBuffer uPlane, ByteBuffer vPlane, int uvPixelStride) {
+        return detectChromaLayout(uPlane, vPlane, uvPixelStride) == LAYOUT_INTERLEAVED_VU;
+    }
+
+    /**
+     * Tells whether V and U are views of one VUVU... buffer. Writable planes are probed: the
+     * first U byte is flipped and the layout is interleaved if the V view sees the change one
+     * byte in. Read-only planes are compared instead, which needs a whole pass over the plane
+     * and proves nothing while every chroma sample is the same: NV12 or separate planes with
+     * uniform chroma also look shifted by one, so such a frame is {@link #LAYOUT_UNKNOWN}.
+     */
+    public static int detectChromaLayout(ByteBuffer uPlane, ByteBuffer vPlane, int uvPixelStride) {
+        if (uvPixelStride != 2 || vPlane.remaining() < 2 || uPlane.remaining() != vPlane.remaining()) {
+            return LAYOUT_PLANAR;
+        }
+        int uPosition = uPlane.position();
+        int vPosition = vPlane.position();
+        if (!uPlane.isReadOnly()) {
+            byte u = uPlane.get(uPosition);
+            byte v = vPlane.get(vPosition + 1);
+            uPlane.put(uPosition, (byte) ~u);
+            boolean aliased = vPlane.get(vPosition + 1) != v;
+            uPlane.put(uPosition, u);
+            return aliased ? LAYOUT_INTERLEAVED_VU : LAYOUT_PLANAR;
+        }
+
+        int uLimit = uPlane.limit();
+        vPlane.position(vPosition + 1);
+        uPlane.limit(uLimit - 1);
+        boolean shifted = vPlane.compareTo(uPlane) == 0;
+        vPlane.position(vPosition);
+        uPlane.limit(uLimit);
+        if (!shifted) {
+            return LAYOUT_PLANAR;
+        }
+        // Shifted views only prove aliasing if the samples of some channel differ.
+        for (int i = uPosition; i + 2 < uLimit; i++) {
+            if (uPlane.get(i) != uPlane.get(i + 2)) {
+                return LAYOUT_INTERLEAVED_VU;
+            }
+        }
+        return LAYOUT_UNKNOWN;
+    }
+
+    private static void copyInterleavedChroma(ByteBuffer uPlane, ByteBuffer vPlane, int rowStride,
+                                              int chromaWidth, int chromaHeight, byte[] out, int offset) {
+        int vOrigin = vPlane.position();
+        int uOrigin = uPlane.position();
+        int rowBytes = chromaWidth * 2;
+        for (int row = 0; row < chromaHeight; row++) {
+            int dst = offset + row * rowBytes;
+            // The V view ends one byte short of the last U sample, which is taken from the U view.
+            vPlane.position(vOrigin + row * rowStride);
+            vPlane.get(out, dst, rowBytes - 1);
+            out[dst + rowBytes - 1] = uPlane.get(uOrigin + row * rowStride + rowBytes - 2);
+        }
+        vPlane.position(vOrigin);
+    }
+
+    private static void copyPlanarChroma(ByteBuffer uPlane, ByteBuffer vPlane, int rowStride, int pixelStride,
+                                         int chromaWidth, int chromaHeight, byte[] out, int offset) {
+        int uOrigin = uPlane.position();
+        int vOrigin = vPlane.position();
+        int dst = offset;
+        for (int row = 0; row < chromaHeight; row++) {
+            int src = row * rowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                out[dst++] = vPlane.get(vOrigin + src);
+                out[dst++] = uPlane.get(uOrigin + src);
+                src += pixelStride;
+            }
+        }
+    }
+}
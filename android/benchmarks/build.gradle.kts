@@ -0,0 +1,102 @@
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.3"
+}
+
+repositories {
+    mavenCentral()
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Pipeline classes with no Android dependencies, compiled straight from the app sources.
+val pipelineSources = listOf(
+    "ByteArrayPool.java",
+    "CameraSource.java",
+    "DeferredFrameWriter.java",
+    "DeferredTranscoder.java",
+    "DirectoryFrameSink.java",
+    "DuplicateFrameFilter.java",
+    "ExifSegment.java",
+    "ExifTemplate.java",
+    "FrameEncodeScheduler.java",
+    "FrameGapDetector.java",
+    "FrameIndex.java",
+    "FrameProcessor.java",
+    "FrameRingBuffer.java",
+    "FrameSampler.java",
+    "FrameSaver.java",
+    "FrameSink.java",
+    "FrameSlot.java",
+    "GpsBackfill.java",
+    "GroupCommitWriter.java",
+    "JpegEncoder.java",
+    "LatencyHistogram.java",
+    "LocationTrack.java",
+    "Nv21LosslessCodec.java",
+    "Nv21Transform.java",
+    "PacedCameraSource.java",
+    "ParallelJpegEncoder.java",
+    "PipelineMetrics.java",
+    "RawCaptureWriter.java",
+    "RecordingSession.java",
+    "ReplayCameraSource.java",
+    "SegmentArchiveExporter.java",
+    "SegmentArchiveWriter.java",
+    "SessionManifest.java",
+    "SessionReader.java",
+    "SharpnessSelector.java",
+    "SourceFrame.java",
+    "SyntheticCameraSource.java",
+    "YuvPlaneExtractor.java",
+)
+
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java/com/example/native_frame_j"))
+            include(pipelineSources)
+        }
+    }
+    // Tests share the benchmarks' reference kernels and synthetic frames.
+    test {
+        compileClasspath += sourceSets["jmh"].output
+        runtimeClasspath += sourceSets["jmh"].output
+    }
+}
+
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+    testImplementation("com.drewnoakes:metadata-extractor:2.19.0")
+}
+
+tasks.test {
+    useJUnit()
+    // Roughly the heap a mid-range phone gives the app, as for the soak run.
+    maxHeapSize = "256m"
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    includeTests.set(false)
+    warmupIterations.set(2)
+    warmup.set("1s")
+    iterations.set(3)
+    timeOnIteration.set("1s")
+    fork.set(1)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    includes.addAll(providers.gradleProperty("jmhIncludes").map { listOf(it) }.orElse(emptyList()))
+}
+
+// Long-running soak of the save path; options go in -Psoak="--duration 2h --save-fps 10 ...".
+tasks.register<JavaExec>("soak") {
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("com.example.native_frame.SoakHarness")
+    // Roughly the heap a mid-range phone gives the app.
+    jvmArgs("-Xmx256m")
+    args(providers.gradleProperty("soak").map { it.split(" ").filter { arg -> arg.isNotBlank() } }.getOrElse(emptyList()))
+}
@@ -0,0 +1,10 @@
+// Stand-alone JVM build: the benchmarks only need the pure-Java parts of the frame pipeline,
+// so they run without the Flutter or Android SDKs that the :app build requires.
+pluginManagement {
+    repositories {
+        gradlePluginPortal()
+        mavenCentral()
+    }
+}
+
+rootProject.name = "native-frame-benchmarks"
@@ -0,0 +1,73 @@
+package com.example.native_frame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a sampled frame costs the encode workers in deferred-encode mode
+ * ({@link Nv21LosslessCodec#compress}) against encoding it to JPEG on the spot, and what the
+ * background transcoder pays to restore it. Frames come from {@link SyntheticCameraSource},
+ * whose gradients and sensor-like noise compress roughly like a camera frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class DeferredEncodeBenchmark {
+
+    @Param({"640x480", "1280x720"})
+    public String resolution;
+
+    private int width;
+    private int height;
+    private byte[] nv21;
+    private byte[] compressed;
+    private int compressedLength;
+    private byte[] restored;
+    private final ImageIoJpegEncoder jpegEncoder = new ImageIoJpegEncoder();
+    private final ByteArrayOutputStream jpeg = new ByteArrayOutputStream(512 * 1024);
+
+    @Setup
+    public void setUp() throws IOException {
+        width = Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+        height = Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+        SourceFrame frame = new SourceFrame();
+        new SyntheticCameraSource(width, height, 0, true, 30).nextFrame(frame);
+        nv21 = new byte[YuvPlaneExtractor.nv21Size(width, height)];
+        YuvPlaneExtractor.toNv21(frame.yPlane, frame.yRowStride, frame.uPlane, frame.vPlane,
+                frame.uvRowStride, frame.uvPixelStride, width, height, nv21);
+        compressed = new byte[Nv21LosslessCodec.outputCapacity(width, height)];
+        compressedLength = Nv21LosslessCodec.compress(nv21, width, height, compressed);
+        if (compressedLength < 0) {
+            throw new IllegalStateException("Synthetic frame did not compress");
+        }
+        restored = new byte[nv21.length];
+    }
+
+    @Benchmark
+    public int losslessCompress() {
+        return Nv21LosslessCodec.compress(nv21, width, height, compressed);
+    }
+
+    @Benchmark
+    public byte[] losslessDecompress() throws IOException {
+        Nv21LosslessCodec.decompress(compressed, 0, compressedLength, width, height, restored);
+        return restored;
+    }
+
+    @Benchmark
+    public int jpegEncode() throws IOException {
+        jpeg.reset();
+        jpegEncoder.encode(nv21, width, height, FrameSaver.JPEG_QUALITY, jpeg);
+        return jpeg.size();
+    }
+}
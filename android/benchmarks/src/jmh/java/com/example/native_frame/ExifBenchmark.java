@@ -0,0 +1,92 @@
+package com.example.native_frame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * APP1/EXIF construction per frame: building the segment from scratch, patching the
+ * precompiled template, and the string formatting the original ExifInterface path did before
+ * rewriting the file (ExifInterface itself only runs on a device).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ExifBenchmark {
+
+    @Param({"true", "false"})
+    public boolean gps;
+
+    private ExifTemplate template;
+    private long timestamp;
+    private double latitude;
+    private double longitude;
+    private int sharpness;
+
+    @Setup
+    public void setUp() {
+        template = new ExifTemplate();
+        timestamp = 1760000000000L;
+        latitude = gps ? 37.422 : 0.0;
+        longitude = gps ? -122.084 : 0.0;
+    }
+
+    /** Frames advance in time and score so no call sees the same inputs twice in a row. */
+    private void advance() {
+        timestamp += 200;
+        sharpness = (sharpness + 37) & 0xFFFF;
+    }
+
+    @Benchmark
+    public byte[] build() {
+        advance();
+        return ExifSegment.build(timestamp, 90, latitude, longitude, sharpness);
+    }
+
+    @Benchmark
+    public byte[] templatePatch() {
+        advance();
+        return template.patch(timestamp, 90, latitude, longitude, sharpness);
+    }
+
+    @Benchmark
+    public void legacyAttributeStrings(Blackhole blackhole) {
+        advance();
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        blackhole.consume(sdf.format(new Date(timestamp)));
+        blackhole.consume(String.valueOf(ExifSegment.exifOrientation(90)));
+        if (latitude != 0.0 || longitude != 0.0) {
+            SimpleDateFormat gpsDateFormat = new SimpleDateFormat("yyyy:MM:dd", Locale.US);
+            gpsDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            SimpleDateFormat gpsTimeFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
+            gpsTimeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            blackhole.consume(gpsDateFormat.format(new Date(timestamp)));
+            blackhole.consume(gpsTimeFormat.format(new Date(timestamp)));
+            blackhole.consume(dms(latitude));
+            blackhole.consume(dms(longitude));
+        }
+    }
+
+    /** The rational string ExifInterface.setLatLong formats for each coordinate. */
+    private static String dms(double coordinate) {
+        double value = Math.abs(coordinate);
+        int degrees = (int) value;
+        value = (value - degrees) * 60;
+        int minutes = (int) value;
+        value = (value - minutes) * 60;
+        return degrees + "/1," + minutes + "/1," + Math.round(value * 10000) + "/10000";
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.native_frame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ways of getting one encoded frame plus its EXIF segment onto disk. {@link #gatherWrite}
+ * mirrors {@code ImageUtils.writeFully}; {@link #legacyWriteThenRewrite} mirrors the original
+ * path, which wrote the JPEG and then had ExifInterface read it back and rewrite it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class FileWriteBenchmark {
+
+    private static final int FILES = 16;
+
+    @Param({"256", "1024"})
+    public int payloadKb;
+
+    private File directory;
+    private byte[] jpeg;
+    private byte[] app1;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = File.createTempFile("frames", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create " + directory);
+        }
+        jpeg = syntheticJpeg(payloadKb * 1024);
+        app1 = ExifSegment.build(1760000000000L, 90, 37.422, -122.084, 1234);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private File nextFile() {
+        next = (next + 1) % FILES;
+        return new File(directory, "frame_" + next + ".jpg");
+    }
+
+    @Benchmark
+    public void gatherWrite() throws IOException {
+        writeGather(nextFile(), ExifSegment.splice(jpeg, jpeg.length, app1));
+    }
+
+    @Benchmark
+    public void streamWrites() throws IOException {
+        ByteBuffer[] parts = ExifSegment.splice(jpeg, jpeg.length, app1);
+        try (OutputStream out = new FileOutputStream(nextFile())) {
+            for (ByteBuffer part : parts) {
+                out.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+            }
+        }
+    }
+
+    @Benchmark
+    public void bufferedStreamWrites() throws IOException {
+        ByteBuffer[] parts = ExifSegment.splice(jpeg, jpeg.length, app1);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(nextFile()), 64 * 1024)) {
+            for (ByteBuffer part : parts) {
+                out.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+            }
+        }
+    }
+
+    @Benchmark
+    public void legacyWriteThenRewrite() throws IOException {
+        File file = nextFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(jpeg);
+        }
+        byte[] written = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < written.length) {
+                int n = in.read(written, read, written.length - read);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += n;
+            }
+        }
+        File temp = new File(directory, file.getName() + ".tmp");
+        writeGather(temp, ExifSegment.splice(written, written.length, app1));
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static void writeGather(File file, ByteBuffer[] buffers) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            FileChannel channel = out.getChannel();
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        }
+    }
+
+    /** SOI, a JFIF APP0 segment like the platform encoder emits, then noise standing in for scan data. */
+    private static byte[] syntheticJpeg(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        byte[] header = {
+                (byte) 0xFF, (byte) 0xD8,
+                (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0,
+                (byte) 0xFF, (byte) 0xDB
+        };
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        bytes[length - 2] = (byte) 0xFF;
+        bytes[length - 1] = (byte) 0xD9;
+        return bytes;
+    }
+}
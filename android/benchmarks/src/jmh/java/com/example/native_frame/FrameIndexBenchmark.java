@@ -0,0 +1,108 @@
+package com.example.native_frame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paged queries against a cross-session {@link FrameIndex} of sessions spread over a city-sized
+ * area, next to a linear scan over the same frames for reference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FrameIndexBenchmark {
+
+    private static final int SESSIONS = 200;
+    private static final int PAGE = 200;
+
+    @Param({"100000"})
+    public int frames;
+
+    private File root;
+    private FrameIndex index;
+    private long[] timestamps;
+    private double[] latitudes;
+    private double[] longitudes;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = File.createTempFile("sessions", "");
+        if (!root.delete() || !root.mkdir()) {
+            throw new IOException("Could not create " + root);
+        }
+        index = new FrameIndex(root);
+        timestamps = new long[frames];
+        latitudes = new double[frames];
+        longitudes = new double[frames];
+        Random random = new Random(42);
+        int perSession = frames / SESSIONS;
+        for (int i = 0; i < frames; i++) {
+            int session = i / perSession;
+            // Each session is a drive along a random heading through a 0.5 x 0.5 degree area.
+            if (i % perSession == 0) {
+                latitudes[i] = 37.5 + random.nextDouble() * 0.5;
+                longitudes[i] = -122.5 + random.nextDouble() * 0.5;
+            } else {
+                latitudes[i] = latitudes[i - 1] + (random.nextDouble() - 0.5) * 0.0004;
+                longitudes[i] = longitudes[i - 1] + (random.nextDouble() - 0.5) * 0.0004;
+            }
+            timestamps[i] = 1760000000000L + session * 86400000L + (i % perSession) * 200L;
+            index.add(RecordingSession.DIRECTORY_PREFIX + session, i % perSession, timestamps[i],
+                    latitudes[i], longitudes[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = root.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        root.delete();
+    }
+
+    /** Roughly a 1 km square. */
+    @Benchmark
+    public FrameIndex.Page queryBoxSmall() {
+        return index.queryBox(37.70, 37.71, -122.30, -122.29, Long.MIN_VALUE, Long.MAX_VALUE, 0, PAGE);
+    }
+
+    /** A quarter of the whole area, limited to a month. */
+    @Benchmark
+    public FrameIndex.Page queryBoxWide() {
+        return index.queryBox(37.5, 37.75, -122.5, -122.25, 1760000000000L, 1760000000000L + 30 * 86400000L,
+                0, PAGE);
+    }
+
+    @Benchmark
+    public FrameIndex.Page queryTime() {
+        return index.queryTime(1760000000000L + 50 * 86400000L, 1760000000000L + 80 * 86400000L, 1000, PAGE);
+    }
+
+    /** Counts the small-box matches by checking every frame. */
+    @Benchmark
+    public int linearScanSmall() {
+        int matches = 0;
+        for (int i = 0; i < frames; i++) {
+            if (latitudes[i] >= 37.70 && latitudes[i] <= 37.71
+                    && longitudes[i] >= -122.30 && longitudes[i] <= -122.29) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.native_frame;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * JVM stand-in for {@link YuvImageJpegEncoder}: converts NV21 to RGB with the BT.601 full-range
+ * matrix and compresses it with the JDK's ImageIO JPEG writer. Slower than the platform
+ * encoder, but it lets the pipeline run end to end off-device.
+ */
+final class ImageIoJpegEncoder implements JpegEncoder {
+
+    @Override
+    public void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int chromaStart = width * height;
+        for (int row = 0; row < height; row++) {
+            int chromaRow = chromaStart + (row >> 1) * width;
+            for (int column = 0; column < width; column++) {
+                int y = nv21[row * width + column] & 0xFF;
+                int chroma = chromaRow + (column & ~1);
+                int v = (nv21[chroma] & 0xFF) - 128;
+                int u = (nv21[chroma + 1] & 0xFF) - 128;
+                int offset = (row * width + column) * 3;
+                bgr[offset] = clamp(y + ((454 * u) >> 8));
+                bgr[offset + 1] = clamp(y - ((88 * u + 183 * v) >> 8));
+                bgr[offset + 2] = clamp(y + ((359 * v) >> 8));
+            }
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality / 100f);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static byte clamp(int value) {
+        return (byte) (value < 0 ? 0 : Math.min(value, 255));
+    }
+}
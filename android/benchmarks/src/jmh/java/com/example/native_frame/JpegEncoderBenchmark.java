@@ -0,0 +1,116 @@
+package com.example.native_frame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One frame through {@link ParallelJpegEncoder} at 1, 2 and 4 threads against
+ * {@link ImageIoJpegEncoder}. Setup decodes the parallel encoder's output with ImageIO and
+ * checks it is as close to the frame's RGB as ImageIO's own JPEG, so a broken bitstream or a
+ * quality regression fails the run instead of producing a fast number.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class JpegEncoderBenchmark {
+
+    /** How much worse than ImageIO's PSNR the parallel encoder may be. */
+    private static final double MAX_PSNR_LOSS_DB = 0.5;
+
+    @Param({"640x480", "1280x720"})
+    public String resolution;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private int width;
+    private int height;
+    private byte[] nv21;
+    private ParallelJpegEncoder parallel;
+    private final ImageIoJpegEncoder imageIo = new ImageIoJpegEncoder();
+    private final ByteArrayOutputStream jpeg = new ByteArrayOutputStream(512 * 1024);
+
+    @Setup
+    public void setUp() throws IOException {
+        width = Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+        height = Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+        SourceFrame frame = new SourceFrame();
+        new SyntheticCameraSource(width, height, 0, true, 30).nextFrame(frame);
+        nv21 = new byte[YuvPlaneExtractor.nv21Size(width, height)];
+        YuvPlaneExtractor.toNv21(frame.yPlane, frame.yRowStride, frame.uPlane, frame.vPlane,
+                frame.uvRowStride, frame.uvPixelStride, width, height, nv21);
+        parallel = new ParallelJpegEncoder(threads);
+
+        double parallelPsnr = psnr(parallelEncode());
+        double imageIoPsnr = psnr(imageIoEncode());
+        if (parallelPsnr < imageIoPsnr - MAX_PSNR_LOSS_DB) {
+            throw new IllegalStateException(String.format("Parallel encoder PSNR %.2f dB, ImageIO %.2f dB",
+                    parallelPsnr, imageIoPsnr));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        parallel.shutdown();
+    }
+
+    @Benchmark
+    public int parallelEncode() throws IOException {
+        jpeg.reset();
+        parallel.encode(nv21, width, height, FrameSaver.JPEG_QUALITY, jpeg);
+        return jpeg.size();
+    }
+
+    /** Single-threaded whatever {@code threads} is; compare against the {@code threads=1} row. */
+    @Benchmark
+    public int imageIoEncode() throws IOException {
+        jpeg.reset();
+        imageIo.encode(nv21, width, height, FrameSaver.JPEG_QUALITY, jpeg);
+        return jpeg.size();
+    }
+
+    /** Decodes the JPEG in {@link #jpeg} and compares it with the frame converted to RGB. */
+    private double psnr(int length) throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg.toByteArray(), 0, length));
+        if (decoded == null || decoded.getWidth() != width || decoded.getHeight() != height) {
+            throw new IllegalStateException("Encoder output does not decode as a " + resolution + " JPEG");
+        }
+        double squaredError = 0;
+        for (int row = 0; row < height; row++) {
+            int chromaRow = width * height + (row >> 1) * width;
+            for (int column = 0; column < width; column++) {
+                int y = nv21[row * width + column] & 0xFF;
+                int chroma = chromaRow + (column & ~1);
+                int v = (nv21[chroma] & 0xFF) - 128;
+                int u = (nv21[chroma + 1] & 0xFF) - 128;
+                int rgb = decoded.getRGB(column, row);
+                squaredError += square(clamp(y + ((359 * v) >> 8)) - ((rgb >> 16) & 0xFF))
+                        + square(clamp(y - ((88 * u + 183 * v) >> 8)) - ((rgb >> 8) & 0xFF))
+                        + square(clamp(y + ((454 * u) >> 8)) - (rgb & 0xFF));
+            }
+        }
+        return 10 * Math.log10(255.0 * 255.0 * 3 * width * height / squaredError);
+    }
+
+    private static double square(int value) {
+        return (double) value * value;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+}
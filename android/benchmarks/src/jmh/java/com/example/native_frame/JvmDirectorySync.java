@@ -0,0 +1,19 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/** Directory fsync on a desktop JVM, where a directory can be opened read-only as a channel. */
+final class JvmDirectorySync implements GroupCommitWriter.DirectorySync {
+
+    static final JvmDirectorySync INSTANCE = new JvmDirectorySync();
+
+    @Override
+    public void sync(File directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
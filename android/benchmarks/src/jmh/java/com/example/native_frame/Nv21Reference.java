@@ -0,0 +1,118 @@
+package com.example.native_frame;
+
+/**
+ * Straightforward per-pixel NV21 rotation, 2x box downscale and bilinear scaling. These are the baselines any
+ * optimised kernel has to beat, and the reference its output must match bit for bit.
+ */
+final class Nv21Reference {
+
+    private Nv21Reference() {
+    }
+
+    /**
+     * Rotates clockwise by {@code degrees} (90, 180 or 270). For 90 and 270 the output is
+     * {@code height x width}.
+     */
+    static void rotate(byte[] in, int width, int height, int degrees, byte[] out) {
+        int outWidth = degrees == 180 ? width : height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                out[rotatedIndex(x, y, width, height, degrees, outWidth)] = in[y * width + x];
+            }
+        }
+
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int outChromaWidth = outWidth / 2;
+        int inOffset = width * height;
+        int outOffset = width * height;
+        for (int y = 0; y < chromaHeight; y++) {
+            for (int x = 0; x < chromaWidth; x++) {
+                int source = inOffset + y * width + x * 2;
+                int target = outOffset + rotatedIndex(x, y, chromaWidth, chromaHeight, degrees, outChromaWidth) * 2;
+                out[target] = in[source];
+                out[target + 1] = in[source + 1];
+            }
+        }
+    }
+
+    /** Halves both dimensions by averaging each 2x2 block (with rounding) on every plane. */
+    static void downscale2x(byte[] in, int width, int height, byte[] out) {
+        int outWidth = width / 2;
+        int outHeight = height / 2;
+        for (int y = 0; y < outHeight; y++) {
+            for (int x = 0; x < outWidth; x++) {
+                int top = (y * 2) * width + x * 2;
+                int bottom = top + width;
+                int sum = (in[top] & 0xFF) + (in[top + 1] & 0xFF) + (in[bottom] & 0xFF) + (in[bottom + 1] & 0xFF);
+                out[y * outWidth + x] = (byte) ((sum + 2) >> 2);
+            }
+        }
+
+        int chromaWidth = outWidth / 2;
+        int chromaHeight = outHeight / 2;
+        int inOffset = width * height;
+        int outOffset = outWidth * outHeight;
+        for (int y = 0; y < chromaHeight; y++) {
+            for (int x = 0; x < chromaWidth; x++) {
+                for (int c = 0; c < 2; c++) {
+                    int top = inOffset + (y * 2) * width + x * 4 + c;
+                    int bottom = top + width;
+                    int sum = (in[top] & 0xFF) + (in[top + 2] & 0xFF) + (in[bottom] & 0xFF) + (in[bottom + 2] & 0xFF);
+                    out[outOffset + y * outWidth + x * 2 + c] = (byte) ((sum + 2) >> 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resamples every plane with a bilinear filter on pixel centres: the centre of output sample
+     * {@code i} maps to {@code (i + 0.5) * in / out - 0.5} input samples, kept in 16.16 fixed
+     * point and clamped at 0, and the blend uses weights in 1/256ths with rounding.
+     */
+    static void scaleBilinear(byte[] in, int width, int height, byte[] out, int outWidth, int outHeight) {
+        scalePlane(in, 0, width, width, height, 1, out, 0, outWidth, outWidth, outHeight);
+        for (int c = 0; c < 2; c++) {
+            scalePlane(in, width * height + c, width, width / 2, height / 2, 2,
+                    out, outWidth * outHeight + c, outWidth, outWidth / 2, outHeight / 2);
+        }
+    }
+
+    private static void scalePlane(byte[] in, int inOffset, int inRowBytes, int inWidth, int inHeight, int step,
+                                   byte[] out, int outOffset, int outRowBytes, int outWidth, int outHeight) {
+        for (int y = 0; y < outHeight; y++) {
+            long sourceY = Math.max(0, y * (((long) inHeight << 16) / outHeight)
+                    + (((long) inHeight << 16) / outHeight >> 1) - 0x8000) >> 8;
+            int y0 = Math.min((int) (sourceY >> 8), inHeight - 1);
+            int y1 = Math.min(y0 + 1, inHeight - 1);
+            int fy = (int) (sourceY & 0xFF);
+            for (int x = 0; x < outWidth; x++) {
+                long sourceX = Math.max(0, x * (((long) inWidth << 16) / outWidth)
+                        + (((long) inWidth << 16) / outWidth >> 1) - 0x8000) >> 8;
+                int x0 = Math.min((int) (sourceX >> 8), inWidth - 1);
+                int x1 = Math.min(x0 + 1, inWidth - 1);
+                int fx = (int) (sourceX & 0xFF);
+                int a = in[inOffset + y0 * inRowBytes + x0 * step] & 0xFF;
+                int b = in[inOffset + y0 * inRowBytes + x1 * step] & 0xFF;
+                int c = in[inOffset + y1 * inRowBytes + x0 * step] & 0xFF;
+                int d = in[inOffset + y1 * inRowBytes + x1 * step] & 0xFF;
+                int top = a * (256 - fx) + b * fx;
+                int bottom = c * (256 - fx) + d * fx;
+                out[outOffset + y * outRowBytes + x * step] = (byte) ((top * (256 - fy) + bottom * fy + 0x8000) >> 16);
+            }
+        }
+    }
+
+    private static int rotatedIndex(int x, int y, int width, int height, int degrees, int outWidth) {
+        switch (degrees) {
+            case 90:
+                return x * outWidth + (height - 1 - y);
+            case 180:
+                return (height - 1 - y) * outWidth + (width - 1 - x);
+            case 270:
+                return (width - 1 - x) * outWidth + y;
+            default:
+                throw new IllegalArgumentException("Unsupported rotation: " + degrees);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.native_frame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Nv21Transform} against the per-pixel baselines in {@link Nv21Reference}; that the
+ * outputs match bit for bit is checked by {@code Nv21TransformTest}. {@code threads} is the
+ * transform's parallelism; frames below 720p are always done on the calling thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Nv21TransformBenchmark {
+
+    @State(Scope.Thread)
+    public static class Frame {
+        @Param({"640x480", "1920x1080"})
+        public String resolution;
+
+        SyntheticFrame frame;
+        byte[] nv21;
+
+        @Setup
+        public void setUp() {
+            frame = SyntheticFrame.of(resolution, 0, true);
+            nv21 = frame.toNv21();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Transform {
+        @Param({"1", "4"})
+        public int threads;
+
+        Nv21Transform transform;
+
+        @Setup
+        public void setUp() {
+            transform = new Nv21Transform(threads);
+        }
+
+        @TearDown
+        public void tearDown() {
+            transform.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Rotation {
+        @Param({"90", "180", "270"})
+        public int degrees;
+
+        byte[] out;
+
+        @Setup
+        public void setUp(Frame frame) {
+            out = new byte[frame.nv21.length];
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Downscale {
+        byte[] out;
+
+        @Setup
+        public void setUp(Frame frame) {
+            out = new byte[YuvPlaneExtractor.nv21Size(frame.frame.width / 2, frame.frame.height / 2)];
+        }
+    }
+
+    /** Three quarters of each dimension, a factor only the bilinear filter can do. */
+    @State(Scope.Thread)
+    public static class Bilinear {
+        int width;
+        int height;
+        byte[] out;
+
+        @Setup
+        public void setUp(Frame frame) {
+            width = frame.frame.width * 3 / 4 & ~1;
+            height = frame.frame.height * 3 / 4 & ~1;
+            out = new byte[YuvPlaneExtractor.nv21Size(width, height)];
+        }
+    }
+
+    @Benchmark
+    public byte[] rotateNaive(Frame frame, Rotation rotation) {
+        Nv21Reference.rotate(frame.nv21, frame.frame.width, frame.frame.height, rotation.degrees, rotation.out);
+        return rotation.out;
+    }
+
+    @Benchmark
+    public byte[] rotateTiled(Frame frame, Rotation rotation, Transform transform) {
+        transform.transform.rotate(frame.nv21, frame.frame.width, frame.frame.height, rotation.degrees, rotation.out);
+        return rotation.out;
+    }
+
+    @Benchmark
+    public byte[] downscale2xNaive(Frame frame, Downscale downscale) {
+        Nv21Reference.downscale2x(frame.nv21, frame.frame.width, frame.frame.height, downscale.out);
+        return downscale.out;
+    }
+
+    @Benchmark
+    public byte[] downscale2xBox(Frame frame, Downscale downscale, Transform transform) {
+        transform.transform.downscale2x(frame.nv21, frame.frame.width, frame.frame.height, downscale.out);
+        return downscale.out;
+    }
+
+    @Benchmark
+    public byte[] scaleBilinearNaive(Frame frame, Bilinear bilinear) {
+        Nv21Reference.scaleBilinear(frame.nv21, frame.frame.width, frame.frame.height,
+                bilinear.out, bilinear.width, bilinear.height);
+        return bilinear.out;
+    }
+
+    @Benchmark
+    public byte[] scaleBilinearFast(Frame frame, Bilinear bilinear, Transform transform) {
+        transform.transform.scaleBilinear(frame.nv21, frame.frame.width, frame.frame.height,
+                bilinear.out, bilinear.width, bilinear.height);
+        return bilinear.out;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.native_frame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole recording through the unchanged {@link FrameProcessor} (sampling, duplicate and
+ * sharpness filters, ring copy, encode workers, EXIF splice, file-per-frame sink) fed by a
+ * {@link SyntheticCameraSource} or by a {@link ReplayCameraSource} playing a raw capture of
+ * the same frames, as fast as the processor takes them. Every frame is due for saving.
+ * {@code canned} writes one precomputed JPEG for every frame, isolating the pipeline from the
+ * encoder; {@code imageio} encodes each frame with {@link ImageIoJpegEncoder} and
+ * {@code parallel} with a {@link ParallelJpegEncoder} as wide as the encode workers.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class PipelineReplayBenchmark {
+
+    @Param({"120"})
+    public int frames;
+
+    @Param({"640x480"})
+    public String resolution;
+
+    @Param({"synthetic", "replay"})
+    public String source;
+
+    @Param({"canned", "imageio", "parallel"})
+    public String encoder;
+
+    private int width;
+    private int height;
+    private File captureFile;
+    private File directory;
+    private JpegEncoder jpegEncoder;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        int separator = resolution.indexOf('x');
+        width = Integer.parseInt(resolution.substring(0, separator));
+        height = Integer.parseInt(resolution.substring(separator + 1));
+
+        captureFile = File.createTempFile("capture", ".raw");
+        try (RawCaptureWriter writer = new RawCaptureWriter(captureFile)) {
+            PacedCameraSource synthetic = newSynthetic();
+            synthetic.start(writer);
+            synthetic.awaitEnd(60_000);
+        }
+
+        ImageIoJpegEncoder imageIo = new ImageIoJpegEncoder();
+        if ("imageio".equals(encoder)) {
+            jpegEncoder = imageIo;
+        } else if ("parallel".equals(encoder)) {
+            jpegEncoder = new ParallelJpegEncoder(FrameEncodeScheduler.defaultWorkerCount());
+        } else {
+            ByteArrayOutputStream canned = new ByteArrayOutputStream();
+            imageIo.encode(new SyntheticFrame(width, height, 0, true).toNv21(), width, height, 95, canned);
+            byte[] jpeg = canned.toByteArray();
+            jpegEncoder = (nv21, w, h, quality, out) -> out.write(jpeg);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        captureFile.delete();
+        if (jpegEncoder instanceof ParallelJpegEncoder) {
+            ((ParallelJpegEncoder) jpegEncoder).shutdown();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        directory = File.createTempFile("session", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create " + directory);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public long record() throws Exception {
+        PacedCameraSource frameSource = "replay".equals(source) ? new ReplayCameraSource(captureFile) : newSynthetic();
+        frameSource.setSpeed(0);
+        FrameProcessor processor = new FrameProcessor(jpegEncoder);
+        processor.open();
+        processor.setSaveRate(1000, 1);
+        processor.setDuplicateFilter(true, FrameProcessor.DEFAULT_DUPLICATE_THRESHOLD);
+        RecordingSession session = new RecordingSession(directory, new DirectoryFrameSink(directory), null);
+        processor.startRecording(session);
+        frameSource.start(processor);
+        if (!frameSource.awaitEnd(60_000)) {
+            throw new IllegalStateException("Source did not finish");
+        }
+        processor.finishRecording(processor.stopRecording());
+        processor.close(60_000);
+        processor.release();
+        return frameSource.framesDelivered();
+    }
+
+    private SyntheticCameraSource newSynthetic() {
+        SyntheticCameraSource synthetic = new SyntheticCameraSource(width, height, 64, true, 30);
+        synthetic.setFrameLimit(frames);
+        synthetic.setSpeed(0);
+        return synthetic;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.native_frame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plane extraction as done by {@code ImageUtils.imageToNv21} and the ring-buffer copy, over
+ * common preview resolutions, padded and unpadded row strides, and both chroma layouts.
+ * {@link #legacyConcat} is the original implementation that concatenated the raw planes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class PlaneExtractionBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    @Param({"0", "64"})
+    public int rowPadding;
+
+    @Param({"INTERLEAVED", "PLANAR"})
+    public String layout;
+
+    private SyntheticFrame frame;
+    private boolean interleaved;
+    private byte[] pooled;
+    private FrameSlot slot;
+
+    @Setup
+    public void setUp() {
+        interleaved = "INTERLEAVED".equals(layout);
+        frame = SyntheticFrame.of(resolution, rowPadding, interleaved);
+        pooled = new byte[frame.nv21Size()];
+        slot = new FrameSlot(0);
+        slot.copyPlanes(frame.yPlane, frame.yRowStride, frame.uPlane, frame.vPlane,
+                frame.uvRowStride, frame.uvPixelStride, interleaved, frame.width, frame.height);
+    }
+
+    @Benchmark
+    public byte[] toNv21Pooled() {
+        YuvPlaneExtractor.toNv21(frame.yPlane, frame.yRowStride, frame.uPlane, frame.vPlane,
+                frame.uvRowStride, frame.uvPixelStride, interleaved, frame.width, frame.height, pooled);
+        return pooled;
+    }
+
+    @Benchmark
+    public byte[] toNv21Allocating() {
+        byte[] nv21 = new byte[frame.nv21Size()];
+        YuvPlaneExtractor.toNv21(frame.yPlane, frame.yRowStride, frame.uPlane, frame.vPlane,
+                frame.uvRowStride, frame.uvPixelStride, interleaved, frame.width, frame.height, nv21);
+        return nv21;
+    }
+
+    @Benchmark
+    public byte[] legacyConcat() {
+        int ySize = frame.yPlane.remaining();
+        int uSize = frame.uPlane.remaining();
+        int vSize = frame.vPlane.remaining();
+        byte[] nv21 = new byte[ySize + uSize + vSize];
+        frame.yPlane.duplicate().get(nv21, 0, ySize);
+        frame.vPlane.duplicate().get(nv21, ySize, vSize);
+        frame.uPlane.duplicate().get(nv21, ySize + vSize, uSize);
+        return nv21;
+    }
+
+    @Benchmark
+    public FrameSlot copyToSlot() {
+        slot.copyPlanes(frame.yPlane, frame.yRowStride, frame.uPlane, frame.vPlane,
+                frame.uvRowStride, frame.uvPixelStride, interleaved, frame.width, frame.height);
+        return slot;
+    }
+
+    @Benchmark
+    public byte[] slotToNv21() {
+        slot.toNv21(pooled);
+        return pooled;
+    }
+}
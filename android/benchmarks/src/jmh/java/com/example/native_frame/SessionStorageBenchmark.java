@@ -0,0 +1,101 @@
+package com.example.native_frame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole session of frames stored one file per frame, one file per frame through the
+ * group-commit writer (synced and renamed in batches), or packed into a segment archive,
+ * including deleting the session afterwards.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class SessionStorageBenchmark {
+
+    @Param({"500"})
+    public int frames;
+
+    @Param({"64"})
+    public int frameKb;
+
+    private File directory;
+    private byte[] jpeg;
+    private byte[] app1;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        jpeg = new byte[frameKb * 1024];
+        new Random(42).nextBytes(jpeg);
+        jpeg[0] = (byte) 0xFF;
+        jpeg[1] = (byte) 0xD8;
+        jpeg[2] = (byte) 0xFF;
+        jpeg[3] = (byte) 0xDB;
+        app1 = ExifSegment.build(1760000000000L, 90, 37.422, -122.084, 1234);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        directory = File.createTempFile("session", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create " + directory);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        deleteSession();
+    }
+
+    @Benchmark
+    public void filePerFrame() throws IOException {
+        writeSession(new DirectoryFrameSink(directory));
+        deleteSession();
+    }
+
+    @Benchmark
+    public void segmentArchive() throws IOException {
+        writeSession(new SegmentArchiveWriter(directory, 256L * 1024 * 1024, 2 * 1024 * 1024));
+        deleteSession();
+    }
+
+    @Benchmark
+    public void groupCommit() throws IOException {
+        writeSession(new GroupCommitWriter(directory, 16, 0, 16L * 1024 * 1024, JvmDirectorySync.INSTANCE));
+        deleteSession();
+    }
+
+    private void writeSession(FrameSink sink) throws IOException {
+        try {
+            for (int i = 0; i < frames; i++) {
+                sink.writeFrame(i, 1760000000000L + i * 200L, 37.422, -122.084, 90, 1234,
+                        ExifSegment.splice(jpeg, jpeg.length, app1));
+            }
+        } finally {
+            sink.close();
+        }
+    }
+
+    private void deleteSession() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.native_frame;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless soak test of the recording pipeline: a {@link SyntheticCameraSource} at camera rate
+ * feeds the unchanged {@link FrameProcessor}, which saves frames at the configured rate into a
+ * {@link ThrottledFrameSink}. Every interval a CSV row records throughput, end-to-end latency,
+ * heap, GC and thread counts. After the warmup the harness checks the trailing window: if fewer
+ * frames were saved than the configured rate (within the tolerance) or too many sampled frames
+ * were dropped, it prints a report naming the slowest stages and exits with status 1.
+ *
+ * <pre>
+ * cd android/benchmarks
+ * gradle soak -Psoak="--duration 2h --save-fps 10 --write-mbps 20 --stall-every 30s --stall-ms 500"
+ * </pre>
+ *
+ * Options, with defaults: {@code --duration 10m}, {@code --fps 30} (camera rate),
+ * {@code --save-fps 5}, {@code --min-save-fps} (same as save-fps, so the sampler does not back
+ * off), {@code --resolution 1280x720}, {@code --row-padding 64}, {@code --encoder imageio}
+ * (or {@code parallel}: {@link ParallelJpegEncoder} as wide as the workers; or {@code canned}:
+ * one precomputed JPEG for every frame), {@code --workers} (the app's default),
+ * {@code --max-long-edge 0} (downscale before encode; 0 keeps the full size),
+ * {@code --duplicate-threshold 0} (skip near-duplicate frames; 0 keeps them all),
+ * {@code --write-mbps 0} (unthrottled), {@code --stall-every 0s}, {@code --stall-ms 0},
+ * {@code --sink discard} (or {@code directory}, into the session folder), {@code --interval 10s},
+ * {@code --warmup 30s}, {@code --window 60s}, {@code --tolerance 0.95},
+ * {@code --max-drop-pct 1}, {@code --csv build/soak.csv}, {@code --keep-going} (report failures
+ * at the end instead of stopping at the first).
+ */
+public final class SoakHarness {
+
+    private static final String CSV_HEADER = "elapsed_s,frames_delivered,source_skipped,frames_sampled,"
+            + "frames_saved,duplicates_skipped,frames_dropped,frames_failed,save_fps,"
+            + "e2e_p50_ms,e2e_p99_ms,e2e_max_ms,queue_depth,heap_used_mb,heap_peak_mb,gc_count,gc_ms,threads";
+    private static final long TICK_MS = 250;
+
+    private final Map<String, String> options;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private long heapPeakBytes = 0;
+    private long heapIntervalPeakBytes = 0;
+    private long lastRowSaved = 0;
+    private long lastRowNanos = 0;
+    private String failure;
+
+    private SoakHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String key = args[i].substring(2);
+            if ("keep-going".equals(key)) {
+                options.put(key, "true");
+            } else if (i + 1 < args.length) {
+                options.put(key, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+        }
+        System.exit(new SoakHarness(options).run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        long durationNanos = duration("duration", "10m");
+        double fps = number("fps", "30");
+        double saveFps = number("save-fps", "5");
+        double minSaveFps = number("min-save-fps", String.valueOf(saveFps));
+        String resolution = option("resolution", "1280x720");
+        int width = Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+        int height = Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+        int workers = (int) number("workers", String.valueOf(FrameEncodeScheduler.defaultWorkerCount()));
+        long intervalNanos = duration("interval", "10s");
+        long warmupNanos = duration("warmup", "30s");
+        long windowNanos = duration("window", "60s");
+        double tolerance = number("tolerance", "0.95");
+        double maxDropPercent = number("max-drop-pct", "1");
+        boolean keepGoing = options.containsKey("keep-going");
+        File csvFile = new File(option("csv", "build/soak.csv"));
+
+        File directory = File.createTempFile("soak", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create " + directory);
+        }
+        FrameSink storage = "directory".equals(option("sink", "discard")) ? new DirectoryFrameSink(directory) : null;
+        ThrottledFrameSink sink = new ThrottledFrameSink(storage,
+                (long) (number("write-mbps", "0") * 1024 * 1024),
+                duration("stall-every", "0s"), TimeUnit.MILLISECONDS.toNanos((long) number("stall-ms", "0")));
+
+        FrameProcessor processor = new FrameProcessor(encoder(width, height, workers), workers);
+        processor.open();
+        processor.setSaveRate(saveFps, minSaveFps);
+        processor.setOutputTransform(false, (int) number("max-long-edge", "0"));
+        double duplicateThreshold = number("duplicate-threshold", "0");
+        processor.setDuplicateFilter(duplicateThreshold > 0, duplicateThreshold);
+        processor.setFrameDurationNanos((long) (1_000_000_000L / fps));
+        RecordingSession session = new RecordingSession(directory, sink, null);
+        processor.onLocationFix(0, 37.422, -122.084, 5f);
+        processor.startRecording(session);
+
+        SyntheticCameraSource source = new SyntheticCameraSource(width, height, (int) number("row-padding", "64"), true, fps);
+        csvFile.getAbsoluteFile().getParentFile().mkdirs();
+        PrintWriter csv = new PrintWriter(new FileWriter(csvFile));
+        csv.println(CSV_HEADER);
+
+        System.out.printf(Locale.US, "Soak: %dx%d at %.0f fps, saving %.1f fps with %d workers, %s encoder, "
+                        + "%s storage for %ds; timeline in %s%n",
+                width, height, fps, saveFps, workers, option("encoder", "imageio"),
+                storage != null ? "directory" : "discarding", TimeUnit.NANOSECONDS.toSeconds(durationNanos), csvFile);
+
+        long startNanos = System.nanoTime();
+        source.start(processor);
+        ArrayDeque<long[]> window = new ArrayDeque<>();
+        window.addLast(new long[]{startNanos, 0, 0, 0});
+        long nextRowNanos = startNanos + intervalNanos;
+        long nextFixNanos = startNanos;
+        boolean stopped = false;
+        while (!stopped) {
+            Thread.sleep(TICK_MS);
+            long now = System.nanoTime();
+            sampleHeap();
+            if (now >= nextFixNanos) {
+                // One fix a second on the synthetic frames' clock keeps GPS tags resolvable.
+                processor.onLocationFix(now - startNanos, 37.422, -122.084, 5f);
+                nextFixNanos += TimeUnit.SECONDS.toNanos(1);
+            }
+            stopped = now - startNanos >= durationNanos;
+            if (now < nextRowNanos && !stopped) {
+                continue;
+            }
+            nextRowNanos += intervalNanos;
+
+            Map<String, Object> metrics = PipelineMetrics.get().snapshot();
+            long handled = sink.framesWritten() + session.duplicateFrameCount();
+            long sampled = (Long) metrics.get("framesSampled");
+            long dropped = (Long) metrics.get("framesDropped");
+            writeRow(csv, now - startNanos, metrics, source, sink, session, processor);
+
+            window.addLast(new long[]{now, handled, sampled, dropped});
+            // Keep the newest rows that still span at least a full window.
+            while (window.size() > 2) {
+                long[] oldest = window.removeFirst();
+                if (now - window.peekFirst()[0] < windowNanos) {
+                    window.addFirst(oldest);
+                    break;
+                }
+            }
+            if (now - startNanos >= warmupNanos + windowNanos && failure == null) {
+                long[] first = window.peekFirst();
+                checkWindow(first, window.peekLast(), saveFps, tolerance, maxDropPercent);
+                if (failure != null && !keepGoing) {
+                    stopped = true;
+                }
+            }
+        }
+
+        source.stop();
+        processor.finishRecording(processor.stopRecording());
+        processor.close(TimeUnit.SECONDS.toMillis(30));
+        processor.release();
+        csv.close();
+        deleteRecursively(directory);
+        return report(System.nanoTime() - startNanos, sink, source, session);
+    }
+
+    private void checkWindow(long[] first, long[] last, double saveFps, double tolerance, double maxDropPercent) {
+        double seconds = (last[0] - first[0]) / 1e9;
+        double handledFps = (last[1] - first[1]) / seconds;
+        long sampled = last[2] - first[2];
+        long dropped = last[3] - first[3];
+        double dropPercent = sampled > 0 ? 100.0 * dropped / sampled : 0;
+        if (handledFps < saveFps * tolerance) {
+            failure = String.format(Locale.US,
+                    "saved %.2f frames/s over the last %.0f s, below %.0f%% of the %.2f frames/s target",
+                    handledFps, seconds, tolerance * 100, saveFps);
+        } else if (dropPercent > maxDropPercent) {
+            failure = String.format(Locale.US,
+                    "dropped %.1f%% of %d sampled frames over the last %.0f s (limit %.1f%%)",
+                    dropPercent, sampled, seconds, maxDropPercent);
+        }
+    }
+
+    private void writeRow(PrintWriter csv, long elapsedNanos, Map<String, Object> metrics, PacedCameraSource source,
+                          ThrottledFrameSink sink, RecordingSession session, FrameProcessor processor) {
+        LatencyHistogram.Snapshot endToEnd = sink.takeEndToEnd();
+        FrameEncodeScheduler scheduler = processor.scheduler();
+        csv.printf(Locale.US, "%.1f,%d,%d,%d,%d,%d,%d,%d,%.2f,%.1f,%.1f,%.1f,%d,%.1f,%.1f,%d,%d,%d%n",
+                elapsedNanos / 1e9,
+                metrics.get("framesDelivered"),
+                source.framesSkipped(),
+                metrics.get("framesSampled"),
+                sink.framesWritten(),
+                session.duplicateFrameCount(),
+                metrics.get("framesDropped"),
+                metrics.get("framesFailed"),
+                savedFps(sink, elapsedNanos),
+                endToEnd.percentileNanos(0.50) / 1e6,
+                endToEnd.percentileNanos(0.99) / 1e6,
+                endToEnd.maxNanos() / 1e6,
+                scheduler != null ? scheduler.queueDepth() : 0,
+                memory.getHeapMemoryUsage().getUsed() / 1048576.0,
+                heapIntervalPeakBytes / 1048576.0,
+                gcCount(),
+                gcMillis(),
+                threads.getThreadCount());
+        csv.flush();
+        heapIntervalPeakBytes = 0;
+    }
+
+    private double savedFps(ThrottledFrameSink sink, long elapsedNanos) {
+        long saved = sink.framesWritten();
+        double fps = (saved - lastRowSaved) / ((elapsedNanos - lastRowNanos) / 1e9);
+        lastRowSaved = saved;
+        lastRowNanos = elapsedNanos;
+        return fps;
+    }
+
+    private boolean report(long elapsedNanos, ThrottledFrameSink sink, PacedCameraSource source,
+                           RecordingSession session) {
+        Map<String, Object> metrics = PipelineMetrics.get().snapshot();
+        double seconds = elapsedNanos / 1e9;
+        long maxHeap = memory.getHeapMemoryUsage().getMax();
+        String summary = String.format(Locale.US,
+                "  %d frames saved in %.0f s (%.2f frames/s, %.1f MB/s), %d duplicates skipped, %d dropped, %d failed, "
+                        + "%d skipped by the source%n"
+                        + "  heap high water %.0f MB of %.0f MB, GC %d collections / %.1f s (%.1f%% of run time), "
+                        + "threads peak %d%n"
+                        + "  stage p99 (ms): queueWait %.1f, planeCopy %.1f, encode %.1f, exif %.1f, write %.1f",
+                sink.framesWritten(), seconds, sink.framesWritten() / seconds, sink.bytesWritten() / seconds / 1048576,
+                session.duplicateFrameCount(),
+                metrics.get("framesDropped"), metrics.get("framesFailed"), source.framesSkipped(),
+                heapPeakBytes / 1048576.0, maxHeap / 1048576.0, gcCount(), gcMillis() / 1000.0,
+                100.0 * gcMillis() / (seconds * 1000), threads.getPeakThreadCount(),
+                stageP99Millis(metrics, "queueWait"), stageP99Millis(metrics, "planeCopy"),
+                stageP99Millis(metrics, "encode"), stageP99Millis(metrics, "exif"), stageP99Millis(metrics, "write"));
+        if (failure != null) {
+            System.out.println("SOAK FAILED: the pipeline did not keep up: " + failure);
+            System.out.println(summary);
+            return false;
+        }
+        System.out.println("SOAK PASSED");
+        System.out.println(summary);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static double stageP99Millis(Map<String, Object> metrics, String stage) {
+        Map<String, Object> stages = (Map<String, Object>) metrics.get("stages");
+        return (Long) ((Map<String, Object>) stages.get(stage)).get("p99") / 1000.0;
+    }
+
+    private void sampleHeap() {
+        long used = memory.getHeapMemoryUsage().getUsed();
+        heapPeakBytes = Math.max(heapPeakBytes, used);
+        heapIntervalPeakBytes = Math.max(heapIntervalPeakBytes, used);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private JpegEncoder encoder(int width, int height, int workers) throws IOException {
+        ImageIoJpegEncoder imageIo = new ImageIoJpegEncoder();
+        if ("parallel".equals(option("encoder", "imageio"))) {
+            return new ParallelJpegEncoder(workers);
+        }
+        if ("canned".equals(option("encoder", "imageio"))) {
+            java.io.ByteArrayOutputStream canned = new java.io.ByteArrayOutputStream();
+            imageIo.encode(new SyntheticFrame(width, height, 0, true).toNv21(), width, height, 95, canned);
+            byte[] jpeg = canned.toByteArray();
+            return (nv21, w, h, quality, out) -> out.write(jpeg);
+        }
+        return imageIo;
+    }
+
+    private String option(String key, String fallback) {
+        String value = options.get(key);
+        return value != null ? value : fallback;
+    }
+
+    private double number(String key, String fallback) {
+        return Double.parseDouble(option(key, fallback));
+    }
+
+    /** Parses {@code 90s}, {@code 10m} or {@code 2h}. */
+    private long duration(String key, String fallback) {
+        String value = option(key, fallback);
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        switch (value.charAt(value.length() - 1)) {
+            case 's':
+                return TimeUnit.SECONDS.toNanos(amount);
+            case 'm':
+                return TimeUnit.MINUTES.toNanos(amount);
+            case 'h':
+                return TimeUnit.HOURS.toNanos(amount);
+            default:
+                throw new IllegalArgumentException("--" + key + " needs an s, m or h suffix: " + value);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
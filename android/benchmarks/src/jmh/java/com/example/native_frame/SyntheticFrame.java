@@ -0,0 +1,80 @@
+package com.example.native_frame;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * YUV_420_888 planes laid out the way camera HALs hand them out, filled with deterministic
+ * noise. {@code INTERLEAVED} mimics the common semi-planar layout where the U and V planes are
+ * views one byte apart over the same VU memory; {@code PLANAR} uses three separate buffers.
+ */
+final class SyntheticFrame {
+
+    final int width;
+    final int height;
+    final int yRowStride;
+    final int uvRowStride;
+    final int uvPixelStride;
+    final ByteBuffer yPlane;
+    final ByteBuffer uPlane;
+    final ByteBuffer vPlane;
+
+    SyntheticFrame(int width, int height, int rowPadding, boolean interleaved) {
+        this.width = width;
+        this.height = height;
+        Random random = new Random(42);
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+
+        yRowStride = width + rowPadding;
+        yPlane = filled(yRowStride * (height - 1) + width, random);
+
+        if (interleaved) {
+            uvPixelStride = 2;
+            uvRowStride = width + rowPadding;
+            ByteBuffer vu = filled(uvRowStride * (chromaHeight - 1) + chromaWidth * 2, random);
+            vPlane = slice(vu, 0, vu.capacity() - 1);
+            uPlane = slice(vu, 1, vu.capacity() - 1);
+        } else {
+            uvPixelStride = 1;
+            uvRowStride = chromaWidth + rowPadding;
+            int chromaLength = uvRowStride * (chromaHeight - 1) + chromaWidth;
+            uPlane = filled(chromaLength, random);
+            vPlane = filled(chromaLength, random);
+        }
+    }
+
+    /** Parses {@code "WIDTHxHEIGHT"} as used by the benchmark {@code @Param}s. */
+    static SyntheticFrame of(String resolution, int rowPadding, boolean interleaved) {
+        int separator = resolution.indexOf('x');
+        return new SyntheticFrame(Integer.parseInt(resolution.substring(0, separator)),
+                Integer.parseInt(resolution.substring(separator + 1)), rowPadding, interleaved);
+    }
+
+    int nv21Size() {
+        return YuvPlaneExtractor.nv21Size(width, height);
+    }
+
+    /** A packed NV21 copy of this frame. */
+    byte[] toNv21() {
+        byte[] nv21 = new byte[nv21Size()];
+        YuvPlaneExtractor.toNv21(yPlane, yRowStride, uPlane, vPlane, uvRowStride, uvPixelStride, width, height, nv21);
+        return nv21;
+    }
+
+    private static ByteBuffer filled(int length, Random random) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+}
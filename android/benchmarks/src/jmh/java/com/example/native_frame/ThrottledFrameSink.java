@@ -0,0 +1,119 @@
+package com.example.native_frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in storage for {@link SoakHarness}. Frames are discarded, or forwarded to a real sink,
+ * and every write takes as long as it would on a device that writes {@code bytesPerSecond}, one
+ * write at a time. Every {@code stallEveryNanos} the device also stalls for {@code stallNanos},
+ * the way flash storage pauses for garbage collection. Records each frame's end-to-end latency,
+ * from its capture timestamp to the end of its write.
+ */
+final class ThrottledFrameSink implements FrameSink {
+
+    private final FrameSink delegate;
+    private final long bytesPerSecond;
+    private final long stallEveryNanos;
+    private final long stallNanos;
+
+    private final Object device = new Object();
+    private long busyUntilNanos;
+    private long nextStallNanos;
+
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile LatencyHistogram endToEnd = new LatencyHistogram();
+
+    /**
+     * @param delegate       sink that really stores the frames, or null to discard them
+     * @param bytesPerSecond simulated write bandwidth; 0 for none
+     */
+    ThrottledFrameSink(FrameSink delegate, long bytesPerSecond, long stallEveryNanos, long stallNanos) {
+        this.delegate = delegate;
+        this.bytesPerSecond = bytesPerSecond;
+        this.stallEveryNanos = stallEveryNanos;
+        this.stallNanos = stallNanos;
+        this.busyUntilNanos = System.nanoTime();
+        this.nextStallNanos = busyUntilNanos + stallEveryNanos;
+    }
+
+    @Override
+    public void writeFrame(int frameIndex, long timestamp, double latitude, double longitude,
+                           int rotationDegrees, int sharpness, ByteBuffer[] jpeg) throws IOException {
+        long bytes = 0;
+        for (ByteBuffer part : jpeg) {
+            bytes += part.remaining();
+        }
+        if (delegate != null) {
+            delegate.writeFrame(frameIndex, timestamp, latitude, longitude, rotationDegrees, sharpness, jpeg);
+        }
+        occupyDevice(bytes);
+        endToEnd.record(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - timestamp));
+        framesWritten.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+    }
+
+    /** Reserves the device for {@code bytes} after the writes ahead of this one, then waits for it. */
+    private void occupyDevice(long bytes) {
+        if (bytesPerSecond <= 0 && stallEveryNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long doneNanos;
+        synchronized (device) {
+            long start = Math.max(now, busyUntilNanos);
+            if (stallEveryNanos > 0 && start >= nextStallNanos) {
+                start += stallNanos;
+                nextStallNanos = start + stallEveryNanos;
+            }
+            long transferNanos = bytesPerSecond > 0 ? bytes * 1_000_000_000L / bytesPerSecond : 0;
+            busyUntilNanos = start + transferNanos;
+            doneNanos = busyUntilNanos;
+        }
+        long waitNanos;
+        while ((waitNanos = doneNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+    }
+
+    @Override
+    public void updateLocation(RecordingSession.PendingGpsFrame frame, double latitude, double longitude)
+            throws IOException {
+        if (delegate != null) {
+            delegate.updateLocation(frame, latitude, longitude);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (delegate != null) {
+            delegate.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate != null) {
+            delegate.close();
+        }
+    }
+
+    long framesWritten() {
+        return framesWritten.get();
+    }
+
+    long bytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /** End-to-end latencies recorded since the previous call. */
+    LatencyHistogram.Snapshot takeEndToEnd() {
+        LatencyHistogram previous = endToEnd;
+        endToEnd = new LatencyHistogram();
+        return previous.snapshot();
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.native_frame;
+
+import com.drew.imaging.jpeg.JpegMetadataReader;
+import com.drew.lang.GeoLocation;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.GpsDirectory;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Patches one template for a sequence of frames, splices each segment into a real JPEG and
+ * reads it back with metadata-extractor, so fields left over from the previous frame show up.
+ */
+public class ExifTemplateTest {
+
+    private static final long T0 = 1718031845123L;
+
+    private final ExifTemplate template = new ExifTemplate();
+    private final byte[] jpeg = smallJpeg();
+
+    @Test
+    public void roundTripsEveryPatchedField() throws Exception {
+        check(T0, 90, 37.4219999, -122.0840575, 1234567);
+        check(T0 + 86_400_000L * 200 + 3_723_000L, 0, 0.0, 0.0, 42);
+        check(T0 - 86_400_000L * 4000, 270, -33.8567844, 151.2152967, 7);
+        check(T0 + 59_000L, 180, 51.5007292, 0.1246254, 0);
+        check(T0 + 61_000L, 90, 51.5007292, 0.1246254, ExifSegment.NO_SHARPNESS);
+        check(T0 + 62_000L, 0, 0.0, 0.0, ExifSegment.NO_SHARPNESS);
+        check(T0 + 63_000L, 270, 0.0, 0.0, 9);
+    }
+
+    @Test
+    public void matchesFreshlyBuiltSegment() {
+        long[] times = {T0, 951782400000L, 4102444799000L};
+        double[][] fixes = {{48.8583701, 2.2944813}, {0.0, 0.0}, {-0.5, -179.9999}};
+        int[] rotations = {0, 90, 180, 270};
+        for (int i = 0; i < 12; i++) {
+            long time = times[i % times.length];
+            double[] fix = fixes[i % fixes.length];
+            int rotation = rotations[i % rotations.length];
+            int sharpness = i % 5 == 4 ? ExifSegment.NO_SHARPNESS : i * 98765;
+            assertArrayEquals("frame " + i, ExifSegment.build(time, rotation, fix[0], fix[1], sharpness),
+                    template.patch(time, rotation, fix[0], fix[1], sharpness).clone());
+        }
+    }
+
+    private void check(long timestamp, int rotation, double latitude, double longitude, int sharpness)
+            throws Exception {
+        byte[] app1 = template.patch(timestamp, rotation, latitude, longitude, sharpness);
+        Metadata metadata = JpegMetadataReader.readMetadata(new ByteArrayInputStream(spliced(app1)));
+        assertFalse(String.valueOf(metadata.getDirectories()), metadata.hasErrors());
+
+        String dateTime = format("yyyy:MM:dd HH:mm:ss", timestamp);
+        ExifIFD0Directory ifd0 = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+        ExifSubIFDDirectory exif = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+        assertEquals(dateTime, ifd0.getString(ExifIFD0Directory.TAG_DATETIME));
+        assertEquals(dateTime, exif.getString(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL));
+        assertEquals(dateTime, exif.getString(ExifSubIFDDirectory.TAG_DATETIME_DIGITIZED));
+        assertEquals(ExifSegment.exifOrientation(rotation), ifd0.getInt(ExifIFD0Directory.TAG_ORIENTATION));
+        if (sharpness == ExifSegment.NO_SHARPNESS) {
+            assertNull(ifd0.getString(ExifIFD0Directory.TAG_IMAGE_DESCRIPTION));
+        } else {
+            assertEquals("sharpness=" + sharpness, ifd0.getString(ExifIFD0Directory.TAG_IMAGE_DESCRIPTION).trim());
+        }
+
+        GpsDirectory gps = metadata.getFirstDirectoryOfType(GpsDirectory.class);
+        if (latitude == 0.0 && longitude == 0.0) {
+            assertNull(gps);
+            return;
+        }
+        GeoLocation location = gps.getGeoLocation();
+        // Seconds are stored to 1/10000, about 3e-9 degrees.
+        assertEquals(latitude, location.getLatitude(), 1e-7);
+        assertEquals(longitude, location.getLongitude(), 1e-7);
+        assertEquals(format("yyyy:MM:dd", timestamp), gps.getString(GpsDirectory.TAG_DATE_STAMP));
+        assertEquals(timestamp / 1000 * 1000, gps.getGpsDate().getTime());
+    }
+
+    private byte[] spliced(byte[] app1) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteBuffer part : ExifSegment.splice(jpeg, jpeg.length, app1)) {
+            byte[] bytes = new byte[part.remaining()];
+            part.get(bytes);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static String format(String pattern, long timestamp) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(timestamp));
+    }
+
+    private static byte[] smallJpeg() {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB), "jpeg", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
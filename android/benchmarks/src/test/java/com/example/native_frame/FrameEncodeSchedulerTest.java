@@ -0,0 +1,160 @@
+package com.example.native_frame;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Floods the scheduler with slow tasks that each hold a frame-sized buffer, as a stalled disk
+ * would, and checks that every policy keeps the held frames, the threads and the counters
+ * bounded. With an unbounded queue the flood would need several times the test heap.
+ */
+public class FrameEncodeSchedulerTest {
+
+    private static final int WORKERS = 2;
+    private static final int CAPACITY = 6;
+    private static final int FLOOD = 400;
+    private static final int FRAME_BYTES = 1280 * 720 * 3 / 2;
+
+    @Test
+    public void dropOldestStaysBounded() throws Exception {
+        flood(FrameEncodeScheduler.OverloadPolicy.DROP_OLDEST);
+    }
+
+    @Test
+    public void dropNewestStaysBounded() throws Exception {
+        flood(FrameEncodeScheduler.OverloadPolicy.DROP_NEWEST);
+    }
+
+    @Test
+    public void blockWithTimeoutStaysBounded() throws Exception {
+        flood(FrameEncodeScheduler.OverloadPolicy.BLOCK_WITH_TIMEOUT);
+    }
+
+    @Test
+    public void degradeQualityStaysBounded() throws Exception {
+        FrameEncodeScheduler scheduler = flood(FrameEncodeScheduler.OverloadPolicy.DEGRADE_QUALITY);
+        assertTrue("frames were degraded once the queue filled", scheduler.degradedCount() > 0);
+    }
+
+    @Test
+    public void workerSurvivesAnError() throws Exception {
+        FrameEncodeScheduler scheduler = new FrameEncodeScheduler(1, CAPACITY,
+                FrameEncodeScheduler.OverloadPolicy.DROP_NEWEST, 0);
+        CountDownLatch ran = new CountDownLatch(1);
+        scheduler.submit(task(() -> {
+            throw new AssertionError("encoder bug");
+        }));
+        scheduler.submit(task(ran::countDown));
+        assertTrue("the task after the Error still ran", ran.await(5, TimeUnit.SECONDS));
+        assertEquals(1, encoderThreads());
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.completedCount());
+    }
+
+    private FrameEncodeScheduler flood(FrameEncodeScheduler.OverloadPolicy policy) throws Exception {
+        FrameEncodeScheduler scheduler = new FrameEncodeScheduler(WORKERS, CAPACITY, policy, 2);
+        AtomicInteger held = new AtomicInteger();
+        AtomicInteger maxHeld = new AtomicInteger();
+        AtomicInteger ran = new AtomicInteger();
+        AtomicInteger dropped = new AtomicInteger();
+        int maxThreads = 0;
+        int accepted = 0;
+        for (int i = 0; i < FLOOD; i++) {
+            FrameTask frame = new FrameTask(held, maxHeld, ran, dropped);
+            if (scheduler.submit(frame)) {
+                accepted++;
+            }
+            maxThreads = Math.max(maxThreads, encoderThreads());
+            assertTrue("queue depth " + scheduler.queueDepth(), scheduler.queueDepth() <= CAPACITY);
+        }
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(30, TimeUnit.SECONDS));
+
+        // Queued frames plus one in each worker, plus the one being submitted.
+        assertTrue(policy + " held " + maxHeld.get() + " frames", maxHeld.get() <= CAPACITY + WORKERS + 1);
+        assertTrue(policy + " ran " + maxThreads + " encoder threads", maxThreads <= WORKERS);
+        assertEquals("every frame was either run or dropped", FLOOD, ran.get() + dropped.get());
+        assertEquals(0, held.get());
+        assertEquals(ran.get(), scheduler.completedCount());
+        assertEquals(dropped.get(), scheduler.rejectedCount());
+        assertEquals(accepted, scheduler.submittedCount());
+        assertTrue(policy + " should drop frames under a flood", dropped.get() > 0);
+        return scheduler;
+    }
+
+    private static int encoderThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("FrameEncoder-") && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static FrameEncodeScheduler.Task task(Runnable body) {
+        return new FrameEncodeScheduler.Task() {
+            @Override
+            public void run() {
+                body.run();
+            }
+
+            @Override
+            public void onDropped() {
+            }
+
+            @Override
+            public void degrade() {
+            }
+        };
+    }
+
+    /** Holds a frame-sized buffer from creation until it has run or been dropped. */
+    private static final class FrameTask implements FrameEncodeScheduler.Task {
+        private final AtomicInteger held;
+        private final AtomicInteger ran;
+        private final AtomicInteger dropped;
+        private byte[] frame = new byte[FRAME_BYTES];
+
+        FrameTask(AtomicInteger held, AtomicInteger maxHeld, AtomicInteger ran, AtomicInteger dropped) {
+            this.held = held;
+            this.ran = ran;
+            this.dropped = dropped;
+            int now = held.incrementAndGet();
+            maxHeld.accumulateAndGet(now, Math::max);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ran.incrementAndGet();
+            release();
+        }
+
+        @Override
+        public void onDropped() {
+            dropped.incrementAndGet();
+            release();
+        }
+
+        @Override
+        public void degrade() {
+        }
+
+        private void release() {
+            frame = null;
+            held.decrementAndGet();
+        }
+    }
+}
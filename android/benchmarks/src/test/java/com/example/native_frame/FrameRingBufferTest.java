@@ -0,0 +1,48 @@
+package com.example.native_frame;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FrameRingBufferTest {
+
+    @Test
+    public void claimsAFreeSlotPastOneStillBeingEncoded() {
+        FrameRingBuffer ring = new FrameRingBuffer(3);
+        FrameSlot[] slots = new FrameSlot[3];
+        long[] sequences = new long[3];
+        for (int i = 0; i < 3; i++) {
+            slots[i] = ring.tryClaim();
+            sequences[i] = ring.publish(slots[i]);
+        }
+        // The oldest frame is still encoding, a later one has finished.
+        assertTrue(ring.claim(slots[0], sequences[0]));
+        assertTrue(ring.claim(slots[1], sequences[1]));
+        ring.release(slots[1]);
+
+        FrameSlot next = ring.tryClaim();
+        assertSame(slots[1], next);
+        assertEquals(3, ring.publish(next));
+        assertFalse("a reused slot does not answer to its old sequence", ring.claim(next, sequences[1]));
+        assertEquals(0, ring.overrunCount());
+    }
+
+    @Test
+    public void dropsOnlyWhenEverySlotIsHeld() {
+        FrameRingBuffer ring = new FrameRingBuffer(2);
+        FrameSlot first = ring.tryClaim();
+        FrameSlot second = ring.tryClaim();
+        assertNull(ring.tryClaim());
+        assertEquals(1, ring.overrunCount());
+
+        ring.cancel(first);
+        assertSame(first, ring.tryClaim());
+        ring.publish(second);
+        assertNull(ring.tryClaim());
+        assertEquals(2, ring.overrunCount());
+    }
+}
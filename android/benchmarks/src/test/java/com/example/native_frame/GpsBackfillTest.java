@@ -0,0 +1,73 @@
+package com.example.native_frame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GpsBackfillTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void retriesFramesWhoseExifRewriteFailed() throws IOException {
+        FlakySink sink = new FlakySink(2);
+        RecordingSession session = new RecordingSession(folder.newFolder(), sink, null);
+        LocationTrack track = new LocationTrack(8, 0);
+        track.add(100, 10.0, 20.0, 5f);
+        track.add(200, 11.0, 21.0, 5f);
+        session.addPendingGpsFrame(new RecordingSession.PendingGpsFrame(1, 150, 0L, 0, 0, false));
+        session.addPendingGpsFrame(new RecordingSession.PendingGpsFrame(2, 120, 0L, 0, 0, false));
+
+        new GpsBackfill(session, track, true).run();
+        assertEquals(1, sink.rewritten.size());
+        assertTrue("the failed frame stays pending", session.hasPendingGpsFrames());
+
+        new GpsBackfill(session, track, true).run();
+        assertEquals(2, sink.rewritten.size());
+        assertEquals(Integer.valueOf(2), sink.rewritten.get(1));
+        assertFalse(session.hasPendingGpsFrames());
+    }
+
+    /** Fails the first rewrite of one frame, as a full disk or a file being scanned might. */
+    private static final class FlakySink implements FrameSink {
+        final List<Integer> rewritten = new ArrayList<>();
+        private int failFrame;
+
+        FlakySink(int failFrame) {
+            this.failFrame = failFrame;
+        }
+
+        @Override
+        public void writeFrame(int frameIndex, long timestamp, double latitude, double longitude,
+                               int rotationDegrees, int sharpness, ByteBuffer[] jpeg) {
+        }
+
+        @Override
+        public void updateLocation(RecordingSession.PendingGpsFrame frame, double latitude, double longitude)
+                throws IOException {
+            if (frame.frameIndex == failFrame) {
+                failFrame = -1;
+                throw new IOException("No space left on device");
+            }
+            rewritten.add(frame.frameIndex);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
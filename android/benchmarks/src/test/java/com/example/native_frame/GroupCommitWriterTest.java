@@ -0,0 +1,99 @@
+package com.example.native_frame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GroupCommitWriterTest {
+
+    private static final int BATCH = 4;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void syncsTheDirectoryAfterEachBatchIsRenamed() throws IOException {
+        File directory = folder.newFolder();
+        List<Integer> publishedAtSync = new ArrayList<>();
+        GroupCommitWriter writer = new GroupCommitWriter(directory, BATCH, 0, 1 << 20, dir -> {
+            publishedAtSync.add(publishedFrames(dir));
+            JvmDirectorySync.INSTANCE.sync(dir);
+        });
+        for (int i = 1; i <= 10; i++) {
+            writer.writeFrame(i, 0L, 0.0, 0.0, 0, 0, frame(i));
+            if (i % BATCH == 0) {
+                writer.flush();
+            }
+        }
+        writer.close();
+
+        assertEquals(10, publishedFrames(directory));
+        assertTrue("one sync per batch at least", publishedAtSync.size() >= 3);
+        assertEquals("the last sync follows the last rename", 10, (int) publishedAtSync.get(publishedAtSync.size() - 1));
+    }
+
+    @Test(timeout = 10_000)
+    public void flushFailsInsteadOfHangingWhenTheWriterDied() throws IOException {
+        GroupCommitWriter writer = new GroupCommitWriter(folder.newFolder(), BATCH, 0, 1 << 20, dir -> {
+            throw new OutOfMemoryError("simulated");
+        });
+        writer.writeFrame(1, 0L, 0.0, 0.0, 0, 0, frame(1));
+        try {
+            writer.flush();
+            fail("flush returned although the frame was never published");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("stopped"));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void finishedSessionStopsTheWriterThread() throws IOException {
+        File directory = folder.newFolder();
+        RecordingSession session = new RecordingSession(directory,
+                new GroupCommitWriter(directory, BATCH, 250, 1 << 20, JvmDirectorySync.INSTANCE), null);
+        assertTrue(writerThreadAlive());
+        session.onFrameQueued();
+        session.getSink().writeFrame(1, 0L, 0.0, 0.0, 0, 0, frame(1));
+        session.onFrameDone();
+        session.writeSummary();
+
+        assertFalse(writerThreadAlive());
+        assertEquals(1, publishedFrames(directory));
+    }
+
+    private static int publishedFrames(File directory) {
+        int count = 0;
+        for (String name : directory.list()) {
+            if (name.endsWith(".jpg")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean writerThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("FrameWriter".equals(thread.getName()) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ByteBuffer[] frame(int frameIndex) {
+        byte[] bytes = new byte[1000 + frameIndex];
+        bytes[0] = (byte) frameIndex;
+        return new ByteBuffer[]{ByteBuffer.wrap(bytes)};
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.native_frame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a track from a scripted location source the way the fused provider would, fix by fix,
+ * and checks where frames land: interpolated between fixes, held after the newest one, or
+ * rejected when no fix is close enough.
+ */
+public class LocationTrackTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_EXTRAPOLATION = 30 * SECOND;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final LocationTrack track = new LocationTrack(8, MAX_EXTRAPOLATION);
+    private final double[] out = new double[3];
+
+    @Test
+    public void interpolatesBetweenFixes() {
+        FakeLocationSource source = new FakeLocationSource()
+                .fix(100 * SECOND, 10.0, 20.0, 5f)
+                .fix(110 * SECOND, 11.0, 22.0, 15f);
+        source.deliverAll(track);
+
+        assertEquals(LocationTrack.RESOLVED, track.resolve(102 * SECOND, out));
+        assertEquals(10.2, out[0], 1e-9);
+        assertEquals(20.4, out[1], 1e-9);
+        assertEquals("the worse accuracy of the two", 15.0, out[2], 0.0);
+
+        assertEquals(LocationTrack.RESOLVED, track.resolve(110 * SECOND, out));
+        assertEquals(11.0, out[0], 1e-9);
+    }
+
+    @Test
+    public void interpolatesAcrossTheAntimeridian() {
+        new FakeLocationSource()
+                .fix(0, 0.0, 179.0, 5f)
+                .fix(10 * SECOND, 0.0, -179.0, 5f)
+                .deliverAll(track);
+
+        assertEquals(LocationTrack.RESOLVED, track.resolve(5 * SECOND, out));
+        assertEquals(180.0, Math.abs(out[1]), 1e-9);
+        assertEquals(LocationTrack.RESOLVED, track.resolve(8 * SECOND, out));
+        assertEquals(-179.4, out[1], 1e-9);
+    }
+
+    @Test
+    public void holdsTheNewestFixUntilTheNextOneBracketsTheFrame() {
+        FakeLocationSource source = new FakeLocationSource()
+                .fix(100 * SECOND, 10.0, 20.0, 5f)
+                .fix(104 * SECOND, 14.0, 24.0, 5f);
+        source.deliverUntil(103 * SECOND, track);
+
+        assertEquals(LocationTrack.HELD, track.resolve(103 * SECOND, out));
+        assertEquals(10.0, out[0], 0.0);
+        assertEquals(20.0, out[1], 0.0);
+
+        source.deliverUntil(104 * SECOND, track);
+        assertEquals(LocationTrack.RESOLVED, track.resolve(103 * SECOND, out));
+        assertEquals(13.0, out[0], 1e-9);
+        assertEquals(23.0, out[1], 1e-9);
+    }
+
+    @Test
+    public void takesTheFirstFixForEarlierFramesForGood() {
+        new FakeLocationSource().fix(100 * SECOND, 10.0, 20.0, 5f).deliverAll(track);
+
+        assertEquals(LocationTrack.RESOLVED, track.resolve(100 * SECOND - MAX_EXTRAPOLATION, out));
+        assertEquals(10.0, out[0], 0.0);
+    }
+
+    @Test
+    public void rejectsFramesTooFarFromAnyFix() {
+        out[0] = -1.0;
+        assertEquals("empty track", LocationTrack.UNRESOLVED, track.resolve(0, out));
+
+        new FakeLocationSource()
+                .fix(100 * SECOND, 10.0, 20.0, 5f)
+                .fix(110 * SECOND, 11.0, 21.0, 5f)
+                .deliverAll(track);
+        assertEquals(LocationTrack.UNRESOLVED, track.resolve(100 * SECOND - MAX_EXTRAPOLATION - 1, out));
+        assertEquals(LocationTrack.UNRESOLVED, track.resolve(110 * SECOND + MAX_EXTRAPOLATION + 1, out));
+        assertEquals(LocationTrack.HELD, track.resolve(110 * SECOND + MAX_EXTRAPOLATION, out));
+        assertEquals(11.0, out[0], 0.0);
+    }
+
+    @Test
+    public void ignoresOutOfOrderFixes() {
+        new FakeLocationSource()
+                .fix(100 * SECOND, 10.0, 20.0, 5f)
+                .fix(110 * SECOND, 11.0, 21.0, 5f)
+                .fix(105 * SECOND, 50.0, 50.0, 5f)
+                .deliverAll(track);
+
+        assertEquals(2, track.size());
+        assertEquals(LocationTrack.RESOLVED, track.resolve(105 * SECOND, out));
+        assertEquals(10.5, out[0], 1e-9);
+    }
+
+    @Test
+    public void forgetsFixesBeyondCapacity() {
+        FakeLocationSource source = new FakeLocationSource();
+        for (int i = 0; i < 20; i++) {
+            source.fix(i * SECOND, i, i, 5f);
+        }
+        source.deliverAll(track);
+
+        assertEquals(8, track.size());
+        assertEquals(LocationTrack.RESOLVED, track.resolve(15 * SECOND + SECOND / 2, out));
+        assertEquals(15.5, out[0], 1e-9);
+        // The oldest retained fix is at 12 s; earlier frames take its position.
+        assertEquals(LocationTrack.RESOLVED, track.resolve(3 * SECOND, out));
+        assertEquals(12.0, out[0], 0.0);
+    }
+
+    @Test
+    public void backfillRefinesHeldFramesWithoutRewritingTheirJpeg() throws IOException {
+        RecordingSink sink = new RecordingSink();
+        File directory = folder.newFolder();
+        RecordingSession session = new RecordingSession(directory, sink, null);
+        FakeLocationSource source = new FakeLocationSource()
+                .fix(100 * SECOND, 10.0, 20.0, 5f)
+                .fix(110 * SECOND, 11.0, 21.0, 5f);
+        source.deliverUntil(105 * SECOND, track);
+        // Saved while 100 s was the newest fix: one held at its position, one saved without a
+        // position, one too early for any fix.
+        save(session, 1, 105 * SECOND, 10.0, 20.0);
+        save(session, 2, 107 * SECOND, 0.0, 0.0);
+        save(session, 3, 60 * SECOND, 0.0, 0.0);
+
+        new GpsBackfill(session, track, true).run();
+        assertTrue("nothing brackets any frame yet", sink.updates.isEmpty());
+
+        source.deliverAll(track);
+        new GpsBackfill(session, track, true).run();
+        assertEquals("only the frame saved without a position is rewritten", 1, sink.updates.size());
+        assertEquals(2, sink.updates.get(0).frameIndex);
+        assertEquals(10.7, sink.latitudes.get(0), 1e-9);
+        assertEquals(20.7, sink.longitudes.get(0), 1e-9);
+
+        SessionManifest.Records records = SessionManifest.readRecords(directory);
+        assertEquals("the held frame's manifest entry is interpolated", 10.5, records.latitudes[0], 1e-9);
+        assertEquals(20.5, records.longitudes[0], 1e-9);
+        assertEquals(10.7, records.latitudes[1], 1e-9);
+        assertEquals(0.0, records.latitudes[2], 0.0);
+
+        assertTrue("the frame no fix can place stays pending", session.hasPendingGpsFrames());
+        assertEquals(3, session.takePendingGpsFrames().get(0).frameIndex);
+        assertFalse(session.hasPendingGpsFrames());
+    }
+
+    /** What the encode worker does for a frame saved before a fix placed it for good. */
+    private static void save(RecordingSession session, int frameIndex, long locationTimeNanos,
+                             double latitude, double longitude) {
+        session.onFrameSaved(frameIndex, frameIndex * 1000L, latitude, longitude, 0, 0);
+        session.addPendingGpsFrame(new RecordingSession.PendingGpsFrame(frameIndex, locationTimeNanos,
+                frameIndex * 1000L, 0, 0, latitude != 0.0 || longitude != 0.0));
+    }
+
+    /** Fixes scripted up front and handed to the track in time order, as they would arrive. */
+    private static final class FakeLocationSource {
+        private final List<double[]> fixes = new ArrayList<>();
+        private int next = 0;
+
+        FakeLocationSource fix(long timeNanos, double latitude, double longitude, float accuracy) {
+            fixes.add(new double[]{timeNanos, latitude, longitude, accuracy});
+            return this;
+        }
+
+        void deliverUntil(long nowNanos, LocationTrack track) {
+            while (next < fixes.size() && (long) fixes.get(next)[0] <= nowNanos) {
+                double[] fix = fixes.get(next++);
+                track.add((long) fix[0], fix[1], fix[2], (float) fix[3]);
+            }
+        }
+
+        void deliverAll(LocationTrack track) {
+            deliverUntil(Long.MAX_VALUE, track);
+        }
+    }
+
+    private static final class RecordingSink implements FrameSink {
+        final List<RecordingSession.PendingGpsFrame> updates = new ArrayList<>();
+        final List<Double> latitudes = new ArrayList<>();
+        final List<Double> longitudes = new ArrayList<>();
+
+        @Override
+        public void writeFrame(int frameIndex, long timestamp, double latitude, double longitude,
+                               int rotationDegrees, int sharpness, ByteBuffer[] jpeg) {
+        }
+
+        @Override
+        public synchronized void updateLocation(RecordingSession.PendingGpsFrame frame, double latitude,
+                                                double longitude) {
+            updates.add(frame);
+            latitudes.add(latitude);
+            longitudes.add(longitude);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
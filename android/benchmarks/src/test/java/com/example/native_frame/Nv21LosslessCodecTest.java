@@ -0,0 +1,83 @@
+package com.example.native_frame;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Nv21LosslessCodecTest {
+
+    @Test
+    public void cameraFramesRoundTripAndShrink() throws IOException {
+        for (String resolution : new String[]{"640x480", "1280x720"}) {
+            int width = Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+            int height = Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+            SyntheticCameraSource source = new SyntheticCameraSource(width, height, 0, true, 30);
+            SourceFrame frame = new SourceFrame();
+            byte[] nv21 = new byte[YuvPlaneExtractor.nv21Size(width, height)];
+            for (int i = 0; i < 3; i++) {
+                source.nextFrame(frame);
+                YuvPlaneExtractor.toNv21(frame.yPlane, frame.yRowStride, frame.uPlane, frame.vPlane,
+                        frame.uvRowStride, frame.uvPixelStride, width, height, nv21);
+                int length = assertRoundTrip(nv21, width, height);
+                assertTrue(resolution + " frame " + i + " did not compress", length > 0 && length < nv21.length);
+            }
+        }
+    }
+
+    @Test
+    public void oddSizedFrameRoundTrips() throws IOException {
+        int width = 33;
+        int height = 17;
+        byte[] nv21 = new byte[YuvPlaneExtractor.nv21Size(width, height)];
+        for (int i = 0; i < nv21.length; i++) {
+            nv21[i] = (byte) (i * 7 + i / width);
+        }
+        assertRoundTrip(nv21, width, height);
+    }
+
+    @Test
+    public void flatAndSpikyFramesRoundTrip() throws IOException {
+        int width = 64;
+        int height = 32;
+        byte[] nv21 = new byte[YuvPlaneExtractor.nv21Size(width, height)];
+        Arrays.fill(nv21, (byte) 200);
+        assertTrue(assertRoundTrip(nv21, width, height) > 0);
+
+        // Full-swing spikes: their residuals take the escape path.
+        for (int i = 0; i < nv21.length; i += 13) {
+            nv21[i] = 0;
+        }
+        assertTrue(assertRoundTrip(nv21, width, height) > 0);
+    }
+
+    @Test
+    public void noiseIsLeftUncompressed() {
+        int width = 64;
+        int height = 32;
+        byte[] nv21 = new byte[YuvPlaneExtractor.nv21Size(width, height)];
+        new Random(1).nextBytes(nv21);
+        assertEquals(-1, Nv21LosslessCodec.compress(nv21, width, height,
+                new byte[Nv21LosslessCodec.outputCapacity(width, height)]));
+    }
+
+    /** Compresses and restores {@code nv21} behind an offset; returns the compressed length, -1 if stored raw. */
+    private static int assertRoundTrip(byte[] nv21, int width, int height) throws IOException {
+        byte[] compressed = new byte[Nv21LosslessCodec.outputCapacity(width, height)];
+        int length = Nv21LosslessCodec.compress(nv21, width, height, compressed);
+        if (length < 0) {
+            return length;
+        }
+        byte[] record = new byte[length + 5];
+        System.arraycopy(compressed, 0, record, 5, length);
+        byte[] restored = new byte[nv21.length];
+        Nv21LosslessCodec.decompress(record, 5, length, width, height, restored);
+        assertArrayEquals(nv21, restored);
+        return length;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.native_frame;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Every {@link Nv21Transform} kernel against the per-pixel baselines in {@link Nv21Reference},
+ * bit for bit. Sizes leave partial 32-pixel tiles on both planes, and the large ones are over
+ * the 720p threshold, so the parallel transform splits them into bands.
+ */
+public class Nv21TransformTest {
+
+    /** Rotation and bilinear sizes; only the even-dimension constraint of NV21 applies. */
+    private static final String[] SIZES = {"2x2", "34x18", "66x50", "100x62", "1282x722", "1920x1080"};
+    /** Multiples of 4, which the reference box filter needs. */
+    private static final String[] BOX_SIZES = {"4x4", "68x44", "100x60", "1288x724", "2560x1440"};
+
+    private static final Nv21Transform SERIAL = new Nv21Transform(1);
+    private static final Nv21Transform PARALLEL = new Nv21Transform(4);
+    private static final Nv21Transform[] TRANSFORMS = {SERIAL, PARALLEL};
+
+    @AfterClass
+    public static void shutDown() {
+        SERIAL.shutdown();
+        PARALLEL.shutdown();
+    }
+
+    @Test
+    public void rotateMatchesReferenceAtEveryAngle() {
+        for (String size : SIZES) {
+            SyntheticFrame frame = SyntheticFrame.of(size, 0, true);
+            byte[] nv21 = frame.toNv21();
+            for (int degrees = 0; degrees < 360; degrees += 90) {
+                byte[] expected = degrees == 0 ? nv21.clone() : new byte[nv21.length];
+                if (degrees != 0) {
+                    Nv21Reference.rotate(nv21, frame.width, frame.height, degrees, expected);
+                }
+                for (Nv21Transform transform : TRANSFORMS) {
+                    byte[] actual = new byte[nv21.length];
+                    transform.rotate(nv21, frame.width, frame.height, degrees, actual);
+                    assertArrayEquals(label("rotate " + degrees, size, transform), expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void downscale2xMatchesReference() {
+        for (String size : BOX_SIZES) {
+            SyntheticFrame frame = SyntheticFrame.of(size, 0, true);
+            byte[] nv21 = frame.toNv21();
+            byte[] expected = new byte[YuvPlaneExtractor.nv21Size(frame.width / 2, frame.height / 2)];
+            Nv21Reference.downscale2x(nv21, frame.width, frame.height, expected);
+            for (Nv21Transform transform : TRANSFORMS) {
+                byte[] actual = new byte[expected.length];
+                transform.downscale2x(nv21, frame.width, frame.height, actual);
+                assertArrayEquals(label("downscale2x", size, transform), expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void scaleBilinearMatchesReference() {
+        for (String size : SIZES) {
+            SyntheticFrame frame = SyntheticFrame.of(size, 0, true);
+            byte[] nv21 = frame.toNv21();
+            int[][] targets = {
+                    {frame.width * 3 / 4 & ~1, frame.height * 3 / 4 & ~1},
+                    {frame.width - 2, frame.height},
+                    {frame.width, frame.height * 2 / 3 & ~1}};
+            for (int[] target : targets) {
+                int outWidth = Math.max(2, target[0]);
+                int outHeight = Math.max(2, target[1]);
+                byte[] expected = new byte[YuvPlaneExtractor.nv21Size(outWidth, outHeight)];
+                Nv21Reference.scaleBilinear(nv21, frame.width, frame.height, expected, outWidth, outHeight);
+                for (Nv21Transform transform : TRANSFORMS) {
+                    byte[] actual = new byte[expected.length];
+                    transform.scaleBilinear(nv21, frame.width, frame.height, actual, outWidth, outHeight);
+                    assertArrayEquals(label("scaleBilinear to " + outWidth + "x" + outHeight, size, transform),
+                            expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void downscaleChainsBoxStepsIntoBilinear() {
+        // 2560x1440 to 720p, 540p and 480x270: one box step, one box step plus bilinear, two plus bilinear.
+        SyntheticFrame frame = SyntheticFrame.of("2560x1440", 0, true);
+        byte[] nv21 = frame.toNv21();
+        int[][] targets = {{1280, 720}, {960, 540}, {480, 270}};
+        for (int[] target : targets) {
+            byte[] expected = referenceDownscale(nv21, frame.width, frame.height, target[0], target[1]);
+            for (Nv21Transform transform : TRANSFORMS) {
+                byte[] actual = new byte[expected.length];
+                transform.downscale(nv21, frame.width, frame.height, actual, target[0], target[1]);
+                assertArrayEquals(label("downscale to " + target[0] + "x" + target[1], "2560x1440", transform),
+                        expected, actual);
+            }
+        }
+    }
+
+    /** The documented {@link Nv21Transform#downscale} recipe, built from the reference kernels. */
+    private static byte[] referenceDownscale(byte[] in, int width, int height, int outWidth, int outHeight) {
+        byte[] current = in;
+        while (width / 2 >= outWidth && height / 2 >= outHeight && width % 4 == 0 && height % 4 == 0) {
+            byte[] half = new byte[YuvPlaneExtractor.nv21Size(width / 2, height / 2)];
+            Nv21Reference.downscale2x(current, width, height, half);
+            current = half;
+            width /= 2;
+            height /= 2;
+        }
+        if (width == outWidth && height == outHeight) {
+            return current;
+        }
+        byte[] out = new byte[YuvPlaneExtractor.nv21Size(outWidth, outHeight)];
+        Nv21Reference.scaleBilinear(current, width, height, out, outWidth, outHeight);
+        return out;
+    }
+
+    private static String label(String kernel, String size, Nv21Transform transform) {
+        return kernel + " of " + size + (transform == PARALLEL ? " in bands" : " serially");
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.native_frame;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes the encoder's output with ImageIO and compares it against the source frame and
+ * against ImageIO's own encoder. Sizes cover partial MCUs in both directions and frames
+ * split into many restart-marker slices.
+ */
+public class ParallelJpegEncoderTest {
+
+    private static final int QUALITY = 90;
+    private static final int[][] SIZES = {{8, 8}, {18, 2}, {100, 62}, {1282, 722}};
+
+    private static final ParallelJpegEncoder SERIAL = new ParallelJpegEncoder(1);
+    private static final ParallelJpegEncoder PARALLEL = new ParallelJpegEncoder(4);
+
+    @AfterClass
+    public static void shutDown() {
+        SERIAL.shutdown();
+        PARALLEL.shutdown();
+    }
+
+    @Test
+    public void decodesCloseToTheSource() throws IOException {
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            byte[] nv21 = smoothFrame(width, height);
+            int[] reference = toRgb(nv21, width, height);
+
+            BufferedImage decoded = decode(encode(PARALLEL, nv21, width, height));
+            assertEquals(width, decoded.getWidth());
+            assertEquals(height, decoded.getHeight());
+            double psnr = psnr(reference, pixels(decoded));
+            double imageIoPsnr = psnr(reference, pixels(decode(encode(new ImageIoJpegEncoder(), nv21, width, height))));
+            String label = width + "x" + height + ": " + psnr + " dB, ImageIO " + imageIoPsnr + " dB";
+            assertTrue(label, psnr > 30.0);
+            assertTrue(label, psnr > imageIoPsnr - 1.0);
+        }
+    }
+
+    @Test
+    public void oneAndManyThreadsDecodeIdentically() throws IOException {
+        for (int[] size : SIZES) {
+            byte[] nv21 = smoothFrame(size[0], size[1]);
+            assertArrayEquals(size[0] + "x" + size[1],
+                    pixels(decode(encode(SERIAL, nv21, size[0], size[1]))),
+                    pixels(decode(encode(PARALLEL, nv21, size[0], size[1]))));
+        }
+    }
+
+    @Test
+    public void stridedInputMatchesPackedInput() throws IOException {
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            byte[] packed = smoothFrame(width, height);
+            int stride = width + 24;
+            int chromaOffset = stride * height + 7;
+            byte[] strided = new byte[chromaOffset + stride * (height / 2)];
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(packed, row * width, strided, row * stride, width);
+            }
+            for (int row = 0; row < height / 2; row++) {
+                System.arraycopy(packed, width * height + row * width, strided, chromaOffset + row * stride, width);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PARALLEL.encode(strided, stride, chromaOffset, stride, width, height, QUALITY, out);
+            assertArrayEquals(width + "x" + height, encode(PARALLEL, packed, width, height), out.toByteArray());
+        }
+    }
+
+    private static byte[] encode(JpegEncoder encoder, byte[] nv21, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(nv21, width, height, QUALITY, out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull("ImageIO could not decode the stream", image);
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /** Gradients and a hard edge, like a scene rather than noise, which JPEG cannot compress well. */
+    private static byte[] smoothFrame(int width, int height) {
+        byte[] nv21 = new byte[YuvPlaneExtractor.nv21Size(width, height)];
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int luma = 40 + column * 160 / width + row * 40 / height;
+                nv21[row * width + column] = (byte) (column > width / 3 && row > height / 2 ? luma + 30 : luma);
+            }
+        }
+        int chroma = width * height;
+        for (int row = 0; row < height / 2; row++) {
+            for (int column = 0; column < width / 2; column++) {
+                nv21[chroma + row * width + column * 2] = (byte) (100 + column * 60 / width);
+                nv21[chroma + row * width + column * 2 + 1] = (byte) (150 - row * 60 / height);
+            }
+        }
+        return nv21;
+    }
+
+    /** Full-range BT.601, as JFIF decoders use. */
+    private static int[] toRgb(byte[] nv21, int width, int height) {
+        int[] rgb = new int[width * height];
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int chroma = width * height + (row >> 1) * width + (column & ~1);
+                double y = nv21[row * width + column] & 0xFF;
+                double v = (nv21[chroma] & 0xFF) - 128;
+                double u = (nv21[chroma + 1] & 0xFF) - 128;
+                rgb[row * width + column] = clamp(y + 1.402 * v) << 16
+                        | clamp(y - 0.344136 * u - 0.714136 * v) << 8
+                        | clamp(y + 1.772 * u);
+            }
+        }
+        return rgb;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static double psnr(int[] expected, int[] actual) {
+        double sum = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int difference = ((expected[i] >> shift) & 0xFF) - ((actual[i] >> shift) & 0xFF);
+                sum += difference * difference;
+            }
+        }
+        double mse = sum / (expected.length * 3.0);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.native_frame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentArchiveExporterTest {
+
+    private static final int FRAMES = 6;
+    private static final int BACKFILLED = 2;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void exportRebuildsEveryFrameWithItsIndexedMetadata() throws IOException {
+        File session = folder.newFolder();
+        byte[][] encoded = writeArchive(session);
+        assertTrue("the archive spans segments", new File(session, SegmentArchiveWriter.segmentFileName(1)).exists());
+
+        File output = folder.newFolder();
+        assertEquals(FRAMES, SegmentArchiveExporter.exportAll(session, output));
+        for (int i = 1; i <= FRAMES; i++) {
+            double latitude = i == BACKFILLED ? 48.5 : latitude(i);
+            double longitude = i == BACKFILLED ? 11.5 : longitude(i);
+            byte[] expected = concat(ExifSegment.splice(encoded[i], encoded[i].length,
+                    ExifSegment.build(timestamp(i), rotation(i), latitude, longitude, sharpness(i))));
+            assertArrayEquals("frame " + i, expected, exported(output, i));
+        }
+    }
+
+    @Test
+    public void exportSegmentWritesOnlyThatSegmentsFrames() throws IOException {
+        File session = folder.newFolder();
+        writeArchive(session);
+
+        File output = folder.newFolder();
+        int exported = SegmentArchiveExporter.exportSegment(session, 1, output);
+        assertTrue(exported > 0 && exported < FRAMES);
+        assertEquals(exported, output.list().length);
+        assertFalse("frame 1 lives in segment 0",
+                new File(output, DirectoryFrameSink.frameFileName(1)).exists());
+    }
+
+    /** Archives {@link #FRAMES} frames, two per segment, and backfills one; returns the encoder output by frame index. */
+    private static byte[][] writeArchive(File session) throws IOException {
+        byte[][] encoded = new byte[FRAMES + 1][];
+        ByteBuffer[][] framed = new ByteBuffer[FRAMES + 1][];
+        long largest = 0;
+        for (int i = 1; i <= FRAMES; i++) {
+            encoded[i] = encode(i);
+            framed[i] = ExifSegment.splice(encoded[i], encoded[i].length,
+                    ExifSegment.build(timestamp(i), rotation(i), latitude(i), longitude(i), sharpness(i)));
+            largest = Math.max(largest, concat(framed[i]).length);
+        }
+
+        SegmentArchiveWriter writer = new SegmentArchiveWriter(session, 2 * largest, 4096);
+        for (int i = 1; i <= FRAMES; i++) {
+            writer.writeFrame(i, timestamp(i), latitude(i), longitude(i), rotation(i), sharpness(i), framed[i]);
+        }
+        writer.updateLocation(new RecordingSession.PendingGpsFrame(BACKFILLED, 0L, timestamp(BACKFILLED),
+                rotation(BACKFILLED), sharpness(BACKFILLED), false), 48.5, 11.5);
+        writer.close();
+        return encoded;
+    }
+
+    private static byte[] encode(int frameIndex) throws IOException {
+        int width = 32;
+        int height = 16;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        Arrays.fill(nv21, 0, width * height, (byte) (frameIndex * 30));
+        Arrays.fill(nv21, width * height, nv21.length, (byte) 128);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ImageIoJpegEncoder().encode(nv21, width, height, 90, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] exported(File output, int frameIndex) throws IOException {
+        return Files.readAllBytes(new File(output, DirectoryFrameSink.frameFileName(frameIndex)).toPath());
+    }
+
+    private static byte[] concat(ByteBuffer[] parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteBuffer part : parts) {
+            ByteBuffer copy = part.duplicate();
+            while (copy.hasRemaining()) {
+                out.write(copy.get());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static long timestamp(int frameIndex) {
+        return 1_700_000_000_000L + frameIndex * 200L;
+    }
+
+    private static int rotation(int frameIndex) {
+        return (frameIndex % 4) * 90;
+    }
+
+    private static double latitude(int frameIndex) {
+        return frameIndex == BACKFILLED ? 0.0 : 48.0 + frameIndex * 0.001;
+    }
+
+    private static double longitude(int frameIndex) {
+        return frameIndex == BACKFILLED ? 0.0 : 11.0 + frameIndex * 0.001;
+    }
+
+    private static int sharpness(int frameIndex) {
+        return 100 + frameIndex;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.native_frame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class SessionManifestTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void backfillingAHeldFrameCountsItOnceAndMovesTheBox() throws IOException {
+        File directory = folder.newFolder();
+        SessionManifest manifest = new SessionManifest(directory);
+        manifest.append(1, 1000L, 10.0, 20.0, 0, 0);
+        manifest.append(2, 2000L, 12.0, 22.0, 0, 0);
+        manifest.append(3, 3000L, 0.0, 0.0, 0, 0);
+
+        // Frame 2 was saved with a held position; the next fix places it closer to frame 1.
+        manifest.updateLocation(2, 11.0, 21.0);
+        SessionManifest.Summary summary = SessionManifest.readSummary(directory);
+        assertEquals(3, summary.frameCount);
+        assertEquals(2, summary.locatedCount);
+        assertEquals(10.0, summary.minLatitude, 0.0);
+        assertEquals("the held position no longer holds the box open", 11.0, summary.maxLatitude, 0.0);
+        assertEquals(21.0, summary.maxLongitude, 0.0);
+
+        // Frame 3 was saved without a position.
+        manifest.updateLocation(3, 9.0, 19.5);
+        summary = SessionManifest.readSummary(directory);
+        assertEquals(3, summary.locatedCount);
+        assertEquals(9.0, summary.minLatitude, 0.0);
+        assertEquals(19.5, summary.minLongitude, 0.0);
+
+        // A second refinement of the same frame is not counted again.
+        manifest.updateLocation(3, 9.5, 19.75);
+        manifest.close();
+        summary = SessionManifest.readSummary(directory);
+        assertEquals(3, summary.locatedCount);
+        assertEquals(9.5, summary.minLatitude, 0.0);
+        assertEquals(19.75, summary.minLongitude, 0.0);
+
+        SessionManifest.Records records = SessionManifest.readRecords(directory);
+        assertEquals(11.0, records.latitudes[1], 0.0);
+        assertEquals(9.5, records.latitudes[2], 0.0);
+    }
+}
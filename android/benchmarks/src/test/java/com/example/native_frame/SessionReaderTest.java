@@ -0,0 +1,93 @@
+package com.example.native_frame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SessionReaderTest {
+
+    /** Write order; encode workers finish frames out of capture order. */
+    private static final int[] WRITE_ORDER = {2, 1, 3, 5, 4, 7, 6, 8};
+    private static final int FRAME_BYTES = 3000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsEveryFrameBackByteForByteInCaptureOrder() throws IOException {
+        File session = folder.newFolder();
+        writeArchive(session);
+        assertTrue("the archive spans segments", new File(session, SegmentArchiveWriter.segmentFileName(2)).exists());
+
+        SessionReader reader = SessionReader.open(session);
+        assertEquals(WRITE_ORDER.length, reader.frameCount());
+        for (int position = 0; position < reader.frameCount(); position++) {
+            int frameIndex = position + 1;
+            assertEquals(frameIndex, reader.frameIndex(position));
+            assertEquals(timestamp(frameIndex), reader.timestamp(position));
+            assertEquals(48.0 + frameIndex, reader.latitude(position), 0.0);
+            assertEquals(11.0 + frameIndex, reader.longitude(position), 0.0);
+            assertEquals(90, reader.rotationDegrees(position));
+            assertEquals(frameIndex * 10, reader.sharpness(position));
+            assertEquals("frame " + frameIndex, ByteBuffer.wrap(frame(frameIndex)), reader.jpeg(position));
+        }
+
+        int position = 0;
+        for (ByteBuffer jpeg : reader) {
+            assertEquals(ByteBuffer.wrap(frame(++position)), jpeg);
+        }
+        assertEquals(WRITE_ORDER.length, position);
+
+        assertEquals(0, reader.positionAt(0L));
+        assertEquals(2, reader.positionAt(timestamp(3) + 1));
+        assertEquals(WRITE_ORDER.length - 1, reader.positionAt(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void hidesFramesCutOffByACrash() throws IOException {
+        File session = folder.newFolder();
+        writeArchive(session);
+        File last = new File(session, SegmentArchiveWriter.segmentFileName(3));
+        try (RandomAccessFile segment = new RandomAccessFile(last, "rw")) {
+            segment.setLength(segment.length() - 1);
+        }
+
+        SessionReader reader = SessionReader.open(session);
+        assertEquals(WRITE_ORDER.length - 1, reader.frameCount());
+        assertEquals("frame 8 was the last one written", 7, reader.frameIndex(reader.frameCount() - 1));
+    }
+
+    /** Two frames per segment. */
+    private static void writeArchive(File session) throws IOException {
+        SegmentArchiveWriter writer = new SegmentArchiveWriter(session, 2 * FRAME_BYTES + 100, 4096);
+        for (int frameIndex : WRITE_ORDER) {
+            byte[] bytes = frame(frameIndex);
+            // Split like a spliced JPEG so gather writes are covered too.
+            writer.writeFrame(frameIndex, timestamp(frameIndex), 48.0 + frameIndex, 11.0 + frameIndex, 90,
+                    frameIndex * 10, new ByteBuffer[]{
+                            ByteBuffer.wrap(bytes, 0, 2),
+                            ByteBuffer.wrap(bytes, 2, bytes.length - 2)
+                    });
+        }
+        writer.close();
+    }
+
+    private static byte[] frame(int frameIndex) {
+        byte[] bytes = new byte[FRAME_BYTES - frameIndex];
+        new Random(frameIndex).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static long timestamp(int frameIndex) {
+        return 1_700_000_000_000L + frameIndex * 200L;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.native_frame;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SharpnessSelectorTest {
+
+    @Test
+    public void keepsTheSharpestCandidateInItsOwnSlot() {
+        FrameRingBuffer ring = new FrameRingBuffer(3);
+        SharpnessSelector selector = new SharpnessSelector(ring);
+
+        FrameSlot first = selector.slotForCandidate(10);
+        assertNotNull(first);
+        selector.acceptCandidate(10);
+        assertNull("not sharper than the best", selector.slotForCandidate(10));
+
+        FrameSlot second = selector.slotForCandidate(20);
+        assertNotNull(second);
+        selector.acceptCandidate(20);
+        assertSame("the beaten slot is written next", first, selector.slotForCandidate(30));
+
+        assertSame("the best is handed over without a copy", second, selector.takeBest());
+        assertFalse(selector.hasBest());
+        ring.publish(second);
+        assertNotNull("the selector holds only its spare", ring.tryClaim());
+        assertNull(ring.tryClaim());
+        assertEquals(1, ring.overrunCount());
+    }
+
+    @Test
+    public void clearReturnsHeldSlotsToTheRing() {
+        FrameRingBuffer ring = new FrameRingBuffer(2);
+        SharpnessSelector selector = new SharpnessSelector(ring);
+        selector.slotForCandidate(5);
+        selector.acceptCandidate(5);
+        assertNotNull(selector.slotForCandidate(6));
+        assertNull("both slots are held", ring.tryClaim());
+
+        selector.clear();
+        assertFalse(selector.hasBest());
+        assertNotNull(ring.tryClaim());
+        assertNotNull(ring.tryClaim());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.native_frame;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class YuvPlaneExtractorTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+    private static final int CHROMA_BYTES = WIDTH * HEIGHT / 2;
+
+    @Test
+    public void uniformChromaNv12IsNotTakenForInterleavedVu() {
+        ByteBuffer uv = chroma(100, 150);
+        ByteBuffer uPlane = slice(uv, 0);
+        ByteBuffer vPlane = slice(uv, 1);
+        assertEquals(YuvPlaneExtractor.LAYOUT_PLANAR, YuvPlaneExtractor.detectChromaLayout(uPlane, vPlane, 2));
+        assertEquals("the probe leaves the plane as it was", chroma(100, 150), uv);
+
+        ByteBuffer readOnly = uv.asReadOnlyBuffer();
+        ByteBuffer readOnlyU = slice(readOnly, 0);
+        ByteBuffer readOnlyV = slice(readOnly, 1);
+        assertEquals(YuvPlaneExtractor.LAYOUT_UNKNOWN,
+                YuvPlaneExtractor.detectChromaLayout(readOnlyU, readOnlyV, 2));
+
+        SourceFrame frame = new SourceFrame();
+        frame.setPlanes(luma(), WIDTH, readOnlyU, readOnlyV, WIDTH, 2, WIDTH, HEIGHT);
+        assertFalse(frame.interleavedVu);
+        assertArrayEquals(expectedNv21(150, 100), toNv21(frame));
+    }
+
+    @Test
+    public void uniformSeparatePlanesAreNotTakenForInterleavedVu() {
+        // Padding bytes that happen to hold the other channel's value make V look like U shifted by one.
+        ByteBuffer uPlane = slice(chroma(100, 150), 0);
+        ByteBuffer vPlane = slice(chroma(150, 100), 0);
+        assertEquals(YuvPlaneExtractor.LAYOUT_PLANAR, YuvPlaneExtractor.detectChromaLayout(uPlane, vPlane, 2));
+        assertEquals(YuvPlaneExtractor.LAYOUT_UNKNOWN, YuvPlaneExtractor.detectChromaLayout(
+                uPlane.asReadOnlyBuffer(), vPlane.asReadOnlyBuffer(), 2));
+    }
+
+    @Test
+    public void aliasedVuIsDetectedFromTheBuffers() {
+        ByteBuffer vu = chroma(150, 100);
+        assertEquals(YuvPlaneExtractor.LAYOUT_INTERLEAVED_VU,
+                YuvPlaneExtractor.detectChromaLayout(slice(vu, 1), slice(vu, 0), 2));
+        assertEquals(chroma(150, 100), vu);
+    }
+
+    @Test
+    public void unknownLayoutIsCheckedAgainOnLaterFrames() {
+        SourceFrame frame = new SourceFrame();
+        ByteBuffer uniform = chroma(150, 100).asReadOnlyBuffer();
+        frame.setPlanes(luma(), WIDTH, slice(uniform, 1), slice(uniform, 0), WIDTH, 2, WIDTH, HEIGHT);
+        assertFalse(frame.interleavedVu);
+        assertArrayEquals(expectedNv21(150, 100), toNv21(frame));
+
+        ByteBuffer varied = chroma(150, 100);
+        varied.put(4, (byte) 151);
+        varied = varied.asReadOnlyBuffer();
+        frame.setPlanes(luma(), WIDTH, slice(varied, 1), slice(varied, 0), WIDTH, 2, WIDTH, HEIGHT);
+        assertTrue(frame.interleavedVu);
+
+        // Settled: a uniform frame of the same format no longer changes the layout.
+        frame.setPlanes(luma(), WIDTH, slice(uniform, 1), slice(uniform, 0), WIDTH, 2, WIDTH, HEIGHT);
+        assertTrue(frame.interleavedVu);
+        assertArrayEquals(expectedNv21(150, 100), toNv21(frame));
+    }
+
+    /** Semi-planar chroma with every even byte {@code first} and every odd byte {@code second}. */
+    private static ByteBuffer chroma(int first, int second) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHROMA_BYTES);
+        for (int i = 0; i < CHROMA_BYTES; i++) {
+            buffer.put(i, (byte) ((i & 1) == 0 ? first : second));
+        }
+        return buffer;
+    }
+
+    /** A plane view from {@code offset}, one byte short of the buffer end like camera chroma planes. */
+    private static ByteBuffer slice(ByteBuffer buffer, int offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + CHROMA_BYTES - 1);
+        return view.slice();
+    }
+
+    private static ByteBuffer luma() {
+        ByteBuffer y = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            y.put(i, (byte) i);
+        }
+        return y;
+    }
+
+    private static byte[] toNv21(SourceFrame frame) {
+        byte[] nv21 = new byte[YuvPlaneExtractor.nv21Size(WIDTH, HEIGHT)];
+        YuvPlaneExtractor.toNv21(frame.yPlane, frame.yRowStride, frame.uPlane, frame.vPlane, frame.uvRowStride,
+                frame.uvPixelStride, frame.interleavedVu, WIDTH, HEIGHT, nv21);
+        return nv21;
+    }
+
+    private static byte[] expectedNv21(int v, int u) {
+        byte[] nv21 = new byte[YuvPlaneExtractor.nv21Size(WIDTH, HEIGHT)];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            nv21[i] = (byte) i;
+        }
+        for (int i = WIDTH * HEIGHT; i < nv21.length; i += 2) {
+            nv21[i] = (byte) v;
+            nv21[i + 1] = (byte) u;
+        }
+        return nv21;
+    }
+}
@@ -0,0 +1,111 @@
+import 'dart:async';
+
+import 'package:flutter/material.dart';
+import 'package:permission_handler/permission_handler.dart';
+import '../services/camera_service.dart';
+
+/// Camera preview and record button drawn by Flutter from a native texture,
+/// without leaving the Flutter activity.
+class CaptureScreen extends StatefulWidget {
+  const CaptureScreen({Key? key}) : super(key: key);
+
+  @override
+  State<CaptureScreen> createState() => _CaptureScreenState();
+}
+
+class _CaptureScreenState extends State<CaptureScreen> {
+  int? _textureId;
+  double _aspectRatio = 16 / 9;
+  int _quarterTurns = 0;
+  bool _recording = false;
+  String? _error;
+  StreamSubscription<String>? _messages;
+
+  @override
+  void initState() {
+    super.initState();
+    _messages = CameraService.captureMessages.listen((message) {
+      if (!mounted) return;
+      ScaffoldMessenger.of(context)
+          .showSnackBar(SnackBar(content: Text(message)));
+    });
+    _startPreview();
+  }
+
+  Future<void> _startPreview() async {
+    final statuses = await [
+      Permission.camera,
+      Permission.locationWhenInUse,
+    ].request();
+    if (!statuses[Permission.camera]!.isGranted ||
+        !statuses[Permission.locationWhenInUse]!.isGranted) {
+      setState(() => _error = 'Camera and location permissions are required');
+      return;
+    }
+
+    final preview = await CameraService.startPreview();
+    if (!mounted) return;
+    if (preview == null) {
+      setState(() => _error = 'Unable to start preview');
+      return;
+    }
+    setState(() {
+      _textureId = preview['textureId'] as int;
+      _aspectRatio = (preview['width'] as int) / (preview['height'] as int);
+      // The buffers arrive in sensor orientation; turn them upright for a
+      // portrait screen.
+      _quarterTurns = (preview['sensorOrientation'] as int) ~/ 90;
+    });
+  }
+
+  Future<void> _toggleRecording() async {
+    if (_recording) {
+      await CameraService.stopRecording();
+      setState(() => _recording = false);
+    } else {
+      final directory = await CameraService.startRecording();
+      if (directory != null) {
+        setState(() => _recording = true);
+      }
+    }
+  }
+
+  @override
+  void dispose() {
+    _messages?.cancel();
+    if (_recording) {
+      CameraService.stopRecording();
+    }
+    CameraService.stopPreview();
+    super.dispose();
+  }
+
+  @override
+  Widget build(BuildContext context) {
+    final textureId = _textureId;
+    return Scaffold(
+      backgroundColor: Colors.black,
+      appBar: AppBar(title: const Text('Capture')),
+      body: Center(
+        child: textureId == null
+            ? Text(_error ?? 'Starting camera...',
+                style: const TextStyle(color: Colors.white))
+            : RotatedBox(
+                quarterTurns: _quarterTurns,
+                child: AspectRatio(
+                  aspectRatio: _aspectRatio,
+                  child: Texture(textureId: textureId),
+                ),
+              ),
+      ),
+      floatingActionButtonLocation: FloatingActionButtonLocation.centerFloat,
+      floatingActionButton: textureId == null
+          ? null
+          : FloatingActionButton(
+              backgroundColor: Colors.red,
+              onPressed: _toggleRecording,
+              child: Icon(_recording ? Icons.stop : Icons.fiber_manual_record),
+            ),
+    );
+  }
+}
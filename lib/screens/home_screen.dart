@@ -1,6 +1,7 @@
 import 'package:flutter/material.dart';
 import 'package:permission_handler/permission_handler.dart';
 import '../services/camera_service.dart';
+import 'capture_screen.dart';
 
 class HomeScreen extends StatefulWidget {
   const HomeScreen({Key? key}) : super(key: key);
@@ -39,6 +40,12 @@ class _HomeScreenState extends State<HomeScreen> {
     });
   }
 
+  void _openCapture() {
+    Navigator.of(context).push(
+      MaterialPageRoute(builder: (_) => const CaptureScreen()),
+    );
+  }
+
   @override
   void initState() {
     super.initState();
@@ -59,6 +66,11 @@ class _HomeScreenState extends State<HomeScreen> {
               onPressed: _startCamera,
               child: const Text('Start Camera'),
             ),
+            const SizedBox(height: 12),
+            ElevatedButton(
+              onPressed: _openCapture,
+              child: const Text('Capture In App'),
+            ),
           ],
         ),
       ),
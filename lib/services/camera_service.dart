@@ -1,7 +1,11 @@
+import 'dart:async';
+
 import 'package:flutter/services.dart';
 
 class CameraService {
   static const _channel = MethodChannel('com.example.native_frame/camera');
+  static final _captureMessages = StreamController<String>.broadcast();
+  static bool _listening = false;
 
   static Future<void> startCamera() async {
     try {
@@ -10,4 +14,220 @@ class CameraService {
       print('Failed to start camera: ${e.message}');
     }
   }
+
+  /// Frame counters and per-stage latency percentiles (in microseconds) for the
+  /// current or most recent recording, e.g. `metrics['stages']['encode']['p99']`.
+  /// `metrics['startup']` times the latest camera start from the [startCamera]
+  /// or [startPreview] call: `cameraOpened`, `sessionConfigured` and
+  /// `firstPreviewFrame` in milliseconds (-1 until reached), plus
+  /// `configCached`.
+  static Future<Map<String, dynamic>> getPipelineMetrics() async {
+    try {
+      final metrics =
+          await _channel.invokeMapMethod<String, dynamic>('getPipelineMetrics');
+      return metrics ?? {};
+    } on PlatformException catch (e) {
+      print('Failed to read pipeline metrics: ${e.message}');
+      return {};
+    }
+  }
+
+  /// Recorded sessions, newest first, with `name`, `path` and, when the
+  /// session has a manifest, `frameCount`, `locatedCount`, `firstTimestamp`,
+  /// `lastTimestamp` (epoch ms) and the bounding box (`minLatitude`,
+  /// `maxLatitude`, `minLongitude`, `maxLongitude`) if any frame has a position.
+  /// Sessions recorded in deferred-encode mode also carry
+  /// `framesAwaitingEncode` until all their JPEGs are written.
+  static Future<List<Map<String, dynamic>>> listSessions() async {
+    try {
+      final sessions = await _channel.invokeListMethod<Map>('listSessions');
+      return sessions
+              ?.map((session) => Map<String, dynamic>.from(session))
+              .toList() ??
+          [];
+    } on PlatformException catch (e) {
+      print('Failed to list sessions: ${e.message}');
+      return [];
+    }
+  }
+
+  /// Progress of the background JPEG encode of deferred-encode sessions:
+  /// `running`, the `session` being encoded, `framesDone` and `framesTotal`.
+  static Future<Map<String, dynamic>> getDeferredEncodeProgress() async {
+    try {
+      final progress = await _channel
+          .invokeMapMethod<String, dynamic>('getDeferredEncodeProgress');
+      return progress ?? {};
+    } on PlatformException catch (e) {
+      print('Failed to read deferred encode progress: ${e.message}');
+      return {};
+    }
+  }
+
+  /// One page of indexed frames across all sessions, oldest first. Pass all
+  /// four bounds for a bounding-box query; times are epoch milliseconds.
+  /// The result holds `total`, `offset`, `sessions` (folder names) and the
+  /// typed lists `frameIndices`, `timestamps`, `latitudes` and `longitudes`.
+  static Future<Map<String, dynamic>> queryFrames({
+    double? minLatitude,
+    double? maxLatitude,
+    double? minLongitude,
+    double? maxLongitude,
+    int? fromTimestamp,
+    int? toTimestamp,
+    int offset = 0,
+    int limit = 200,
+  }) async {
+    try {
+      final page =
+          await _channel.invokeMapMethod<String, dynamic>('queryFrames', {
+        if (minLatitude != null) ...{
+          'minLatitude': minLatitude,
+          'maxLatitude': maxLatitude,
+          'minLongitude': minLongitude,
+          'maxLongitude': maxLongitude,
+        },
+        if (fromTimestamp != null) 'fromTimestamp': fromTimestamp,
+        if (toTimestamp != null) 'toTimestamp': toTimestamp,
+        'offset': offset,
+        'limit': limit,
+      });
+      return page ?? {};
+    } on PlatformException catch (e) {
+      print('Failed to query frames: ${e.message}');
+      return {};
+    }
+  }
+
+  /// Opens the camera inside the Flutter activity and returns `textureId` for a
+  /// [Texture] widget, the camera buffer `width` and `height` (in sensor
+  /// orientation) and `sensorOrientation`, or null if the camera and location
+  /// permissions are missing or the camera cannot open. A camera stopped less
+  /// than ten seconds ago is reused as is.
+  static Future<Map<String, dynamic>?> startPreview() async {
+    _listen();
+    try {
+      return await _channel.invokeMapMethod<String, dynamic>('startPreview');
+    } on PlatformException catch (e) {
+      print('Failed to start preview: ${e.message}');
+      return null;
+    }
+  }
+
+  /// Releases the preview; the camera stays open for a few seconds, and for as
+  /// long as a recording is running.
+  static Future<void> stopPreview() async {
+    try {
+      await _channel.invokeMethod('stopPreview');
+    } on PlatformException catch (e) {
+      print('Failed to stop preview: ${e.message}');
+    }
+  }
+
+  /// Starts saving frames from the running preview and returns the session
+  /// folder, or null if it could not start.
+  static Future<String?> startRecording() async {
+    try {
+      return await _channel.invokeMethod<String>('startRecording');
+    } on PlatformException catch (e) {
+      print('Failed to start recording: ${e.message}');
+      return null;
+    }
+  }
+
+  static Future<void> stopRecording() async {
+    try {
+      await _channel.invokeMethod('stopRecording');
+    } on PlatformException catch (e) {
+      print('Failed to stop recording: ${e.message}');
+    }
+  }
+
+  /// Changes capture settings; options left null keep their current value.
+  /// [targetSaveFps] sets how many frames per second are saved while
+  /// recording, and under load the rate backs off towards [minSaveFps]; the
+  /// two go together. [selectSharpest] (on by default) saves the sharpest
+  /// frame of each sampling interval instead of the one that falls due, and
+  /// notes its score in the EXIF image description.
+  /// [skipDuplicateFrames] (off by default) drops sampled frames that look
+  /// the same as the last saved one: those whose mean
+  /// absolute luma difference to it is under [duplicateThreshold] (0-255,
+  /// 2.0 by default). [parallelJpegEncoder] encodes each frame on several
+  /// cores with the app's own JPEG encoder instead of the platform one.
+  /// [saveFramesUpright] rotates frames before encode instead of tagging
+  /// their orientation in EXIF, and [maxSavedLongEdge] scales them down so
+  /// their long edge is at most that many pixels (0 keeps the capture size).
+  /// [packFramesIntoSegments] stores the next recordings' frames in segment
+  /// files plus an index instead of one JPEG per frame; see [exportSession].
+  /// [deferEncode] stores them losslessly compressed and
+  /// encodes the JPEGs later, on a charging or idle device; see
+  /// [getDeferredEncodeProgress]. [recordRawCapture] also keeps every camera
+  /// frame in the session's `capture.raw` for offline replay.
+  static Future<void> configure({
+    double? targetSaveFps,
+    double? minSaveFps,
+    bool? selectSharpest,
+    bool? skipDuplicateFrames,
+    double? duplicateThreshold,
+    bool? parallelJpegEncoder,
+    bool? saveFramesUpright,
+    int? maxSavedLongEdge,
+    bool? packFramesIntoSegments,
+    bool? deferEncode,
+    bool? recordRawCapture,
+  }) async {
+    try {
+      await _channel.invokeMethod('configure', {
+        if (targetSaveFps != null) 'targetSaveFps': targetSaveFps,
+        if (minSaveFps != null) 'minSaveFps': minSaveFps,
+        if (selectSharpest != null) 'selectSharpest': selectSharpest,
+        if (skipDuplicateFrames != null)
+          'skipDuplicateFrames': skipDuplicateFrames,
+        if (duplicateThreshold != null)
+          'duplicateThreshold': duplicateThreshold,
+        if (parallelJpegEncoder != null)
+          'parallelJpegEncoder': parallelJpegEncoder,
+        if (saveFramesUpright != null) 'saveFramesUpright': saveFramesUpright,
+        if (maxSavedLongEdge != null) 'maxSavedLongEdge': maxSavedLongEdge,
+        if (packFramesIntoSegments != null)
+          'packFramesIntoSegments': packFramesIntoSegments,
+        if (deferEncode != null) 'deferEncode': deferEncode,
+        if (recordRawCapture != null) 'recordRawCapture': recordRawCapture,
+      });
+    } on PlatformException catch (e) {
+      print('Failed to configure capture: ${e.message}');
+    }
+  }
+
+  /// Writes a `frame_NNN.jpg` for every frame of a session recorded into
+  /// segment files, into the session folder at [path], with positions
+  /// backfilled since recording. Returns the number of frames written, or
+  /// null on failure.
+  static Future<int?> exportSession(String path) async {
+    try {
+      return await _channel.invokeMethod<int>('exportSession', {'path': path});
+    } on PlatformException catch (e) {
+      print('Failed to export session: ${e.message}');
+      return null;
+    }
+  }
+
+  /// Messages from the capture pipeline meant for the user, e.g. a preview
+  /// that failed to start or a camera error.
+  static Stream<String> get captureMessages {
+    _listen();
+    return _captureMessages.stream;
+  }
+
+  static void _listen() {
+    if (_listening) return;
+    _listening = true;
+    _channel.setMethodCallHandler((call) async {
+      if (call.method == 'onCaptureMessage') {
+        _captureMessages.add(call.arguments as String);
+      } else if (call.method == 'onCaptureError') {
+        _captureMessages.add('Camera error ${call.arguments}');
+      }
+    });
+  }
 }